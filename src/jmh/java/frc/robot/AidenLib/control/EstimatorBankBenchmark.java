@@ -0,0 +1,88 @@
+package frc.robot.AidenLib.control;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import edu.wpi.first.math.geometry.Pose3d;
+import edu.wpi.first.math.geometry.Rotation3d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import frc.robot.AidenLib.SimulatedTimeSource;
+import frc.robot.AidenLib.math.Data;
+import frc.robot.AidenLib.math.MeasurementBatch;
+
+/**
+ * Benchmarks of one robot loop of many position hypotheses, stepped as separate {@link PoseEstimator3D} objects against one
+ * {@link EstimatorBank}, sequentially and over the common fork join pool.
+ */
+@State(Scope.Thread)
+public class EstimatorBankBenchmark {
+
+    @Param({"16", "256", "4096"})
+    public int hypotheses;
+
+    private PoseEstimator3D[] estimators;
+    private EstimatorBank bank, parallelBank;
+
+    private ChassisSpeeds speeds;
+    private double[] heading, estimate;
+    private Data[] xMeasures, yMeasures, zMeasures;
+    private MeasurementBatch xBatch, yBatch;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(0);
+        SimulatedTimeSource clock = new SimulatedTimeSource();
+
+        estimators = new PoseEstimator3D[hypotheses];
+        bank = new EstimatorBank(hypotheses, 0.1, clock);
+        parallelBank = new EstimatorBank(hypotheses, 0.1, clock);
+        parallelBank.setParallel(ForkJoinPool.commonPool(), 256);
+        for (int i = 0; i < hypotheses; i++) {
+            double x = random.nextDouble() * 16.0, y = random.nextDouble() * 8.0, yaw = random.nextDouble() * 2.0 * Math.PI;
+            estimators[i] = new PoseEstimator3D(new Pose3d(x, y, 0.0, new Rotation3d(0.0, 0.0, yaw)), 0.1, clock);
+            bank.setHypothesis(i, x, y, 0.0, yaw);
+            parallelBank.setHypothesis(i, x, y, 0.0, yaw);
+        }
+
+        speeds = new ChassisSpeeds(1.0, 0.5, 0.2);
+        heading = new double[] {0.01, -0.02, 0.3};
+        estimate = new double[3];
+        xMeasures = new Data[] {new Data(4.0, 0.3), new Data(4.1, 0.5)};
+        yMeasures = new Data[] {new Data(2.0, 0.3), new Data(2.1, 0.5)};
+        zMeasures = new Data[0];
+        xBatch = new MeasurementBatch().addAll(xMeasures);
+        yBatch = new MeasurementBatch().addAll(yMeasures);
+    }
+
+    @Benchmark
+    public double separateEstimators() {
+        double total = 0.0;
+        for (PoseEstimator3D estimator : estimators) {
+            total += estimator.estimate(speeds, heading, xMeasures, yMeasures, zMeasures, estimate, 0.02)[0];
+        }
+        return total;
+    }
+
+    @Benchmark
+    public int bank() {
+        return step(bank);
+    }
+
+    @Benchmark
+    public int parallelBank() {
+        return step(parallelBank);
+    }
+
+    private int step(EstimatorBank bank) {
+        bank.predict(speeds, heading, 0.02);
+        bank.correct(0, xBatch);
+        bank.correct(1, yBatch);
+        return bank.getBest();
+    }
+}
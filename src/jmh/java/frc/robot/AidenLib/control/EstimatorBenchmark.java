@@ -0,0 +1,112 @@
+package frc.robot.AidenLib.control;
+
+import java.util.Random;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import edu.wpi.first.math.geometry.Pose3d;
+import edu.wpi.first.math.geometry.Rotation3d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import frc.robot.AidenLib.SimulatedTimeSource;
+import frc.robot.AidenLib.math.Data;
+
+/** Benchmarks of the {@link Odometry3D}, {@link PoseEstimator3D}, {@link RotationEstimator3D} and {@link VelocityEstimator3D} classes. */
+@State(Scope.Thread)
+public class EstimatorBenchmark {
+
+    @Param({"0", "1", "4", "8"})
+    public int measurementsPerAxis;
+
+    private SimulatedTimeSource clock;
+    private Odometry3D odometry;
+    private PoseEstimator3D poseEstimator;
+    private RotationEstimator3D rotEstimator;
+    private VelocityEstimator3D velEstimator;
+
+    private ChassisSpeeds speeds;
+    private Rotation3d heading;
+    private Data[] xMeasures, yMeasures, zMeasures;
+    private Data[] yawMeasures, pitchMeasures, rollMeasures;
+    private double[] rotEstimate, poseEstimate;
+    private double[] headingAngles;
+    private double[] accel, velEstimate;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(0);
+
+        clock = new SimulatedTimeSource();
+        odometry = new Odometry3D(new Pose3d(), clock);
+        poseEstimator = new PoseEstimator3D(new Pose3d(), 0.1, clock);
+        rotEstimator = new RotationEstimator3D(0.1, new Rotation3d(), clock);
+        velEstimator = new VelocityEstimator3D(0.1, 0.05, clock);
+
+        speeds = new ChassisSpeeds(1.0, 0.5, 0.2);
+        heading = new Rotation3d(0.01, -0.02, 0.3);
+        headingAngles = new double[] {0.01, -0.02, 0.3};
+        accel = new double[] {0.2, -0.1, 9.8};
+        velEstimate = new double[3];
+
+        xMeasures = measures(random);
+        yMeasures = measures(random);
+        zMeasures = measures(random);
+        yawMeasures = measures(random);
+        pitchMeasures = measures(random);
+        rollMeasures = measures(random);
+
+        rotEstimate = new double[3];
+        poseEstimate = new double[3];
+    }
+
+    private Data[] measures(Random random) {
+        Data[] measures = new Data[measurementsPerAxis];
+        for (int i = 0; i < measures.length; i++) {
+            measures[i] = new Data(random.nextGaussian(), 0.1 + random.nextDouble());
+        }
+        return measures;
+    }
+
+    @Benchmark
+    public Pose3d odometryUpdate() {
+        clock.advance(0.02);
+        return odometry.update(speeds, heading);
+    }
+
+    @Benchmark
+    public double[] odometryUpdateInto() {
+        return odometry.update(speeds, headingAngles, poseEstimate, 0.02);
+    }
+
+    @Benchmark
+    public Pose3d poseEstimate() {
+        clock.advance(0.02);
+        return poseEstimator.estimate(speeds, heading, xMeasures, yMeasures, zMeasures);
+    }
+
+    @Benchmark
+    public double[] poseEstimateInto() {
+        clock.advance(0.02);
+        return poseEstimator.estimate(speeds, rotEstimate, xMeasures, yMeasures, zMeasures, poseEstimate);
+    }
+
+    @Benchmark
+    public Rotation3d rotationEstimate() {
+        clock.advance(0.02);
+        return rotEstimator.estimate(heading, yawMeasures, pitchMeasures, rollMeasures);
+    }
+
+    @Benchmark
+    public double[] rotationEstimateInto() {
+        clock.advance(0.02);
+        return rotEstimator.estimate(heading, yawMeasures, pitchMeasures, rollMeasures, rotEstimate);
+    }
+
+    @Benchmark
+    public double[] velocityEstimate() {
+        return velEstimator.estimate(speeds, accel, headingAngles, velEstimate, 0.02);
+    }
+}
@@ -0,0 +1,86 @@
+package frc.robot.AidenLib.control;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import edu.wpi.first.math.geometry.Pose3d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import frc.robot.AidenLib.SimulatedTimeSource;
+import frc.robot.AidenLib.math.Data;
+
+/**
+ * Benchmarks of one robot loop of a {@link FixedLagSmoother3D} against the window size, compared with {@link PoseEstimator3D}.
+ * <p>
+ * <b>realTime</b> only reads the newest estimate, <b>smoothed</b> also reads the lagged estimate, and <b>lateMeasurement</b> fuses a measurement
+ * captured halfway back through the window, which repeats the forward pass from there. The cost of the last two should grow linearly with the window.
+ * </p>
+ */
+@State(Scope.Thread)
+public class FixedLagSmootherBenchmark {
+
+    @Param({"10", "25", "50", "100", "250"})
+    public int window;
+
+    private SimulatedTimeSource clock;
+    private FixedLagSmoother3D smoother;
+    private PoseEstimator3D estimator;
+
+    private ChassisSpeeds speeds;
+    private double[] heading, estimate;
+    private Data xMeasure, yMeasure;
+    private Data[] xMeasures, yMeasures, zMeasures;
+
+    @Setup
+    public void setup() {
+        clock = new SimulatedTimeSource();
+        smoother = new FixedLagSmoother3D(new Pose3d(), 0.1, 0.01, window, clock);
+        estimator = new PoseEstimator3D(new Pose3d(), 0.1, clock);
+
+        speeds = new ChassisSpeeds(1.0, 0.5, 0.2);
+        heading = new double[] {0.01, -0.02, 0.3};
+        estimate = new double[3];
+        xMeasure = new Data(4.0, 0.3);
+        yMeasure = new Data(2.0, 0.3);
+        xMeasures = new Data[] {xMeasure};
+        yMeasures = new Data[] {yMeasure};
+        zMeasures = new Data[0];
+
+        // Fills the window so every benchmark slides it.
+        for (int i = 0; i < window; i++) {
+            clock.advance(0.02);
+            smoother.update(speeds, heading, estimate);
+        }
+    }
+
+    @Benchmark
+    public double[] realTime() {
+        clock.advance(0.02);
+        smoother.update(speeds, heading, estimate);
+        return smoother.addMeasurements(xMeasures, yMeasures, zMeasures, estimate);
+    }
+
+    @Benchmark
+    public double[] smoothed() {
+        clock.advance(0.02);
+        smoother.update(speeds, heading, estimate);
+        smoother.addMeasurements(xMeasures, yMeasures, zMeasures, estimate);
+        return smoother.getSmoothed(estimate);
+    }
+
+    @Benchmark
+    public double[] lateMeasurement() {
+        clock.advance(0.02);
+        smoother.update(speeds, heading, estimate);
+        smoother.addMeasurement(xMeasure, yMeasure, null, clock.getTime() - 0.01 * window);
+        smoother.getEstimate(estimate);
+        return smoother.getSmoothed(estimate);
+    }
+
+    @Benchmark
+    public double[] poseEstimator() {
+        return estimator.estimate(speeds, heading, xMeasures, yMeasures, zMeasures, estimate, 0.02);
+    }
+}
@@ -0,0 +1,144 @@
+package frc.robot.AidenLib.control;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import edu.wpi.first.math.geometry.Pose3d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import frc.robot.AidenLib.SimulatedTimeSource;
+
+/**
+ * Compares the accuracy of the {@link Odometry3D} integration methods with their cost.
+ * <p>
+ * Each operation drives one second of a curving, accelerating path, so the score is the CPU time per second of robot time at the given
+ * loop period. Before measuring, the largest position error along one second of the path against a finely integrated reference is printed,
+ * so each configuration shows both what it costs and how accurate it is.
+ * </p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class OdometryIntegrationBenchmark {
+
+    @Param({"TRAPEZOID", "EXPONENTIAL"})
+    public Odometry3D.Integration integration;
+
+    @Param({"1", "4"})
+    public int substeps;
+
+    @Param({"0.005", "0.02", "0.05"})
+    public double period;
+
+    private Odometry3D odometry;
+    private ChassisSpeeds speeds;
+    private double[] vx, vy, roll, pitch, yaw;
+    private double[] heading, position;
+    private double turns;
+
+    @Setup
+    public void setup() {
+        int steps = (int) Math.round(1.0 / period);
+        vx = new double[steps];
+        vy = new double[steps];
+        roll = new double[steps];
+        pitch = new double[steps];
+        yaw = new double[steps];
+        for (int i = 0; i < steps; i++) {
+            double t = (i + 1) * period;
+            vx[i] = vx(t);
+            vy[i] = vy(t);
+            roll[i] = roll(t);
+            pitch[i] = pitch(t);
+            yaw[i] = yaw(t);
+        }
+
+        speeds = new ChassisSpeeds();
+        heading = new double[3];
+        position = new double[3];
+        odometry = odometry();
+
+        System.out.printf("%n%s, %d substeps, %.3f s period: max error %.3e m%n", integration, substeps, period, maxError());
+    }
+
+    private Odometry3D odometry() {
+        Odometry3D odometry = new Odometry3D(new Pose3d(), new SimulatedTimeSource());
+        odometry.setIntegration(integration);
+        odometry.setSubsteps(substeps);
+        return odometry;
+    }
+
+    /**
+     * Drives one second of the path from rest and returns the largest distance from the reference.
+     */
+    private double maxError() {
+        Odometry3D odometry = odometry();
+        int fine = 1000;
+        double x = 0.0, y = 0.0, z = 0.0, error = 0.0;
+
+        for (int i = 0; i < vx.length; i++) {
+            // The reference is the field relative velocity integrated with the midpoint rule at a thousand times the loop rate.
+            for (int j = 0; j < fine; j++) {
+                double t = (i + (j + 0.5) / fine) * period;
+                double cr = Math.cos(roll(t)), sr = Math.sin(roll(t));
+                double cp = Math.cos(pitch(t)), sp = Math.sin(pitch(t));
+                double cy = Math.cos(yaw(t)), sy = Math.sin(yaw(t));
+                double u = vx(t), v = vy(t), h = period / fine;
+                x += (cy * cp * u + (cy * sp * sr - sy * cr) * v) * h;
+                y += (sy * cp * u + (sy * sp * sr + cy * cr) * v) * h;
+                z += (-sp * u + cp * sr * v) * h;
+            }
+
+            step(odometry, i, 0.0);
+            error = Math.max(error, Math.sqrt(Math.pow(position[0] - x, 2) + Math.pow(position[1] - y, 2) + Math.pow(position[2] - z, 2)));
+        }
+        return error;
+    }
+
+    // The path starts at rest and repeats every second, turning once and weaving in roll and pitch.
+    private static double vx(double t) {
+        return 1.5 * (1.0 - Math.cos(2.0 * Math.PI * t));
+    }
+
+    private static double vy(double t) {
+        return 0.5 * Math.sin(4.0 * Math.PI * t);
+    }
+
+    private static double roll(double t) {
+        return 0.05 * Math.sin(4.0 * Math.PI * t);
+    }
+
+    private static double pitch(double t) {
+        return 0.1 * Math.sin(2.0 * Math.PI * t);
+    }
+
+    private static double yaw(double t) {
+        return 2.0 * Math.PI * t + 0.5 * Math.sin(2.0 * Math.PI * t);
+    }
+
+    private void step(Odometry3D odometry, int i, double turns) {
+        speeds.vxMetersPerSecond = vx[i];
+        speeds.vyMetersPerSecond = vy[i];
+        heading[0] = roll[i];
+        heading[1] = pitch[i];
+        heading[2] = yaw[i] + turns;
+        odometry.update(speeds, heading, position, period);
+    }
+
+    @Benchmark
+    public double secondOfDriving() {
+        for (int i = 0; i < vx.length; i++) {
+            step(odometry, i, turns);
+        }
+        // The heading keeps counting up, as an IMU's continuous yaw does, so the path continues smoothly.
+        turns += 2.0 * Math.PI;
+        return position[0] + position[1] + position[2];
+    }
+}
@@ -0,0 +1,66 @@
+package frc.robot.AidenLib.control;
+
+import java.util.Random;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import edu.wpi.first.math.geometry.Rotation3d;
+import frc.robot.AidenLib.SimulatedTimeSource;
+import frc.robot.AidenLib.math.Data;
+
+/** Benchmarks of the Euler angle {@link RotationEstimator3D} against the {@link QuaternionRotationEstimator3D}. */
+@State(Scope.Thread)
+public class RotationEstimatorBenchmark {
+
+    @Param({"0", "1", "4"})
+    public int measurements;
+
+    private SimulatedTimeSource clock;
+    private RotationEstimator3D eulerEstimator;
+    private QuaternionRotationEstimator3D quaternionEstimator;
+
+    private Rotation3d heading;
+    private Rotation3d[] visionRotations;
+    private Data[] yawMeasures, pitchMeasures, rollMeasures;
+    private double[] out;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(0);
+
+        clock = new SimulatedTimeSource();
+        eulerEstimator = new RotationEstimator3D(0.1, new Rotation3d(), clock);
+        quaternionEstimator = new QuaternionRotationEstimator3D(0.1);
+
+        heading = new Rotation3d(0.01, -0.02, 0.3);
+        visionRotations = new Rotation3d[measurements];
+        yawMeasures = new Data[measurements];
+        pitchMeasures = new Data[measurements];
+        rollMeasures = new Data[measurements];
+        for (int i = 0; i < measurements; i++) {
+            visionRotations[i] = new Rotation3d(random.nextGaussian() * 0.01, random.nextGaussian() * 0.01, 0.3 + random.nextGaussian() * 0.05);
+            rollMeasures[i] = new Data(visionRotations[i].getX(), 0.05);
+            pitchMeasures[i] = new Data(visionRotations[i].getY(), 0.05);
+            yawMeasures[i] = new Data(visionRotations[i].getZ(), 0.05);
+        }
+        out = new double[3];
+    }
+
+    @Benchmark
+    public double[] euler() {
+        clock.advance(0.02);
+        return eulerEstimator.estimate(heading, yawMeasures, pitchMeasures, rollMeasures, out);
+    }
+
+    @Benchmark
+    public double[] quaternion() {
+        for (Rotation3d rot : visionRotations) {
+            quaternionEstimator.addMeasurement(rot, 0.05, 0.05, 0.05);
+        }
+        return quaternionEstimator.estimate(heading, out);
+    }
+}
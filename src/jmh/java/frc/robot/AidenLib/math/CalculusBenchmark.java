@@ -0,0 +1,87 @@
+package frc.robot.AidenLib.math;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import frc.robot.AidenLib.SimulatedTimeSource;
+
+/** Benchmarks of the {@link Integral}, {@link LinearIntegral} and {@link Derivative} updates, including each {@link Integral.Method} and {@link Derivative.Method}. */
+@State(Scope.Thread)
+public class CalculusBenchmark {
+
+    private SimulatedTimeSource clock;
+    private Integral integral;
+    private LinearIntegral linearIntegral;
+    private Integral simpsonIntegral, rk4Integral;
+    private Derivative derivative, lowPass, regression, alphaBeta;
+    private double x;
+
+    @Setup
+    public void setup() {
+        clock = new SimulatedTimeSource();
+        integral = new Integral(0.0, clock);
+        linearIntegral = new LinearIntegral(0.0, clock);
+        simpsonIntegral = new Integral(0.0, Integral.Method.SIMPSON, clock);
+        rk4Integral = new Integral(0.0, Integral.Method.RK4, clock);
+        derivative = new Derivative(0.0, clock);
+        lowPass = new Derivative(0.0, Derivative.Method.LOW_PASS, clock);
+        regression = new Derivative(0.0, Derivative.Method.REGRESSION, clock);
+        regression.setWindow(9);
+        alphaBeta = new Derivative(0.0, Derivative.Method.ALPHA_BETA, clock);
+        x = 0.0;
+    }
+
+    @Benchmark
+    public double integralUpdate() {
+        clock.advance(0.02);
+        integral.update(x += 0.001);
+        return integral.get();
+    }
+
+    @Benchmark
+    public double linearIntegralUpdate() {
+        clock.advance(0.02);
+        linearIntegral.update(x += 0.001);
+        return linearIntegral.get();
+    }
+
+    @Benchmark
+    public double simpsonIntegralUpdate() {
+        clock.advance(0.02);
+        simpsonIntegral.update(x += 0.001);
+        return simpsonIntegral.get();
+    }
+
+    @Benchmark
+    public double rk4IntegralUpdate() {
+        clock.advance(0.02);
+        rk4Integral.update(x += 0.001);
+        return rk4Integral.get();
+    }
+
+    @Benchmark
+    public double derivativeRate() {
+        clock.advance(0.02);
+        return derivative.getRate(x += 0.001);
+    }
+
+    @Benchmark
+    public double lowPassRate() {
+        clock.advance(0.02);
+        return lowPass.getRate(x += 0.001);
+    }
+
+    @Benchmark
+    public double regressionRate() {
+        clock.advance(0.02);
+        return regression.getRate(x += 0.001);
+    }
+
+    @Benchmark
+    public double alphaBetaRate() {
+        clock.advance(0.02);
+        return alphaBeta.getRate(x += 0.001);
+    }
+}
@@ -0,0 +1,72 @@
+package frc.robot.AidenLib.math;
+
+import java.util.Random;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import frc.robot.AidenLib.math.ParametricWeightedFusion.InvalidParamterSize;
+
+/** Benchmarks of the {@link WeightedFusion} and {@link ParametricWeightedFusion} classes. */
+@State(Scope.Thread)
+public class FusionBenchmark {
+
+    @Param({"1", "4", "16"})
+    public int measurements;
+
+    @Param({"3", "6", "12"})
+    public int parameters;
+
+    private WeightedFusion fusion;
+    private ParametricWeightedFusion parametric;
+
+    private Data[] data;
+    private Data[][] parametricData;
+    private MeasurementBatch batch;
+    private MeasurementBatch[] parametricBatches;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(0);
+
+        fusion = new WeightedFusion();
+        parametric = new ParametricWeightedFusion(parameters);
+
+        data = new Data[measurements];
+        batch = new MeasurementBatch(measurements);
+        for (int i = 0; i < measurements; i++) {
+            data[i] = new Data(random.nextGaussian(), 0.1 + random.nextDouble());
+            batch.add(data[i]);
+        }
+
+        parametricData = new Data[parameters][];
+        parametricBatches = new MeasurementBatch[parameters];
+        for (int p = 0; p < parameters; p++) {
+            parametricData[p] = data;
+            parametricBatches[p] = batch;
+        }
+    }
+
+    @Benchmark
+    public double weightedFusionData() {
+        return fusion.calculate(data);
+    }
+
+    @Benchmark
+    public double weightedFusionBatch() {
+        return fusion.calculate(batch);
+    }
+
+    @Benchmark
+    public double[] parametricFusionData() throws InvalidParamterSize {
+        return parametric.calculate(parametricData);
+    }
+
+    @Benchmark
+    public double[] parametricFusionBatch() throws InvalidParamterSize {
+        return parametric.calculate(parametricBatches);
+    }
+}
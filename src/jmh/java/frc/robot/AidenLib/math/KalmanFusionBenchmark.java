@@ -0,0 +1,48 @@
+package frc.robot.AidenLib.math;
+
+import java.util.Random;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import frc.robot.AidenLib.math.ParametricWeightedFusion.InvalidParamterSize;
+
+/** Benchmarks of one predict and update step of the {@link KalmanFusion} class for 6 to 12 states. */
+@State(Scope.Thread)
+public class KalmanFusionBenchmark {
+
+    @Param({"3", "4", "5", "6"})
+    public int parameters;
+
+    @Param({"1", "4"})
+    public int measurements;
+
+    private KalmanFusion filter;
+    private MeasurementBatch[] batches;
+    private double[] velocities;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(0);
+
+        filter = new KalmanFusion(parameters);
+        batches = new MeasurementBatch[parameters];
+        velocities = new double[parameters];
+        for (int p = 0; p < parameters; p++) {
+            batches[p] = new MeasurementBatch(measurements);
+            for (int i = 0; i < measurements; i++) {
+                batches[p].add(random.nextGaussian(), 0.1 + random.nextDouble());
+            }
+            velocities[p] = random.nextGaussian();
+        }
+    }
+
+    @Benchmark
+    public double[] step() throws InvalidParamterSize {
+        filter.predict(velocities, 0.1, 0.02);
+        return filter.calculate(batches);
+    }
+}
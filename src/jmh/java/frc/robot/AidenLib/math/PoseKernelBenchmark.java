@@ -0,0 +1,71 @@
+package frc.robot.AidenLib.math;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import edu.wpi.first.math.geometry.Pose3d;
+import edu.wpi.first.math.geometry.Rotation3d;
+import edu.wpi.first.math.geometry.Translation3d;
+
+/**
+ * Benchmarks of one odometry step (rotate the robot relative speeds into the field frame and integrate them) done with WPILib geometry objects
+ * against the same step done with a {@link MutableRotation3d}.
+ */
+@State(Scope.Thread)
+public class PoseKernelBenchmark {
+    private double roll, pitch, yaw;
+    private double vx, vy;
+    private double x, y, z;
+
+    private MutableRotation3d rotation;
+    private double[] fieldSpeeds;
+
+    @Setup
+    public void setup() {
+        roll = 0.01;
+        pitch = -0.02;
+        yaw = 0.3;
+        vx = 1.0;
+        vy = 0.5;
+        rotation = new MutableRotation3d();
+        fieldSpeeds = new double[3];
+    }
+
+    @Benchmark
+    public Pose3d wpilibStep() {
+        yaw += 0.001;
+        Rotation3d rot = new Rotation3d(roll, pitch, yaw);
+        Translation3d speeds = new Translation3d(vx, vy, 0.0).rotateBy(rot);
+        x += speeds.getX() * 0.02;
+        y += speeds.getY() * 0.02;
+        z += speeds.getZ() * 0.02;
+        return new Pose3d(x, y, z, rot);
+    }
+
+    @Benchmark
+    public double kernelStep() {
+        yaw += 0.001;
+        rotation.setEuler(roll, pitch, yaw).rotate(vx, vy, 0.0, fieldSpeeds);
+        x += fieldSpeeds[0] * 0.02;
+        y += fieldSpeeds[1] * 0.02;
+        z += fieldSpeeds[2] * 0.02;
+        return x + y + z;
+    }
+
+    @Benchmark
+    public double kernelIntegrate() {
+        rotation.integrate(0.01, -0.02, 0.3, 0.02).rotate(vx, vy, 0.0, fieldSpeeds);
+        x += fieldSpeeds[0] * 0.02;
+        y += fieldSpeeds[1] * 0.02;
+        z += fieldSpeeds[2] * 0.02;
+        return x + y + z;
+    }
+
+    @Benchmark
+    public Rotation3d kernelToRotation3d() {
+        yaw += 0.001;
+        return rotation.setEuler(roll, pitch, yaw).toRotation3d();
+    }
+}
@@ -0,0 +1,48 @@
+package frc.robot.AidenLib.vision;
+
+import java.util.Random;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import edu.wpi.first.math.geometry.Pose3d;
+import edu.wpi.first.math.geometry.Rotation3d;
+import edu.wpi.first.math.geometry.Transform3d;
+import edu.wpi.first.math.geometry.Translation3d;
+
+/** Benchmarks of turning the tags seen in one frame into measurements with a {@link TagLayout}. */
+@State(Scope.Thread)
+public class TagLayoutBenchmark {
+
+    @Param({"1", "4", "16"})
+    public int tagsPerFrame;
+
+    private TagLayout layout;
+    private TagObservations observations;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(0);
+        layout = new TagLayout(16, 2);
+        for (int id = 1; id <= 16; id++) {
+            layout.setTag(id, new Pose3d(random.nextDouble() * 16.0, random.nextDouble() * 8.0, 1.0, new Rotation3d(0.0, 0.0, random.nextDouble() * 2.0 * Math.PI)));
+        }
+        layout.setCamera(0, new Transform3d(new Translation3d(0.3, 0.0, 0.5), new Rotation3d(0.0, -0.3, 0.0)));
+        layout.setCamera(1, new Transform3d(new Translation3d(-0.3, 0.0, 0.5), new Rotation3d(0.0, -0.3, Math.PI)));
+
+        observations = new TagObservations();
+        for (int i = 0; i < tagsPerFrame; i++) {
+            Rotation3d rotation = new Rotation3d(0.0, 0.1, random.nextDouble() - 0.5);
+            observations.add(i % 2, 1 + i % 16, new Transform3d(new Translation3d(2.0 + random.nextDouble() * 3.0, random.nextDouble() - 0.5, 0.5), rotation));
+        }
+    }
+
+    @Benchmark
+    public double measure() {
+        layout.measure(observations);
+        return layout.getMeasures(0)[0].value + layout.getMeasures(5)[0].value;
+    }
+}
@@ -0,0 +1,12 @@
+package frc.robot.AidenLib;
+
+import edu.wpi.first.wpilibj.RobotController;
+
+/** A {@link TimeSource} which reads the microsecond FPGA timestamp of the roboRIO. */
+public class FPGATimeSource implements TimeSource {
+
+    @Override
+    public double getTime() {
+        return RobotController.getFPGATime() / 1e6;
+    }
+}
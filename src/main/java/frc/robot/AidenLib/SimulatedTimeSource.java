@@ -0,0 +1,50 @@
+package frc.robot.AidenLib;
+
+/**
+ * A {@link TimeSource} which only moves when it is told to.
+ * <p>
+ * This allows replays and benchmarks to run faster than real time with exactly repeatable time steps.
+ * The clock is moved by one thread, but any thread may read it, such as a vision reader or a telemetry writer.
+ * </p>
+ */
+public class SimulatedTimeSource implements TimeSource {
+    // Volatile so other threads see each move, and a 64 bit time is never read half written on the 32 bit roboRIO.
+    private volatile double time;
+
+    /**
+     * Constructs a {@link SimulatedTimeSource} object.
+     * @param startTime The initial time in <b>seconds</b>.
+     */
+    public SimulatedTimeSource(double startTime) {
+        this.time = startTime;
+    }
+
+    /**
+     * Constructs a {@link SimulatedTimeSource} object with an initial time of <b>0.0</b>.
+     */
+    public SimulatedTimeSource() {
+        this(0.0);
+    }
+
+    /**
+     * Moves the time forward.
+     * @param dt The amount of time to move forward in <b>seconds</b>.
+     */
+    public void advance(double dt) {
+        if (dt < 0.0) throw new IllegalArgumentException("A simulated clock can not move backwards: " + dt);
+        time = time + dt;
+    }
+
+    /**
+     * Sets the time.
+     * @param time The new time in <b>seconds</b>, which may not be earlier than the current time.
+     */
+    public void set(double time) {
+        advance(time - this.time);
+    }
+
+    @Override
+    public double getTime() {
+        return time;
+    }
+}
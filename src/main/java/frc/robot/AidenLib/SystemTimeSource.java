@@ -0,0 +1,20 @@
+package frc.robot.AidenLib;
+
+/** A {@link TimeSource} which reads <b>System.nanoTime()</b>, which is monotonic and has sub-millisecond resolution. */
+public class SystemTimeSource implements TimeSource {
+    static final SystemTimeSource INSTANCE = new SystemTimeSource();
+
+    private final long epoch;
+
+    /**
+     * Constructs a {@link SystemTimeSource} object whose time starts at <b>0.0</b>.
+     */
+    public SystemTimeSource() {
+        this.epoch = System.nanoTime();
+    }
+
+    @Override
+    public double getTime() {
+        return (System.nanoTime() - epoch) / 1e9;
+    }
+}
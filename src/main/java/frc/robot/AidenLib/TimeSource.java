@@ -0,0 +1,23 @@
+package frc.robot.AidenLib;
+
+/**
+ * A source of monotonic time used by the {@link Timer} class.
+ * <p>
+ * Implementations are {@link SystemTimeSource} (the default), {@link FPGATimeSource} for the roboRIO clock
+ * and {@link SimulatedTimeSource} for replays, benchmarks and tests which should not depend on the wall clock.
+ * </p>
+ */
+public interface TimeSource {
+
+    /**
+     * @return The current time in <b>seconds</b>. Only differences between readings are meaningful.
+     */
+    public double getTime();
+
+    /**
+     * @return The time source used when none is specified, which is a shared {@link SystemTimeSource}.
+     */
+    public static TimeSource getDefault() {
+        return SystemTimeSource.INSTANCE;
+    }
+}
@@ -3,20 +3,30 @@ package frc.robot.AidenLib;
 /** A class which keeps track of time. */
 public class Timer {
     private double lastTime, startTime;
+    private TimeSource source;
 
     /**
      * Constructs a {@link Timer} object.
+     * @param source The {@link TimeSource} which the timer reads.
+     */
+    public Timer(TimeSource source) {
+        this.source = source;
+        this.lastTime = source.getTime();
+        this.startTime = lastTime;
+    }
+
+    /**
+     * Constructs a {@link Timer} object which reads the default {@link TimeSource}.
      */
     public Timer() {
-        this.lastTime = System.currentTimeMillis() / 1000.0;
-        this.startTime = System.currentTimeMillis() / 1000.0;
-    };
+        this(TimeSource.getDefault());
+    }
 
     /**
      * @return The length of time since the last call of this method.
      */
     public double getDT() {
-        double time = System.currentTimeMillis() / 1000.0;
+        double time = source.getTime();
         double dt = time - lastTime;
         lastTime = time;
         return dt;
@@ -26,13 +36,20 @@ public class Timer {
      * Starts/restarts a stopwatch.
      */
     public void start() {
-        this.startTime = System.currentTimeMillis() / 1000.0;
+        this.startTime = source.getTime();
     }
 
     /**
      * @return The current time into the stopwatch.
      */
     public double getDuration() {
-        return System.currentTimeMillis() / 1000.0 - startTime;
+        return source.getTime() - startTime;
+    }
+
+    /**
+     * @return The {@link TimeSource} which the timer reads.
+     */
+    public TimeSource getSource() {
+        return source;
     }
 }
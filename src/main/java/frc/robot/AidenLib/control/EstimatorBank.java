@@ -0,0 +1,418 @@
+package frc.robot.AidenLib.control;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+
+import frc.robot.AidenLib.TimeSource;
+import frc.robot.AidenLib.Timer;
+import frc.robot.AidenLib.math.Integral;
+import frc.robot.AidenLib.math.MeasurementBatch;
+
+/**
+ * A class which runs many copies of the {@link PoseEstimator3D} algorithm at once, such as several candidate start poses at the start of
+ * autonomous or many simulated robots.
+ * <p>
+ * Every state is held in parallel primitive arrays, one element per hypothesis, and each step is a single loop over them, so the cost of
+ * a hypothesis is a few arithmetic operations rather than an object and its garbage. Each hypothesis has its own position and a yaw offset
+ * which is added to the heading it is given, so the hypotheses may start anywhere on the field facing any direction.
+ * </p>
+ * <p>
+ * Each hypothesis also keeps the log likelihood of every measurement it has fused, from the distance between the measurement and its
+ * prediction. <b>getBest()</b> picks the hypothesis which has explained the measurements best.
+ * </p>
+ * <p>
+ * Sequential steps allocate nothing. <b>setParallel()</b> splits large banks over a {@link ForkJoinPool}, which allocates a few small tasks
+ * each step and is meant for simulations on a desktop rather than the robot.
+ * </p>
+ */
+public class EstimatorBank {
+    private static final int PREDICT_SHARED = 0, PREDICT_EACH = 1, CORRECT_SHARED = 2, CORRECT_EACH = 3;
+
+    private final int size;
+    private final double driveWeight;
+    private final Timer timer;
+    private double time;
+
+    private final double[] x, y, z;
+    private final double[] vx, vy, vz;
+    private final double[] roll, pitch, yaw;
+    private final double[] yawOffset, cosOffset, sinOffset;
+    private final double[] logLikelihood;
+
+    private double forgetting = 1.0;
+    private ForkJoinPool pool;
+    private int grain = 256;
+
+    // The inputs of the step being run, shared with the tasks of the parallel mode.
+    private double stepDt, stepRoll, stepPitch, stepYaw;
+    private double fieldVx, fieldVy, fieldVz;
+    private final double[] fieldSpeeds = new double[3];
+    private double[] eachVx, eachVy, eachRoll, eachPitch, eachYaw;
+    private double[] axisState, eachValues, eachStDevs;
+    private double sumWeight, sumWeightValue, sumQ, sumQValue, sumQValueSquared;
+
+    /**
+     * Constructs an {@link EstimatorBank} object with every hypothesis at the origin facing along the X axis.
+     * @param size The number of hypotheses.
+     * @param driveStDev The standard deviation of the drive data in <b>m</b>.
+     * @param source The {@link TimeSource} used to measure the time between steps.
+     */
+    public EstimatorBank(int size, double driveStDev, TimeSource source) {
+        if (size < 1) throw new IllegalArgumentException("A bank must hold at least one hypothesis: " + size);
+
+        this.size = size;
+        this.driveWeight = 1.0 / (driveStDev * driveStDev);
+        this.timer = new Timer(source);
+        this.time = source.getTime();
+
+        x = new double[size];
+        y = new double[size];
+        z = new double[size];
+        vx = new double[size];
+        vy = new double[size];
+        vz = new double[size];
+        roll = new double[size];
+        pitch = new double[size];
+        yaw = new double[size];
+        yawOffset = new double[size];
+        cosOffset = new double[size];
+        sinOffset = new double[size];
+        logLikelihood = new double[size];
+        Arrays.fill(cosOffset, 1.0);
+    }
+
+    /**
+     * Constructs an {@link EstimatorBank} object with every hypothesis at the origin facing along the X axis.
+     * @param size The number of hypotheses.
+     * @param driveStDev The standard deviation of the drive data in <b>m</b>.
+     */
+    public EstimatorBank(int size, double driveStDev) {
+        this(size, driveStDev, TimeSource.getDefault());
+    }
+
+    /**
+     * Places a hypothesis and clears its likelihood and velocity.
+     * @param index The index of the hypothesis.
+     * @param x The X position in <b>m</b>.
+     * @param y The Y position in <b>m</b>.
+     * @param z The Z position in <b>m</b>.
+     * @param yawOffset The rotation added to every yaw the hypothesis is given in <b>radians</b>, such as the difference between its starting
+     * yaw and the yaw the IMU reads at the start.
+     */
+    public void setHypothesis(int index, double x, double y, double z, double yawOffset) {
+        this.x[index] = x;
+        this.y[index] = y;
+        this.z[index] = z;
+        this.vx[index] = 0.0;
+        this.vy[index] = 0.0;
+        this.vz[index] = 0.0;
+        this.yawOffset[index] = yawOffset;
+        this.cosOffset[index] = Math.cos(yawOffset);
+        this.sinOffset[index] = Math.sin(yawOffset);
+        this.logLikelihood[index] = 0.0;
+    }
+
+    /**
+     * Steps every hypothesis with the same inputs, as the hypotheses of one robot are.
+     * @param speeds Robot relative speeds of the robot in <b>m/s</b>.
+     * @param heading The heading of the robot as <b>[roll, pitch, yaw]</b> in <b>radians</b>, before the yaw offset of each hypothesis.
+     */
+    public void predict(ChassisSpeeds speeds, double[] heading) {
+        predict(speeds, heading, timer.getDT());
+    }
+
+    /**
+     * This method is the same as <b>predict(speeds, heading)</b> but uses a time step supplied by the caller instead of reading the timer.
+     * @param speeds Robot relative speeds of the robot in <b>m/s</b>.
+     * @param heading The heading of the robot as <b>[roll, pitch, yaw]</b> in <b>radians</b>, before the yaw offset of each hypothesis.
+     * @param dt The time since the last step in <b>seconds</b>.
+     */
+    public void predict(ChassisSpeeds speeds, double[] heading, double dt) {
+        // A yaw offset turns the field speeds about the Z axis, so they are rotated by the shared heading once and by each offset in the loop.
+        PoseEstimator3D.toFieldSpeeds(speeds, heading[0], heading[1], heading[2], fieldSpeeds);
+        fieldVx = fieldSpeeds[0];
+        fieldVy = fieldSpeeds[1];
+        fieldVz = fieldSpeeds[2];
+        stepRoll = heading[0];
+        stepPitch = heading[1];
+        stepYaw = heading[2];
+        stepDt = dt;
+        time += dt;
+        run(PREDICT_SHARED);
+    }
+
+    /**
+     * Steps every hypothesis with its own inputs, as a bank of separate simulated robots is.
+     * @param vx The robot relative X speed of each hypothesis in <b>m/s</b>.
+     * @param vy The robot relative Y speed of each hypothesis in <b>m/s</b>.
+     * @param roll The roll of each hypothesis in <b>radians</b>.
+     * @param pitch The pitch of each hypothesis in <b>radians</b>.
+     * @param yaw The yaw of each hypothesis in <b>radians</b>, before its yaw offset.
+     * @param dt The time since the last step in <b>seconds</b>.
+     */
+    public void predict(double[] vx, double[] vy, double[] roll, double[] pitch, double[] yaw, double dt) {
+        eachVx = vx;
+        eachVy = vy;
+        eachRoll = roll;
+        eachPitch = pitch;
+        eachYaw = yaw;
+        stepDt = dt;
+        time += dt;
+        run(PREDICT_EACH);
+    }
+
+    /**
+     * Fuses measurements of one axis, seen by every hypothesis, into each hypothesis as <b>PoseEstimator3D</b> does, and adds their log likelihood.
+     * <p>
+     * The sums the fusion needs are taken over the batch once, so the cost for each hypothesis does not depend on the number of measurements.
+     * </p>
+     * @param axis The index of the axis, in the order <b>[x, y, z]</b>.
+     * @param measures The measurements of the axis in <b>m</b>.
+     */
+    public void correct(int axis, MeasurementBatch measures) {
+        if (measures.size() == 0) return;
+
+        sumWeight = 0.0;
+        sumWeightValue = 0.0;
+        sumQ = 0.0;
+        sumQValue = 0.0;
+        sumQValueSquared = 0.0;
+        double driveVariance = 1.0 / driveWeight;
+        for (int i = 0; i < measures.size(); i++) {
+            double value = measures.getValue(i), stDev = measures.getStDev(i);
+            double weight = 1.0 / (stDev * stDev);
+            // The distance of a measurement from a prediction is scaled by the uncertainty of both.
+            double q = 1.0 / (stDev * stDev + driveVariance);
+            sumWeight += weight;
+            sumWeightValue += weight * value;
+            sumQ += q;
+            sumQValue += q * value;
+            sumQValueSquared += q * value * value;
+        }
+
+        axisState = axis(axis);
+        run(CORRECT_SHARED);
+    }
+
+    /**
+     * Fuses one measurement of one axis into each hypothesis, as a bank of separate simulated robots sees, and adds its log likelihood.
+     * @param axis The index of the axis, in the order <b>[x, y, z]</b>.
+     * @param values The measurement of each hypothesis in <b>m</b>, or <b>NaN</b> where a hypothesis has none.
+     * @param stDevs The standard deviation of each measurement in <b>m</b>.
+     */
+    public void correct(int axis, double[] values, double[] stDevs) {
+        eachValues = values;
+        eachStDevs = stDevs;
+        axisState = axis(axis);
+        run(CORRECT_EACH);
+    }
+
+    private double[] axis(int axis) {
+        switch (axis) {
+            case 0: return x;
+            case 1: return y;
+            case 2: return z;
+            default: throw new IndexOutOfBoundsException(axis);
+        }
+    }
+
+    private void run(int operation) {
+        if (pool == null || size <= grain) {
+            apply(operation, 0, size);
+        } else {
+            pool.invoke(new Range(operation, 0, size));
+        }
+    }
+
+    private final class Range extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final int operation, from, to;
+
+        Range(int operation, int from, int to) {
+            this.operation = operation;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= grain) {
+                apply(operation, from, to);
+            } else {
+                int mid = (from + to) >>> 1;
+                invokeAll(new Range(operation, from, mid), new Range(operation, mid, to));
+            }
+        }
+    }
+
+    private void apply(int operation, int from, int to) {
+        switch (operation) {
+            case PREDICT_SHARED: predictShared(from, to); break;
+            case PREDICT_EACH: predictEach(from, to); break;
+            case CORRECT_SHARED: correctShared(from, to); break;
+            case CORRECT_EACH: correctEach(from, to); break;
+            default: break;
+        }
+    }
+
+    private void predictShared(int from, int to) {
+        double dt = stepDt;
+        for (int i = from; i < to; i++) {
+            double c = cosOffset[i], s = sinOffset[i];
+            double fvx = c * fieldVx - s * fieldVy;
+            double fvy = s * fieldVx + c * fieldVy;
+            x[i] += Integral.linearSum(vx[i], fvx, dt);
+            y[i] += Integral.linearSum(vy[i], fvy, dt);
+            z[i] += Integral.linearSum(vz[i], fieldVz, dt);
+            vx[i] = fvx;
+            vy[i] = fvy;
+            vz[i] = fieldVz;
+            roll[i] = stepRoll;
+            pitch[i] = stepPitch;
+            yaw[i] = stepYaw + yawOffset[i];
+        }
+    }
+
+    private void predictEach(int from, int to) {
+        double dt = stepDt;
+        for (int i = from; i < to; i++) {
+            double r = eachRoll[i], p = eachPitch[i], w = eachYaw[i] + yawOffset[i];
+            double cr = Math.cos(r), sr = Math.sin(r);
+            double cp = Math.cos(p), sp = Math.sin(p);
+            double cy = Math.cos(w), sy = Math.sin(w);
+            double u = eachVx[i], v = eachVy[i];
+            double fvx = cy * cp * u + (cy * sp * sr - sy * cr) * v;
+            double fvy = sy * cp * u + (sy * sp * sr + cy * cr) * v;
+            double fvz = -sp * u + cp * sr * v;
+            x[i] += Integral.linearSum(vx[i], fvx, dt);
+            y[i] += Integral.linearSum(vy[i], fvy, dt);
+            z[i] += Integral.linearSum(vz[i], fvz, dt);
+            vx[i] = fvx;
+            vy[i] = fvy;
+            vz[i] = fvz;
+            roll[i] = r;
+            pitch[i] = p;
+            yaw[i] = w;
+        }
+    }
+
+    private void correctShared(int from, int to) {
+        double[] state = axisState;
+        double wd = driveWeight, f = forgetting;
+        double totalWeight = wd + sumWeight;
+        for (int i = from; i < to; i++) {
+            double prior = state[i];
+            // sum of q (value - prior)^2, expanded so the measurements are not visited again.
+            double distance = sumQValueSquared - 2.0 * prior * sumQValue + prior * prior * sumQ;
+            logLikelihood[i] = f * logLikelihood[i] - 0.5 * distance;
+            state[i] = (wd * prior + sumWeightValue) / totalWeight;
+        }
+    }
+
+    private void correctEach(int from, int to) {
+        double[] state = axisState;
+        double wd = driveWeight, driveVariance = 1.0 / driveWeight, f = forgetting;
+        for (int i = from; i < to; i++) {
+            double value = eachValues[i];
+            if (Double.isNaN(value)) continue;
+            double prior = state[i], variance = eachStDevs[i] * eachStDevs[i];
+            double residual = value - prior;
+            logLikelihood[i] = f * logLikelihood[i] - 0.5 * residual * residual / (variance + driveVariance);
+            double weight = 1.0 / variance;
+            state[i] = (wd * prior + weight * value) / (wd + weight);
+        }
+    }
+
+    /**
+     * Sets how quickly old measurements are forgotten by the likelihoods, so a hypothesis which was wrong early may still win later.
+     * @param forgetting The factor, from <b>0</b> to <b>1</b>, each log likelihood is multiplied by before a measurement is added. The default of <b>1</b> forgets nothing.
+     */
+    public void setForgetting(double forgetting) {
+        this.forgetting = forgetting;
+    }
+
+    /**
+     * Splits every step of banks larger than <b>grain</b> hypotheses over a pool of threads.
+     * @param pool The pool to run on, such as <b>ForkJoinPool.commonPool()</b>, or <b>null</b> to step on the calling thread.
+     * @param grain The number of hypotheses each task steps, at least <b>1</b>.
+     */
+    public void setParallel(ForkJoinPool pool, int grain) {
+        if (grain < 1) throw new IllegalArgumentException("A task must step at least one hypothesis: " + grain);
+        this.pool = pool;
+        this.grain = grain;
+    }
+
+    /**
+     * @return The index of the hypothesis with the highest likelihood.
+     */
+    public int getBest() {
+        int best = 0;
+        for (int i = 1; i < size; i++) {
+            if (logLikelihood[i] > logLikelihood[best]) best = i;
+        }
+        return best;
+    }
+
+    /**
+     * @param index The index of the hypothesis.
+     * @return The probability that the hypothesis is the right one, given that one of them is, from <b>0</b> to <b>1</b>.
+     */
+    public double getProbability(int index) {
+        double max = logLikelihood[getBest()];
+        double total = 0.0;
+        for (int i = 0; i < size; i++) {
+            total += Math.exp(logLikelihood[i] - max);
+        }
+        return Math.exp(logLikelihood[index] - max) / total;
+    }
+
+    /**
+     * @param index The index of the hypothesis.
+     * @return The log likelihood of every measurement the hypothesis has fused, up to a constant shared by every hypothesis.
+     */
+    public double getLogLikelihood(int index) {
+        return logLikelihood[index];
+    }
+
+    /**
+     * @param index The index of the hypothesis.
+     * @param out An array of length 3 which receives the position as <b>[x, y, z]</b> in <b>m</b>.
+     * @return The <b>out</b> array.
+     */
+    public double[] getPosition(int index, double[] out) {
+        out[0] = x[index];
+        out[1] = y[index];
+        out[2] = z[index];
+        return out;
+    }
+
+    /**
+     * Copies a hypothesis, including its heading with the yaw offset applied, its field relative velocity and the time of the last step.
+     * @param index The index of the hypothesis.
+     * @param out The state to copy into.
+     * @return The <b>out</b> state.
+     */
+    public PoseState getState(int index, PoseState out) {
+        out.x = x[index];
+        out.y = y[index];
+        out.z = z[index];
+        out.roll = roll[index];
+        out.pitch = pitch[index];
+        out.yaw = yaw[index];
+        out.vx = vx[index];
+        out.vy = vy[index];
+        out.vz = vz[index];
+        out.timestamp = time;
+        return out;
+    }
+
+    /**
+     * @return The number of hypotheses.
+     */
+    public int size() {
+        return size;
+    }
+}
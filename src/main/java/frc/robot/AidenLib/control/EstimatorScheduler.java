@@ -0,0 +1,261 @@
+package frc.robot.AidenLib.control;
+
+import java.util.function.Supplier;
+
+import edu.wpi.first.math.geometry.Rotation3d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+
+import frc.robot.AidenLib.TimeSource;
+import frc.robot.AidenLib.math.Data;
+
+/**
+ * A class which runs {@link Odometry3D} at a high rate on its own thread while measurements are fused by a {@link PoseEstimator3D} at the rate of the robot loop.
+ * <p>
+ * The odometry thread works like a <b>Notifier</b>: it wakes at a fixed period, reads the drivetrain and IMU, and publishes the odometry pose through
+ * <b>Odometry3D.getState()</b>. Each call of <b>fuse()</b> passes the odometry displacement since the previous call to the {@link PoseEstimator3D}.
+ * <b>getEstimate()</b> continues the last fused estimate with the newest odometry, so readers on any thread see a high rate estimate without locking.
+ * </p>
+ */
+public class EstimatorScheduler {
+    private final Odometry3D odometry;
+    private final PoseEstimator3D estimator;
+    private final Supplier<ChassisSpeeds> speeds;
+    private final Supplier<Rotation3d> heading;
+    private final long periodNanos;
+    private final TimeSource source;
+
+    private final PublishedPoseState publishedCorrection = new PublishedPoseState();
+
+    // Only used by the thread calling fuse().
+    private final PoseState fuseOdometry = new PoseState();
+    private final PoseState correction = new PoseState();
+    private final double[] displacement = new double[3];
+    private final double[] fused = new double[3];
+
+    // Only used by the odometry thread, or by the caller of step() while it is not running.
+    private final double[] stepHeading = new double[3];
+    private final double[] stepPosition = new double[3];
+
+    // Only used by getEstimate(), which may be called from several threads, so its scratch states are per thread.
+    private final ThreadLocal<PoseState> readCorrection = ThreadLocal.withInitial(PoseState::new);
+
+    private volatile double lastPeriod, maxJitter, periodSum;
+    private volatile long ticks, overruns;
+
+    private Thread thread;
+    private volatile boolean running;
+
+    /**
+     * Constructs an {@link EstimatorScheduler} object. Call <b>start()</b> to begin running the odometry.
+     * @param odometry The odometry to update on the high rate thread. It should not be updated anywhere else.
+     * @param estimator The estimator which fuses measurements in <b>fuse()</b>. It should not be used anywhere else.
+     * @param speeds Supplies the robot relative speeds of the robot in <b>m/s</b>. This is called from the odometry thread.
+     * @param heading Supplies the rotation of the robot from an IMU. This is called from the odometry thread.
+     * @param period The time between odometry updates in <b>seconds</b>, such as <b>0.005</b> for 200 Hz.
+     * @param source The {@link TimeSource} used to measure the time between odometry updates.
+     */
+    public EstimatorScheduler(Odometry3D odometry, PoseEstimator3D estimator, Supplier<ChassisSpeeds> speeds, Supplier<Rotation3d> heading, double period, TimeSource source) {
+        this.odometry = odometry;
+        this.estimator = estimator;
+        this.speeds = speeds;
+        this.heading = heading;
+        this.periodNanos = (long) (period * 1e9);
+        this.source = source;
+
+        odometry.getState(fuseOdometry);
+    }
+
+    /**
+     * Constructs an {@link EstimatorScheduler} object which updates the odometry at <b>200 Hz</b>.
+     * @param odometry The odometry to update on the high rate thread. It should not be updated anywhere else.
+     * @param estimator The estimator which fuses measurements in <b>fuse()</b>. It should not be used anywhere else.
+     * @param speeds Supplies the robot relative speeds of the robot in <b>m/s</b>. This is called from the odometry thread.
+     * @param heading Supplies the rotation of the robot from an IMU. This is called from the odometry thread.
+     */
+    public EstimatorScheduler(Odometry3D odometry, PoseEstimator3D estimator, Supplier<ChassisSpeeds> speeds, Supplier<Rotation3d> heading) {
+        this(odometry, estimator, speeds, heading, 0.005, TimeSource.getDefault());
+    }
+
+    /**
+     * Starts the odometry thread. This does nothing if it is already running.
+     */
+    public synchronized void start() {
+        if (running) return;
+        running = true;
+
+        thread = new Thread(this::run, "EstimatorScheduler");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MAX_PRIORITY);
+        thread.start();
+    }
+
+    /**
+     * Stops the odometry thread and waits for it to finish.
+     */
+    public synchronized void stop() {
+        running = false;
+        if (thread == null) return;
+
+        thread.interrupt();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        thread = null;
+    }
+
+    private void run() {
+        double lastTime = source.getTime();
+        long lastWake = System.nanoTime();
+        long next = lastWake + periodNanos;
+
+        while (running) {
+            long wait = next - System.nanoTime();
+            if (wait > 0) {
+                try {
+                    Thread.sleep(wait / 1_000_000, (int) (wait % 1_000_000));
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+
+            long wake = System.nanoTime();
+            recordJitter(wake - lastWake);
+            lastWake = wake;
+
+            double time = source.getTime();
+            update(time - lastTime);
+            lastTime = time;
+
+            next += periodNanos;
+            if (next < System.nanoTime()) {
+                // The update took longer than the period, so the schedule restarts instead of trying to catch up.
+                overruns = overruns + 1;
+                next = System.nanoTime() + periodNanos;
+            }
+        }
+    }
+
+    /**
+     * Runs one odometry update. This is what the odometry thread calls every period, and may be called directly
+     * instead of <b>start()</b> to drive the scheduler from a simulated clock.
+     * @param dt The time since the last update in <b>seconds</b>.
+     * @throws IllegalStateException If the odometry thread is running, since the odometry may only be updated by one thread.
+     */
+    public void step(double dt) {
+        if (running) throw new IllegalStateException("The odometry thread is running, so the scheduler can not be stepped directly.");
+        update(dt);
+    }
+
+    private void update(double dt) {
+        Rotation3d rotation = heading.get();
+        stepHeading[0] = rotation.getX();
+        stepHeading[1] = rotation.getY();
+        stepHeading[2] = rotation.getZ();
+        odometry.update(speeds.get(), stepHeading, stepPosition, dt);
+    }
+
+    private void recordJitter(long periodNanos) {
+        double period = periodNanos / 1e9;
+        double jitter = Math.abs(period - this.periodNanos / 1e9);
+        lastPeriod = period;
+        if (jitter > maxJitter) maxJitter = jitter;
+        periodSum = periodSum + period;
+        ticks = ticks + 1;
+    }
+
+    /**
+     * Fuses measurements with the odometry displacement since the last call. Call this from one thread, such as the robot loop.
+     * @param xMeasures An array of any length (including 0) representing measurements of the X position by {@link Data} objects in <b>m</b>.
+     * @param yMeasures An array of any length (including 0) representing measurements of the Y position by {@link Data} objects in <b>m</b>.
+     * @param zMeasures An array of any length (including 0) representing measurements of the Z position by {@link Data} objects in <b>m</b>.
+     * @param out The state to copy the fused estimate into.
+     * @return The <b>out</b> state.
+     */
+    public PoseState fuse(Data[] xMeasures, Data[] yMeasures, Data[] zMeasures, PoseState out) {
+        double lastX = fuseOdometry.x, lastY = fuseOdometry.y, lastZ = fuseOdometry.z;
+        odometry.getState(fuseOdometry);
+
+        displacement[0] = fuseOdometry.x - lastX;
+        displacement[1] = fuseOdometry.y - lastY;
+        displacement[2] = fuseOdometry.z - lastZ;
+
+        estimator.estimateFromDisplacement(displacement, xMeasures, yMeasures, zMeasures, fused);
+
+        correction.x = fused[0] - fuseOdometry.x;
+        correction.y = fused[1] - fuseOdometry.y;
+        correction.z = fused[2] - fuseOdometry.z;
+        correction.timestamp = fuseOdometry.timestamp;
+        publishedCorrection.publish(correction);
+
+        out.copyFrom(fuseOdometry);
+        out.x = fused[0];
+        out.y = fused[1];
+        out.z = fused[2];
+        return out;
+    }
+
+    /**
+     * Copies the newest odometry pose. Any number of threads may call this at once without locking or allocating.
+     * @param out The state to copy into.
+     * @return The <b>out</b> state.
+     */
+    public PoseState getOdometry(PoseState out) {
+        return odometry.getState(out);
+    }
+
+    /**
+     * Copies the newest odometry pose corrected by the last call of <b>fuse()</b>. Any number of threads may call this at once without locking.
+     * @param out The state to copy into.
+     * @return The <b>out</b> state.
+     */
+    public PoseState getEstimate(PoseState out) {
+        PoseState corr = publishedCorrection.read(readCorrection.get());
+        odometry.getState(out);
+        out.x += corr.x;
+        out.y += corr.y;
+        out.z += corr.z;
+        return out;
+    }
+
+    /**
+     * @return The most recent time between odometry updates in <b>seconds</b>.
+     */
+    public double getLastPeriod() {
+        return lastPeriod;
+    }
+
+    /**
+     * @return The mean time between odometry updates since the last reset in <b>seconds</b>.
+     */
+    public double getMeanPeriod() {
+        long n = ticks;
+        return n == 0 ? 0.0 : periodSum / n;
+    }
+
+    /**
+     * @return The largest difference between the requested period and the time between odometry updates since the last reset in <b>seconds</b>.
+     */
+    public double getMaxJitter() {
+        return maxJitter;
+    }
+
+    /**
+     * @return The number of odometry updates which took longer than the period since the last reset.
+     */
+    public long getOverruns() {
+        return overruns;
+    }
+
+    /**
+     * Resets the jitter statistics. The statistics are written by the odometry thread, so a reset while it runs may miss one update.
+     */
+    public void resetJitter() {
+        lastPeriod = 0.0;
+        maxJitter = 0.0;
+        periodSum = 0.0;
+        ticks = 0;
+        overruns = 0;
+    }
+}
@@ -0,0 +1,361 @@
+package frc.robot.AidenLib.control;
+
+import edu.wpi.first.math.geometry.Pose3d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+
+import frc.robot.AidenLib.TimeSource;
+import frc.robot.AidenLib.math.Data;
+import frc.robot.AidenLib.math.Integral;
+import frc.robot.AidenLib.metrics.EstimatorMetrics;
+
+/**
+ * A class which estimates the position of the robot by least squares over a sliding window of its last positions, so it can smooth
+ * the positions it has already estimated when later measurements arrive.
+ * <p>
+ * The window holds one position per call of <b>update()</b>. Each pair of neighbouring positions is tied by the odometry displacement between them,
+ * and each position is tied to the measurements captured closest to it, with any latency. When the window is full, the oldest position is
+ * folded into a prior on the next one, so nothing fused is forgotten. Every call gives the real-time estimate of the newest position and the
+ * smoothed estimate of the oldest, which lags by the length of the window but has seen every measurement since.
+ * </p>
+ * <p>
+ * With the rotation given, as by a {@link RotationEstimator3D}, the least squares problem of each axis is linear and tridiagonal. It is solved
+ * exactly by one forward pass, which is kept between calls so a new position only eliminates itself, and one backward pass for the smoothed positions.
+ * A measurement of an older position repeats the forward pass from that position. The cost of a loop is therefore at most two passes over the window,
+ * which is set by <b>windowSize</b>, and nothing is allocated after construction.
+ * </p>
+ */
+public class FixedLagSmoother3D {
+    private final int capacity;
+    private final double driveVariance;
+    private final TimeSource source;
+    private EstimatorMetrics metrics;
+
+    private final double[] times;
+    // Per axis and position: the odometry displacement from the previous position and its information,
+    // the sums of the information and information weighted values of the measurements, the forward pass, and the smoothed position.
+    private final double[][] displacement, odometryInfo, measureInfo, measureSum, forwardInfo, forwardSum, smoothed;
+    private final double[] priorInfo = new double[3], priorSum = new double[3];
+
+    private int oldest, size;
+    private int dirty;
+    private boolean smoothedValid;
+    private long rejectedCount;
+
+    private double lastVx, lastVy, lastVz;
+    private double[] fieldSpeeds = new double[3];
+
+    /**
+     * Constructs a {@link FixedLagSmoother3D} object.
+     * @param initialPose The initial position of the robot in <b>m</b>.
+     * @param driveStDev The standard deviation of the drivetrain speeds in <b>m/s</b>.
+     * @param initialStDev The standard deviation of the initial position in <b>m</b>.
+     * @param windowSize The number of positions in the window, which is at least <b>2</b>. Measurements captured before the oldest position are rejected.
+     * @param source The {@link TimeSource} which timestamps the positions. Measurement capture times must use the same clock.
+     */
+    public FixedLagSmoother3D(Pose3d initialPose, double driveStDev, double initialStDev, int windowSize, TimeSource source) {
+        if (windowSize < 2) throw new IllegalArgumentException("The window must hold at least two positions: " + windowSize);
+        if (initialStDev <= 0.0) throw new IllegalArgumentException("The initial standard deviation must be positive: " + initialStDev);
+
+        this.capacity = windowSize;
+        this.driveVariance = driveStDev * driveStDev;
+        this.source = source;
+
+        this.times = new double[windowSize];
+        this.displacement = new double[3][windowSize];
+        this.odometryInfo = new double[3][windowSize];
+        this.measureInfo = new double[3][windowSize];
+        this.measureSum = new double[3][windowSize];
+        this.forwardInfo = new double[3][windowSize];
+        this.forwardSum = new double[3][windowSize];
+        this.smoothed = new double[3][windowSize];
+
+        double initialInfo = 1.0 / (initialStDev * initialStDev);
+        double[] initial = { initialPose.getX(), initialPose.getY(), initialPose.getZ() };
+        for (int axis = 0; axis < 3; axis++) {
+            priorInfo[axis] = initialInfo;
+            priorSum[axis] = initialInfo * initial[axis];
+            smoothed[axis][0] = initial[axis];
+        }
+
+        times[0] = source.getTime();
+        size = 1;
+        dirty = 0;
+    }
+
+    /**
+     * Constructs a {@link FixedLagSmoother3D} object whose initial position has a standard deviation of <b>0.01 m</b>.
+     * @param initialPose The initial position of the robot in <b>m</b>.
+     * @param driveStDev The standard deviation of the drivetrain speeds in <b>m/s</b>.
+     * @param windowSize The number of positions in the window, which is at least <b>2</b>. Measurements captured before the oldest position are rejected.
+     */
+    public FixedLagSmoother3D(Pose3d initialPose, double driveStDev, int windowSize) {
+        this(initialPose, driveStDev, 0.01, windowSize, TimeSource.getDefault());
+    }
+
+    /**
+     * Adds a position to the window at the current time, tied to the last position by the drivetrain speeds.
+     * @param speeds Robot relative speeds of the robot in <b>m/s</b>.
+     * @param rotEstimate An estimate of the robot heading as <b>[roll, pitch, yaw]</b> in <b>radians</b>, such as the output of <b>RotationEstimator3D.estimate()</b>.
+     * @param out An array of length 3 which receives the real-time estimate as <b>[x, y, z]</b> in <b>m</b>.
+     * @return The <b>out</b> array.
+     */
+    public double[] update(ChassisSpeeds speeds, double[] rotEstimate, double[] out) {
+        return update(speeds, rotEstimate, out, source.getTime());
+    }
+
+    /**
+     * Adds a position to the window at the given time, tied to the last position by the drivetrain speeds.
+     * @param speeds Robot relative speeds of the robot in <b>m/s</b>.
+     * @param rotEstimate An estimate of the robot heading as <b>[roll, pitch, yaw]</b> in <b>radians</b>, such as the output of <b>RotationEstimator3D.estimate()</b>.
+     * @param out An array of length 3 which receives the real-time estimate as <b>[x, y, z]</b> in <b>m</b>.
+     * @param timestamp The time of the position in <b>seconds</b>, which must not be earlier than the previous one.
+     * @return The <b>out</b> array.
+     */
+    public double[] update(ChassisSpeeds speeds, double[] rotEstimate, double[] out, double timestamp) {
+        long start = metrics != null ? System.nanoTime() : 0L;
+
+        int last = index(size - 1);
+        double dt = timestamp - times[last];
+        if (dt < 0.0) throw new IllegalArgumentException("Positions must be added in time order: " + timestamp);
+
+        PoseEstimator3D.toFieldSpeeds(speeds, rotEstimate[0], rotEstimate[1], rotEstimate[2], fieldSpeeds);
+
+        if (size == capacity) slide();
+
+        int i = index(size);
+        size++;
+        times[i] = timestamp;
+        // The error of a displacement grows with the time it was integrated over, and is kept from being exact when no time passed.
+        double info = 1.0 / Math.max(driveVariance * dt * dt, 1e-12);
+        setStep(0, i, Integral.linearSum(lastVx, fieldSpeeds[0], dt), info);
+        setStep(1, i, Integral.linearSum(lastVy, fieldSpeeds[1], dt), info);
+        setStep(2, i, Integral.linearSum(lastVz, fieldSpeeds[2], dt), info);
+
+        lastVx = fieldSpeeds[0];
+        lastVy = fieldSpeeds[1];
+        lastVz = fieldSpeeds[2];
+
+        if (dirty > size - 1) dirty = size - 1;
+        getEstimate(out);
+
+        if (metrics != null) {
+            metrics.recordDt(dt);
+            metrics.recordLatency(System.nanoTime() - start);
+        }
+        return out;
+    }
+
+    private void setStep(int axis, int i, double d, double info) {
+        displacement[axis][i] = d;
+        odometryInfo[axis][i] = info;
+        measureInfo[axis][i] = 0.0;
+        measureSum[axis][i] = 0.0;
+    }
+
+    /**
+     * Folds the oldest position into a prior on the next one, which is exactly its share of the forward pass.
+     */
+    private void slide() {
+        forward();
+        int first = oldest, second = index(1);
+        for (int axis = 0; axis < 3; axis++) {
+            double f = forwardInfo[axis][first], g = forwardSum[axis][first];
+            double w = odometryInfo[axis][second], d = displacement[axis][second];
+            priorInfo[axis] = w * f / (f + w);
+            priorSum[axis] = w * (g + f * d) / (f + w);
+        }
+        oldest = second;
+        size--;
+        // The forward pass of the new oldest position now starts from the prior, which gives the same values, so only the newest needs computing.
+        dirty = Math.max(0, dirty - 1);
+        smoothedValid = false;
+    }
+
+    /**
+     * Fuses a measurement of the robot position into the position of the window closest to the time it was captured.
+     * @param xMeasure A measurement of the X position in <b>m</b>, or <b>null</b> if X was not measured.
+     * @param yMeasure A measurement of the Y position in <b>m</b>, or <b>null</b> if Y was not measured.
+     * @param zMeasure A measurement of the Z position in <b>m</b>, or <b>null</b> if Z was not measured.
+     * @param captureTime The time the measurement was captured in <b>seconds</b>, from the same clock as the positions.
+     * Measurements captured after the newest position are fused into it.
+     * @return Whether the measurement was fused. Measurements captured before the oldest position are rejected.
+     */
+    public boolean addMeasurement(Data xMeasure, Data yMeasure, Data zMeasure, double captureTime) {
+        if (captureTime < times[oldest]) {
+            rejectedCount++;
+            if (metrics != null) metrics.recordRejection();
+            return false;
+        }
+
+        // Finds the first position at or after the capture time, then takes whichever of it and the one before is closer.
+        int low = 0, high = size - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (times[index(mid)] < captureTime) low = mid + 1;
+            else high = mid;
+        }
+        if (low > 0 && captureTime - times[index(low - 1)] < times[index(low)] - captureTime) low--;
+
+        int i = index(low);
+        add(0, i, xMeasure);
+        add(1, i, yMeasure);
+        add(2, i, zMeasure);
+        if (low < dirty) dirty = low;
+        smoothedValid = false;
+        return true;
+    }
+
+    private void add(int axis, int i, Data measure) {
+        if (measure == null) return;
+        double info = 1.0 / (measure.stDev * measure.stDev);
+        measureInfo[axis][i] += info;
+        measureSum[axis][i] += info * measure.value;
+        if (metrics != null) metrics.recordMeasurements(axis, 1);
+    }
+
+    /**
+     * Fuses measurements captured at the newest position, in the same form as <b>PoseEstimator3D.estimate()</b>.
+     * @param xMeasures An array of any length (including 0) representing measurements of the X position by {@link Data} objects in <b>m</b>.
+     * @param yMeasures An array of any length (including 0) representing measurements of the Y position by {@link Data} objects in <b>m</b>.
+     * @param zMeasures An array of any length (including 0) representing measurements of the Z position by {@link Data} objects in <b>m</b>.
+     * @param out An array of length 3 which receives the real-time estimate as <b>[x, y, z]</b> in <b>m</b>.
+     * @return The <b>out</b> array.
+     */
+    public double[] addMeasurements(Data[] xMeasures, Data[] yMeasures, Data[] zMeasures, double[] out) {
+        int newest = index(size - 1);
+        for (Data m : xMeasures) add(0, newest, m);
+        for (Data m : yMeasures) add(1, newest, m);
+        for (Data m : zMeasures) add(2, newest, m);
+        if (xMeasures.length + yMeasures.length + zMeasures.length > 0) {
+            if (size - 1 < dirty) dirty = size - 1;
+            smoothedValid = false;
+        }
+        return getEstimate(out);
+    }
+
+    /**
+     * Repeats the forward pass from the first position whose inputs changed. The forward values of a position are the information and the
+     * information weighted position given everything up to it, so the newest one is also the real-time estimate.
+     */
+    private void forward() {
+        if (dirty >= size) return;
+        for (int axis = 0; axis < 3; axis++) {
+            double[] fInfo = forwardInfo[axis], fSum = forwardSum[axis];
+            double[] mInfo = measureInfo[axis], mSum = measureSum[axis];
+            double[] w = odometryInfo[axis], d = displacement[axis];
+
+            for (int k = dirty; k < size; k++) {
+                int i = index(k);
+                if (k == 0) {
+                    fInfo[i] = priorInfo[axis] + mInfo[i];
+                    fSum[i] = priorSum[axis] + mSum[i];
+                } else {
+                    int p = index(k - 1);
+                    // Eliminating the previous position through the odometry between them.
+                    double f = fInfo[p], scale = w[i] / (f + w[i]);
+                    fInfo[i] = scale * f + mInfo[i];
+                    fSum[i] = scale * (fSum[p] + f * d[i]) + mSum[i];
+                }
+            }
+        }
+        dirty = size;
+        smoothedValid = false;
+    }
+
+    /**
+     * The backward pass, which gives every position in the window the estimate using every measurement in the window.
+     */
+    private void backward() {
+        forward();
+        if (smoothedValid) return;
+        for (int axis = 0; axis < 3; axis++) {
+            double[] fInfo = forwardInfo[axis], fSum = forwardSum[axis], x = smoothed[axis];
+            double[] w = odometryInfo[axis], d = displacement[axis];
+
+            int next = index(size - 1);
+            x[next] = fSum[next] / fInfo[next];
+            for (int k = size - 2; k >= 0; k--) {
+                int i = index(k);
+                x[i] = (fSum[i] - w[next] * d[next] + w[next] * x[next]) / (fInfo[i] + w[next]);
+                next = i;
+            }
+        }
+        smoothedValid = true;
+    }
+
+    private int index(int age) {
+        return (oldest + age) % capacity;
+    }
+
+    /**
+     * @param out An array of length 3 which receives the real-time estimate of the newest position as <b>[x, y, z]</b> in <b>m</b>.
+     * @return The <b>out</b> array.
+     */
+    public double[] getEstimate(double[] out) {
+        forward();
+        int i = index(size - 1);
+        for (int axis = 0; axis < 3; axis++) {
+            out[axis] = forwardSum[axis][i] / forwardInfo[axis][i];
+        }
+        return out;
+    }
+
+    /**
+     * @param out An array of length 3 which receives the smoothed estimate of the oldest position in the window as <b>[x, y, z]</b> in <b>m</b>.
+     * @return The <b>out</b> array.
+     */
+    public double[] getSmoothed(double[] out) {
+        return getSmoothed(size - 1, out);
+    }
+
+    /**
+     * @param age The number of positions before the newest, from <b>0</b> to <b>getSize() - 1</b>.
+     * @param out An array of length 3 which receives the smoothed estimate of the position as <b>[x, y, z]</b> in <b>m</b>.
+     * @return The <b>out</b> array.
+     */
+    public double[] getSmoothed(int age, double[] out) {
+        if (age < 0 || age >= size) throw new IllegalArgumentException("The window holds " + size + " positions: " + age);
+        backward();
+        int i = index(size - 1 - age);
+        for (int axis = 0; axis < 3; axis++) {
+            out[axis] = smoothed[axis][i];
+        }
+        return out;
+    }
+
+    /**
+     * @return The time of the oldest position, which the smoothed estimate is for, in <b>seconds</b>.
+     */
+    public double getSmoothedTimestamp() {
+        return times[oldest];
+    }
+
+    /**
+     * @return The time of the newest position in <b>seconds</b>.
+     */
+    public double getTimestamp() {
+        return times[index(size - 1)];
+    }
+
+    /**
+     * @return The number of positions in the window, which grows to <b>windowSize</b> and stays there.
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * @return The number of measurements which have been rejected for being captured before the oldest position.
+     */
+    public long getRejectedCount() {
+        return rejectedCount;
+    }
+
+    /**
+     * Records the latency and time step of every update, the measurements fused on each axis and every rejected measurement into a metrics object.
+     * @param metrics The metrics to record into, such as <b>new EstimatorMetrics("FixedLagSmoother3D", "x", "y", "z")</b>, or <b>null</b> to stop recording.
+     */
+    public void setMetrics(EstimatorMetrics metrics) {
+        this.metrics = metrics;
+    }
+}
@@ -0,0 +1,187 @@
+package frc.robot.AidenLib.control;
+
+import edu.wpi.first.math.geometry.Rotation3d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+
+import frc.robot.AidenLib.control.LoopBudgetGovernor.Mode;
+import frc.robot.AidenLib.math.Data;
+
+/**
+ * A class which runs a {@link RotationEstimator3D} and a {@link PoseEstimator3D} each robot loop under a {@link LoopBudgetGovernor},
+ * fusing fewer measurements when the pipeline takes longer than its budget.
+ * <p>
+ * In <b>Mode.CAPPED</b> only the most precise measurements of each axis are fused, up to the cap. In <b>Mode.REDUCED_ROTATION</b> the rotation
+ * measurements are also only fused on one loop in every rotation interval, and in <b>Mode.ODOMETRY_ONLY</b> no measurements are fused.
+ * The estimators are still called every loop, so they keep integrating the drivetrain and IMU in every mode.
+ * </p>
+ * <p>
+ * The capped measurements are selected into preallocated arrays, so an estimate allocates nothing beyond what the estimators do.
+ * </p>
+ */
+public class GovernedPoseEstimator3D {
+    /** The index of the rotation stage in the governor. */
+    public static final int ROTATION = 0;
+
+    /** The index of the position stage in the governor. */
+    public static final int POSE = 1;
+
+    private static final Data[] NONE = new Data[0];
+
+    private final RotationEstimator3D rotation;
+    private final PoseEstimator3D pose;
+    private final LoopBudgetGovernor governor;
+
+    private Data[][] capped;
+    private int cap = 2, rotationInterval = 5, loops;
+
+    private double[] rot = new double[3], position = new double[3];
+
+    /**
+     * Constructs a {@link GovernedPoseEstimator3D} object.
+     * @param rotation The rotation estimator. It should not be used anywhere else.
+     * @param pose The position estimator. It should not be used anywhere else.
+     * @param governor The governor, whose first two stages are timed as <b>ROTATION</b> and <b>POSE</b>,
+     * such as <b>new LoopBudgetGovernor("Governor", new String[] {"rotation", "pose"}, 0.002)</b>.
+     */
+    public GovernedPoseEstimator3D(RotationEstimator3D rotation, PoseEstimator3D pose, LoopBudgetGovernor governor) {
+        this.rotation = rotation;
+        this.pose = pose;
+        this.governor = governor;
+        allocate();
+    }
+
+    private void allocate() {
+        capped = new Data[6][cap];
+    }
+
+    /**
+     * Estimates the pose of the robot in the mode chosen by the governor, then ends the loop of the governor.
+     * @param speeds Robot relative speeds of the robot in <b>m/s</b>.
+     * @param imuMeasure The data provided from the IMU in the form of a {@link Rotation3d} object.
+     * @param xMeasures An array of any length (including 0) representing measurements of the X position by {@link Data} objects in <b>m</b>.
+     * @param yMeasures An array of any length (including 0) representing measurements of the Y position by {@link Data} objects in <b>m</b>.
+     * @param zMeasures An array of any length (including 0) representing measurements of the Z position by {@link Data} objects in <b>m</b>.
+     * @param rollMeasures An array of any length (including 0) representing measurements of the roll rotation by {@link Data} objects in <b>radians</b>.
+     * @param pitchMeasures An array of any length (including 0) representing measurements of the pitch rotation by {@link Data} objects in <b>radians</b>.
+     * @param yawMeasures An array of any length (including 0) representing measurements of the yaw rotation by {@link Data} objects in <b>radians</b>.
+     * @param out An array of length 6 which receives the estimate as <b>[x, y, z, roll, pitch, yaw]</b> in <b>m</b> and <b>radians</b>.
+     * @return The <b>out</b> array.
+     */
+    public double[] estimate(ChassisSpeeds speeds, Rotation3d imuMeasure, Data[] xMeasures, Data[] yMeasures, Data[] zMeasures,
+            Data[] rollMeasures, Data[] pitchMeasures, Data[] yawMeasures, double[] out) {
+        return estimate(speeds, imuMeasure, xMeasures, yMeasures, zMeasures, rollMeasures, pitchMeasures, yawMeasures, out, Double.NaN);
+    }
+
+    /**
+     * This method is the same as <b>estimate()</b> but passes a time step supplied by the caller to the estimators instead of them reading their timers.
+     * @param speeds Robot relative speeds of the robot in <b>m/s</b>.
+     * @param imuMeasure The data provided from the IMU in the form of a {@link Rotation3d} object.
+     * @param xMeasures An array of any length (including 0) representing measurements of the X position by {@link Data} objects in <b>m</b>.
+     * @param yMeasures An array of any length (including 0) representing measurements of the Y position by {@link Data} objects in <b>m</b>.
+     * @param zMeasures An array of any length (including 0) representing measurements of the Z position by {@link Data} objects in <b>m</b>.
+     * @param rollMeasures An array of any length (including 0) representing measurements of the roll rotation by {@link Data} objects in <b>radians</b>.
+     * @param pitchMeasures An array of any length (including 0) representing measurements of the pitch rotation by {@link Data} objects in <b>radians</b>.
+     * @param yawMeasures An array of any length (including 0) representing measurements of the yaw rotation by {@link Data} objects in <b>radians</b>.
+     * @param out An array of length 6 which receives the estimate as <b>[x, y, z, roll, pitch, yaw]</b> in <b>m</b> and <b>radians</b>.
+     * @param dt The time since the last estimate in <b>seconds</b>.
+     * @return The <b>out</b> array.
+     */
+    public double[] estimate(ChassisSpeeds speeds, Rotation3d imuMeasure, Data[] xMeasures, Data[] yMeasures, Data[] zMeasures,
+            Data[] rollMeasures, Data[] pitchMeasures, Data[] yawMeasures, double[] out, double dt) {
+        Mode mode = governor.getMode();
+        loops++;
+
+        boolean fuseRotation = mode == Mode.FULL || mode == Mode.CAPPED || (mode == Mode.REDUCED_ROTATION && loops % rotationInterval == 0);
+        if (mode != Mode.FULL) {
+            xMeasures = select(0, xMeasures, mode != Mode.ODOMETRY_ONLY);
+            yMeasures = select(1, yMeasures, mode != Mode.ODOMETRY_ONLY);
+            zMeasures = select(2, zMeasures, mode != Mode.ODOMETRY_ONLY);
+            rollMeasures = select(3, rollMeasures, fuseRotation);
+            pitchMeasures = select(4, pitchMeasures, fuseRotation);
+            yawMeasures = select(5, yawMeasures, fuseRotation);
+        }
+
+        governor.begin(ROTATION);
+        if (Double.isNaN(dt)) rotation.estimate(imuMeasure, yawMeasures, pitchMeasures, rollMeasures, rot);
+        else rotation.estimate(imuMeasure, yawMeasures, pitchMeasures, rollMeasures, rot, dt);
+        governor.end(ROTATION);
+
+        governor.begin(POSE);
+        if (Double.isNaN(dt)) pose.estimate(speeds, rot, xMeasures, yMeasures, zMeasures, position);
+        else pose.estimate(speeds, rot, xMeasures, yMeasures, zMeasures, position, dt);
+        governor.end(POSE);
+
+        governor.endLoop();
+
+        out[0] = position[0];
+        out[1] = position[1];
+        out[2] = position[2];
+        out[3] = rot[0];
+        out[4] = rot[1];
+        out[5] = rot[2];
+        return out;
+    }
+
+    /**
+     * The measurements of an axis to fuse: none, all of them if they are within the cap, or the most precise up to the cap.
+     */
+    private Data[] select(int axis, Data[] measures, boolean fuse) {
+        if (!fuse) return NONE;
+        if (measures.length <= cap) return measures;
+
+        // A partial selection sort by standard deviation, which is cheap for the small caps this is used with.
+        Data[] out = capped[axis];
+        double last = Double.NEGATIVE_INFINITY;
+        int lastIndex = -1;
+        for (int k = 0; k < cap; k++) {
+            int best = -1;
+            for (int i = 0; i < measures.length; i++) {
+                double stDev = measures[i].stDev;
+                boolean after = stDev > last || (stDev == last && i > lastIndex);
+                if (after && (best < 0 || stDev < measures[best].stDev)) best = i;
+            }
+            out[k] = measures[best];
+            last = measures[best].stDev;
+            lastIndex = best;
+        }
+        return out;
+    }
+
+    /**
+     * @param cap The most measurements of each axis fused in every mode but <b>Mode.FULL</b>. The default is <b>2</b>.
+     */
+    public void setMeasurementCap(int cap) {
+        if (cap < 1) throw new IllegalArgumentException("The cap must allow at least one measurement: " + cap);
+        this.cap = cap;
+        allocate();
+    }
+
+    /**
+     * @param loops The number of loops in <b>Mode.REDUCED_ROTATION</b> for each loop in which the rotation measurements are fused. The default is <b>5</b>.
+     */
+    public void setRotationInterval(int loops) {
+        if (loops < 1) throw new IllegalArgumentException("The rotation interval must be at least one loop: " + loops);
+        this.rotationInterval = loops;
+    }
+
+    /**
+     * @return The governor, whose mode and metrics may be read or published.
+     */
+    public LoopBudgetGovernor getGovernor() {
+        return governor;
+    }
+
+    /**
+     * @return The rotation estimator.
+     */
+    public RotationEstimator3D getRotationEstimator() {
+        return rotation;
+    }
+
+    /**
+     * @return The position estimator.
+     */
+    public PoseEstimator3D getPoseEstimator() {
+        return pose;
+    }
+}
@@ -0,0 +1,136 @@
+package frc.robot.AidenLib.control;
+
+import edu.wpi.first.math.geometry.Pose3d;
+import edu.wpi.first.math.geometry.Rotation3d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+
+import frc.robot.AidenLib.TimeSource;
+import frc.robot.AidenLib.Timer;
+import frc.robot.AidenLib.math.Data;
+import frc.robot.AidenLib.math.KalmanFusion;
+import frc.robot.AidenLib.math.MeasurementBatch;
+import frc.robot.AidenLib.math.ParametricWeightedFusion.InvalidParamterSize;
+import frc.robot.AidenLib.metrics.EstimatorMetrics;
+
+/**
+ * A class which works like {@link PoseEstimator3D} but uses a {@link KalmanFusion} filter, so the estimate carries its uncertainty between robot loops
+ * instead of jumping to each measurement.
+ * <p>
+ * The drivetrain speeds are rotated into the field frame and fused as a measurement of the velocity states, and the other measurements are fused
+ * as measurements of the position states.
+ * </p>
+ */
+public class KalmanPoseEstimator3D {
+    private KalmanFusion filter;
+    private double driveStDev;
+    private Timer timer;
+    private EstimatorMetrics metrics;
+
+    private MeasurementBatch[] batches = {new MeasurementBatch(), new MeasurementBatch(), new MeasurementBatch()};
+    private double[] fieldSpeeds = new double[3];
+    private double[] result = new double[3];
+
+    /**
+     * Constructs a {@link KalmanPoseEstimator3D} object.
+     * @param initialPose The initial position of the robot in <b>m</b>.
+     * @param driveStDev The standard deviation of the drivetrain speeds in <b>m/s</b>.
+     * @param accelStDev The standard deviation of the unmodeled acceleration of the robot in <b>m/s^2</b>.
+     * @param source The {@link TimeSource} used to measure the time between estimates.
+     */
+    public KalmanPoseEstimator3D(Pose3d initialPose, double driveStDev, double accelStDev, TimeSource source) {
+        this.filter = new KalmanFusion(3, accelStDev);
+        this.filter.reset(new double[] {initialPose.getX(), initialPose.getY(), initialPose.getZ()}, 0.1, 0.1);
+        this.driveStDev = driveStDev;
+        this.timer = new Timer(source);
+    }
+
+    /**
+     * Constructs a {@link KalmanPoseEstimator3D} object with an acceleration standard deviation of <b>1.0 m/s^2</b>.
+     * @param initialPose The initial position of the robot in <b>m</b>.
+     * @param driveStDev The standard deviation of the drivetrain speeds in <b>m/s</b>.
+     */
+    public KalmanPoseEstimator3D(Pose3d initialPose, double driveStDev) {
+        this(initialPose, driveStDev, 1.0, TimeSource.getDefault());
+    }
+
+    /**
+     * A method to calculate the optimal estimate of the robot's position based on drive odometry as well as other measurements.
+     * @param speeds Robot relative speeds of the robot in <b>m/s</b>.
+     * @param rotEstimate An estimate of the robot heading which should be the result of the {@link RotationEstimator3D} class.
+     * @param xMeasures An array of any length (including 0) representing measurements of the X position by {@link Data} objects in <b>m</b>.
+     * @param yMeasures An array of any length (including 0) representing measurements of the Y position by {@link Data} objects in <b>m</b>.
+     * @param zMeasures An array of any length (including 0) representing measurements of the Z position by {@link Data} objects in <b>m</b>.
+     * @return The optimal estimate of the robot position based on the given measurements in <b>m</b>.
+     */
+    public Pose3d estimate(ChassisSpeeds speeds, Rotation3d rotEstimate, Data[] xMeasures, Data[] yMeasures, Data[] zMeasures) {
+        estimate(speeds, rotEstimate.getX(), rotEstimate.getY(), rotEstimate.getZ(), xMeasures, yMeasures, zMeasures, result, timer.getDT());
+        return new Pose3d(result[0], result[1], result[2], rotEstimate);
+    }
+
+    /**
+     * An allocation free version of <b>estimate()</b> which writes the estimate into a caller supplied array.
+     * @param speeds Robot relative speeds of the robot in <b>m/s</b>.
+     * @param rotEstimate An estimate of the robot heading as <b>[roll, pitch, yaw]</b> in <b>radians</b>, such as the output of <b>RotationEstimator3D.estimate()</b>.
+     * @param xMeasures An array of any length (including 0) representing measurements of the X position by {@link Data} objects in <b>m</b>.
+     * @param yMeasures An array of any length (including 0) representing measurements of the Y position by {@link Data} objects in <b>m</b>.
+     * @param zMeasures An array of any length (including 0) representing measurements of the Z position by {@link Data} objects in <b>m</b>.
+     * @param out An array of length 3 which receives the estimate as <b>[x, y, z]</b> in <b>m</b>.
+     * @param dt The time since the last estimate in <b>seconds</b>.
+     * @return The <b>out</b> array.
+     */
+    public double[] estimate(ChassisSpeeds speeds, double[] rotEstimate, Data[] xMeasures, Data[] yMeasures, Data[] zMeasures, double[] out, double dt) {
+        return estimate(speeds, rotEstimate[0], rotEstimate[1], rotEstimate[2], xMeasures, yMeasures, zMeasures, out, dt);
+    }
+
+    private double[] estimate(ChassisSpeeds speeds, double roll, double pitch, double yaw, Data[] xMeasures, Data[] yMeasures, Data[] zMeasures, double[] out, double dt) {
+        long start = metrics != null ? System.nanoTime() : 0L;
+
+        PoseEstimator3D.toFieldSpeeds(speeds, roll, pitch, yaw, fieldSpeeds);
+        filter.predict(fieldSpeeds, driveStDev, dt);
+
+        batches[0].clear();
+        batches[0].addAll(xMeasures);
+        batches[1].clear();
+        batches[1].addAll(yMeasures);
+        batches[2].clear();
+        batches[2].addAll(zMeasures);
+
+        try {
+            double[] pVals = filter.calculate(batches);
+            out[0] = pVals[0];
+            out[1] = pVals[1];
+            out[2] = pVals[2];
+        } catch (InvalidParamterSize e) {
+            if (metrics != null) metrics.recordRejection();
+            else e.printStackTrace();
+        }
+
+        if (metrics != null) {
+            metrics.recordMeasurements(0, xMeasures.length);
+            metrics.recordMeasurements(1, yMeasures.length);
+            metrics.recordMeasurements(2, zMeasures.length);
+            metrics.recordDt(dt);
+            metrics.recordLatency(System.nanoTime() - start);
+        }
+
+        return out;
+    }
+
+    /**
+     * Records the latency, time step, measurement counts and rejections of every estimate into a metrics object.
+     * <p>
+     * When metrics are set, rejected inputs are counted instead of printing a stack trace every robot loop.
+     * </p>
+     * @param metrics The metrics to record into, such as <b>new EstimatorMetrics("KalmanPoseEstimator3D", "x", "y", "z")</b>, or <b>null</b> to stop recording.
+     */
+    public void setMetrics(EstimatorMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * @return The {@link KalmanFusion} filter, which holds the velocity estimates and the uncertainty of the estimate.
+     */
+    public KalmanFusion getFilter() {
+        return filter;
+    }
+}
@@ -0,0 +1,218 @@
+package frc.robot.AidenLib.control;
+
+import edu.wpi.first.math.geometry.Pose3d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+
+import frc.robot.AidenLib.TimeSource;
+import frc.robot.AidenLib.math.Data;
+import frc.robot.AidenLib.math.Integral;
+import frc.robot.AidenLib.math.MeasurementBatch;
+import frc.robot.AidenLib.math.MeasurementSource;
+import frc.robot.AidenLib.math.WeightedFusion;
+
+/**
+ * A class which works similarly to {@link PoseEstimator3D} but fuses each measurement at the time it was captured rather than the time it arrived.
+ * <p>
+ * A fixed number of past odometry samples are kept in a ring buffer keyed by timestamp. When a measurement arrives, the estimate is interpolated at its
+ * capture time, fused with the measurement, and the resulting correction is replayed onto every sample taken since then.
+ * </p>
+ * <p>
+ * The replay of one measurement touches at most <b>historySize</b> samples, and at most <b>maxMeasuresPerUpdate</b> measurements are accepted between
+ * calls of <b>update()</b>, so a burst of late measurements has a bounded cost. Nothing is allocated after construction.
+ * </p>
+ */
+public class LatencyCompensatedPoseEstimator3D {
+    private final double[] times, odomX, odomY, odomZ, offsetX, offsetY, offsetZ;
+    private int newest, size;
+
+    private double lastVx, lastVy, lastVz;
+    private double[] fieldSpeeds = new double[3];
+
+    private final int maxMeasuresPerUpdate;
+    private int measuresSinceUpdate;
+    private long rejectedCount;
+
+    private MeasurementSource driveSource;
+    private MeasurementBatch batch = new MeasurementBatch(2);
+    private WeightedFusion fusion = new WeightedFusion();
+    private TimeSource source;
+
+    /**
+     * Constructs a {@link LatencyCompensatedPoseEstimator3D} object.
+     * @param initialPose The initial position of the robot in <b>m</b>.
+     * @param driveStDev The standard deviation of the drive data in <b>m</b>.
+     * @param historySize The number of past odometry samples to keep. This should cover the largest expected measurement latency.
+     * @param maxMeasuresPerUpdate The number of measurements accepted between calls of <b>update()</b>. Extra measurements are rejected.
+     * @param source The {@link TimeSource} which timestamps the odometry samples. Measurement capture times must use the same clock.
+     */
+    public LatencyCompensatedPoseEstimator3D(Pose3d initialPose, double driveStDev, int historySize, int maxMeasuresPerUpdate, TimeSource source) {
+        if (historySize < 1) throw new IllegalArgumentException("The history must hold at least one sample: " + historySize);
+
+        this.times = new double[historySize];
+        this.odomX = new double[historySize];
+        this.odomY = new double[historySize];
+        this.odomZ = new double[historySize];
+        this.offsetX = new double[historySize];
+        this.offsetY = new double[historySize];
+        this.offsetZ = new double[historySize];
+        this.maxMeasuresPerUpdate = maxMeasuresPerUpdate;
+        this.driveSource = new MeasurementSource(driveStDev);
+        this.source = source;
+
+        newest = 0;
+        size = 1;
+        times[0] = source.getTime();
+        odomX[0] = initialPose.getX();
+        odomY[0] = initialPose.getY();
+        odomZ[0] = initialPose.getZ();
+    }
+
+    /**
+     * Constructs a {@link LatencyCompensatedPoseEstimator3D} object which keeps <b>50</b> samples (1 second at a 20 ms loop)
+     * and accepts <b>8</b> measurements per update.
+     * @param initialPose The initial position of the robot in <b>m</b>.
+     * @param driveStDev The standard deviation of the drive data in <b>m</b>.
+     */
+    public LatencyCompensatedPoseEstimator3D(Pose3d initialPose, double driveStDev) {
+        this(initialPose, driveStDev, 50, 8, TimeSource.getDefault());
+    }
+
+    /**
+     * Integrates the drivetrain speeds and records a new odometry sample at the current time.
+     * @param speeds Robot relative speeds of the robot in <b>m/s</b>.
+     * @param rotEstimate An estimate of the robot heading as <b>[roll, pitch, yaw]</b> in <b>radians</b>, such as the output of <b>RotationEstimator3D.estimate()</b>.
+     * @param out An array of length 3 which receives the current estimate as <b>[x, y, z]</b> in <b>m</b>.
+     * @return The <b>out</b> array.
+     */
+    public double[] update(ChassisSpeeds speeds, double[] rotEstimate, double[] out) {
+        return update(speeds, rotEstimate, out, source.getTime());
+    }
+
+    /**
+     * Integrates the drivetrain speeds and records a new odometry sample at the given time.
+     * @param speeds Robot relative speeds of the robot in <b>m/s</b>.
+     * @param rotEstimate An estimate of the robot heading as <b>[roll, pitch, yaw]</b> in <b>radians</b>, such as the output of <b>RotationEstimator3D.estimate()</b>.
+     * @param out An array of length 3 which receives the current estimate as <b>[x, y, z]</b> in <b>m</b>.
+     * @param timestamp The time of the sample in <b>seconds</b>, which must not be earlier than the previous sample.
+     * @return The <b>out</b> array.
+     */
+    public double[] update(ChassisSpeeds speeds, double[] rotEstimate, double[] out, double timestamp) {
+        double dt = timestamp - times[newest];
+        if (dt < 0.0) throw new IllegalArgumentException("Odometry samples must be added in time order: " + timestamp);
+
+        PoseEstimator3D.toFieldSpeeds(speeds, rotEstimate[0], rotEstimate[1], rotEstimate[2], fieldSpeeds);
+
+        int last = newest;
+        newest = (newest + 1) % times.length;
+        if (size < times.length) size++;
+
+        times[newest] = timestamp;
+        odomX[newest] = odomX[last] + Integral.linearSum(lastVx, fieldSpeeds[0], dt);
+        odomY[newest] = odomY[last] + Integral.linearSum(lastVy, fieldSpeeds[1], dt);
+        odomZ[newest] = odomZ[last] + Integral.linearSum(lastVz, fieldSpeeds[2], dt);
+        offsetX[newest] = offsetX[last];
+        offsetY[newest] = offsetY[last];
+        offsetZ[newest] = offsetZ[last];
+
+        lastVx = fieldSpeeds[0];
+        lastVy = fieldSpeeds[1];
+        lastVz = fieldSpeeds[2];
+
+        measuresSinceUpdate = 0;
+
+        return getEstimate(out);
+    }
+
+    /**
+     * Fuses a measurement of the robot position at the time it was captured and replays the correction up to the newest sample.
+     * <p>
+     * Measurements captured after the newest sample are fused at the newest sample.
+     * </p>
+     * @param xMeasure A measurement of the X position in <b>m</b>, or <b>null</b> if X was not measured.
+     * @param yMeasure A measurement of the Y position in <b>m</b>, or <b>null</b> if Y was not measured.
+     * @param zMeasure A measurement of the Z position in <b>m</b>, or <b>null</b> if Z was not measured.
+     * @param captureTime The time the measurement was captured in <b>seconds</b>, from the same clock as the odometry samples.
+     * @return Whether the measurement was fused. Measurements older than the history, or over the limit per update, are rejected.
+     */
+    public boolean addMeasurement(Data xMeasure, Data yMeasure, Data zMeasure, double captureTime) {
+        int oldest = index(0);
+        if (captureTime < times[oldest] || measuresSinceUpdate >= maxMeasuresPerUpdate) {
+            rejectedCount++;
+            return false;
+        }
+        measuresSinceUpdate++;
+
+        // Finds the first sample at or after the capture time and how far the capture time is between it and the sample before.
+        int after = size - 1;
+        double fraction = 1.0;
+        if (captureTime < times[newest]) {
+            int low = 0, high = size - 1;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (times[index(mid)] < captureTime) low = mid + 1;
+                else high = mid;
+            }
+            after = low;
+            if (after > 0) {
+                double t0 = times[index(after - 1)], t1 = times[index(after)];
+                fraction = t1 > t0 ? (captureTime - t0) / (t1 - t0) : 1.0;
+            }
+        }
+
+        correct(xMeasure, odomX, offsetX, after, fraction);
+        correct(yMeasure, odomY, offsetY, after, fraction);
+        correct(zMeasure, odomZ, offsetZ, after, fraction);
+
+        return true;
+    }
+
+    private void correct(Data measure, double[] odom, double[] offset, int after, double fraction) {
+        if (measure == null) return;
+
+        int i1 = index(after);
+        double estimate = odom[i1] + offset[i1];
+        if (after > 0 && fraction < 1.0) {
+            int i0 = index(after - 1);
+            double before = odom[i0] + offset[i0];
+            estimate = before + (estimate - before) * fraction;
+        }
+
+        batch.clear();
+        batch.add(driveSource, estimate);
+        batch.add(measure);
+        double correction = fusion.calculate(batch) - estimate;
+
+        for (int i = after; i < size; i++) {
+            offset[index(i)] += correction;
+        }
+    }
+
+    private int index(int age) {
+        return (newest - size + 1 + age + times.length) % times.length;
+    }
+
+    /**
+     * @param out An array of length 3 which receives the current estimate as <b>[x, y, z]</b> in <b>m</b>.
+     * @return The <b>out</b> array.
+     */
+    public double[] getEstimate(double[] out) {
+        out[0] = odomX[newest] + offsetX[newest];
+        out[1] = odomY[newest] + offsetY[newest];
+        out[2] = odomZ[newest] + offsetZ[newest];
+        return out;
+    }
+
+    /**
+     * @return The time of the newest odometry sample in <b>seconds</b>.
+     */
+    public double getTimestamp() {
+        return times[newest];
+    }
+
+    /**
+     * @return The number of measurements which have been rejected for being too old or over the limit per update.
+     */
+    public long getRejectedCount() {
+        return rejectedCount;
+    }
+}
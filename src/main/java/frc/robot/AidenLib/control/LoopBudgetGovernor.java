@@ -0,0 +1,298 @@
+package frc.robot.AidenLib.control;
+
+import java.util.Arrays;
+
+import frc.robot.AidenLib.TimeSource;
+import frc.robot.AidenLib.metrics.MetricsSink;
+import frc.robot.AidenLib.metrics.MetricsSource;
+
+/**
+ * A class which keeps the work of an estimator pipeline within a time budget per robot loop by stepping it down through cheaper {@link Mode}s.
+ * <p>
+ * The time of each stage of the pipeline is measured with <b>begin()</b> and <b>end()</b>, or given to <b>record()</b>, and <b>endLoop()</b> adds up
+ * the stages of the loop. Once a full window of loops has been measured in the current mode, the mode steps down one level if the mean time of a loop
+ * is over the budget. It steps back up one level once a full window is under the recovery fraction of the budget and the recovery delay has passed
+ * since the last change. If the pipeline goes over budget again soon after stepping up, the recovery delay doubles, so the mode does not flap.
+ * </p>
+ * <p>
+ * The stage times are read from the {@link TimeSource}, so with a {@link frc.robot.AidenLib.SimulatedTimeSource} a test can make a stage slow by
+ * advancing the clock between <b>begin()</b> and <b>end()</b>. Every window is preallocated, so measuring allocates nothing.
+ * </p>
+ */
+public class LoopBudgetGovernor implements MetricsSource {
+    /** The levels of work of an estimator pipeline, from the most accurate to the cheapest. */
+    public enum Mode {
+        /** Every measurement is fused. */
+        FULL,
+        /** Only the most precise measurements of each axis are fused, up to a cap. */
+        CAPPED,
+        /** As <b>CAPPED</b>, and the rotation is only corrected by measurements on some loops. */
+        REDUCED_ROTATION,
+        /** No measurements are fused, so the pipeline only integrates the drivetrain and IMU. */
+        ODOMETRY_ONLY
+    }
+
+    private static final Mode[] MODES = Mode.values();
+    private static final int MAX_BACKOFF = 16;
+
+    private final double budget;
+    private final TimeSource source;
+
+    private double[][] stageTimes;
+    private double[] stageSums, loopTimes;
+    private final double[] stageStarts, currentStages;
+    private double loopSum;
+    private int window = 10, index, count;
+
+    private double recoverFraction = 0.5, recoverDelay = 1.0, currentDelay = 1.0;
+    private Mode mode = Mode.FULL, minimumMode = Mode.FULL, maximumMode = Mode.ODOMETRY_ONLY;
+    private double lastChange, lastUpgrade = Double.NEGATIVE_INFINITY;
+    private long downgrades, upgrades, overBudgetLoops;
+
+    private final String modeKey, loopKey, budgetKey, downgradeKey, upgradeKey, overBudgetKey;
+    private final String[] stageKeys;
+
+    /**
+     * Constructs a {@link LoopBudgetGovernor} object in <b>Mode.FULL</b>.
+     * @param name The name published before every key, such as <b>Governor</b>.
+     * @param stages The names of the stages of the pipeline, such as <b>rotation, pose</b>. Stages are referred to by their index in this list.
+     * @param budget The largest mean time of a loop of the pipeline in <b>seconds</b>, such as <b>0.002</b>.
+     * @param source The {@link TimeSource} the stages and the recovery delay are timed with.
+     */
+    public LoopBudgetGovernor(String name, String[] stages, double budget, TimeSource source) {
+        if (budget <= 0.0) throw new IllegalArgumentException("The budget must be positive: " + budget);
+
+        this.budget = budget;
+        this.source = source;
+        this.stageStarts = new double[stages.length];
+        this.currentStages = new double[stages.length];
+        this.lastChange = source.getTime();
+        allocate();
+
+        // The keys are built once so that publishing does not build strings.
+        modeKey = name + "/mode";
+        loopKey = name + "/loopMicros";
+        budgetKey = name + "/budgetMicros";
+        downgradeKey = name + "/downgrades";
+        upgradeKey = name + "/upgrades";
+        overBudgetKey = name + "/overBudgetLoops";
+        stageKeys = new String[stages.length];
+        for (int i = 0; i < stages.length; i++) {
+            stageKeys[i] = name + "/stages/" + stages[i] + "Micros";
+        }
+    }
+
+    /**
+     * Constructs a {@link LoopBudgetGovernor} object in <b>Mode.FULL</b> which is timed with <b>System.nanoTime()</b>.
+     * @param name The name published before every key, such as <b>Governor</b>.
+     * @param stages The names of the stages of the pipeline, such as <b>rotation, pose</b>. Stages are referred to by their index in this list.
+     * @param budget The largest mean time of a loop of the pipeline in <b>seconds</b>, such as <b>0.002</b>.
+     */
+    public LoopBudgetGovernor(String name, String[] stages, double budget) {
+        this(name, stages, budget, TimeSource.getDefault());
+    }
+
+    private void allocate() {
+        stageTimes = new double[stageStarts.length][window];
+        stageSums = new double[stageStarts.length];
+        loopTimes = new double[window];
+        clearWindow();
+    }
+
+    /**
+     * Marks the start of a stage in the current loop.
+     * @param stage The index of the stage.
+     */
+    public void begin(int stage) {
+        stageStarts[stage] = source.getTime();
+    }
+
+    /**
+     * Marks the end of a stage in the current loop and records the time since <b>begin()</b> was called for it.
+     * @param stage The index of the stage.
+     */
+    public void end(int stage) {
+        record(stage, source.getTime() - stageStarts[stage]);
+    }
+
+    /**
+     * Records time spent in a stage in the current loop, such as one measured by another thread. Several records of a stage in one loop are added.
+     * @param stage The index of the stage.
+     * @param seconds The time in <b>seconds</b>.
+     */
+    public void record(int stage, double seconds) {
+        currentStages[stage] += seconds;
+    }
+
+    /**
+     * Ends the current loop, adds its stage times to the window and changes the mode if it is needed.
+     * @return The mode the pipeline should run in for the next loop.
+     */
+    public Mode endLoop() {
+        double loop = 0.0;
+        for (int i = 0; i < currentStages.length; i++) {
+            double t = currentStages[i];
+            stageSums[i] += t - stageTimes[i][index];
+            stageTimes[i][index] = t;
+            currentStages[i] = 0.0;
+            loop += t;
+        }
+        loopSum += loop - loopTimes[index];
+        loopTimes[index] = loop;
+        index = (index + 1) % window;
+        if (count < window) count++;
+        if (loop > budget) overBudgetLoops++;
+
+        if (count == window) {
+            double mean = loopSum / window;
+            double time = source.getTime();
+            if (mean > budget && mode.ordinal() < maximumMode.ordinal()) {
+                // Going over budget soon after stepping up means the higher mode is still too expensive, so wait longer before trying it again.
+                if (time - lastUpgrade < currentDelay) currentDelay = Math.min(currentDelay * 2.0, recoverDelay * MAX_BACKOFF);
+                change(MODES[mode.ordinal() + 1], time);
+                downgrades++;
+            } else if (mean < recoverFraction * budget && mode.ordinal() > minimumMode.ordinal() && time - lastChange >= currentDelay) {
+                change(MODES[mode.ordinal() - 1], time);
+                lastUpgrade = time;
+                upgrades++;
+            } else if (mode == minimumMode && mean <= budget && time - lastUpgrade >= currentDelay) {
+                currentDelay = recoverDelay;
+            }
+        }
+        return mode;
+    }
+
+    private void change(Mode mode, double time) {
+        this.mode = mode;
+        lastChange = time;
+        // The times of the old mode say little about the new one, so the window is measured again before the next change.
+        clearWindow();
+    }
+
+    private void clearWindow() {
+        for (int i = 0; i < stageTimes.length; i++) {
+            Arrays.fill(stageTimes[i], 0.0);
+            stageSums[i] = 0.0;
+        }
+        Arrays.fill(loopTimes, 0.0);
+        loopSum = 0.0;
+        index = 0;
+        count = 0;
+    }
+
+    /**
+     * @return The mode the pipeline should run in.
+     */
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Sets the mode now, such as to force <b>Mode.ODOMETRY_ONLY</b> during autonomous. The governor keeps changing it from there within the limits.
+     * @param mode The mode.
+     */
+    public void setMode(Mode mode) {
+        change(mode, source.getTime());
+    }
+
+    /**
+     * Limits the modes the governor may choose.
+     * @param minimum The most accurate mode it may step up to. The default is <b>Mode.FULL</b>.
+     * @param maximum The cheapest mode it may step down to. The default is <b>Mode.ODOMETRY_ONLY</b>.
+     */
+    public void setModeRange(Mode minimum, Mode maximum) {
+        if (minimum.ordinal() > maximum.ordinal()) throw new IllegalArgumentException("The minimum mode " + minimum + " is cheaper than the maximum mode " + maximum);
+        this.minimumMode = minimum;
+        this.maximumMode = maximum;
+        if (mode.ordinal() < minimum.ordinal()) change(minimum, source.getTime());
+        if (mode.ordinal() > maximum.ordinal()) change(maximum, source.getTime());
+    }
+
+    /**
+     * @param loops The number of loops the mean time is taken over, and the least number of loops between changes of the mode. The default is <b>10</b>.
+     */
+    public void setWindow(int loops) {
+        if (loops < 1) throw new IllegalArgumentException("The window must hold at least one loop: " + loops);
+        this.window = loops;
+        allocate();
+    }
+
+    /**
+     * Sets when the governor steps back up.
+     * @param fraction The fraction of the budget the mean time of a loop must be under. The default is <b>0.5</b>.
+     * @param delay The least time since the last change in <b>seconds</b>. It doubles, up to 16 times, each time the pipeline goes over budget soon after stepping up. The default is <b>1</b>.
+     */
+    public void setRecovery(double fraction, double delay) {
+        this.recoverFraction = fraction;
+        this.recoverDelay = delay;
+        this.currentDelay = delay;
+    }
+
+    /**
+     * @return The mean time of a loop over the window in <b>seconds</b>, or <b>0</b> if no loop has been measured since the last change of the mode.
+     */
+    public double getLoopTime() {
+        return count == 0 ? 0.0 : loopSum / count;
+    }
+
+    /**
+     * @param stage The index of the stage.
+     * @return The mean time of the stage over the window in <b>seconds</b>, or <b>0</b> if no loop has been measured since the last change of the mode.
+     */
+    public double getStageTime(int stage) {
+        return count == 0 ? 0.0 : stageSums[stage] / count;
+    }
+
+    /**
+     * @return The budget of a loop in <b>seconds</b>.
+     */
+    public double getBudget() {
+        return budget;
+    }
+
+    /**
+     * @return The delay before the next step up in <b>seconds</b>, which grows when the mode flaps.
+     */
+    public double getRecoveryDelay() {
+        return currentDelay;
+    }
+
+    /**
+     * @return The number of times the mode stepped down.
+     */
+    public long getDowngrades() {
+        return downgrades;
+    }
+
+    /**
+     * @return The number of times the mode stepped up.
+     */
+    public long getUpgrades() {
+        return upgrades;
+    }
+
+    /**
+     * @return The number of loops which took longer than the budget.
+     */
+    public long getOverBudgetLoops() {
+        return overBudgetLoops;
+    }
+
+    /**
+     * Passes every metric to a sink. The mode is published as its index, from <b>0</b> for <b>Mode.FULL</b> to <b>3</b> for <b>Mode.ODOMETRY_ONLY</b>,
+     * and times are published in <b>microseconds</b>.
+     * @param sink The sink to publish to.
+     */
+    @Override
+    public void publish(MetricsSink sink) {
+        sink.accept(modeKey, mode.ordinal());
+        sink.accept(loopKey, getLoopTime() * 1e6);
+        sink.accept(budgetKey, budget * 1e6);
+        for (int i = 0; i < stageKeys.length; i++) {
+            sink.accept(stageKeys[i], getStageTime(i) * 1e6);
+        }
+        sink.accept(downgradeKey, downgrades);
+        sink.accept(upgradeKey, upgrades);
+        sink.accept(overBudgetKey, overBudgetLoops);
+    }
+}
@@ -2,37 +2,106 @@ package frc.robot.AidenLib.control;
 
 import edu.wpi.first.math.geometry.Pose3d;
 import edu.wpi.first.math.geometry.Rotation3d;
-import edu.wpi.first.math.geometry.Translation3d;
 import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import frc.robot.AidenLib.TimeSource;
+import frc.robot.AidenLib.Timer;
+import frc.robot.AidenLib.log.LogFormat;
+import frc.robot.AidenLib.log.TelemetryLog;
 import frc.robot.AidenLib.math.Derivative;
 import frc.robot.AidenLib.math.Integral;
-import frc.robot.AidenLib.math.LinearIntegral;
+import frc.robot.AidenLib.math.MutableRotation3d;
 
-/** A class which keeps track of position in 3 dimensions which only relies on data from the drivetrain and an IMU. */
+/**
+ * A class which keeps track of position in 3 dimensions which only relies on data from the drivetrain and an IMU.
+ * <p>
+ * By default each update integrates the field relative speeds with the trapezoid rule. <b>setIntegration()</b> and <b>setSubsteps()</b>
+ * trade a little more work per update for accuracy, which allows the same accuracy at a lower loop rate.
+ * </p>
+ */
 public class Odometry3D {
-    
-    private LinearIntegral xVal, yVal, zVal;
+
+    /** The ways an {@link Odometry3D} can integrate the position over each update. */
+    public enum Integration {
+        /** Rotates the speeds into the field frame at the end of each step and integrates them with the trapezoid rule. */
+        TRAPEZOID,
+        /**
+         * Integrates the robot relative twist with the exponential map of SE(3), which follows the arc the robot drives while it turns.
+         * This is exact for constant speeds and angular velocity, however long the step.
+         */
+        EXPONENTIAL
+    }
+
+    private double x, y, z;
     private Integral yawVal, pitchVal, rollVal;
     private Derivative yawRate, pitchRate, rollRate;
+    private Timer timer;
+    private double time;
+
+    private Integration integration = Integration.TRAPEZOID;
+    private int substeps = 1;
+
+    // The robot relative speeds and heading of the last two updates and the time between them, which are interpolated across substeps.
+    private double lastSpeedX, lastSpeedY, lastRoll, lastPitch, lastYaw;
+    private double prevSpeedX, prevSpeedY, prevRoll, prevPitch, prevYaw;
+    private double lastDt;
+    private int samples;
+
+    // The field relative speeds at the end of the last substep.
+    private double lastVx, lastVy, lastVz;
+
+    private MutableRotation3d rotation = new MutableRotation3d();
+    private MutableRotation3d end = new MutableRotation3d();
+    private MutableRotation3d step = new MutableRotation3d();
+    private double[] fieldSpeeds = new double[3];
+    private double[] twist = new double[3];
+    private double[] displacement = new double[3];
+
+    private PoseState state = new PoseState();
+    private PublishedPoseState published = new PublishedPoseState();
+    private TelemetryLog telemetry;
 
     Pose3d pose;
 
     /**
      * Creates an {@link Odometry3D} object.
      * @param initialPose The initial position of the robot in <b>m</b>.
+     * @param source The {@link TimeSource} used to measure the time between updates.
      */
-    public Odometry3D(Pose3d initialPose) {
+    public Odometry3D(Pose3d initialPose, TimeSource source) {
         pose = initialPose;
-        xVal = new LinearIntegral(initialPose.getX());
-        yVal = new LinearIntegral(initialPose.getY());
-        zVal = new LinearIntegral(initialPose.getZ());
+        x = initialPose.getX();
+        y = initialPose.getY();
+        z = initialPose.getZ();
         Rotation3d rot = initialPose.getRotation();
-        yawVal = new Integral(rot.getZ());
-        pitchVal = new Integral(rot.getY());
-        rollVal = new Integral(rot.getX());
-        yawRate = new Derivative(rot.getZ());
-        pitchRate = new Derivative(rot.getY());
-        rollRate = new Derivative(rot.getX());
+        lastRoll = rot.getX();
+        lastPitch = rot.getY();
+        lastYaw = rot.getZ();
+        rotation.setEuler(lastRoll, lastPitch, lastYaw);
+        yawVal = new Integral(rot.getZ(), source);
+        pitchVal = new Integral(rot.getY(), source);
+        rollVal = new Integral(rot.getX(), source);
+        yawRate = new Derivative(rot.getZ(), source);
+        pitchRate = new Derivative(rot.getY(), source);
+        rollRate = new Derivative(rot.getX(), source);
+        timer = new Timer(source);
+        time = source.getTime();
+
+        state.x = initialPose.getX();
+        state.y = initialPose.getY();
+        state.z = initialPose.getZ();
+        state.roll = rot.getX();
+        state.pitch = rot.getY();
+        state.yaw = rot.getZ();
+        state.timestamp = time;
+        published.publish(state);
+    }
+
+    /**
+     * Creates an {@link Odometry3D} object.
+     * @param initialPose The initial position of the robot in <b>m</b>.
+     */
+    public Odometry3D(Pose3d initialPose) {
+        this(initialPose, TimeSource.getDefault());
     }
 
     /**
@@ -49,26 +118,199 @@ public class Odometry3D {
      * @return The integrated position of the robot in <b>m</b>.
      */
     public Pose3d update(ChassisSpeeds speeds, Rotation3d heading) {
-        yawVal.update(yawRate.getRate(heading.getZ()));
-        pitchVal.update(pitchRate.getRate(heading.getY()));
-        rollVal.update(rollRate.getRate(heading.getX()));
+        return update(speeds, heading, timer.getDT());
+    }
 
-        Rotation3d rot = new Rotation3d(rollVal.get(), pitchVal.get(), yawVal.get());
+    /**
+     * This method is the same as <b>update(speeds, heading)</b> but uses a time step supplied by the caller instead of reading the timer.
+     * <p>
+     * Every integral and derivative of the update uses the same time step.
+     * </p>
+     * @param speeds Robot relative speeds of the robot in <b>m/s</b>.
+     * @param heading The rotation of the robot as supplied by an IMU.
+     * @param dt The time since the last update in <b>seconds</b>.
+     * @return The integrated position of the robot in <b>m</b>.
+     */
+    public Pose3d update(ChassisSpeeds speeds, Rotation3d heading, double dt) {
+        update(speeds, heading.getX(), heading.getY(), heading.getZ(), dt);
+        return getPose();
+    }
 
-        Translation3d speedsT = new Translation3d(speeds.vxMetersPerSecond, speeds.vyMetersPerSecond, 0.0).rotateBy(rot);
+    /**
+     * An allocation free version of <b>update()</b> which takes the heading as primitives and writes the position into a caller supplied array.
+     * @param speeds Robot relative speeds of the robot in <b>m/s</b>.
+     * @param heading The rotation of the robot as supplied by an IMU as <b>[roll, pitch, yaw]</b> in <b>radians</b>.
+     * @param out An array of length 3 which receives the position as <b>[x, y, z]</b> in <b>m</b>.
+     * @param dt The time since the last update in <b>seconds</b>.
+     * @return The <b>out</b> array.
+     */
+    public double[] update(ChassisSpeeds speeds, double[] heading, double[] out, double dt) {
+        update(speeds, heading[0], heading[1], heading[2], dt);
+        out[0] = state.x;
+        out[1] = state.y;
+        out[2] = state.z;
+        return out;
+    }
 
-        xVal.update(speedsT.getX());
-        yVal.update(speedsT.getY());
-        zVal.update(speedsT.getZ());
+    private void update(ChassisSpeeds speeds, double roll, double pitch, double yaw, double dt) {
+        yawVal.update(yawRate.getRate(yaw, dt), dt);
+        pitchVal.update(pitchRate.getRate(pitch, dt), dt);
+        rollVal.update(rollRate.getRate(roll, dt), dt);
 
-        pose = new Pose3d(xVal.get(), yVal.get(), zVal.get(), rot);
-        return pose;
+        double endRoll = rollVal.get(), endPitch = pitchVal.get(), endYaw = yawVal.get();
+        double speedX = speeds.vxMetersPerSecond, speedY = speeds.vyMetersPerSecond;
+        double h = dt / substeps;
+
+        // Each substep ends at a point on the curve through the buffered samples, or on the line through the last one until there are two.
+        boolean curved = substeps > 1 && samples >= 2 && lastDt > 0.0;
+        double stepX = lastSpeedX, stepY = lastSpeedY;
+
+        for (int i = 1; i <= substeps; i++) {
+            double f = (double) i / substeps;
+            double sx, sy;
+            if (i == substeps) {
+                sx = speedX;
+                sy = speedY;
+                end.setEuler(endRoll, endPitch, endYaw);
+            } else if (curved) {
+                sx = interpolate(prevSpeedX, lastSpeedX, speedX, lastDt, dt, f);
+                sy = interpolate(prevSpeedY, lastSpeedY, speedY, lastDt, dt, f);
+                end.setEuler(interpolate(prevRoll, lastRoll, endRoll, lastDt, dt, f), interpolate(prevPitch, lastPitch, endPitch, lastDt, dt, f), interpolate(prevYaw, lastYaw, endYaw, lastDt, dt, f));
+            } else {
+                sx = lastSpeedX + f * (speedX - lastSpeedX);
+                sy = lastSpeedY + f * (speedY - lastSpeedY);
+                end.setEuler(lastRoll + f * (endRoll - lastRoll), lastPitch + f * (endPitch - lastPitch), lastYaw + f * (endYaw - lastYaw));
+            }
+
+            if (integration == Integration.EXPONENTIAL) {
+                // The rotation over the substep in the robot frame, driven at the mean of the speeds at its ends.
+                step.relative(rotation, end).getRotationVector(twist);
+                rotation.twistDisplacement(twist[0], twist[1], twist[2], (stepX + sx) / 2.0 * h, (stepY + sy) / 2.0 * h, 0.0, displacement);
+                x += displacement[0];
+                y += displacement[1];
+                z += displacement[2];
+                end.rotate(sx, sy, 0.0, fieldSpeeds);
+            } else {
+                end.rotate(sx, sy, 0.0, fieldSpeeds);
+                x += Integral.linearSum(lastVx, fieldSpeeds[0], h);
+                y += Integral.linearSum(lastVy, fieldSpeeds[1], h);
+                z += Integral.linearSum(lastVz, fieldSpeeds[2], h);
+            }
+
+            rotation.set(end);
+            lastVx = fieldSpeeds[0];
+            lastVy = fieldSpeeds[1];
+            lastVz = fieldSpeeds[2];
+            stepX = sx;
+            stepY = sy;
+        }
+
+        if (dt > 0.0) {
+            prevSpeedX = lastSpeedX;
+            prevSpeedY = lastSpeedY;
+            prevRoll = lastRoll;
+            prevPitch = lastPitch;
+            prevYaw = lastYaw;
+            lastDt = dt;
+            if (samples < 2) samples++;
+        }
+        lastSpeedX = speedX;
+        lastSpeedY = speedY;
+        lastRoll = endRoll;
+        lastPitch = endPitch;
+        lastYaw = endYaw;
+
+        // The Pose3d is only built if getPose() is called.
+        pose = null;
+
+        time += dt;
+        state.x = x;
+        state.y = y;
+        state.z = z;
+        state.roll = endRoll;
+        state.pitch = endPitch;
+        state.yaw = endYaw;
+        state.vx = fieldSpeeds[0];
+        state.vy = fieldSpeeds[1];
+        state.vz = fieldSpeeds[2];
+        state.timestamp = time;
+        published.publish(state);
+
+        if (telemetry != null) {
+            telemetry.logInput(speeds, roll, pitch, yaw);
+            telemetry.logPose(LogFormat.ODOMETRY, state.x, state.y, state.z, state.roll, state.pitch, state.yaw);
+        }
+    }
+
+    /**
+     * The value at a fraction of the last interval of the quadratic through three samples, which may be unevenly spaced.
+     */
+    private static double interpolate(double v0, double v1, double v2, double h1, double h2, double f) {
+        double t = f * h2;
+        return v0 * t * (t - h2) / (h1 * (h1 + h2)) - v1 * (t + h1) * (t - h2) / (h1 * h2) + v2 * (t + h1) * t / ((h1 + h2) * h2);
+    }
+
+    /**
+     * Sets how the position is integrated over each update. The default is <b>Integration.TRAPEZOID</b>.
+     * @param integration The integration method.
+     */
+    public void setIntegration(Integration integration) {
+        this.integration = integration;
+    }
+
+    /**
+     * Splits every update into a fixed number of equal substeps. The speeds and heading inside the update are read from the quadratic
+     * through the last three updates, so a slow loop follows the curved path of the robot closely without running the loop any faster.
+     * @param substeps The number of substeps in each update, at least <b>1</b>. The default is <b>1</b>.
+     */
+    public void setSubsteps(int substeps) {
+        if (substeps < 1) throw new IllegalArgumentException("An update must have at least one substep: " + substeps);
+        this.substeps = substeps;
+    }
+
+    /**
+     * Filters the rates of change the IMU heading is turned into before they are integrated, so that noise in the IMU is not amplified.
+     * <p>
+     * For example, <b>new Derivative(0.0, Derivative.Method.LOW_PASS, source)</b> with <b>setTimeConstant(0.03)</b>. Filtering smooths the heading
+     * but makes it lag behind the IMU, so fusing other rotation measurements matters more.
+     * </p>
+     * @param settings A {@link Derivative} whose method and settings are copied to the derivative of each axis.
+     */
+    public void setRateFilter(Derivative settings) {
+        yawRate.configure(settings);
+        pitchRate.configure(settings);
+        rollRate.configure(settings);
     }
 
     /**
-     * @return The most recent result of the odometry algorithm.
+     * Records every <b>update()</b> to a telemetry log, as a <b>LogFormat.INPUT</b> record of the speeds and heading followed by a <b>LogFormat.ODOMETRY</b> record of the pose.
+     * <p>
+     * A {@link frc.robot.AidenLib.replay.ReplayEngine} ends a robot loop at each <b>LogFormat.INPUT</b> record and fuses the measurements logged before it,
+     * so call <b>update()</b> after the estimators each loop. If it runs first, the replay fuses each loop's measurements with the next loop's inputs.
+     * </p>
+     * @param telemetry The log to record to, or <b>null</b> to stop recording.
+     */
+    public void setTelemetry(TelemetryLog telemetry) {
+        this.telemetry = telemetry;
+    }
+
+    /**
+     * @return The most recent result of the odometry algorithm. Use <b>getState()</b> when reading from a thread other than the one calling <b>update()</b>.
      */
     public Pose3d getPose() {
+        if (pose == null) pose = new Pose3d(state.x, state.y, state.z, new Rotation3d(state.roll, state.pitch, state.yaw));
         return pose;
     }
+
+    /**
+     * Copies the most recent result of the odometry algorithm, including the field relative velocity and the time of the update.
+     * <p>
+     * Any number of threads may call this while another thread calls <b>update()</b>. The copy is always consistent, and it does not lock or allocate.
+     * </p>
+     * @param out The state to copy into.
+     * @return The <b>out</b> state.
+     */
+    public PoseState getState(PoseState out) {
+        return published.read(out);
+    }
 }
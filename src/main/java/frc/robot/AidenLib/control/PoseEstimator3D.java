@@ -1,26 +1,68 @@
 package frc.robot.AidenLib.control;
 
-import java.util.ArrayList;
-import java.util.Arrays;
-
 import edu.wpi.first.math.geometry.Pose3d;
 import edu.wpi.first.math.geometry.Rotation3d;
-import edu.wpi.first.math.geometry.Translation3d;
 import edu.wpi.first.math.kinematics.ChassisSpeeds;
 
 import frc.robot.AidenLib.math.ParametricWeightedFusion;
 import frc.robot.AidenLib.math.ParametricWeightedFusion.InvalidParamterSize;
+import frc.robot.AidenLib.TimeSource;
 import frc.robot.AidenLib.Timer;
+import frc.robot.AidenLib.log.LogFormat;
+import frc.robot.AidenLib.log.TelemetryLog;
+import frc.robot.AidenLib.metrics.EstimatorMetrics;
 import frc.robot.AidenLib.math.Data;
 import frc.robot.AidenLib.math.Integral;
+import frc.robot.AidenLib.math.MeasurementBatch;
+import frc.robot.AidenLib.math.MeasurementSource;
+import frc.robot.AidenLib.math.OutlierGate;
+import frc.robot.AidenLib.math.RejectionReport;
 
 /** A class which works similarly to {@link Odometry3D} but in addition to drivetrain data it also fuses other measures of the robot position. */
 public class PoseEstimator3D {
     private ParametricWeightedFusion filter;
-    private Translation3d lastSpeeds;
-    private Pose3d lastEstimate;
-    private double driveStDev;
+    private double lastVx, lastVy, lastVz;
+    private double lastX, lastY, lastZ;
+    private MeasurementSource driveSource;
     private Timer timer;
+    private double time;
+
+    private PoseState state = new PoseState();
+    private PublishedPoseState published = new PublishedPoseState();
+    private TelemetryLog telemetry;
+    private EstimatorMetrics metrics;
+
+    private MeasurementBatch[] batches = {new MeasurementBatch(), new MeasurementBatch(), new MeasurementBatch()};
+    private double[] result = new double[3];
+    private double[] prediction = new double[3];
+    private boolean gated;
+    private double[] fieldSpeeds = new double[3];
+
+    /**
+     * Constructs a {@link PoseEstimator3D} object.
+     * @param initialPose The initial position of the robot in <b>m</b>.
+     * @param driveStDev The standard deviation of the drive data in <b>m</b>.
+     * @param source The {@link TimeSource} used to measure the time between estimates.
+     */
+    public PoseEstimator3D(Pose3d initialPose, double driveStDev, TimeSource source) {
+        this.filter = new ParametricWeightedFusion(3);
+        this.lastX = initialPose.getX();
+        this.lastY = initialPose.getY();
+        this.lastZ = initialPose.getZ();
+        this.driveSource = new MeasurementSource(driveStDev);
+        this.timer = new Timer(source);
+        this.time = source.getTime();
+
+        Rotation3d rot = initialPose.getRotation();
+        state.x = lastX;
+        state.y = lastY;
+        state.z = lastZ;
+        state.roll = rot.getX();
+        state.pitch = rot.getY();
+        state.yaw = rot.getZ();
+        state.timestamp = time;
+        published.publish(state);
+    }
 
     /**
      * Constructs a {@link PoseEstimator3D} object.
@@ -28,11 +70,7 @@ public class PoseEstimator3D {
      * @param driveStDev The standard deviation of the drive data in <b>m</b>.
      */
     public PoseEstimator3D(Pose3d initialPose, double driveStDev) {
-        this.filter = new ParametricWeightedFusion(6);
-        this.lastSpeeds = new Translation3d();
-        this.lastEstimate = initialPose;
-        this.driveStDev = driveStDev;
-        this.timer = new Timer();
+        this(initialPose, driveStDev, TimeSource.getDefault());
     }
 
     /**
@@ -56,31 +94,303 @@ public class PoseEstimator3D {
      * @return The optimal estimate of the robot position based on the given measurements in <b>m</b>.
      */
     public Pose3d estimate(ChassisSpeeds speeds, Rotation3d rotEstimate, Data[] xMeasures, Data[] yMeasures, Data[] zMeasures) {
-        double[] pVals = {0.0, 0.0, 0.0};
+        return estimate(speeds, rotEstimate, xMeasures, yMeasures, zMeasures, timer.getDT());
+    }
 
-        Translation3d speedsT = new Translation3d(speeds.vxMetersPerSecond, speeds.vyMetersPerSecond, 0.0).rotateBy(rotEstimate);
+    /**
+     * This method is the same as <b>estimate()</b> but uses a time step supplied by the caller instead of reading the timer.
+     * @param speeds Robot relative speeds of the robot in <b>m/s</b>.
+     * @param rotEstimate An estimate of the robot heading which may be directly supplied by an IMU but should be the result of the {@link RotationEstimator3D} class.
+     * @param xMeasures An array of any length (including 0) representing measurements of the X position by {@link Data} objects in <b>m</b>.
+     * @param yMeasures An array of any length (including 0) representing measurements of the Y position by {@link Data} objects in <b>m</b>.
+     * @param zMeasures An array of any length (including 0) representing measurements of the Z position by {@link Data} objects in <b>m</b>.
+     * @param dt The time since the last estimate in <b>seconds</b>.
+     * @return The optimal estimate of the robot position based on the given measurements in <b>m</b>.
+     */
+    public Pose3d estimate(ChassisSpeeds speeds, Rotation3d rotEstimate, Data[] xMeasures, Data[] yMeasures, Data[] zMeasures, double dt) {
+        estimate(speeds, rotEstimate.getX(), rotEstimate.getY(), rotEstimate.getZ(), xMeasures, yMeasures, zMeasures, result, dt);
+        return new Pose3d(result[0], result[1], result[2], rotEstimate);
+    }
 
-        double dt = timer.getDT();
-        double x = lastEstimate.getX() + Integral.linearSum(lastSpeeds.getX(), speedsT.getX(), dt);
-        double y = lastEstimate.getY() + Integral.linearSum(lastSpeeds.getY(), speedsT.getY(), dt);
-        double z = lastEstimate.getZ() + Integral.linearSum(lastSpeeds.getZ(), speedsT.getZ(), dt);
+    /**
+     * An allocation free version of <b>estimate()</b> which writes the estimate into a caller supplied array.
+     * <p>
+     * The {@link Data} arrays may be different lengths. Once the arrays have been seen at their largest length, reusing the same
+     * {@link Data} objects every robot loop causes this method to allocate nothing.
+     * </p>
+     * @param speeds Robot relative speeds of the robot in <b>m/s</b>.
+     * @param rotEstimate An estimate of the robot heading as <b>[roll, pitch, yaw]</b> in <b>radians</b>, such as the output of <b>RotationEstimator3D.estimate()</b>.
+     * @param xMeasures An array of any length (including 0) representing measurements of the X position by {@link Data} objects in <b>m</b>.
+     * @param yMeasures An array of any length (including 0) representing measurements of the Y position by {@link Data} objects in <b>m</b>.
+     * @param zMeasures An array of any length (including 0) representing measurements of the Z position by {@link Data} objects in <b>m</b>.
+     * @param out An array of length 3 which receives the estimate as <b>[x, y, z]</b> in <b>m</b>.
+     * @return The <b>out</b> array.
+     */
+    public double[] estimate(ChassisSpeeds speeds, double[] rotEstimate, Data[] xMeasures, Data[] yMeasures, Data[] zMeasures, double[] out) {
+        return estimate(speeds, rotEstimate, xMeasures, yMeasures, zMeasures, out, timer.getDT());
+    }
 
-        lastSpeeds = new Translation3d(x, y, z);
+    /**
+     * This method is the same as the allocation free <b>estimate()</b> but uses a time step supplied by the caller instead of reading the timer.
+     * @param speeds Robot relative speeds of the robot in <b>m/s</b>.
+     * @param rotEstimate An estimate of the robot heading as <b>[roll, pitch, yaw]</b> in <b>radians</b>, such as the output of <b>RotationEstimator3D.estimate()</b>.
+     * @param xMeasures An array of any length (including 0) representing measurements of the X position by {@link Data} objects in <b>m</b>.
+     * @param yMeasures An array of any length (including 0) representing measurements of the Y position by {@link Data} objects in <b>m</b>.
+     * @param zMeasures An array of any length (including 0) representing measurements of the Z position by {@link Data} objects in <b>m</b>.
+     * @param out An array of length 3 which receives the estimate as <b>[x, y, z]</b> in <b>m</b>.
+     * @param dt The time since the last estimate in <b>seconds</b>.
+     * @return The <b>out</b> array.
+     */
+    public double[] estimate(ChassisSpeeds speeds, double[] rotEstimate, Data[] xMeasures, Data[] yMeasures, Data[] zMeasures, double[] out, double dt) {
+        return estimate(speeds, rotEstimate[0], rotEstimate[1], rotEstimate[2], xMeasures, yMeasures, zMeasures, out, dt);
+    }
+
+    /**
+     * A version of the allocation free <b>estimate()</b> which takes the measurements of each axis as a {@link MeasurementBatch} filled by the caller.
+     * <p>
+     * Measurements added to a batch with <b>add(source, value)</b> keep their {@link MeasurementSource}, so with a gate set each camera can have
+     * its own source whose standard deviation is inflated every time its measurements are rejected. The batches are copied and not changed,
+     * so they may be cleared and filled again every robot loop without allocating.
+     * </p>
+     * @param speeds Robot relative speeds of the robot in <b>m/s</b>.
+     * @param rotEstimate An estimate of the robot heading as <b>[roll, pitch, yaw]</b> in <b>radians</b>, such as the output of <b>RotationEstimator3D.estimate()</b>.
+     * @param xMeasures The measurements of the X position in <b>m</b>, which may be empty.
+     * @param yMeasures The measurements of the Y position in <b>m</b>, which may be empty.
+     * @param zMeasures The measurements of the Z position in <b>m</b>, which may be empty.
+     * @param out An array of length 3 which receives the estimate as <b>[x, y, z]</b> in <b>m</b>.
+     * @return The <b>out</b> array.
+     */
+    public double[] estimate(ChassisSpeeds speeds, double[] rotEstimate, MeasurementBatch xMeasures, MeasurementBatch yMeasures, MeasurementBatch zMeasures, double[] out) {
+        return estimate(speeds, rotEstimate, xMeasures, yMeasures, zMeasures, out, timer.getDT());
+    }
+
+    /**
+     * This method is the same as the {@link MeasurementBatch} version of <b>estimate()</b> but uses a time step supplied by the caller instead of reading the timer.
+     * @param speeds Robot relative speeds of the robot in <b>m/s</b>.
+     * @param rotEstimate An estimate of the robot heading as <b>[roll, pitch, yaw]</b> in <b>radians</b>, such as the output of <b>RotationEstimator3D.estimate()</b>.
+     * @param xMeasures The measurements of the X position in <b>m</b>, which may be empty.
+     * @param yMeasures The measurements of the Y position in <b>m</b>, which may be empty.
+     * @param zMeasures The measurements of the Z position in <b>m</b>, which may be empty.
+     * @param out An array of length 3 which receives the estimate as <b>[x, y, z]</b> in <b>m</b>.
+     * @param dt The time since the last estimate in <b>seconds</b>.
+     * @return The <b>out</b> array.
+     */
+    public double[] estimate(ChassisSpeeds speeds, double[] rotEstimate, MeasurementBatch xMeasures, MeasurementBatch yMeasures, MeasurementBatch zMeasures, double[] out, double dt) {
+        load(0, xMeasures);
+        load(1, yMeasures);
+        load(2, zMeasures);
+        return estimate(speeds, rotEstimate[0], rotEstimate[1], rotEstimate[2], out, dt);
+    }
+
+    private double[] estimate(ChassisSpeeds speeds, double roll, double pitch, double yaw, Data[] xMeasures, Data[] yMeasures, Data[] zMeasures, double[] out, double dt) {
+        load(0, xMeasures);
+        load(1, yMeasures);
+        load(2, zMeasures);
+        return estimate(speeds, roll, pitch, yaw, out, dt);
+    }
+
+    /**
+     * Integrates the speeds and fuses the prediction with the measurements already loaded into the batches.
+     */
+    private double[] estimate(ChassisSpeeds speeds, double roll, double pitch, double yaw, double[] out, double dt) {
+        long start = metrics != null ? System.nanoTime() : 0L;
 
-        ArrayList<Data> xList = new ArrayList<Data>(Arrays.asList(xMeasures));
-        ArrayList<Data> yList = new ArrayList<Data>(Arrays.asList(yMeasures));
-        ArrayList<Data> zList = new ArrayList<Data>(Arrays.asList(zMeasures));
+        toFieldSpeeds(speeds, roll, pitch, yaw, fieldSpeeds);
+        double fieldVx = fieldSpeeds[0], fieldVy = fieldSpeeds[1], fieldVz = fieldSpeeds[2];
 
-        xList.add(new Data(lastSpeeds.getX(), driveStDev));
-        yList.add(new Data(lastSpeeds.getY(), driveStDev));
-        zList.add(new Data(lastSpeeds.getZ(), driveStDev));
+        double dx = Integral.linearSum(lastVx, fieldVx, dt);
+        double dy = Integral.linearSum(lastVy, fieldVy, dt);
+        double dz = Integral.linearSum(lastVz, fieldVz, dt);
+
+        lastVx = fieldVx;
+        lastVy = fieldVy;
+        lastVz = fieldVz;
+
+        time += dt;
+        state.roll = roll;
+        state.pitch = pitch;
+        state.yaw = yaw;
+        state.vx = fieldVx;
+        state.vy = fieldVy;
+        state.vz = fieldVz;
+
+        fuse(dx, dy, dz, speeds, out);
+
+        if (metrics != null) {
+            metrics.recordDt(dt);
+            metrics.recordLatency(System.nanoTime() - start);
+        }
+        return out;
+    }
+
+    /**
+     * A version of the allocation free <b>estimate()</b> which is given the field relative displacement of the robot instead of integrating its speeds.
+     * <p>
+     * This allows the displacement to come from an {@link Odometry3D} object updated at a higher rate than the measurements are fused.
+     * The published rotation and velocity are left as they were, and the published time is read from the {@link TimeSource}.
+     * </p>
+     * @param displacement The field relative displacement of the robot since the last estimate as <b>[x, y, z]</b> in <b>m</b>.
+     * @param xMeasures An array of any length (including 0) representing measurements of the X position by {@link Data} objects in <b>m</b>.
+     * @param yMeasures An array of any length (including 0) representing measurements of the Y position by {@link Data} objects in <b>m</b>.
+     * @param zMeasures An array of any length (including 0) representing measurements of the Z position by {@link Data} objects in <b>m</b>.
+     * @param out An array of length 3 which receives the estimate as <b>[x, y, z]</b> in <b>m</b>.
+     * @return The <b>out</b> array.
+     */
+    public double[] estimateFromDisplacement(double[] displacement, Data[] xMeasures, Data[] yMeasures, Data[] zMeasures, double[] out) {
+        long start = metrics != null ? System.nanoTime() : 0L;
+
+        time = timer.getSource().getTime();
+        load(0, xMeasures);
+        load(1, yMeasures);
+        load(2, zMeasures);
+        fuse(displacement[0], displacement[1], displacement[2], null, out);
+
+        if (metrics != null) metrics.recordLatency(System.nanoTime() - start);
+        return out;
+    }
+
+    private double[] fuse(double dx, double dy, double dz, ChassisSpeeds speeds, double[] out) {
+        double x = lastX + dx;
+        double y = lastY + dy;
+        double z = lastZ + dz;
+
+        // The measurements are counted and logged before the drivetrain prediction is added to each batch.
+        if (metrics != null) {
+            metrics.recordMeasurements(0, batches[0].size());
+            metrics.recordMeasurements(1, batches[1].size());
+            metrics.recordMeasurements(2, batches[2].size());
+        }
+
+        if (telemetry != null) {
+            telemetry.logMeasurements(LogFormat.AXIS_X, batches[0]);
+            telemetry.logMeasurements(LogFormat.AXIS_Y, batches[1]);
+            telemetry.logMeasurements(LogFormat.AXIS_Z, batches[2]);
+        }
+
+        batches[0].add(driveSource, x);
+        batches[1].add(driveSource, y);
+        batches[2].add(driveSource, z);
 
         try {
-            pVals = filter.calculate(xList.toArray(Data[]::new), yList.toArray(Data[]::new), zList.toArray(Data[]::new));
+            prediction[0] = x;
+            prediction[1] = y;
+            prediction[2] = z;
+            double[] pVals = filter.calculate(prediction, batches);
+            out[0] = pVals[0];
+            out[1] = pVals[1];
+            out[2] = pVals[2];
         } catch (InvalidParamterSize e) {
-            e.printStackTrace();
+            if (metrics != null) metrics.recordRejection();
+            else e.printStackTrace();
+            out[0] = x;
+            out[1] = y;
+            out[2] = z;
+        }
+
+        if (gated && metrics != null) {
+            metrics.recordOutliers(filter.getReport(0).getRejectedCount() + filter.getReport(1).getRejectedCount() + filter.getReport(2).getRejectedCount());
+        }
+
+        lastX = out[0];
+        lastY = out[1];
+        lastZ = out[2];
+
+        state.x = lastX;
+        state.y = lastY;
+        state.z = lastZ;
+        state.timestamp = time;
+        published.publish(state);
+
+        if (telemetry != null) {
+            telemetry.logEstimate(state.x, state.y, state.z, state.roll, state.pitch, state.yaw, speeds);
         }
 
-        return new Pose3d(pVals[0], pVals[1], pVals[2], rotEstimate);
+        return out;
+    }
+
+    /**
+     * Records every estimate to a telemetry log, as a <b>LogFormat.MEASUREMENT</b> record for each measurement followed by a <b>LogFormat.ESTIMATE</b> record of the pose.
+     * <p>
+     * The <b>LogFormat.ESTIMATE</b> record holds the speeds the estimate integrated, so with a {@link RotationEstimator3D} recording to the same log
+     * a {@link frc.robot.AidenLib.replay.ReplayEngine} replays one loop for each estimate. Estimates from <b>estimateFromDisplacement()</b> have no speeds,
+     * so those loops are only replayed from the <b>LogFormat.INPUT</b> records of an {@link Odometry3D}.
+     * </p>
+     * @param telemetry The log to record to, or <b>null</b> to stop recording.
+     */
+    public void setTelemetry(TelemetryLog telemetry) {
+        this.telemetry = telemetry;
+    }
+
+    /**
+     * Records the latency, time step, measurement counts and rejections of every estimate into a metrics object.
+     * <p>
+     * When metrics are set, rejected inputs are counted instead of printing a stack trace every robot loop.
+     * </p>
+     * @param metrics The metrics to record into, such as <b>new EstimatorMetrics("PoseEstimator3D", "x", "y", "z")</b>, or <b>null</b> to stop recording.
+     */
+    public void setMetrics(EstimatorMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Sets a gate which rejects position measurements too far from the odometry prediction before they are fused.
+     * <p>
+     * The gate compares each measurement with the prediction rather than the previous estimate, so normal motion of the robot is never rejected.
+     * </p>
+     * @param gate The gate, such as <b>new OutlierGate(3.0, 0.25)</b>, or <b>null</b> to fuse every measurement.
+     */
+    public void setGate(OutlierGate gate) {
+        filter.setGate(gate);
+        this.gated = gate != null;
+    }
+
+    /**
+     * @param axis The index of the axis, in the order <b>[x, y, z]</b>.
+     * @return The report of the measurements of the axis rejected by the gate in the most recent estimate.
+     */
+    public RejectionReport getReport(int axis) {
+        return filter.getReport(axis);
+    }
+
+    /**
+     * Copies the most recent estimate, including the rotation it was made with, the field relative drive velocity and the time of the estimate.
+     * <p>
+     * Any number of threads may call this while another thread calls <b>estimate()</b>. The copy is always consistent, and it does not lock or allocate.
+     * </p>
+     * @param out The state to copy into.
+     * @return The <b>out</b> state.
+     */
+    public PoseState getState(PoseState out) {
+        return published.read(out);
+    }
+
+    /**
+     * Rotates robot relative speeds into the field frame without allocating.
+     * @param speeds Robot relative speeds of the robot in <b>m/s</b>.
+     * @param roll The roll of the robot in <b>radians</b>.
+     * @param pitch The pitch of the robot in <b>radians</b>.
+     * @param yaw The yaw of the robot in <b>radians</b>.
+     * @param out An array of length 3 which receives the field relative speeds as <b>[x, y, z]</b> in <b>m/s</b>.
+     */
+    static void toFieldSpeeds(ChassisSpeeds speeds, double roll, double pitch, double yaw, double[] out) {
+        double cr = Math.cos(roll), sr = Math.sin(roll);
+        double cp = Math.cos(pitch), sp = Math.sin(pitch);
+        double cy = Math.cos(yaw), sy = Math.sin(yaw);
+
+        // Rotates [vx, vy, 0] by the extrinsic roll-pitch-yaw rotation, which is how Rotation3d is constructed.
+        double vx = speeds.vxMetersPerSecond, vy = speeds.vyMetersPerSecond;
+        out[0] = cy * cp * vx + (cy * sp * sr - sy * cr) * vy;
+        out[1] = sy * cp * vx + (sy * sp * sr + cy * cr) * vy;
+        out[2] = -sp * vx + cp * sr * vy;
+    }
+
+    private void load(int axis, Data[] measures) {
+        batches[axis].clear();
+        batches[axis].addAll(measures);
+    }
+
+    private void load(int axis, MeasurementBatch measures) {
+        batches[axis].clear();
+        batches[axis].addAll(measures);
     }
 }
@@ -0,0 +1,52 @@
+package frc.robot.AidenLib.control;
+
+import edu.wpi.first.math.geometry.Pose3d;
+import edu.wpi.first.math.geometry.Rotation3d;
+
+/**
+ * Class to represent the state of the robot at one instant, as published by a {@link PublishedPoseState}.
+ * <p>
+ * The fields are plain primitives so a {@link PoseState} may be reused for every read without allocating.
+ * </p>
+ */
+public class PoseState {
+    /** The position of the robot in <b>m</b>. */
+    public double x, y, z;
+
+    /** The rotation of the robot in <b>radians</b>. */
+    public double roll, pitch, yaw;
+
+    /** The field relative velocity of the robot in <b>m/s</b>. */
+    public double vx, vy, vz;
+
+    /** The time the state was computed in <b>seconds</b>. */
+    public double timestamp;
+
+    /** The number of states published before this one, which increases by one for every publish. */
+    public long sequence;
+
+    /**
+     * Copies every field of another state into this state.
+     * @param other The state to copy.
+     */
+    public void copyFrom(PoseState other) {
+        x = other.x;
+        y = other.y;
+        z = other.z;
+        roll = other.roll;
+        pitch = other.pitch;
+        yaw = other.yaw;
+        vx = other.vx;
+        vy = other.vy;
+        vz = other.vz;
+        timestamp = other.timestamp;
+        sequence = other.sequence;
+    }
+
+    /**
+     * @return A new {@link Pose3d} object made from the position and rotation of the state.
+     */
+    public Pose3d toPose3d() {
+        return new Pose3d(x, y, z, new Rotation3d(roll, pitch, yaw));
+    }
+}
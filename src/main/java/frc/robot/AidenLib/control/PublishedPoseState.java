@@ -0,0 +1,55 @@
+package frc.robot.AidenLib.control;
+
+import java.lang.invoke.VarHandle;
+
+/**
+ * A class which publishes a {@link PoseState} from one writer thread to any number of reader threads without locks.
+ * <p>
+ * This is a sequence lock: the writer makes the sequence odd while it copies a state in and even when it is done, and a reader
+ * retries its copy if the sequence was odd or changed while it was copying. Readers never block the writer and never see a torn state,
+ * including torn 64 bit values on the 32 bit roboRIO. Neither side allocates.
+ * </p>
+ */
+public class PublishedPoseState {
+    private volatile long sequence;
+    private final PoseState state = new PoseState();
+
+    /**
+     * Publishes a copy of a state. Only one thread may call this.
+     * @param in The state to publish. Its <b>sequence</b> field is ignored and replaced by the sequence of the publish.
+     */
+    public void publish(PoseState in) {
+        long seq = sequence;
+        sequence = seq + 1;
+        VarHandle.storeStoreFence();
+
+        state.copyFrom(in);
+        state.sequence = (seq >> 1) + 1;
+
+        sequence = seq + 2;
+    }
+
+    /**
+     * Copies the most recently published state. Any number of threads may call this at once.
+     * @param out The state to copy into.
+     * @return The <b>out</b> state. Its <b>sequence</b> is <b>0</b> if nothing has been published.
+     */
+    public PoseState read(PoseState out) {
+        while (true) {
+            long before = sequence;
+            if ((before & 1) == 0) {
+                out.copyFrom(state);
+                VarHandle.loadLoadFence();
+                if (sequence == before) return out;
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * @return The number of states which have been published.
+     */
+    public long getPublishCount() {
+        return sequence >> 1;
+    }
+}
@@ -0,0 +1,243 @@
+package frc.robot.AidenLib.control;
+
+import java.util.Arrays;
+
+import edu.wpi.first.math.geometry.Quaternion;
+import edu.wpi.first.math.geometry.Rotation3d;
+
+/**
+ * A class which estimates the robot rotation like {@link RotationEstimator3D}, but keeps the estimate as a quaternion instead of three Euler angles.
+ * <p>
+ * Each robot loop the change in the IMU rotation since the last loop is applied to the estimate, and then the measurements are fused as small
+ * rotations away from that prediction. Working on the rotation itself rather than on each Euler angle means the estimate does not break when an
+ * angle wraps at <b>+-pi</b> or near gimbal lock. All of the math is done on primitive doubles, so nothing is allocated after the measurement
+ * buffers have grown to the largest number of measurements per loop.
+ * </p>
+ */
+public class QuaternionRotationEstimator3D {
+    private double w, x, y, z;
+    private double imuW, imuX, imuY, imuZ;
+    private double imuWeight;
+
+    private double[] mW = new double[4], mX = new double[4], mY = new double[4], mZ = new double[4];
+    private double[] rollWeights = new double[4], pitchWeights = new double[4], yawWeights = new double[4];
+    private int count;
+
+    private double[] rotVec = new double[3];
+
+    /**
+     * Constructs a {@link QuaternionRotationEstimator3D} object.
+     * @param imuStDev The standard deviation of the IMU error in <b>radians per robot loop</b>.
+     * @param initialRot The initial rotation of the robot.
+     */
+    public QuaternionRotationEstimator3D(double imuStDev, Rotation3d initialRot) {
+        Quaternion q = initialRot.getQuaternion();
+        this.w = q.getW();
+        this.x = q.getX();
+        this.y = q.getY();
+        this.z = q.getZ();
+        this.imuW = Double.NaN;
+        this.imuWeight = 1.0 / (imuStDev * imuStDev);
+    }
+
+    /**
+     * Constructs a {@link QuaternionRotationEstimator3D} object using <b>new Rotation3d()</b> as the default initial rotation.
+     * @param imuStDev The standard deviation of the IMU error in <b>radians per robot loop</b>.
+     */
+    public QuaternionRotationEstimator3D(double imuStDev) {
+        this(imuStDev, new Rotation3d());
+    }
+
+    /**
+     * Adds a measurement of the robot rotation to be fused by the next call of <b>estimate()</b>.
+     * @param rot The measured rotation of the robot.
+     * @param rollStDev The standard deviation of the measurement about the robot's X axis in <b>radians</b>.
+     * @param pitchStDev The standard deviation of the measurement about the robot's Y axis in <b>radians</b>.
+     * @param yawStDev The standard deviation of the measurement about the robot's Z axis in <b>radians</b>.
+     */
+    public void addMeasurement(Rotation3d rot, double rollStDev, double pitchStDev, double yawStDev) {
+        Quaternion q = rot.getQuaternion();
+        addMeasurement(q.getW(), q.getX(), q.getY(), q.getZ(), rollStDev, pitchStDev, yawStDev);
+    }
+
+    /**
+     * Adds a measurement of the robot rotation, as a unit quaternion, to be fused by the next call of <b>estimate()</b>.
+     * @param qw The W component of the measured rotation.
+     * @param qx The X component of the measured rotation.
+     * @param qy The Y component of the measured rotation.
+     * @param qz The Z component of the measured rotation.
+     * @param rollStDev The standard deviation of the measurement about the robot's X axis in <b>radians</b>.
+     * @param pitchStDev The standard deviation of the measurement about the robot's Y axis in <b>radians</b>.
+     * @param yawStDev The standard deviation of the measurement about the robot's Z axis in <b>radians</b>.
+     */
+    public void addMeasurement(double qw, double qx, double qy, double qz, double rollStDev, double pitchStDev, double yawStDev) {
+        if (count == mW.length) grow();
+        mW[count] = qw;
+        mX[count] = qx;
+        mY[count] = qy;
+        mZ[count] = qz;
+        rollWeights[count] = 1.0 / (rollStDev * rollStDev);
+        pitchWeights[count] = 1.0 / (pitchStDev * pitchStDev);
+        yawWeights[count] = 1.0 / (yawStDev * yawStDev);
+        count++;
+    }
+
+    private void grow() {
+        int size = mW.length * 2;
+        mW = Arrays.copyOf(mW, size);
+        mX = Arrays.copyOf(mX, size);
+        mY = Arrays.copyOf(mY, size);
+        mZ = Arrays.copyOf(mZ, size);
+        rollWeights = Arrays.copyOf(rollWeights, size);
+        pitchWeights = Arrays.copyOf(pitchWeights, size);
+        yawWeights = Arrays.copyOf(yawWeights, size);
+    }
+
+    /**
+     * A method which applies the change in the IMU rotation and fuses the measurements added since the last call.
+     * @param imuMeasure The data provided from the IMU in the form of a {@link Rotation3d} object.
+     * @return The optimal estimate of the robot rotation.
+     */
+    public Rotation3d estimate(Rotation3d imuMeasure) {
+        update(imuMeasure.getQuaternion());
+        return new Rotation3d(new Quaternion(w, x, y, z));
+    }
+
+    /**
+     * An allocation free version of <b>estimate()</b> which writes the estimate into a caller supplied array.
+     * @param imuMeasure The data provided from the IMU in the form of a {@link Rotation3d} object.
+     * @param out An array of length 3 which receives the estimate as <b>[roll, pitch, yaw]</b> in <b>radians</b>.
+     * @return The <b>out</b> array, which may be passed directly to <b>PoseEstimator3D.estimate()</b>.
+     */
+    public double[] estimate(Rotation3d imuMeasure, double[] out) {
+        update(imuMeasure.getQuaternion());
+        return getEuler(out);
+    }
+
+    private void update(Quaternion imu) {
+        double iw = imu.getW(), ix = imu.getX(), iy = imu.getY(), iz = imu.getZ();
+
+        if (!Double.isNaN(imuW)) {
+            // The change in the IMU rotation in the robot frame: conj(lastImu) * imu.
+            double dw = imuW * iw + imuX * ix + imuY * iy + imuZ * iz;
+            double dx = imuW * ix - imuX * iw - imuY * iz + imuZ * iy;
+            double dy = imuW * iy + imuX * iz - imuY * iw - imuZ * ix;
+            double dz = imuW * iz - imuX * iy + imuY * ix - imuZ * iw;
+
+            // The prediction: estimate * delta.
+            double pw = w * dw - x * dx - y * dy - z * dz;
+            double px = w * dx + x * dw + y * dz - z * dy;
+            double py = w * dy - x * dz + y * dw + z * dx;
+            double pz = w * dz + x * dy - y * dx + z * dw;
+            w = pw;
+            x = px;
+            y = py;
+            z = pz;
+        }
+        imuW = iw;
+        imuX = ix;
+        imuY = iy;
+        imuZ = iz;
+
+        if (count > 0) {
+            // The weighted mean of the rotation vectors from the prediction to each measurement. The prediction itself has a rotation vector of zero.
+            double sumX = 0.0, sumY = 0.0, sumZ = 0.0;
+            double weightX = imuWeight, weightY = imuWeight, weightZ = imuWeight;
+            for (int i = 0; i < count; i++) {
+                // conj(estimate) * measurement
+                double ew = w * mW[i] + x * mX[i] + y * mY[i] + z * mZ[i];
+                double ex = w * mX[i] - x * mW[i] - y * mZ[i] + z * mY[i];
+                double ey = w * mY[i] + x * mZ[i] - y * mW[i] - z * mX[i];
+                double ez = w * mZ[i] - x * mY[i] + y * mX[i] - z * mW[i];
+                log(ew, ex, ey, ez, rotVec);
+
+                sumX += rollWeights[i] * rotVec[0];
+                sumY += pitchWeights[i] * rotVec[1];
+                sumZ += yawWeights[i] * rotVec[2];
+                weightX += rollWeights[i];
+                weightY += pitchWeights[i];
+                weightZ += yawWeights[i];
+            }
+            count = 0;
+
+            applyRotationVector(sumX / weightX, sumY / weightY, sumZ / weightZ);
+        }
+
+        normalize();
+    }
+
+    /**
+     * The rotation vector of a unit quaternion, taking the shorter of the two equivalent rotations so that angles wrap correctly.
+     */
+    private static void log(double qw, double qx, double qy, double qz, double[] out) {
+        if (qw < 0.0) {
+            qw = -qw;
+            qx = -qx;
+            qy = -qy;
+            qz = -qz;
+        }
+
+        double norm = Math.sqrt(qx * qx + qy * qy + qz * qz);
+        double scale = norm < 1e-9 ? 2.0 : 2.0 * Math.atan2(norm, qw) / norm;
+        out[0] = qx * scale;
+        out[1] = qy * scale;
+        out[2] = qz * scale;
+    }
+
+    /**
+     * Rotates the estimate by a rotation vector in the robot frame: estimate * exp(v).
+     */
+    private void applyRotationVector(double vx, double vy, double vz) {
+        double angle = Math.sqrt(vx * vx + vy * vy + vz * vz);
+        double rw, scale;
+        if (angle < 1e-9) {
+            rw = 1.0;
+            scale = 0.5;
+        } else {
+            rw = Math.cos(angle / 2.0);
+            scale = Math.sin(angle / 2.0) / angle;
+        }
+        double rx = vx * scale, ry = vy * scale, rz = vz * scale;
+
+        double nw = w * rw - x * rx - y * ry - z * rz;
+        double nx = w * rx + x * rw + y * rz - z * ry;
+        double ny = w * ry - x * rz + y * rw + z * rx;
+        double nz = w * rz + x * ry - y * rx + z * rw;
+        w = nw;
+        x = nx;
+        y = ny;
+        z = nz;
+    }
+
+    private void normalize() {
+        double norm = Math.sqrt(w * w + x * x + y * y + z * z);
+        w /= norm;
+        x /= norm;
+        y /= norm;
+        z /= norm;
+    }
+
+    /**
+     * @param out An array of length 4 which receives the estimate as a unit quaternion <b>[w, x, y, z]</b>.
+     * @return The <b>out</b> array.
+     */
+    public double[] getQuaternion(double[] out) {
+        out[0] = w;
+        out[1] = x;
+        out[2] = y;
+        out[3] = z;
+        return out;
+    }
+
+    /**
+     * @param out An array of length 3 which receives the estimate as <b>[roll, pitch, yaw]</b> in <b>radians</b>, with the same convention as {@link Rotation3d}.
+     * @return The <b>out</b> array.
+     */
+    public double[] getEuler(double[] out) {
+        out[0] = Math.atan2(2.0 * (w * x + y * z), 1.0 - 2.0 * (x * x + y * y));
+        double ratio = 2.0 * (w * y - z * x);
+        out[1] = Math.abs(ratio) >= 1.0 ? Math.copySign(Math.PI / 2.0, ratio) : Math.asin(ratio);
+        out[2] = Math.atan2(2.0 * (w * z + x * y), 1.0 - 2.0 * (y * y + z * z));
+        return out;
+    }
+}
@@ -1,40 +1,65 @@
 package frc.robot.AidenLib.control;
 
-import java.util.ArrayList;
-import java.util.Arrays;
-
 import edu.wpi.first.math.geometry.Rotation3d;
 
+import frc.robot.AidenLib.TimeSource;
 import frc.robot.AidenLib.Timer;
+import frc.robot.AidenLib.log.LogFormat;
+import frc.robot.AidenLib.log.TelemetryLog;
+import frc.robot.AidenLib.metrics.EstimatorMetrics;
 import frc.robot.AidenLib.math.Derivative;
 import frc.robot.AidenLib.math.Integral;
+import frc.robot.AidenLib.math.MeasurementBatch;
+import frc.robot.AidenLib.math.MeasurementSource;
+import frc.robot.AidenLib.math.OutlierGate;
+import frc.robot.AidenLib.math.RejectionReport;
 import frc.robot.AidenLib.math.ParametricWeightedFusion;
+import frc.robot.AidenLib.math.ParametricWeightedFusion.InvalidParamterSize;
 import frc.robot.AidenLib.math.Data;
 
 /** A class which estimates the robot rotation in 3D space based on imu data fused with other measurements. */
 public class RotationEstimator3D {
     private ParametricWeightedFusion filter;
 
-    private Rotation3d lastEstimate;
+    private double lastRoll, lastPitch, lastYaw;
 
     private Derivative xRate, yRate, zRate;
     private Timer timer;
 
-    private double imuStdDev;
+    private MeasurementSource imuSource;
+    private TelemetryLog telemetry;
+    private EstimatorMetrics metrics;
+
+    private MeasurementBatch[] batches = {new MeasurementBatch(), new MeasurementBatch(), new MeasurementBatch()};
+    private double[] result = new double[3];
+    private double[] prediction = new double[3];
+    private boolean gated;
 
     /**
      * Constructs a {@link RotationEstimator3D} object.
      * @param imuStDev The standard deviation of the IMU error in <b>radians per robot loop</b>.
      * @param initialRot The intial rotation of the robot.
+     * @param source The {@link TimeSource} used to measure the time between estimates.
      */
-    public RotationEstimator3D(double imuStDev, Rotation3d initialRot) {
-        this.lastEstimate = initialRot;
+    public RotationEstimator3D(double imuStDev, Rotation3d initialRot, TimeSource source) {
+        this.lastRoll = initialRot.getX();
+        this.lastPitch = initialRot.getY();
+        this.lastYaw = initialRot.getZ();
         this.filter = new ParametricWeightedFusion(3);
-        this.xRate = new Derivative(initialRot.getX());
-        this.yRate = new Derivative(initialRot.getY());
-        this.zRate = new Derivative(initialRot.getZ());
-        this.timer = new Timer();
-        this.imuStdDev = imuStDev;
+        this.xRate = new Derivative(initialRot.getX(), source);
+        this.yRate = new Derivative(initialRot.getY(), source);
+        this.zRate = new Derivative(initialRot.getZ(), source);
+        this.timer = new Timer(source);
+        this.imuSource = new MeasurementSource(imuStDev);
+    }
+
+    /**
+     * Constructs a {@link RotationEstimator3D} object.
+     * @param imuStDev The standard deviation of the IMU error in <b>radians per robot loop</b>.
+     * @param initialRot The intial rotation of the robot.
+     */
+    public RotationEstimator3D(double imuStDev, Rotation3d initialRot) {
+        this(imuStDev, initialRot, TimeSource.getDefault());
     }
 
     /**
@@ -57,30 +82,218 @@ public class RotationEstimator3D {
      * @return The optimal estimate of the robot rotation.
      */
     public Rotation3d estimate(Rotation3d imuMeasure, Data[] yawMeasures, Data[] pitchMeasures, Data[] rollMeasures) {
-        double[] pVals = {0.0, 0.0, 0.0};
+        return estimate(imuMeasure, yawMeasures, pitchMeasures, rollMeasures, timer.getDT());
+    }
+
+    /**
+     * This method is the same as <b>estimate()</b> but uses a time step supplied by the caller instead of reading the timer.
+     * @param imuMeasure The data provided from the IMU in the form of a {@link Rotation3d} object.
+     * @param yawMeasures An array of any length (including 0) representing measurements of the yaw rotation by {@link Data} objects in <b>radians</b>.
+     * @param pitchMeasures An array of any length (including 0) representing measurements of the pitch rotation by {@link Data} objects in <b>radians</b>.
+     * @param rollMeasures An array of any length (including 0) representing measurements of the roll rotation by {@link Data} objects in <b>radians</b>.
+     * @param dt The time since the last estimate in <b>seconds</b>.
+     * @return The optimal estimate of the robot rotation.
+     */
+    public Rotation3d estimate(Rotation3d imuMeasure, Data[] yawMeasures, Data[] pitchMeasures, Data[] rollMeasures, double dt) {
+        estimate(imuMeasure, yawMeasures, pitchMeasures, rollMeasures, result, dt);
+        return new Rotation3d(result[0], result[1], result[2]);
+    }
+
+    /**
+     * An allocation free version of <b>estimate()</b> which writes the estimate into a caller supplied array.
+     * <p>
+     * The {@link Data} arrays may be different lengths. Once the arrays have been seen at their largest length, reusing the same
+     * {@link Data} objects every robot loop causes this method to allocate nothing.
+     * </p>
+     * @param imuMeasure The data provided from the IMU in the form of a {@link Rotation3d} object.
+     * @param yawMeasures An array of any length (including 0) representing measurements of the yaw rotation by {@link Data} objects in <b>radians</b>.
+     * @param pitchMeasures An array of any length (including 0) representing measurements of the pitch rotation by {@link Data} objects in <b>radians</b>.
+     * @param rollMeasures An array of any length (including 0) representing measurements of the roll rotation by {@link Data} objects in <b>radians</b>.
+     * @param out An array of length 3 which receives the estimate as <b>[roll, pitch, yaw]</b> in <b>radians</b>.
+     * @return The <b>out</b> array, which may be passed directly to <b>PoseEstimator3D.estimate()</b>.
+     */
+    public double[] estimate(Rotation3d imuMeasure, Data[] yawMeasures, Data[] pitchMeasures, Data[] rollMeasures, double[] out) {
+        return estimate(imuMeasure, yawMeasures, pitchMeasures, rollMeasures, out, timer.getDT());
+    }
+
+    /**
+     * This method is the same as the allocation free <b>estimate()</b> but uses a time step supplied by the caller instead of reading the timer.
+     * @param imuMeasure The data provided from the IMU in the form of a {@link Rotation3d} object.
+     * @param yawMeasures An array of any length (including 0) representing measurements of the yaw rotation by {@link Data} objects in <b>radians</b>.
+     * @param pitchMeasures An array of any length (including 0) representing measurements of the pitch rotation by {@link Data} objects in <b>radians</b>.
+     * @param rollMeasures An array of any length (including 0) representing measurements of the roll rotation by {@link Data} objects in <b>radians</b>.
+     * @param out An array of length 3 which receives the estimate as <b>[roll, pitch, yaw]</b> in <b>radians</b>.
+     * @param dt The time since the last estimate in <b>seconds</b>.
+     * @return The <b>out</b> array, which may be passed directly to <b>PoseEstimator3D.estimate()</b>.
+     */
+    public double[] estimate(Rotation3d imuMeasure, Data[] yawMeasures, Data[] pitchMeasures, Data[] rollMeasures, double[] out, double dt) {
+        load(0, rollMeasures);
+        load(1, pitchMeasures);
+        load(2, yawMeasures);
+        return estimate(imuMeasure, out, dt);
+    }
+
+    /**
+     * A version of the allocation free <b>estimate()</b> which takes the measurements of each axis as a {@link MeasurementBatch} filled by the caller.
+     * <p>
+     * Measurements added to a batch with <b>add(source, value)</b> keep their {@link MeasurementSource}, so with a gate set each camera can have
+     * its own source whose standard deviation is inflated every time its measurements are rejected. The batches are copied and not changed.
+     * </p>
+     * @param imuMeasure The data provided from the IMU in the form of a {@link Rotation3d} object.
+     * @param yawMeasures The measurements of the yaw rotation in <b>radians</b>, which may be empty.
+     * @param pitchMeasures The measurements of the pitch rotation in <b>radians</b>, which may be empty.
+     * @param rollMeasures The measurements of the roll rotation in <b>radians</b>, which may be empty.
+     * @param out An array of length 3 which receives the estimate as <b>[roll, pitch, yaw]</b> in <b>radians</b>.
+     * @return The <b>out</b> array, which may be passed directly to <b>PoseEstimator3D.estimate()</b>.
+     */
+    public double[] estimate(Rotation3d imuMeasure, MeasurementBatch yawMeasures, MeasurementBatch pitchMeasures, MeasurementBatch rollMeasures, double[] out) {
+        return estimate(imuMeasure, yawMeasures, pitchMeasures, rollMeasures, out, timer.getDT());
+    }
+
+    /**
+     * This method is the same as the {@link MeasurementBatch} version of <b>estimate()</b> but uses a time step supplied by the caller instead of reading the timer.
+     * @param imuMeasure The data provided from the IMU in the form of a {@link Rotation3d} object.
+     * @param yawMeasures The measurements of the yaw rotation in <b>radians</b>, which may be empty.
+     * @param pitchMeasures The measurements of the pitch rotation in <b>radians</b>, which may be empty.
+     * @param rollMeasures The measurements of the roll rotation in <b>radians</b>, which may be empty.
+     * @param out An array of length 3 which receives the estimate as <b>[roll, pitch, yaw]</b> in <b>radians</b>.
+     * @param dt The time since the last estimate in <b>seconds</b>.
+     * @return The <b>out</b> array, which may be passed directly to <b>PoseEstimator3D.estimate()</b>.
+     */
+    public double[] estimate(Rotation3d imuMeasure, MeasurementBatch yawMeasures, MeasurementBatch pitchMeasures, MeasurementBatch rollMeasures, double[] out, double dt) {
+        load(0, rollMeasures);
+        load(1, pitchMeasures);
+        load(2, yawMeasures);
+        return estimate(imuMeasure, out, dt);
+    }
+
+    /**
+     * Integrates the IMU and fuses the prediction with the measurements already loaded into the batches.
+     */
+    private double[] estimate(Rotation3d imuMeasure, double[] out, double dt) {
+        long start = metrics != null ? System.nanoTime() : 0L;
 
-        double dt = timer.getDT();
+        double imuRoll = imuMeasure.getX(), imuPitch = imuMeasure.getY(), imuYaw = imuMeasure.getZ();
+        double roll = lastRoll + Integral.riemannSum(xRate.getRate(imuRoll, dt), dt);
+        double pitch = lastPitch + Integral.riemannSum(yRate.getRate(imuPitch, dt), dt);
+        double yaw = lastYaw + Integral.riemannSum(zRate.getRate(imuYaw, dt), dt);
 
-        imuMeasure = new Rotation3d(
-            lastEstimate.getX() + Integral.riemannSum(xRate.getRate(imuMeasure.getX()), dt),
-            lastEstimate.getY() + Integral.riemannSum(yRate.getRate(imuMeasure.getY()), dt),
-            lastEstimate.getZ() + Integral.riemannSum(zRate.getRate(imuMeasure.getZ()), dt)
-        );
+        // The measurements are counted and logged before the IMU prediction is added to each batch.
+        if (metrics != null) {
+            metrics.recordMeasurements(0, batches[0].size());
+            metrics.recordMeasurements(1, batches[1].size());
+            metrics.recordMeasurements(2, batches[2].size());
+        }
 
-        ArrayList<Data> xList = new ArrayList<Data>(Arrays.asList(rollMeasures));
-        ArrayList<Data> yList = new ArrayList<Data>(Arrays.asList(pitchMeasures));
-        ArrayList<Data> zList = new ArrayList<Data>(Arrays.asList(yawMeasures));
+        if (telemetry != null) {
+            telemetry.logMeasurements(LogFormat.AXIS_ROLL, batches[0]);
+            telemetry.logMeasurements(LogFormat.AXIS_PITCH, batches[1]);
+            telemetry.logMeasurements(LogFormat.AXIS_YAW, batches[2]);
+        }
 
-        xList.add(new Data(imuMeasure.getX(), imuStdDev));
-        yList.add(new Data(imuMeasure.getY(), imuStdDev));
-        zList.add(new Data(imuMeasure.getZ(), imuStdDev));
+        batches[0].add(imuSource, roll);
+        batches[1].add(imuSource, pitch);
+        batches[2].add(imuSource, yaw);
 
         try {
-            pVals = filter.calculate(xList.toArray(Data[]::new), yList.toArray(Data[]::new), zList.toArray(Data[]::new));
-        } catch (Exception e) {
-            e.printStackTrace();
+            prediction[0] = roll;
+            prediction[1] = pitch;
+            prediction[2] = yaw;
+            double[] pVals = filter.calculate(prediction, batches);
+            out[0] = pVals[0];
+            out[1] = pVals[1];
+            out[2] = pVals[2];
+        } catch (InvalidParamterSize e) {
+            if (metrics != null) metrics.recordRejection();
+            else e.printStackTrace();
+            out[0] = roll;
+            out[1] = pitch;
+            out[2] = yaw;
+        }
+
+        if (gated && metrics != null) {
+            metrics.recordOutliers(filter.getReport(0).getRejectedCount() + filter.getReport(1).getRejectedCount() + filter.getReport(2).getRejectedCount());
+        }
+
+        lastRoll = out[0];
+        lastPitch = out[1];
+        lastYaw = out[2];
+
+        if (metrics != null) {
+            metrics.recordDt(dt);
+            metrics.recordLatency(System.nanoTime() - start);
         }
 
-        return new Rotation3d(pVals[0], pVals[1], pVals[2]);
+        if (telemetry != null) telemetry.logRotation(imuRoll, imuPitch, imuYaw, out[0], out[1], out[2]);
+
+        return out;
+    }
+
+    /**
+     * Filters the rates of change the IMU heading is turned into before they are integrated, so that noise in the IMU is not amplified.
+     * <p>
+     * For example, <b>new Derivative(0.0, Derivative.Method.LOW_PASS, source)</b> with <b>setTimeConstant(0.03)</b>. Filtering smooths the heading
+     * but makes it lag behind the IMU, so fusing other rotation measurements matters more.
+     * </p>
+     * @param settings A {@link Derivative} whose method and settings are copied to the derivative of each axis.
+     */
+    public void setRateFilter(Derivative settings) {
+        xRate.configure(settings);
+        yRate.configure(settings);
+        zRate.configure(settings);
+    }
+
+    /**
+     * Records every estimate to a telemetry log, as a <b>LogFormat.MEASUREMENT</b> record for each measurement followed by a
+     * <b>LogFormat.ROTATION</b> record of the IMU rotation and the estimate.
+     * <p>
+     * With a {@link PoseEstimator3D} recording to the same log, each loop can be replayed by a {@link frc.robot.AidenLib.replay.ReplayEngine}
+     * without an {@link Odometry3D} recording the inputs.
+     * </p>
+     * @param telemetry The log to record to, or <b>null</b> to stop recording.
+     */
+    public void setTelemetry(TelemetryLog telemetry) {
+        this.telemetry = telemetry;
+    }
+
+    /**
+     * Records the latency, time step, measurement counts and rejections of every estimate into a metrics object.
+     * <p>
+     * When metrics are set, rejected inputs are counted instead of printing a stack trace every robot loop.
+     * </p>
+     * @param metrics The metrics to record into, such as <b>new EstimatorMetrics("RotationEstimator3D", "roll", "pitch", "yaw")</b>, or <b>null</b> to stop recording.
+     */
+    public void setMetrics(EstimatorMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Sets a gate which rejects rotation measurements too far from the IMU prediction before they are fused.
+     * <p>
+     * The gate compares each measurement with the prediction rather than the previous estimate, so normal motion of the robot is never rejected.
+     * </p>
+     * @param gate The gate, such as <b>new OutlierGate(3.0, 0.05)</b>, or <b>null</b> to fuse every measurement.
+     */
+    public void setGate(OutlierGate gate) {
+        filter.setGate(gate);
+        this.gated = gate != null;
+    }
+
+    /**
+     * @param axis The index of the axis, in the order <b>[roll, pitch, yaw]</b>.
+     * @return The report of the measurements of the axis rejected by the gate in the most recent estimate.
+     */
+    public RejectionReport getReport(int axis) {
+        return filter.getReport(axis);
+    }
+
+    private void load(int axis, Data[] measures) {
+        batches[axis].clear();
+        batches[axis].addAll(measures);
+    }
+
+    private void load(int axis, MeasurementBatch measures) {
+        batches[axis].clear();
+        batches[axis].addAll(measures);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,231 @@
+package frc.robot.AidenLib.control;
+
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+
+import frc.robot.AidenLib.TimeSource;
+import frc.robot.AidenLib.Timer;
+import frc.robot.AidenLib.math.Integral;
+import frc.robot.AidenLib.math.MutableRotation3d;
+import frc.robot.AidenLib.metrics.EstimatorMetrics;
+
+/**
+ * A class which estimates the field relative velocity of the robot by fusing accelerations from an IMU with the speeds of the drivetrain.
+ * <p>
+ * Each estimate rotates the accelerometer reading into the field frame with the rotation of the robot, removes gravity and the estimated bias
+ * of the accelerometer, and integrates it onto the last velocity. The result is fused with the drivetrain speeds by their standard deviations.
+ * When the drivetrain speeds disagree with the integrated acceleration by more than the slip threshold, the wheels are taken to be slipping
+ * and only the acceleration is used until they agree again.
+ * </p>
+ * <p>
+ * While the drivetrain reports the robot is still, the reading of the accelerometer should be gravity alone, so the difference is learned as its bias.
+ * </p>
+ * <p>
+ * Every state is preallocated, so an estimate allocates nothing. <b>getRobotSpeeds()</b> turns the estimate back into robot relative speeds
+ * which can be passed to {@link Odometry3D} or {@link PoseEstimator3D} in place of the drivetrain speeds.
+ * </p>
+ */
+public class VelocityEstimator3D {
+    /** Standard gravity in <b>m/s^2</b>. */
+    public static final double GRAVITY = 9.80665;
+
+    private final double accelVariance, driveVariance;
+    private final Timer timer;
+    private EstimatorMetrics metrics;
+
+    private double gravity = GRAVITY;
+    private double biasTimeConstant = 1.0;
+    private double stillSpeed = 0.02, stillOmega = 0.02;
+    private double slipThreshold = 3.0;
+
+    private double vx, vy, vz, omega;
+    private double biasX, biasY, biasZ;
+    private boolean slipping;
+    private long slips;
+
+    private MutableRotation3d rotation = new MutableRotation3d();
+    private double[] vector = new double[3];
+
+    /**
+     * Constructs a {@link VelocityEstimator3D} object with the robot at rest.
+     * @param accelStDev The standard deviation of the velocity integrated from the accelerometer in <b>m/s per robot loop</b>.
+     * @param driveStDev The standard deviation of the drivetrain speeds in <b>m/s</b>.
+     * @param source The {@link TimeSource} used to measure the time between estimates.
+     */
+    public VelocityEstimator3D(double accelStDev, double driveStDev, TimeSource source) {
+        this.accelVariance = accelStDev * accelStDev;
+        this.driveVariance = driveStDev * driveStDev;
+        this.timer = new Timer(source);
+    }
+
+    /**
+     * Constructs a {@link VelocityEstimator3D} object with the robot at rest.
+     * @param accelStDev The standard deviation of the velocity integrated from the accelerometer in <b>m/s per robot loop</b>.
+     * @param driveStDev The standard deviation of the drivetrain speeds in <b>m/s</b>.
+     */
+    public VelocityEstimator3D(double accelStDev, double driveStDev) {
+        this(accelStDev, driveStDev, TimeSource.getDefault());
+    }
+
+    /**
+     * Estimates the field relative velocity of the robot.
+     * @param speeds Robot relative speeds of the robot in <b>m/s</b>.
+     * @param accel The reading of the accelerometer in the robot frame as <b>[x, y, z]</b> in <b>m/s^2</b>.
+     * @param rotation The rotation of the robot as <b>[roll, pitch, yaw]</b> in <b>radians</b>, such as the output of <b>RotationEstimator3D.estimate()</b>.
+     * @param out An array of length 3 which receives the field relative velocity as <b>[x, y, z]</b> in <b>m/s</b>.
+     * @return The <b>out</b> array.
+     */
+    public double[] estimate(ChassisSpeeds speeds, double[] accel, double[] rotation, double[] out) {
+        return estimate(speeds, accel, rotation, out, timer.getDT());
+    }
+
+    /**
+     * This method is the same as <b>estimate()</b> but uses a time step supplied by the caller instead of reading the timer.
+     * @param speeds Robot relative speeds of the robot in <b>m/s</b>.
+     * @param accel The reading of the accelerometer in the robot frame as <b>[x, y, z]</b> in <b>m/s^2</b>.
+     * @param rotation The rotation of the robot as <b>[roll, pitch, yaw]</b> in <b>radians</b>, such as the output of <b>RotationEstimator3D.estimate()</b>.
+     * @param out An array of length 3 which receives the field relative velocity as <b>[x, y, z]</b> in <b>m/s</b>.
+     * @param dt The time since the last estimate in <b>seconds</b>.
+     * @return The <b>out</b> array.
+     */
+    public double[] estimate(ChassisSpeeds speeds, double[] accel, double[] rotation, double[] out, double dt) {
+        long start = metrics != null ? System.nanoTime() : 0L;
+
+        double driveX = speeds.vxMetersPerSecond, driveY = speeds.vyMetersPerSecond;
+        omega = speeds.omegaRadiansPerSecond;
+        this.rotation.setEuler(rotation[0], rotation[1], rotation[2]);
+
+        // While the robot is still, the accelerometer should read gravity alone, rotated into the robot frame.
+        if (dt > 0.0 && Math.hypot(driveX, driveY) < stillSpeed && Math.abs(omega) < stillOmega) {
+            this.rotation.inverseRotate(0.0, 0.0, gravity, vector);
+            double rate = dt / (biasTimeConstant + dt);
+            biasX += rate * (accel[0] - vector[0] - biasX);
+            biasY += rate * (accel[1] - vector[1] - biasY);
+            biasZ += rate * (accel[2] - vector[2] - biasZ);
+        }
+
+        this.rotation.rotate(accel[0] - biasX, accel[1] - biasY, accel[2] - biasZ, vector);
+        double predictedX = vx + Integral.riemannSum(vector[0], dt);
+        double predictedY = vy + Integral.riemannSum(vector[1], dt);
+        double predictedZ = vz + Integral.riemannSum(vector[2] - gravity, dt);
+
+        this.rotation.rotate(driveX, driveY, 0.0, vector);
+        double rx = vector[0] - predictedX, ry = vector[1] - predictedY, rz = vector[2] - predictedZ;
+
+        // The squared distance between the two velocities in standard deviations of their difference.
+        double distance = (rx * rx + ry * ry + rz * rz) / (accelVariance + driveVariance);
+        slipping = distance > slipThreshold * slipThreshold;
+
+        if (slipping) {
+            slips++;
+            vx = predictedX;
+            vy = predictedY;
+            vz = predictedZ;
+        } else {
+            // The inverse variance weighted mean of the two, written as the prediction moved towards the drivetrain.
+            double gain = accelVariance / (accelVariance + driveVariance);
+            vx = predictedX + gain * rx;
+            vy = predictedY + gain * ry;
+            vz = predictedZ + gain * rz;
+        }
+
+        out[0] = vx;
+        out[1] = vy;
+        out[2] = vz;
+
+        if (metrics != null) {
+            if (slipping) metrics.recordOutliers(1);
+            metrics.recordDt(dt);
+            metrics.recordLatency(System.nanoTime() - start);
+        }
+        return out;
+    }
+
+    /**
+     * Turns the most recent estimate into robot relative speeds, with the rotation it was made with.
+     * @param out The speeds to write into, which may be passed to <b>Odometry3D.update()</b> or <b>PoseEstimator3D.estimate()</b>.
+     * The angular velocity is copied from the drivetrain speeds.
+     * @return The <b>out</b> speeds.
+     */
+    public ChassisSpeeds getRobotSpeeds(ChassisSpeeds out) {
+        rotation.inverseRotate(vx, vy, vz, vector);
+        out.vxMetersPerSecond = vector[0];
+        out.vyMetersPerSecond = vector[1];
+        out.omegaRadiansPerSecond = omega;
+        return out;
+    }
+
+    /**
+     * @return Whether the drivetrain speeds were rejected as wheel slip in the most recent estimate.
+     */
+    public boolean isSlipping() {
+        return slipping;
+    }
+
+    /**
+     * @return The number of estimates in which the drivetrain speeds were rejected as wheel slip.
+     */
+    public long getSlipCount() {
+        return slips;
+    }
+
+    /**
+     * @param out An array of length 3 which receives the estimated bias of the accelerometer as <b>[x, y, z]</b> in <b>m/s^2</b>.
+     * @return The <b>out</b> array.
+     */
+    public double[] getBias(double[] out) {
+        out[0] = biasX;
+        out[1] = biasY;
+        out[2] = biasZ;
+        return out;
+    }
+
+    /**
+     * Sets the bias of the accelerometer, such as one measured before a match. It is still learned while the robot is still.
+     * @param bias The bias in the robot frame as <b>[x, y, z]</b> in <b>m/s^2</b>.
+     */
+    public void setBias(double[] bias) {
+        biasX = bias[0];
+        biasY = bias[1];
+        biasZ = bias[2];
+    }
+
+    /**
+     * @param seconds The time constant the bias is learned with while the robot is still in <b>seconds</b>. The default is <b>1</b>.
+     */
+    public void setBiasTimeConstant(double seconds) {
+        this.biasTimeConstant = seconds;
+    }
+
+    /**
+     * Sets the drivetrain speeds below which the robot is taken to be still and the bias is learned.
+     * @param speed The speed in <b>m/s</b>. The default is <b>0.02</b>.
+     * @param omega The angular velocity in <b>rad/s</b>. The default is <b>0.02</b>.
+     */
+    public void setStillThreshold(double speed, double omega) {
+        this.stillSpeed = speed;
+        this.stillOmega = omega;
+    }
+
+    /**
+     * @param gravity The acceleration of gravity in <b>m/s^2</b>. Set this to <b>0</b> for an IMU which removes gravity itself. The default is <b>GRAVITY</b>.
+     */
+    public void setGravity(double gravity) {
+        this.gravity = gravity;
+    }
+
+    /**
+     * @param threshold The largest distance between the drivetrain speeds and the integrated acceleration, in <b>standard deviations</b>,
+     * before the wheels are taken to be slipping. The default is <b>3</b>.
+     */
+    public void setSlipThreshold(double threshold) {
+        this.slipThreshold = threshold;
+    }
+
+    /**
+     * Records the latency and time step of every estimate into a metrics object, and each estimate with wheel slip as an outlier.
+     * @param metrics The metrics to record into, such as <b>new EstimatorMetrics("VelocityEstimator3D")</b>, or <b>null</b> to stop recording.
+     */
+    public void setMetrics(EstimatorMetrics metrics) {
+        this.metrics = metrics;
+    }
+}
@@ -0,0 +1,49 @@
+package frc.robot.AidenLib.example;
+
+import edu.wpi.first.math.geometry.Pose3d;
+import frc.robot.AidenLib.TimeSource;
+import frc.robot.AidenLib.control.LatencyCompensatedPoseEstimator3D;
+import frc.robot.AidenLib.control.RotationEstimator3D;
+import frc.robot.AidenLib.math.Data;
+import frc.robot.AidenLib.vision.VisionFrame;
+import frc.robot.AidenLib.vision.VisionIngestion;
+
+public class AsyncEstimatorExample {
+
+    public static final double imuStdDev = 0.1;
+    public static final double driveStDev = 0.1;
+
+    private TimeSource clock = TimeSource.getDefault();
+    private RotationEstimator3D rotEstimator = new RotationEstimator3D(imuStdDev);
+    private LatencyCompensatedPoseEstimator3D poseEstimator = new LatencyCompensatedPoseEstimator3D(new Pose3d(), driveStDev, 50, 8, clock);
+    private VisionIngestion vision;
+
+    private VisionFrame frame = new VisionFrame();
+    private Data x = new Data(0.0, 1.0), y = new Data(0.0, 1.0), z = new Data(0.0, 1.0);
+    private Data[] noMeasures = {};
+
+    private double[] rotEstimate = new double[3];
+    private double[] poseEstimate = new double[3];
+
+    public AsyncEstimatorExample(Camera... cameras) {
+        vision = new VisionIngestion(0.02, 8, clock, cameras);
+        vision.start();
+    }
+
+    public void periodic(Drivetrain drive, IMU imu) {
+        rotEstimator.estimate(imu.getHeading(), noMeasures, noMeasures, noMeasures, rotEstimate);
+        poseEstimator.update(drive.getChassisSpeeds(), rotEstimate, poseEstimate);
+
+        while (vision.poll(frame)) {
+            x.value = frame.x;
+            x.stDev = frame.stDevs[2];
+            y.value = frame.y;
+            y.stDev = frame.stDevs[1];
+            z.value = frame.z;
+            z.stDev = frame.stDevs[0];
+            poseEstimator.addMeasurement(x, y, z, frame.captureTime);
+        }
+
+        poseEstimator.getEstimate(poseEstimate);
+    }
+}
@@ -7,4 +7,11 @@ public interface Camera {
     public Pose3d getPose();
     public Rotation3d getRotation();
     public double[] getStdDevs();
+
+    /**
+     * @return The time between the capture of the current pose and when it was read in <b>seconds</b>.
+     */
+    public default double getLatency() {
+        return 0.0;
+    }
 }
@@ -2,6 +2,7 @@ package frc.robot.AidenLib.example;
 
 import edu.wpi.first.math.geometry.Pose3d;
 import edu.wpi.first.math.geometry.Rotation3d;
+import frc.robot.AidenLib.Timer;
 import frc.robot.AidenLib.control.PoseEstimator3D;
 import frc.robot.AidenLib.control.RotationEstimator3D;
 import frc.robot.AidenLib.math.Data;
@@ -13,21 +14,37 @@ public class EstimatorExample {
 
     private RotationEstimator3D rotEstimator = new RotationEstimator3D(imuStdDev);
     private PoseEstimator3D poseEstimator = new PoseEstimator3D(driveStDev);
+    private Timer timer = new Timer();
+
+    private Data[] yawMeasures = {new Data(0.0, 1.0)};
+    private Data[] pitchMeasures = {new Data(0.0, 1.0)};
+    private Data[] rollMeasures = {new Data(0.0, 1.0)};
+    private Data[] xMeasures = {new Data(0.0, 1.0)};
+    private Data[] yMeasures = {new Data(0.0, 1.0)};
+    private Data[] zMeasures = {new Data(0.0, 1.0)};
+
+    private double[] rotEstimate = new double[3];
+    private double[] poseEstimate = new double[3];
 
     public void periodic(Drivetrain drive, IMU imu, Camera cam) {
+        double dt = timer.getDT();
         Pose3d camPose = cam.getPose();
         Rotation3d camRot = camPose.getRotation();
         double[] stDevs = cam.getStdDevs();
-        Rotation3d rotEstimate = rotEstimator.estimate(imu.getHeading(),
-            new Data[] {new Data(camRot.getZ(), stDevs[5])},
-            new Data[] {new Data(camRot.getY(), stDevs[4])},
-            new Data[] {new Data(camRot.getX(), stDevs[3])}
-        );
-
-        Pose3d poseEstimate = poseEstimator.estimate(drive.getChassisSpeeds(), rotEstimate,
-        new Data[] {new Data(camPose.getX(), stDevs[2])},
-        new Data[] {new Data(camPose.getY(), stDevs[1])},
-        new Data[] {new Data(camPose.getZ(), stDevs[0])}
-        );
+
+        set(yawMeasures[0], camRot.getZ(), stDevs[5]);
+        set(pitchMeasures[0], camRot.getY(), stDevs[4]);
+        set(rollMeasures[0], camRot.getX(), stDevs[3]);
+        rotEstimator.estimate(imu.getHeading(), yawMeasures, pitchMeasures, rollMeasures, rotEstimate, dt);
+
+        set(xMeasures[0], camPose.getX(), stDevs[2]);
+        set(yMeasures[0], camPose.getY(), stDevs[1]);
+        set(zMeasures[0], camPose.getZ(), stDevs[0]);
+        poseEstimator.estimate(drive.getChassisSpeeds(), rotEstimate, xMeasures, yMeasures, zMeasures, poseEstimate, dt);
+    }
+
+    private static void set(Data data, double value, double stDev) {
+        data.value = value;
+        data.stDev = stDev;
     }
 }
@@ -1,44 +1,38 @@
 package frc.robot.AidenLib.example;
 
+import edu.wpi.first.math.geometry.Rotation3d;
 import edu.wpi.first.math.kinematics.ChassisSpeeds;
 import frc.robot.AidenLib.Timer;
+import frc.robot.AidenLib.control.Odometry3D;
+import frc.robot.AidenLib.control.RotationEstimator3D;
+import frc.robot.AidenLib.control.VelocityEstimator3D;
 import frc.robot.AidenLib.math.Data;
-import frc.robot.AidenLib.math.Integral;
-import frc.robot.AidenLib.math.ParametricWeightedFusion;
-import frc.robot.AidenLib.math.ParametricWeightedFusion.InvalidParamterSize;
 
 public class IMUFusionExample {
 
     public static final double accelStDev = 0.1;
     public static final double driveStDev = 0.05;
+    public static final double imuStDev = 0.1;
 
-    private double[] lastVelEstimate = {0.0, 0.0, 0.0};
+    private VelocityEstimator3D velEstimator = new VelocityEstimator3D(accelStDev, driveStDev);
+    private RotationEstimator3D rotEstimator = new RotationEstimator3D(imuStDev);
+    private Odometry3D odometry = new Odometry3D();
     private Timer timer = new Timer();
 
-    private ParametricWeightedFusion filter = new ParametricWeightedFusion(3);
+    private Data[] noMeasures = {};
+    private double[] rotEstimate = new double[3];
+    private double[] velEstimate = new double[3];
+    private double[] position = new double[3];
+    private ChassisSpeeds fusedSpeeds = new ChassisSpeeds();
 
     public void periodic(Drivetrain drive, IMU imu) {
-        double[] accel = imu.getAccel();
         double dt = timer.getDT();
+        Rotation3d heading = imu.getHeading();
 
-        double[] vel = {0.0, 0.0, 0.0};
+        rotEstimator.estimate(heading, noMeasures, noMeasures, noMeasures, rotEstimate, dt);
+        velEstimator.estimate(drive.getChassisSpeeds(), imu.getAccel(), rotEstimate, velEstimate, dt);
 
-        vel[0] = lastVelEstimate[0] + Integral.riemannSum(accel[0], dt);
-        vel[1] = lastVelEstimate[1] + Integral.riemannSum(accel[1], dt);
-        vel[2] = lastVelEstimate[2] + Integral.riemannSum(accel[2], dt);
-
-        ChassisSpeeds speeds = drive.getChassisSpeeds();
-
-        try {
-            vel = filter.calculate(
-                new Data[] {new Data(vel[0], accelStDev), new Data(speeds.vxMetersPerSecond, driveStDev)},
-                new Data[] {new Data(vel[1], accelStDev), new Data(speeds.vyMetersPerSecond, driveStDev)},
-                new Data[] {new Data(vel[2], accelStDev), new Data(0.0, driveStDev)}
-            );
-        } catch (InvalidParamterSize e) {
-            e.printStackTrace();
-        }
-
-        lastVelEstimate = vel;
+        // While the wheels slip, the odometry follows the accelerometer instead of the wheels.
+        odometry.update(velEstimator.getRobotSpeeds(fusedSpeeds), rotEstimate, position, dt);
     }
 }
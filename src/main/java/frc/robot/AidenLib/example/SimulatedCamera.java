@@ -0,0 +1,71 @@
+package frc.robot.AidenLib.example;
+
+import java.util.Random;
+import java.util.function.Supplier;
+
+import edu.wpi.first.math.geometry.Pose3d;
+import edu.wpi.first.math.geometry.Rotation3d;
+
+/** A {@link Camera} for desktop testing which reports a noisy version of a true pose, with a fixed latency and read time. */
+public class SimulatedCamera implements Camera {
+    private final Supplier<Pose3d> truePose;
+    private final double[] stDevs;
+    private final double latency;
+    private final long readTimeMillis;
+    private final Random random;
+
+    /**
+     * Constructs a {@link SimulatedCamera} object.
+     * @param truePose Supplies the true pose of the robot. This is called from the thread reading the camera.
+     * @param stDevs The standard deviations of the noise added to <b>[z, y, x, roll, pitch, yaw]</b>, which is the order <b>EstimatorExample</b> reads them in.
+     * @param latency The reported latency of each frame in <b>seconds</b>.
+     * @param readTimeMillis How long each call of <b>getPose()</b> blocks for in <b>ms</b>, to simulate a slow camera.
+     * @param seed The seed of the noise, so runs are repeatable.
+     */
+    public SimulatedCamera(Supplier<Pose3d> truePose, double[] stDevs, double latency, long readTimeMillis, long seed) {
+        this.truePose = truePose;
+        this.stDevs = stDevs.clone();
+        this.latency = latency;
+        this.readTimeMillis = readTimeMillis;
+        this.random = new Random(seed);
+    }
+
+    @Override
+    public Pose3d getPose() {
+        if (readTimeMillis > 0) {
+            try {
+                Thread.sleep(readTimeMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        Pose3d pose = truePose.get();
+        Rotation3d rot = pose.getRotation();
+        return new Pose3d(
+            pose.getX() + random.nextGaussian() * stDevs[2],
+            pose.getY() + random.nextGaussian() * stDevs[1],
+            pose.getZ() + random.nextGaussian() * stDevs[0],
+            new Rotation3d(
+                rot.getX() + random.nextGaussian() * stDevs[3],
+                rot.getY() + random.nextGaussian() * stDevs[4],
+                rot.getZ() + random.nextGaussian() * stDevs[5]
+            )
+        );
+    }
+
+    @Override
+    public Rotation3d getRotation() {
+        return getPose().getRotation();
+    }
+
+    @Override
+    public double[] getStdDevs() {
+        return stDevs;
+    }
+
+    @Override
+    public double getLatency() {
+        return latency;
+    }
+}
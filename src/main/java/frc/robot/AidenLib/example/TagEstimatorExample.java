@@ -0,0 +1,52 @@
+package frc.robot.AidenLib.example;
+
+import edu.wpi.first.math.geometry.Pose3d;
+import edu.wpi.first.math.geometry.Rotation3d;
+import edu.wpi.first.math.geometry.Transform3d;
+import edu.wpi.first.math.geometry.Translation3d;
+import frc.robot.AidenLib.Timer;
+import frc.robot.AidenLib.control.PoseEstimator3D;
+import frc.robot.AidenLib.control.RotationEstimator3D;
+import frc.robot.AidenLib.vision.TagLayout;
+import frc.robot.AidenLib.vision.TagObservations;
+
+public class TagEstimatorExample {
+
+    public static final double imuStdDev = 0.1;
+    public static final double driveStDev = 0.1;
+
+    private RotationEstimator3D rotEstimator = new RotationEstimator3D(imuStdDev);
+    private PoseEstimator3D poseEstimator = new PoseEstimator3D(driveStDev);
+    private Timer timer = new Timer();
+
+    private TagLayout layout = new TagLayout(16, 2);
+    private TagObservations observations = new TagObservations();
+
+    private double[] rotEstimate = new double[3];
+    private double[] poseEstimate = new double[3];
+
+    public TagEstimatorExample(Pose3d[] fieldToTags) {
+        // The layout is built once at startup. Tag IDs start at 1, so the pose of tag i is fieldToTags[i - 1].
+        for (int i = 0; i < fieldToTags.length; i++) {
+            layout.setTag(i + 1, fieldToTags[i]);
+        }
+        layout.setCamera(0, new Transform3d(new Translation3d(0.3, 0.0, 0.5), new Rotation3d(0.0, -0.3, 0.0)));
+        layout.setCamera(1, new Transform3d(new Translation3d(-0.3, 0.0, 0.5), new Rotation3d(0.0, -0.3, Math.PI)));
+    }
+
+    /**
+     * @return The observations to fill with every tag seen since the last robot loop, before calling <b>periodic()</b>.
+     */
+    public TagObservations getObservations() {
+        return observations;
+    }
+
+    public void periodic(Drivetrain drive, IMU imu) {
+        double dt = timer.getDT();
+        layout.measure(observations);
+        observations.clear();
+
+        rotEstimator.estimate(imu.getHeading(), layout.getMeasures(5), layout.getMeasures(4), layout.getMeasures(3), rotEstimate, dt);
+        poseEstimator.estimate(drive.getChassisSpeeds(), rotEstimate, layout.getMeasures(0), layout.getMeasures(1), layout.getMeasures(2), poseEstimate, dt);
+    }
+}
@@ -0,0 +1,52 @@
+package frc.robot.AidenLib.log;
+
+import java.nio.ByteOrder;
+
+/**
+ * The layout of AidenLib binary logs.
+ * <p>
+ * A log is a 16 byte header followed by fixed size records, all little endian. The header is the magic number, the format version,
+ * the record size and a reserved int. Every record is <b>RECORD_SIZE</b> bytes: an int type, an int source (such as the camera index),
+ * a double timestamp in <b>seconds</b>, and <b>VALUE_COUNT</b> doubles whose meaning depends on the type. Unused values are zero.
+ * </p>
+ * <p>
+ * No record has a type of zero, so a record of zeros marks the end of a log whose file was preallocated, such as a segment of a {@link TelemetryLog}.
+ * A long log may be split into segments, each with its own header, which are read in the order of their file names.
+ * </p>
+ */
+public final class LogFormat {
+    public static final int MAGIC = 0x474F4C41; // "ALOG" when read as little endian bytes
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 16;
+    public static final int VALUE_COUNT = 14;
+    public static final int RECORD_SIZE = 4 + 4 + 8 + 8 * VALUE_COUNT;
+    public static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+
+    /** The inputs of one robot loop. Values: <b>vx, vy, omega</b> (robot relative, <b>m/s</b> and <b>rad/s</b>), <b>roll, pitch, yaw</b> of the IMU. */
+    public static final int INPUT = 1;
+
+    /** A camera measurement. Source: camera index. Values: <b>x, y, z, roll, pitch, yaw</b>, then their 6 standard deviations in the same order. */
+    public static final int CAMERA = 2;
+
+    /**
+     * The output of a pose estimator. Source: <b>1</b> if values 6 to 8 hold the robot relative speeds the estimate integrated, <b>0</b> if not.
+     * Values: <b>x, y, z, roll, pitch, yaw</b>, then <b>vx, vy, omega</b> in <b>m/s</b> and <b>rad/s</b>.
+     */
+    public static final int ESTIMATE = 3;
+
+    /** A reference pose, such as the ground truth of a simulation. Values: <b>x, y, z, roll, pitch, yaw</b>. */
+    public static final int REFERENCE = 4;
+
+    /** The output of an {@link frc.robot.AidenLib.control.Odometry3D}. Values: <b>x, y, z, roll, pitch, yaw</b>. */
+    public static final int ODOMETRY = 5;
+
+    /** One {@link frc.robot.AidenLib.math.Data} passed to an estimator. Source: the axis, such as <b>AXIS_X</b>. Values: <b>value, stDev</b>. */
+    public static final int MEASUREMENT = 6;
+
+    /** The input and output of a rotation estimator. Values: <b>roll, pitch, yaw</b> of the IMU, then <b>roll, pitch, yaw</b> of the estimate. */
+    public static final int ROTATION = 7;
+
+    public static final int AXIS_X = 0, AXIS_Y = 1, AXIS_Z = 2, AXIS_ROLL = 3, AXIS_PITCH = 4, AXIS_YAW = 5;
+
+    private LogFormat() {}
+}
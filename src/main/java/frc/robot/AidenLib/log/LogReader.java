@@ -0,0 +1,121 @@
+package frc.robot.AidenLib.log;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/** A class which reads the records of a binary log as described by {@link LogFormat}. */
+public class LogReader {
+    private final ByteBuffer[] segments;
+    private int segment;
+
+    /**
+     * Constructs a {@link LogReader} object over a log held in memory.
+     * <p>
+     * The buffers are duplicated, so several readers may read the same buffers at once from different threads.
+     * </p>
+     * @param segments The segments of the log in order, each starting at its header.
+     * @throws IOException This is thrown when a header is not a supported AidenLib log.
+     */
+    public LogReader(ByteBuffer... segments) throws IOException {
+        this.segments = new ByteBuffer[segments.length];
+        for (int i = 0; i < segments.length; i++) {
+            ByteBuffer buffer = segments[i].duplicate().order(LogFormat.ORDER);
+            readHeader(buffer);
+            this.segments[i] = buffer;
+        }
+    }
+
+    private static void readHeader(ByteBuffer buffer) throws IOException {
+        if (buffer.remaining() < LogFormat.HEADER_SIZE) throw new IOException("The log is shorter than its header.");
+        int magic = buffer.getInt();
+        int version = buffer.getInt();
+        int recordSize = buffer.getInt();
+        buffer.getInt();
+
+        if (magic != LogFormat.MAGIC) throw new IOException("The file is not an AidenLib log.");
+        if (version != LogFormat.VERSION) throw new IOException("Unsupported log version: " + version);
+        if (recordSize != LogFormat.RECORD_SIZE) throw new IOException("Unsupported record size: " + recordSize);
+    }
+
+    /**
+     * Maps log files into memory and reads them.
+     * @param paths The paths of the segments of the log in order, or of a directory holding them.
+     * @return A reader of the log.
+     * @throws IOException This is thrown when a file can not be read or is not a supported AidenLib log.
+     */
+    public static LogReader open(Path... paths) throws IOException {
+        return new LogReader(map(paths));
+    }
+
+    /**
+     * Maps log files into memory, so they can be shared by several readers.
+     * @param paths The paths of the segments of the log in order. A directory is replaced by the segments it holds, as listed by <b>segments()</b>.
+     * @return The contents of the files.
+     * @throws IOException This is thrown when a file can not be read.
+     */
+    public static ByteBuffer[] map(Path... paths) throws IOException {
+        List<ByteBuffer> buffers = new ArrayList<>();
+        for (Path path : paths) {
+            if (Files.isDirectory(path)) {
+                for (Path file : segments(path)) {
+                    buffers.add(mapFile(file));
+                }
+            } else {
+                buffers.add(mapFile(path));
+            }
+        }
+        return buffers.toArray(new ByteBuffer[0]);
+    }
+
+    private static ByteBuffer mapFile(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    /**
+     * @param directory A directory holding log segments.
+     * @return The paths of every <b>.alog</b> file in the directory, ordered by name.
+     * @throws IOException This is thrown when the directory can not be read.
+     */
+    public static List<Path> segments(Path directory) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*.alog")) {
+            for (Path file : stream) {
+                files.add(file);
+            }
+        }
+        Collections.sort(files);
+        return files;
+    }
+
+    /**
+     * Reads the next record. A partly written record, or a record of zeros, ends a segment.
+     * @param out The record to read into.
+     * @return Whether a record was read, which is false at the end of the log.
+     */
+    public boolean next(LogRecord out) {
+        while (segment < segments.length) {
+            ByteBuffer buffer = segments[segment];
+            if (buffer.remaining() >= LogFormat.RECORD_SIZE && buffer.getInt(buffer.position()) != 0) {
+                out.type = buffer.getInt();
+                out.source = buffer.getInt();
+                out.timestamp = buffer.getDouble();
+                for (int i = 0; i < LogFormat.VALUE_COUNT; i++) {
+                    out.values[i] = buffer.getDouble();
+                }
+                return true;
+            }
+            segment++;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,30 @@
+package frc.robot.AidenLib.log;
+
+import java.util.Arrays;
+
+/**
+ * Class to represent one record of a binary log as described by {@link LogFormat}.
+ * <p>
+ * A {@link LogRecord} is reused for every record read, so reading a log does not allocate.
+ * </p>
+ */
+public class LogRecord {
+    public int type, source;
+    public double timestamp;
+    public final double[] values = new double[LogFormat.VALUE_COUNT];
+
+    /**
+     * Sets the type, source and time of the record and clears its values.
+     * @param type The type of the record, such as <b>LogFormat.INPUT</b>.
+     * @param source The source of the record, such as the camera index.
+     * @param timestamp The time of the record in <b>seconds</b>.
+     * @return This record, so calls may be chained.
+     */
+    public LogRecord set(int type, int source, double timestamp) {
+        this.type = type;
+        this.source = source;
+        this.timestamp = timestamp;
+        Arrays.fill(values, 0.0);
+        return this;
+    }
+}
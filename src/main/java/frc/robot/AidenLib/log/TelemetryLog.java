@@ -0,0 +1,467 @@
+package frc.robot.AidenLib.log;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+import edu.wpi.first.math.geometry.Rotation3d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+
+import frc.robot.AidenLib.TimeSource;
+import frc.robot.AidenLib.math.Data;
+import frc.robot.AidenLib.math.MeasurementBatch;
+import frc.robot.AidenLib.metrics.MetricsSink;
+import frc.robot.AidenLib.metrics.MetricsSource;
+
+/**
+ * A class which records estimator inputs and outputs to memory mapped files in the format described by {@link LogFormat}.
+ * <p>
+ * The <b>log</b> methods only encode a record into a preallocated off heap ring buffer, so they never block on I/O and allocate nothing.
+ * Any number of threads may log at once: each record claims its slot with a compare and set and is marked complete when written.
+ * A background thread copies completed records into the current segment, a file mapped into memory at its full size. When a segment is full
+ * it is forced to disk, unmapped, and the next one is created. If the ring buffer is full the record is dropped and counted rather than waiting.
+ * </p>
+ * <p>
+ * If a segment can not be created, the log stops writing and counts every later record as dropped. The failure is kept rather than printed,
+ * so check <b>isFailed()</b> or publish the log as a {@link MetricsSource} to see it.
+ * </p>
+ * <p>
+ * The files are named <b>prefix-00000.alog</b>, <b>prefix-00001.alog</b> and so on, and can be read with <b>LogReader.open(directory)</b>.
+ * </p>
+ */
+public class TelemetryLog implements AutoCloseable, MetricsSource {
+    // Unmapping a segment as soon as it is full keeps long runs from filling the address space of the 32 bit roboRIO while the garbage collector
+    // has not yet freed the old buffers. There is no public API for it, so this is null on a JVM without sun.misc.Unsafe.invokeCleaner().
+    private static final Object UNSAFE;
+    private static final Method INVOKE_CLEANER;
+
+    static {
+        Object unsafe = null;
+        Method invokeCleaner = null;
+        try {
+            Class<?> type = Class.forName("sun.misc.Unsafe");
+            Field field = type.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            unsafe = field.get(null);
+            invokeCleaner = type.getMethod("invokeCleaner", ByteBuffer.class);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            unsafe = null;
+            invokeCleaner = null;
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invokeCleaner;
+    }
+
+    private final Path directory;
+    private final String prefix;
+    private final long segmentSize;
+    private final long periodNanos;
+    private final TimeSource source;
+
+    private final ByteBuffer ring;
+    private final int capacity, mask;
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLongArray committed;
+    private final AtomicLong dropped = new AtomicLong();
+
+    // Only used by the flush thread, or by close() once the flush thread has stopped.
+    private final ByteBuffer ringView;
+    private MappedByteBuffer segment;
+    private volatile int segmentCount;
+    private volatile long written;
+    private volatile IOException failure;
+
+    private final String writtenKey, droppedKey, segmentKey, failedKey;
+
+    private Thread thread;
+    private volatile boolean running, closed;
+
+    /**
+     * Constructs a {@link TelemetryLog} object and creates its first segment. Call <b>start()</b> to begin writing records to disk.
+     * @param directory The directory to write the segments into, which is created if it does not exist.
+     * @param prefix The start of the name of each segment.
+     * @param segmentRecords The number of records in each segment.
+     * @param bufferRecords The number of records the ring buffer holds between flushes, rounded up to a power of two.
+     * @param flushPeriod The time between flushes of the ring buffer in <b>seconds</b>.
+     * @param source The {@link TimeSource} which timestamps the records.
+     * @throws IOException This is thrown when the first segment can not be created.
+     */
+    public TelemetryLog(Path directory, String prefix, int segmentRecords, int bufferRecords, double flushPeriod, TimeSource source) throws IOException {
+        if (segmentRecords < 1) throw new IllegalArgumentException("A segment must hold at least one record: " + segmentRecords);
+
+        this.directory = directory;
+        this.prefix = prefix;
+        this.segmentSize = LogFormat.HEADER_SIZE + (long) segmentRecords * LogFormat.RECORD_SIZE;
+        this.periodNanos = (long) (flushPeriod * 1e9);
+        this.source = source;
+
+        int size = Integer.highestOneBit(Math.max(bufferRecords, 2) - 1) << 1;
+        this.capacity = size;
+        this.mask = size - 1;
+        this.ring = ByteBuffer.allocateDirect(size * LogFormat.RECORD_SIZE).order(LogFormat.ORDER);
+        this.ringView = ring.duplicate().order(LogFormat.ORDER);
+        this.committed = new AtomicLongArray(size);
+
+        writtenKey = "TelemetryLog/" + prefix + "/written";
+        droppedKey = "TelemetryLog/" + prefix + "/dropped";
+        segmentKey = "TelemetryLog/" + prefix + "/segments";
+        failedKey = "TelemetryLog/" + prefix + "/failed";
+
+        Files.createDirectories(directory);
+        nextSegment();
+    }
+
+    /**
+     * Constructs a {@link TelemetryLog} object with segments of <b>65536</b> records (8 MiB), a ring buffer of <b>4096</b> records
+     * and a flush every <b>20 ms</b>. Call <b>start()</b> to begin writing records to disk.
+     * @param directory The directory to write the segments into, which is created if it does not exist.
+     * @param source The {@link TimeSource} which timestamps the records.
+     * @throws IOException This is thrown when the first segment can not be created.
+     */
+    public TelemetryLog(Path directory, TimeSource source) throws IOException {
+        this(directory, "telemetry", 65536, 4096, 0.02, source);
+    }
+
+    /**
+     * Starts the flush thread. This does nothing if it is already running.
+     */
+    public synchronized void start() {
+        if (running) return;
+        running = true;
+
+        thread = new Thread(this::run, "TelemetryLog");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops the flush thread, writes every record logged before the call, and forces the current segment to disk and unmaps it.
+     * Records logged after this are dropped.
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        running = false;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            thread = null;
+        }
+
+        flush();
+        if (segment != null) {
+            segment.force();
+            unmap(segment);
+            segment = null;
+        }
+    }
+
+    private void run() {
+        while (running) {
+            flush();
+            LockSupport.parkNanos(periodNanos);
+        }
+    }
+
+    /**
+     * Copies every completed record from the ring buffer into the current segment, in the order the records claimed their slots.
+     */
+    private void flush() {
+        long next = head.get();
+        while (committed.get((int) next & mask) == next + 1) {
+            if (segment != null && segment.remaining() < LogFormat.RECORD_SIZE) {
+                try {
+                    nextSegment();
+                } catch (IOException e) {
+                    failure = e;
+                }
+            }
+            // The segment is null once creating one has failed or the log is closed.
+            if (segment != null) {
+                int offset = ((int) next & mask) * LogFormat.RECORD_SIZE;
+                ringView.clear().position(offset).limit(offset + LogFormat.RECORD_SIZE);
+                segment.put(ringView);
+                written = written + 1;
+            } else {
+                dropped.incrementAndGet();
+            }
+
+            next++;
+            head.lazySet(next);
+        }
+    }
+
+    private void nextSegment() throws IOException {
+        if (segment != null) {
+            segment.force();
+            unmap(segment);
+            segment = null;
+        }
+
+        Path path = directory.resolve(String.format("%s-%05d.alog", prefix, segmentCount));
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        }
+        segment.order(LogFormat.ORDER);
+        segment.putInt(LogFormat.MAGIC);
+        segment.putInt(LogFormat.VERSION);
+        segment.putInt(LogFormat.RECORD_SIZE);
+        segment.putInt(0);
+        segmentCount = segmentCount + 1;
+    }
+
+    /**
+     * Unmaps a segment now instead of when it is garbage collected. The segment must not be used afterwards.
+     */
+    private static void unmap(MappedByteBuffer buffer) {
+        if (INVOKE_CLEANER == null) return;
+        try {
+            INVOKE_CLEANER.invoke(UNSAFE, buffer);
+        } catch (ReflectiveOperationException e) {
+            // The mapping is released when the buffer is garbage collected instead.
+        }
+    }
+
+    /**
+     * Claims a slot in the ring buffer and writes the type, source and time of a record into it.
+     * @return The sequence number of the slot, or <b>-1</b> if the ring buffer is full or the log is closed.
+     */
+    private long begin(int type, int source) {
+        if (closed) {
+            dropped.incrementAndGet();
+            return -1;
+        }
+
+        long seq;
+        do {
+            seq = tail.get();
+            if (seq - head.get() >= capacity) {
+                dropped.incrementAndGet();
+                return -1;
+            }
+        } while (!tail.compareAndSet(seq, seq + 1));
+
+        // Absolute puts do not change the state of the buffer, so each thread may write its own slot at once.
+        int offset = ((int) seq & mask) * LogFormat.RECORD_SIZE;
+        ring.putInt(offset, type);
+        ring.putInt(offset + 4, source);
+        ring.putDouble(offset + 8, this.source.getTime());
+        for (int i = 0; i < LogFormat.VALUE_COUNT; i++) {
+            ring.putDouble(offset + 16 + 8 * i, 0.0);
+        }
+        return seq;
+    }
+
+    private void value(long seq, int index, double value) {
+        ring.putDouble(((int) seq & mask) * LogFormat.RECORD_SIZE + 16 + 8 * index, value);
+    }
+
+    private void commit(long seq) {
+        committed.lazySet((int) seq & mask, seq + 1);
+    }
+
+    /**
+     * Logs the inputs of one robot loop as a <b>LogFormat.INPUT</b> record.
+     * @param speeds Robot relative speeds of the robot in <b>m/s</b>.
+     * @param imu The rotation of the robot as supplied by an IMU.
+     */
+    public void logInput(ChassisSpeeds speeds, Rotation3d imu) {
+        logInput(speeds, imu.getX(), imu.getY(), imu.getZ());
+    }
+
+    /**
+     * Logs the inputs of one robot loop as a <b>LogFormat.INPUT</b> record.
+     * @param speeds Robot relative speeds of the robot in <b>m/s</b>.
+     * @param roll The roll of the robot as supplied by an IMU in <b>radians</b>.
+     * @param pitch The pitch of the robot as supplied by an IMU in <b>radians</b>.
+     * @param yaw The yaw of the robot as supplied by an IMU in <b>radians</b>.
+     */
+    public void logInput(ChassisSpeeds speeds, double roll, double pitch, double yaw) {
+        long seq = begin(LogFormat.INPUT, 0);
+        if (seq < 0) return;
+        value(seq, 0, speeds.vxMetersPerSecond);
+        value(seq, 1, speeds.vyMetersPerSecond);
+        value(seq, 2, speeds.omegaRadiansPerSecond);
+        value(seq, 3, roll);
+        value(seq, 4, pitch);
+        value(seq, 5, yaw);
+        commit(seq);
+    }
+
+    /**
+     * Logs each measurement of one axis as a <b>LogFormat.MEASUREMENT</b> record.
+     * @param axis The axis which was measured, such as <b>LogFormat.AXIS_X</b>.
+     * @param measures The measurements of the axis.
+     */
+    public void logMeasurements(int axis, Data[] measures) {
+        for (Data measure : measures) {
+            long seq = begin(LogFormat.MEASUREMENT, axis);
+            if (seq < 0) return;
+            value(seq, 0, measure.value);
+            value(seq, 1, measure.stDev);
+            commit(seq);
+        }
+    }
+
+    /**
+     * Logs each measurement in a batch as a <b>LogFormat.MEASUREMENT</b> record.
+     * @param axis The axis which was measured, such as <b>LogFormat.AXIS_X</b>.
+     * @param measures The measurements of the axis.
+     */
+    public void logMeasurements(int axis, MeasurementBatch measures) {
+        for (int i = 0; i < measures.size(); i++) {
+            long seq = begin(LogFormat.MEASUREMENT, axis);
+            if (seq < 0) return;
+            value(seq, 0, measures.getValue(i));
+            value(seq, 1, measures.getStDev(i));
+            commit(seq);
+        }
+    }
+
+    /**
+     * Logs a pose, such as <b>LogFormat.ESTIMATE</b> or <b>LogFormat.ODOMETRY</b>.
+     * @param type The type of the record.
+     * @param x The X position in <b>m</b>.
+     * @param y The Y position in <b>m</b>.
+     * @param z The Z position in <b>m</b>.
+     * @param roll The roll in <b>radians</b>.
+     * @param pitch The pitch in <b>radians</b>.
+     * @param yaw The yaw in <b>radians</b>.
+     */
+    public void logPose(int type, double x, double y, double z, double roll, double pitch, double yaw) {
+        long seq = begin(type, 0);
+        if (seq < 0) return;
+        value(seq, 0, x);
+        value(seq, 1, y);
+        value(seq, 2, z);
+        value(seq, 3, roll);
+        value(seq, 4, pitch);
+        value(seq, 5, yaw);
+        commit(seq);
+    }
+
+    /**
+     * Logs the output of a pose estimator as a <b>LogFormat.ESTIMATE</b> record, with the speeds it integrated so the loop can be replayed.
+     * @param x The X position in <b>m</b>.
+     * @param y The Y position in <b>m</b>.
+     * @param z The Z position in <b>m</b>.
+     * @param roll The roll in <b>radians</b>.
+     * @param pitch The pitch in <b>radians</b>.
+     * @param yaw The yaw in <b>radians</b>.
+     * @param speeds Robot relative speeds of the robot in <b>m/s</b>, or <b>null</b> if the estimate was not integrated from speeds.
+     */
+    public void logEstimate(double x, double y, double z, double roll, double pitch, double yaw, ChassisSpeeds speeds) {
+        long seq = begin(LogFormat.ESTIMATE, speeds != null ? 1 : 0);
+        if (seq < 0) return;
+        value(seq, 0, x);
+        value(seq, 1, y);
+        value(seq, 2, z);
+        value(seq, 3, roll);
+        value(seq, 4, pitch);
+        value(seq, 5, yaw);
+        if (speeds != null) {
+            value(seq, 6, speeds.vxMetersPerSecond);
+            value(seq, 7, speeds.vyMetersPerSecond);
+            value(seq, 8, speeds.omegaRadiansPerSecond);
+        }
+        commit(seq);
+    }
+
+    /**
+     * Logs the input and output of a rotation estimator as a <b>LogFormat.ROTATION</b> record.
+     * @param imuRoll The roll of the robot as supplied by an IMU in <b>radians</b>.
+     * @param imuPitch The pitch of the robot as supplied by an IMU in <b>radians</b>.
+     * @param imuYaw The yaw of the robot as supplied by an IMU in <b>radians</b>.
+     * @param roll The estimated roll in <b>radians</b>.
+     * @param pitch The estimated pitch in <b>radians</b>.
+     * @param yaw The estimated yaw in <b>radians</b>.
+     */
+    public void logRotation(double imuRoll, double imuPitch, double imuYaw, double roll, double pitch, double yaw) {
+        long seq = begin(LogFormat.ROTATION, 0);
+        if (seq < 0) return;
+        value(seq, 0, imuRoll);
+        value(seq, 1, imuPitch);
+        value(seq, 2, imuYaw);
+        value(seq, 3, roll);
+        value(seq, 4, pitch);
+        value(seq, 5, yaw);
+        commit(seq);
+    }
+
+    /**
+     * Logs a measurement of the full pose from a camera as a <b>LogFormat.CAMERA</b> record.
+     * @param camera The index of the camera.
+     * @param pose The measured pose as <b>[x, y, z, roll, pitch, yaw]</b> in <b>m</b> and <b>radians</b>.
+     * @param stDevs The standard deviations of the measurement in the same order.
+     */
+    public void logCamera(int camera, double[] pose, double[] stDevs) {
+        long seq = begin(LogFormat.CAMERA, camera);
+        if (seq < 0) return;
+        for (int i = 0; i < 6; i++) {
+            value(seq, i, pose[i]);
+            value(seq, 6 + i, stDevs[i]);
+        }
+        commit(seq);
+    }
+
+    /**
+     * @return The number of records which were dropped because the ring buffer was full, a segment could not be created, or the log was closed.
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * @return The number of records written into segments.
+     */
+    public long getWritten() {
+        return written;
+    }
+
+    /**
+     * @return The number of segments created.
+     */
+    public int getSegmentCount() {
+        return segmentCount;
+    }
+
+    /**
+     * @return Whether a segment could not be created, after which every record is dropped.
+     */
+    public boolean isFailed() {
+        return failure != null;
+    }
+
+    /**
+     * @return The error which stopped the log from creating a segment, or <b>null</b> if it has not failed.
+     */
+    public IOException getFailure() {
+        return failure;
+    }
+
+    /**
+     * Passes the number of records written and dropped, the number of segments, and <b>1</b> if the log has failed or <b>0</b> if not, to a sink.
+     * @param sink The sink to publish to.
+     */
+    @Override
+    public void publish(MetricsSink sink) {
+        sink.accept(writtenKey, written);
+        sink.accept(droppedKey, dropped.get());
+        sink.accept(segmentKey, segmentCount);
+        sink.accept(failedKey, failure != null ? 1.0 : 0.0);
+    }
+}
@@ -1,19 +1,75 @@
 package frc.robot.AidenLib.math;
 
+import frc.robot.AidenLib.TimeSource;
 import frc.robot.AidenLib.Timer;
 
-/** A class which solves for the rate of change in a value. */
+/**
+ * A class which solves for the rate of change in a value.
+ * <p>
+ * By default the rate is the difference between the last two values over the time between them, which amplifies any noise in the values.
+ * The other {@link Method}s filter the rate. Each of them holds a fixed amount of state, so every call takes constant time and allocates nothing.
+ * </p>
+ */
 public class Derivative {
-    private double lastVal;
+
+    /** The ways a {@link Derivative} can find the rate of change. */
+    public enum Method {
+        /** The difference between the last two values over the time between them. */
+        DIFFERENCE,
+        /** The difference passed through a first order low pass filter with the time constant of <b>setTimeConstant()</b>. */
+        LOW_PASS,
+        /**
+         * The slope of the least squares line through the last <b>setWindow()</b> values, which is the Savitzky-Golay derivative when the values
+         * are evenly spaced. The line is centered on the newest value, so it lags by about half the window.
+         */
+        REGRESSION,
+        /** An alpha-beta filter, which tracks the value and its rate with the gains of <b>setGains()</b> and follows a steady rate without lag. */
+        ALPHA_BETA
+    }
+
+    private double lastVal, lastRate;
     private Timer timer;
+    private Method method = Method.DIFFERENCE;
+
+    private double timeConstant = 0.05;
+    private double alpha = 0.5, beta = 0.1;
+    private double estimate;
+    private boolean started;
+
+    // The regression window: the samples in a ring, and sums over them with the time and value of the newest sample as the origin.
+    private double[] times = new double[5], values = new double[5];
+    private int count, next, sinceRebuild;
+    private double clock;
+    private double sumT, sumX, sumTT, sumTX;
 
     /**
      * Constructs a new {@link Derivative} object.
      * @param x The initial value.
+     * @param method The way the rate of change is found.
+     * @param source The {@link TimeSource} used to measure the time between calls.
      */
-    public Derivative(double x) {
+    public Derivative(double x, Method method, TimeSource source) {
         this.lastVal = x;
-        this.timer = new Timer();
+        this.lastRate = 0.0;
+        this.timer = new Timer(source);
+        setMethod(method);
+    }
+
+    /**
+     * Constructs a new {@link Derivative} object which takes the difference between the last two values.
+     * @param x The initial value.
+     * @param source The {@link TimeSource} used to measure the time between calls.
+     */
+    public Derivative(double x, TimeSource source) {
+        this(x, Method.DIFFERENCE, source);
+    }
+
+    /**
+     * Constructs a new {@link Derivative} object.
+     * @param x The initial value.
+     */
+    public Derivative(double x) {
+        this(x, TimeSource.getDefault());
     }
 
     /**
@@ -25,12 +81,168 @@ public class Derivative {
 
     /**
      * Call this in a method that loops (such as a periodic method).
+     * <p>
+     * If no time has passed since the last call, the previous rate is returned and the change in value is carried to the next call.
+     * </p>
      * @param x The value who's rate of change is being solved for.
      * @return The rate of change of the input parameter.
      */
     public double getRate(double x) {
-        double dx = x - lastVal;
+        return getRate(x, timer.getDT());
+    }
+
+    /**
+     * This method is the same as <b>getRate(x)</b> but uses a time step supplied by the caller instead of reading the timer.
+     * <p>
+     * This allows one clock read per robot loop to drive every derivative. Do not mix calls of both versions on the same object.
+     * </p>
+     * @param x The value who's rate of change is being solved for.
+     * @param dt The time since the last call in <b>seconds</b>.
+     * @return The rate of change of the input parameter.
+     */
+    public double getRate(double x, double dt) {
+        if (dt <= 0.0) return lastRate;
+
+        double raw = (x - lastVal) / dt;
+        switch (method) {
+            case LOW_PASS:
+                lastRate += dt / (timeConstant + dt) * (raw - lastRate);
+                break;
+            case REGRESSION:
+                lastRate = regression(x, dt);
+                break;
+            case ALPHA_BETA:
+                double predicted = estimate + lastRate * dt;
+                double residual = x - predicted;
+                estimate = predicted + alpha * residual;
+                lastRate += beta * residual / dt;
+                break;
+            default:
+                lastRate = raw;
+                break;
+        }
         lastVal = x;
-        return dx / timer.getDT();
+        return lastRate;
+    }
+
+    private double regression(double x, double dt) {
+        clock += dt;
+        double shiftX = x - lastVal;
+
+        // Moving the origin to the new sample shifts every sum without visiting the samples.
+        sumTT -= 2.0 * dt * sumT - count * dt * dt;
+        sumTX -= dt * sumX + shiftX * sumT - count * dt * shiftX;
+        sumT -= count * dt;
+        sumX -= count * shiftX;
+
+        int window = times.length;
+        if (count == window) {
+            // The oldest sample leaves the window.
+            double t = times[next] - clock, v = values[next] - x;
+            sumT -= t;
+            sumX -= v;
+            sumTT -= t * t;
+            sumTX -= t * v;
+        } else {
+            count++;
+        }
+        times[next] = clock;
+        values[next] = x;
+        next = (next + 1) % window;
+
+        // The new sample is at the origin, so it adds nothing to the sums. Rounding is cleared by rebuilding them once per window.
+        if (++sinceRebuild >= window) rebuild(x);
+
+        if (count < 2) return (x - lastVal) / dt;
+        double denominator = count * sumTT - sumT * sumT;
+        return denominator > 0.0 ? (count * sumTX - sumT * sumX) / denominator : lastRate;
+    }
+
+    private void rebuild(double x) {
+        sumT = 0.0;
+        sumX = 0.0;
+        sumTT = 0.0;
+        sumTX = 0.0;
+        for (int i = 0; i < count; i++) {
+            double t = times[i] - clock, v = values[i] - x;
+            sumT += t;
+            sumX += v;
+            sumTT += t * t;
+            sumTX += t * v;
+        }
+        sinceRebuild = 0;
+    }
+
+    /**
+     * Changes the way the rate of change is found. The last value and rate are kept, and the state of the new method starts from them.
+     * @param method The way the rate of change is found.
+     */
+    public void setMethod(Method method) {
+        this.method = method;
+        this.estimate = lastVal;
+        this.count = 0;
+        this.next = 0;
+        this.sinceRebuild = 0;
+        this.sumT = 0.0;
+        this.sumX = 0.0;
+        this.sumTT = 0.0;
+        this.sumTX = 0.0;
+        // The value before any call is the first sample of the regression window.
+        if (method == Method.REGRESSION) {
+            times[0] = clock;
+            values[0] = lastVal;
+            count = 1;
+            next = 1 % times.length;
+        }
+    }
+
+    /**
+     * @param seconds The time constant of <b>Method.LOW_PASS</b> in <b>seconds</b>. The default is <b>0.05</b>.
+     */
+    public void setTimeConstant(double seconds) {
+        this.timeConstant = seconds;
+    }
+
+    /**
+     * Sets the number of values <b>Method.REGRESSION</b> fits its line through, which clears the window.
+     * @param samples The number of values, at least <b>2</b>. The default is <b>5</b>.
+     */
+    public void setWindow(int samples) {
+        if (samples < 2) throw new IllegalArgumentException("A regression needs at least two samples: " + samples);
+        this.times = new double[samples];
+        this.values = new double[samples];
+        setMethod(method);
+    }
+
+    /**
+     * Sets the gains of <b>Method.ALPHA_BETA</b>. Larger gains follow changes faster but pass through more noise.
+     * @param alpha The fraction of each error which corrects the value, from <b>0</b> to <b>1</b>. The default is <b>0.5</b>.
+     * @param beta The fraction of each error over the time step which corrects the rate, from <b>0</b> to <b>2</b>. The default is <b>0.1</b>.
+     */
+    public void setGains(double alpha, double beta) {
+        this.alpha = alpha;
+        this.beta = beta;
+    }
+
+    /**
+     * Copies the method and every setting of another {@link Derivative}, such as one made only to hold settings, and keeps the last value of this one.
+     * @param settings The derivative to copy the settings of.
+     */
+    public void configure(Derivative settings) {
+        this.timeConstant = settings.timeConstant;
+        this.alpha = settings.alpha;
+        this.beta = settings.beta;
+        if (settings.times.length != times.length) {
+            this.times = new double[settings.times.length];
+            this.values = new double[settings.values.length];
+        }
+        setMethod(settings.method);
+    }
+
+    /**
+     * @return The way the rate of change is found.
+     */
+    public Method getMethod() {
+        return method;
     }
 }
@@ -1,19 +1,65 @@
 package frc.robot.AidenLib.math;
 
+import frc.robot.AidenLib.TimeSource;
 import frc.robot.AidenLib.Timer;
 
-/** A class which approximates an integrated value with respect to time. */
+/**
+ * A class which approximates an integrated value with respect to time.
+ * <p>
+ * The approximation of each interval is chosen by a {@link Method}. The higher order methods fit a curve through the last few samples,
+ * which may be unevenly spaced in time, so they are more accurate at the same loop rate without needing the loop to run faster.
+ * Until enough samples have been seen, a method falls back to the next lower order.
+ * </p>
+ */
 public class Integral {
-    
+
+    /** The ways an {@link Integral} can approximate the area of each interval. */
+    public enum Method {
+        /** A rectangle with the height of the newest sample (<b>riemannSum()</b>). First order. */
+        RIEMANN,
+        /** A trapezoid between the last two samples (<b>linearSum()</b>). Second order. */
+        TRAPEZOID,
+        /** The quadratic through the last three samples (<b>simpsonSum()</b>), which is Simpson's rule spread over each interval. Third order. */
+        SIMPSON,
+        /** The classic fourth order Runge-Kutta step, with its midpoint read from the cubic through the last four samples (<b>rk4Sum()</b>). */
+        RK4
+    }
+
     protected double total;
-    protected Timer timer = new Timer();
+    protected Timer timer;
+    private final Method method;
+
+    // The last three samples before the newest and the time steps between them, oldest first: v0 -h1- v1 -h2- v2.
+    private double v0, v1, v2, h1, h2;
+    private int samples;
 
     /**
      * Constructs an {@link Integral} object.
      * @param C The initial value of the integral.
+     * @param method The approximation of each interval.
+     * @param source The {@link TimeSource} used to measure the time between calls.
      */
-    public Integral(double C) {
+    public Integral(double C, Method method, TimeSource source) {
         this.total = C;
+        this.method = method;
+        this.timer = new Timer(source);
+    }
+
+    /**
+     * Constructs an {@link Integral} object which uses a Riemann Sum.
+     * @param C The initial value of the integral.
+     * @param source The {@link TimeSource} used to measure the time between calls.
+     */
+    public Integral(double C, TimeSource source) {
+        this(C, Method.RIEMANN, source);
+    }
+
+    /**
+     * Constructs an {@link Integral} object.
+     * @param C The initial value of the integral.
+     */
+    public Integral(double C) {
+        this(C, TimeSource.getDefault());
     }
 
     /**
@@ -45,7 +91,50 @@ public class Integral {
     }
 
     /**
-     * This method employs a Riemann Sum to approximate the integral of v. For a linear approximation, use the {@link LinearIntegral} class.
+     * The area of the last interval under the quadratic through three samples, which may be unevenly spaced.
+     * <p>
+     * When the samples are evenly spaced this is <b>dt (5 v2 + 8 v1 - v0) / 12</b>, and the areas of two intervals add up to Simpson's rule.
+     * </p>
+     * @param v0 The oldest sample.
+     * @param v1 The middle sample.
+     * @param v2 The newest sample.
+     * @param h1 The time between <b>v0</b> and <b>v1</b> in seconds.
+     * @param dt The time between <b>v1</b> and <b>v2</b> in seconds.
+     * @return The approximate area of the function in the interval of width <b>dt</b>.
+     */
+    public static double simpsonSum(double v0, double v1, double v2, double h1, double dt) {
+        double span = h1 + dt;
+        return dt * (v2 * (2.0 * dt + 3.0 * h1) / (6.0 * span) + v1 * (dt + 3.0 * h1) / (6.0 * h1) - v0 * dt * dt / (6.0 * h1 * span));
+    }
+
+    /**
+     * The area of the last interval by a Runge-Kutta step, <b>dt (v2 + 4 vMid + v3) / 6</b>, where the value at the middle of the interval
+     * is read from the cubic through four samples, which may be unevenly spaced.
+     * @param v0 The oldest sample.
+     * @param v1 The second sample.
+     * @param v2 The third sample.
+     * @param v3 The newest sample.
+     * @param h1 The time between <b>v0</b> and <b>v1</b> in seconds.
+     * @param h2 The time between <b>v1</b> and <b>v2</b> in seconds.
+     * @param dt The time between <b>v2</b> and <b>v3</b> in seconds.
+     * @return The approximate area of the function in the interval of width <b>dt</b>.
+     */
+    public static double rk4Sum(double v0, double v1, double v2, double v3, double h1, double h2, double dt) {
+        // The sample times relative to the middle of the last interval.
+        double t3 = dt / 2.0, t2 = -t3, t1 = t2 - h2, t0 = t1 - h1;
+
+        // The Lagrange form of the cubic, evaluated at zero.
+        double mid = v0 * (t1 * t2 * t3) / ((t0 - t1) * (t0 - t2) * (t0 - t3)) * -1.0
+                   + v1 * (t0 * t2 * t3) / ((t1 - t0) * (t1 - t2) * (t1 - t3)) * -1.0
+                   + v2 * (t0 * t1 * t3) / ((t2 - t0) * (t2 - t1) * (t2 - t3)) * -1.0
+                   + v3 * (t0 * t1 * t2) / ((t3 - t0) * (t3 - t1) * (t3 - t2)) * -1.0;
+
+        return dt * (v2 + 4.0 * mid + v3) / 6.0;
+    }
+
+    /**
+     * This method approximates the integral of v with the {@link Method} given to the constructor, which is a Riemann Sum by default.
+     * For a linear approximation, use the {@link LinearIntegral} class.
      * <p>
      * Call this in a method that loops (such as a periodic method).
      * </p>
@@ -55,7 +144,43 @@ public class Integral {
      * @param v The value which is being integrated with respect to time.
      */
     public void update(double v) {
-        total += riemannSum(v, timer.getDT());
+        update(v, timer.getDT());
+    }
+
+    /**
+     * This method is the same as <b>update(v)</b> but uses a time step supplied by the caller instead of reading the timer.
+     * <p>
+     * This allows one clock read per robot loop to drive every integral. Do not mix calls of both versions on the same object.
+     * </p>
+     * @param v The value which is being integrated with respect to time.
+     * @param dt The time since the last update in <b>seconds</b>.
+     */
+    public void update(double v, double dt) {
+        if (method == Method.RIEMANN) {
+            total += riemannSum(v, dt);
+            return;
+        }
+        if (!(dt > 0.0)) {
+            // A repeated time replaces the newest sample rather than making an interval of zero width.
+            v2 = v;
+            return;
+        }
+
+        // The first interval is integrated from zero, as the value before the first sample is unknown.
+        if (method == Method.RK4 && samples >= 3) {
+            total += rk4Sum(v0, v1, v2, v, h1, h2, dt);
+        } else if (method != Method.TRAPEZOID && samples >= 2) {
+            total += simpsonSum(v1, v2, v, h2, dt);
+        } else {
+            total += linearSum(v2, v, dt);
+        }
+
+        v0 = v1;
+        v1 = v2;
+        v2 = v;
+        h1 = h2;
+        h2 = dt;
+        if (samples < 3) samples++;
     }
 
     /**
@@ -65,6 +190,13 @@ public class Integral {
         return total;
     }
 
+    /**
+     * @return The approximation of each interval.
+     */
+    public Method getMethod() {
+        return method;
+    }
+
     @Override
     public String toString() {
         return String.format("%f", get());
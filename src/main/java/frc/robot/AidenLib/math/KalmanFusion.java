@@ -0,0 +1,231 @@
+package frc.robot.AidenLib.math;
+
+import java.util.Arrays;
+
+import frc.robot.AidenLib.math.ParametricWeightedFusion.InvalidParamterSize;
+
+/**
+ * A Kalman filter with the same parameter API as the {@link ParametricWeightedFusion} class which carries its estimate and covariance between robot loops.
+ * <p>
+ * Each parameter has a position and a velocity state, so a 3 parameter system has 6 states. The process model is constant velocity with
+ * white noise acceleration. <b>predict()</b> moves the state forward in time and fuses a velocity input (such as field relative drivetrain speeds),
+ * and <b>calculate()</b> fuses measurements of the positions.
+ * </p>
+ * <p>
+ * The full covariance matrix is kept in preallocated primitive arrays, and measurements are fused one at a time as scalar updates,
+ * so nothing is allocated after construction. The transition matrix is block diagonal, so a prediction only adds each velocity row
+ * and column of the covariance into its position row and column instead of multiplying full matrices.
+ * </p>
+ */
+public class KalmanFusion {
+    private final int params, states;
+    private final double[] x, P, gain, row;
+    private final double[] positions;
+    private final MeasurementBatch[] batches;
+    private double accelStDev;
+
+    /**
+     * Constructs a {@link KalmanFusion} object.
+     * @param numParamaters The number of parameters of the system. (e.g. A position system has 3 parameters: [x, y, z])
+     * @param accelStDev The standard deviation of the unmodeled acceleration of each parameter in <b>units/s^2</b>.
+     */
+    public KalmanFusion(int numParamaters, double accelStDev) {
+        this.params = numParamaters;
+        this.states = 2 * numParamaters;
+        this.x = new double[states];
+        this.P = new double[states * states];
+        this.gain = new double[states];
+        this.row = new double[states];
+        this.positions = new double[params];
+        this.batches = new MeasurementBatch[params];
+        for (int i = 0; i < params; i++) {
+            batches[i] = new MeasurementBatch();
+        }
+        this.accelStDev = accelStDev;
+
+        reset(positions, 1e3, 1e3);
+    }
+
+    /**
+     * Constructs a {@link KalmanFusion} object with an acceleration standard deviation of <b>1.0 units/s^2</b>.
+     * @param numParamaters The number of parameters of the system. (e.g. A position system has 3 parameters: [x, y, z])
+     */
+    public KalmanFusion(int numParamaters) {
+        this(numParamaters, 1.0);
+    }
+
+    /**
+     * Resets the state, with zero velocity and no correlation between states.
+     * @param initialPositions The initial position of each parameter.
+     * @param positionStDev The standard deviation of the initial positions.
+     * @param velocityStDev The standard deviation of the initial velocities.
+     */
+    public void reset(double[] initialPositions, double positionStDev, double velocityStDev) {
+        Arrays.fill(P, 0.0);
+        for (int i = 0; i < params; i++) {
+            int p = 2 * i, v = p + 1;
+            x[p] = initialPositions[i];
+            x[v] = 0.0;
+            P[p * states + p] = positionStDev * positionStDev;
+            P[v * states + v] = velocityStDev * velocityStDev;
+            positions[i] = initialPositions[i];
+        }
+    }
+
+    /**
+     * Moves the state forward in time with the constant velocity model: <b>x = F x</b>, <b>P = F P F^T + Q</b>.
+     * @param dt The time since the last prediction in <b>seconds</b>.
+     */
+    public void predict(double dt) {
+        if (dt <= 0.0) return;
+
+        int n = states;
+        double q = accelStDev * accelStDev;
+        double dt2 = dt * dt, dt3 = dt2 * dt, dt4 = dt3 * dt;
+
+        // F only mixes each velocity into its own position, so F P adds dt times each velocity row into its position row
+        for (int i = 0; i < params; i++) {
+            int p = 2 * i, v = p + 1;
+            x[p] += dt * x[v];
+
+            int pRow = p * n, vRow = v * n;
+            for (int c = 0; c < n; c++) {
+                P[pRow + c] += dt * P[vRow + c];
+            }
+        }
+
+        // and (F P) F^T does the same to the columns
+        for (int r = 0; r < n; r++) {
+            int offset = r * n;
+            for (int i = 0; i < params; i++) {
+                int p = 2 * i, v = p + 1;
+                P[offset + p] += dt * P[offset + v];
+            }
+        }
+
+        for (int i = 0; i < params; i++) {
+            int p = 2 * i, v = p + 1;
+            P[p * n + p] += q * dt4 / 4.0;
+            P[p * n + v] += q * dt3 / 2.0;
+            P[v * n + p] += q * dt3 / 2.0;
+            P[v * n + v] += q * dt2;
+        }
+    }
+
+    /**
+     * Moves the state forward in time and then fuses a measured velocity of each parameter.
+     * @param velocities The measured velocity of each parameter in <b>units/s</b>, such as field relative drivetrain speeds.
+     * @param velocityStDev The standard deviation of the measured velocities in <b>units/s</b>.
+     * @param dt The time since the last prediction in <b>seconds</b>.
+     */
+    public void predict(double[] velocities, double velocityStDev, double dt) {
+        predict(dt);
+
+        double r = velocityStDev * velocityStDev;
+        for (int i = 0; i < params; i++) {
+            update(2 * i + 1, velocities[i], r);
+        }
+    }
+
+    /**
+     * This method fuses measurements of the position of each parameter into the state.
+     * @param estimates An array with a length equal to the number of parameters, made up of {@link Data} arrays.
+     * @return The position estimates for each parameter.
+     * @throws InvalidParamterSize This is thrown when the length of the input array is not equal to the number of parameters.
+     */
+    public double[] calculate(Data[]... estimates) throws InvalidParamterSize {
+        if (estimates.length != params) throw new InvalidParamterSize(params, estimates.length);
+
+        for (int i = 0; i < params; i++) {
+            batches[i].clear();
+            batches[i].addAll(estimates[i]);
+        }
+
+        return calculate(batches);
+    }
+
+    /**
+     * This method fuses batches of measurements of the position of each parameter into the state.
+     * @param estimates An array with a length equal to the number of parameters, made up of {@link MeasurementBatch} objects.
+     * @return The position estimates for each parameter.
+     * @throws InvalidParamterSize This is thrown when the length of the input array is not equal to the number of parameters.
+     */
+    public double[] calculate(MeasurementBatch... estimates) throws InvalidParamterSize {
+        if (estimates.length != params) throw new InvalidParamterSize(params, estimates.length);
+
+        for (int i = 0; i < params; i++) {
+            MeasurementBatch batch = estimates[i];
+            for (int j = 0; j < batch.size; j++) {
+                update(2 * i, batch.values[j], 1.0 / batch.weights[j]);
+            }
+        }
+
+        for (int i = 0; i < params; i++) {
+            positions[i] = x[2 * i];
+        }
+        return positions;
+    }
+
+    /**
+     * A scalar Kalman update of one state: <b>K = P H^T / (H P H^T + r)</b>, <b>x += K (z - H x)</b>, <b>P -= K H P</b>.
+     */
+    private void update(int state, double z, double variance) {
+        int n = states;
+        double s = P[state * n + state] + variance;
+        if (!(s > 0.0)) return;
+
+        double innovation = z - x[state];
+        for (int i = 0; i < n; i++) {
+            gain[i] = P[i * n + state] / s;
+            row[i] = P[state * n + i];
+        }
+
+        for (int i = 0; i < n; i++) {
+            x[i] += gain[i] * innovation;
+            double k = gain[i];
+            int offset = i * n;
+            for (int j = 0; j < n; j++) {
+                P[offset + j] -= k * row[j];
+            }
+        }
+    }
+
+    /**
+     * @param numParamater The index of the parameter.
+     * @return The estimated position of the parameter.
+     */
+    public double getPosition(int numParamater) {
+        return x[2 * numParamater];
+    }
+
+    /**
+     * @param numParamater The index of the parameter.
+     * @return The estimated velocity of the parameter.
+     */
+    public double getVelocity(int numParamater) {
+        return x[2 * numParamater + 1];
+    }
+
+    /**
+     * @param numParamater The index of the parameter.
+     * @return The standard deviation of the estimated position of the parameter.
+     */
+    public double getPositionStDev(int numParamater) {
+        int p = 2 * numParamater;
+        return Math.sqrt(P[p * states + p]);
+    }
+
+    /**
+     * @param accelStDev The standard deviation of the unmodeled acceleration of each parameter in <b>units/s^2</b>.
+     */
+    public void setAccelStDev(double accelStDev) {
+        this.accelStDev = accelStDev;
+    }
+
+    /**
+     * @return The number of parameters of the system.
+     */
+    public int getNumParameters() {
+        return params;
+    }
+}
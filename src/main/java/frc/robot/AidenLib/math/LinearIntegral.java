@@ -1,39 +1,31 @@
 package frc.robot.AidenLib.math;
 
-/** A class which approximates an integrated value with respect to time. */
+import frc.robot.AidenLib.TimeSource;
+
+/** A class which approximates an integrated value with respect to time with a linear approximation, the same as an {@link Integral} using <b>Method.TRAPEZOID</b>. */
 public class LinearIntegral extends Integral {
-    
-    private double lastV;
 
     /**
      * Constructs an {@link LinearIntegral} object.
      * @param C The initial value of the integral.
+     * @param source The {@link TimeSource} used to measure the time between calls.
      */
-    public LinearIntegral(double C) {
-        super(C);
-        this.lastV = 0;
+    public LinearIntegral(double C, TimeSource source) {
+        super(C, Method.TRAPEZOID, source);
     }
 
     /**
-     * Constructs an {@link LinearIntegral} object who's initial value is defaulted to <b>0.0</b>.
+     * Constructs an {@link LinearIntegral} object.
+     * @param C The initial value of the integral.
      */
-    public LinearIntegral() {
-        this(0.0);
+    public LinearIntegral(double C) {
+        this(C, TimeSource.getDefault());
     }
 
     /**
-     * This method employs a linear approximation to approximate the integral of v. For a Riemann Sum approximation, use the {@link Integral} class.
-     * <p>
-     * Call this in a method that loops (such as a periodic method).
-     * </p>
-     * <p>
-     * To get the value of the integral call the <b>get()</b> method.
-     * </p>
-     * @param v The value which is being integrated with respect to time.
+     * Constructs an {@link LinearIntegral} object who's initial value is defaulted to <b>0.0</b>.
      */
-    @Override
-    public void update(double v) {
-        super.total += linearSum(lastV, v, super.timer.getDT());
-        lastV = v;
+    public LinearIntegral() {
+        this(0.0);
     }
 }
@@ -0,0 +1,169 @@
+package frc.robot.AidenLib.math;
+
+/**
+ * Class to represent a series of measurements input to the {@link WeightedFusion}.
+ * <p>
+ * The values and standard deviations are stored in parallel primitive arrays which are reused between calls of <b>clear()</b>,
+ * so a batch which is filled every robot loop only allocates when it needs to grow past its largest size.
+ * </p>
+ * <p>
+ * The inverse variance (<b>1 / stDev^2</b>) used to weight each measurement is stored alongside it. Measurements added through a
+ * {@link MeasurementSource} reuse the inverse variance cached by the source instead of computing it again.
+ * </p>
+ */
+public class MeasurementBatch {
+    double[] values, stDevs, weights;
+    MeasurementSource[] sources;
+    int size;
+
+    /**
+     * Constructs an empty {@link MeasurementBatch} object.
+     * @param capacity The number of measurements the batch can hold before it needs to grow.
+     */
+    public MeasurementBatch(int capacity) {
+        this.values = new double[Math.max(capacity, 1)];
+        this.stDevs = new double[Math.max(capacity, 1)];
+        this.weights = new double[Math.max(capacity, 1)];
+        this.sources = new MeasurementSource[Math.max(capacity, 1)];
+        this.size = 0;
+    }
+
+    /**
+     * Constructs an empty {@link MeasurementBatch} object with a default capacity of <b>4</b>.
+     */
+    public MeasurementBatch() {
+        this(4);
+    }
+
+    /**
+     * Adds a measurement to the batch.
+     * @param value The value of the measurement taken.
+     * @param stDev The expected standard deviation of the method of measurement.
+     * @return This batch, so calls may be chained.
+     */
+    public MeasurementBatch add(double value, double stDev) {
+        return add(value, stDev, 1.0 / (stDev * stDev), null);
+    }
+
+    /**
+     * Adds a measurement taken by a registered source to the batch.
+     * @param source The source which took the measurement.
+     * @param value The value of the measurement taken.
+     * @return This batch, so calls may be chained.
+     */
+    public MeasurementBatch add(MeasurementSource source, double value) {
+        return add(value, source.stDev, source.invVariance, source);
+    }
+
+    private MeasurementBatch add(double value, double stDev, double weight, MeasurementSource source) {
+        ensureCapacity(size + 1);
+        values[size] = value;
+        stDevs[size] = stDev;
+        weights[size] = weight;
+        sources[size] = source;
+        size++;
+        return this;
+    }
+
+    /**
+     * Adds a measurement to the batch.
+     * @param data The measurement to copy into the batch.
+     * @return This batch, so calls may be chained.
+     */
+    public MeasurementBatch add(Data data) {
+        return add(data.value, data.stDev);
+    }
+
+    /**
+     * Adds a series of measurements to the batch.
+     * @param data The measurements to copy into the batch.
+     * @return This batch, so calls may be chained.
+     */
+    public MeasurementBatch addAll(Data... data) {
+        ensureCapacity(size + data.length);
+        for (Data d : data) {
+            values[size] = d.value;
+            stDevs[size] = d.stDev;
+            weights[size] = 1.0 / (d.stDev * d.stDev);
+            sources[size] = null;
+            size++;
+        }
+        return this;
+    }
+
+    /**
+     * Adds every measurement of another batch to this batch, keeping the source each was taken by.
+     * @param batch The batch to copy the measurements of. It is not changed.
+     * @return This batch, so calls may be chained.
+     */
+    public MeasurementBatch addAll(MeasurementBatch batch) {
+        ensureCapacity(size + batch.size);
+        System.arraycopy(batch.values, 0, values, size, batch.size);
+        System.arraycopy(batch.stDevs, 0, stDevs, size, batch.size);
+        System.arraycopy(batch.weights, 0, weights, size, batch.size);
+        System.arraycopy(batch.sources, 0, sources, size, batch.size);
+        size += batch.size;
+        return this;
+    }
+
+    /**
+     * Removes every measurement from the batch while keeping its storage for reuse.
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Grows the storage of the batch so it can hold at least the given number of measurements without allocating.
+     * @param capacity The number of measurements the batch should be able to hold.
+     */
+    public void ensureCapacity(int capacity) {
+        if (capacity <= values.length) return;
+
+        int newCapacity = Math.max(capacity, values.length * 2);
+        double[] newValues = new double[newCapacity];
+        double[] newStDevs = new double[newCapacity];
+        double[] newWeights = new double[newCapacity];
+        MeasurementSource[] newSources = new MeasurementSource[newCapacity];
+        System.arraycopy(values, 0, newValues, 0, size);
+        System.arraycopy(stDevs, 0, newStDevs, 0, size);
+        System.arraycopy(weights, 0, newWeights, 0, size);
+        System.arraycopy(sources, 0, newSources, 0, size);
+        values = newValues;
+        stDevs = newStDevs;
+        weights = newWeights;
+        sources = newSources;
+    }
+
+    /**
+     * @return The number of measurements in the batch.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return The number of measurements the batch can hold before it needs to grow.
+     */
+    public int capacity() {
+        return values.length;
+    }
+
+    /**
+     * @param index The index of the measurement.
+     * @return The value of the measurement.
+     */
+    public double getValue(int index) {
+        if (index >= size) throw new IndexOutOfBoundsException(index);
+        return values[index];
+    }
+
+    /**
+     * @param index The index of the measurement.
+     * @return The standard deviation of the measurement.
+     */
+    public double getStDev(int index) {
+        if (index >= size) throw new IndexOutOfBoundsException(index);
+        return stDevs[index];
+    }
+}
@@ -0,0 +1,88 @@
+package frc.robot.AidenLib.math;
+
+/**
+ * Class to represent a method of measurement (such as a camera or an encoder) whose standard deviation rarely changes.
+ * <p>
+ * The inverse variance used by the {@link WeightedFusion} is computed once when the source is registered
+ * or its standard deviation changes, rather than for every measurement.
+ * </p>
+ * <p>
+ * When its measurements are fused through an {@link OutlierGate}, each rejection inflates the standard deviation of the source and each
+ * accepted measurement lets it relax back, so a source which keeps disagreeing with the estimate is trusted less until it agrees again.
+ * </p>
+ */
+public class MeasurementSource {
+    double stDev, invVariance;
+    private double inflation = 1.0;
+
+    /**
+     * Registers a {@link MeasurementSource} to be used with a {@link MeasurementBatch}.
+     * @param stDev The expected standard deviation of the method of measurement.
+     */
+    public MeasurementSource(double stDev) {
+        setStDev(stDev);
+    }
+
+    /**
+     * Changes the expected standard deviation of the method of measurement and recomputes the cached inverse variance.
+     * @param stDev The expected standard deviation of the method of measurement.
+     */
+    public void setStDev(double stDev) {
+        this.stDev = stDev;
+        updateInvVariance();
+    }
+
+    private void updateInvVariance() {
+        double inflated = stDev * inflation;
+        this.invVariance = 1.0 / (inflated * inflated);
+    }
+
+    /**
+     * Multiplies the inflation of the standard deviation after a rejected measurement.
+     */
+    void inflate(double growth, double maxInflation) {
+        double next = Math.min(inflation * growth, maxInflation);
+        if (next != inflation) {
+            inflation = next;
+            updateInvVariance();
+        }
+    }
+
+    /**
+     * Moves the inflation of the standard deviation back towards <b>1</b> after an accepted measurement.
+     */
+    void relax(double decay) {
+        if (inflation == 1.0) return;
+        inflation = Math.max(1.0, inflation * decay);
+        updateInvVariance();
+    }
+
+    /**
+     * @return The expected standard deviation of the method of measurement, without inflation.
+     */
+    public double getStDev() {
+        return stDev;
+    }
+
+    /**
+     * @return The factor the standard deviation is currently multiplied by because of rejected measurements, which is at least <b>1</b>.
+     */
+    public double getInflation() {
+        return inflation;
+    }
+
+    /**
+     * Removes any inflation of the standard deviation.
+     */
+    public void resetInflation() {
+        inflation = 1.0;
+        updateInvVariance();
+    }
+
+    /**
+     * @return The cached inverse variance (<b>1 / (stDev * inflation)^2</b>) of the method of measurement.
+     */
+    public double getInvVariance() {
+        return invVariance;
+    }
+}
@@ -0,0 +1,412 @@
+package frc.robot.AidenLib.math;
+
+import edu.wpi.first.math.geometry.Quaternion;
+import edu.wpi.first.math.geometry.Rotation3d;
+
+/**
+ * Class to represent a rotation in 3D space as a rotation matrix held in primitive fields, for use in robot loops where a new {@link Rotation3d}
+ * every call would allocate.
+ * <p>
+ * Every operation works in place, so one {@link MutableRotation3d} may be reused for every robot loop. The conventions match {@link Rotation3d}:
+ * Euler angles are extrinsic roll, pitch and yaw about the X, Y and Z axes, and <b>rotate()</b> takes a robot relative vector into the field frame.
+ * A {@link Rotation3d} is only made when <b>toRotation3d()</b> is called.
+ * </p>
+ */
+public class MutableRotation3d {
+    private double m00, m01, m02;
+    private double m10, m11, m12;
+    private double m20, m21, m22;
+
+    /**
+     * Constructs a {@link MutableRotation3d} object with no rotation.
+     */
+    public MutableRotation3d() {
+        setIdentity();
+    }
+
+    /**
+     * Constructs a {@link MutableRotation3d} object from Euler angles.
+     * @param roll The rotation about the X axis in <b>radians</b>.
+     * @param pitch The rotation about the Y axis in <b>radians</b>.
+     * @param yaw The rotation about the Z axis in <b>radians</b>.
+     */
+    public MutableRotation3d(double roll, double pitch, double yaw) {
+        setEuler(roll, pitch, yaw);
+    }
+
+    /**
+     * Sets the rotation to no rotation.
+     * @return This rotation, so calls may be chained.
+     */
+    public MutableRotation3d setIdentity() {
+        m00 = 1.0; m01 = 0.0; m02 = 0.0;
+        m10 = 0.0; m11 = 1.0; m12 = 0.0;
+        m20 = 0.0; m21 = 0.0; m22 = 1.0;
+        return this;
+    }
+
+    /**
+     * Sets the rotation from Euler angles, the same rotation as <b>new Rotation3d(roll, pitch, yaw)</b>.
+     * @param roll The rotation about the X axis in <b>radians</b>.
+     * @param pitch The rotation about the Y axis in <b>radians</b>.
+     * @param yaw The rotation about the Z axis in <b>radians</b>.
+     * @return This rotation, so calls may be chained.
+     */
+    public MutableRotation3d setEuler(double roll, double pitch, double yaw) {
+        double cr = Math.cos(roll), sr = Math.sin(roll);
+        double cp = Math.cos(pitch), sp = Math.sin(pitch);
+        double cy = Math.cos(yaw), sy = Math.sin(yaw);
+
+        // Rz(yaw) * Ry(pitch) * Rx(roll)
+        m00 = cy * cp; m01 = cy * sp * sr - sy * cr; m02 = cy * sp * cr + sy * sr;
+        m10 = sy * cp; m11 = sy * sp * sr + cy * cr; m12 = sy * sp * cr - cy * sr;
+        m20 = -sp;     m21 = cp * sr;                m22 = cp * cr;
+        return this;
+    }
+
+    /**
+     * Sets the rotation from a unit quaternion.
+     * @param w The W component of the quaternion.
+     * @param x The X component of the quaternion.
+     * @param y The Y component of the quaternion.
+     * @param z The Z component of the quaternion.
+     * @return This rotation, so calls may be chained.
+     */
+    public MutableRotation3d setQuaternion(double w, double x, double y, double z) {
+        double xx = x * x, yy = y * y, zz = z * z;
+        double xy = x * y, xz = x * z, yz = y * z;
+        double wx = w * x, wy = w * y, wz = w * z;
+
+        m00 = 1.0 - 2.0 * (yy + zz); m01 = 2.0 * (xy - wz);         m02 = 2.0 * (xz + wy);
+        m10 = 2.0 * (xy + wz);       m11 = 1.0 - 2.0 * (xx + zz);   m12 = 2.0 * (yz - wx);
+        m20 = 2.0 * (xz - wy);       m21 = 2.0 * (yz + wx);         m22 = 1.0 - 2.0 * (xx + yy);
+        return this;
+    }
+
+    /**
+     * Sets the rotation to the same rotation as a {@link Rotation3d}.
+     * @param rot The rotation to copy.
+     * @return This rotation, so calls may be chained.
+     */
+    public MutableRotation3d set(Rotation3d rot) {
+        Quaternion q = rot.getQuaternion();
+        return setQuaternion(q.getW(), q.getX(), q.getY(), q.getZ());
+    }
+
+    /**
+     * Sets the rotation to the same rotation as another {@link MutableRotation3d}.
+     * @param other The rotation to copy.
+     * @return This rotation, so calls may be chained.
+     */
+    public MutableRotation3d set(MutableRotation3d other) {
+        m00 = other.m00; m01 = other.m01; m02 = other.m02;
+        m10 = other.m10; m11 = other.m11; m12 = other.m12;
+        m20 = other.m20; m21 = other.m21; m22 = other.m22;
+        return this;
+    }
+
+    /**
+     * Sets this rotation to <b>a * b</b>: the rotation <b>b</b> applied in the frame rotated by <b>a</b>. Either argument may be this rotation.
+     * @param a The first rotation.
+     * @param b The second rotation.
+     * @return This rotation, so calls may be chained.
+     */
+    public MutableRotation3d multiply(MutableRotation3d a, MutableRotation3d b) {
+        double n00 = a.m00 * b.m00 + a.m01 * b.m10 + a.m02 * b.m20;
+        double n01 = a.m00 * b.m01 + a.m01 * b.m11 + a.m02 * b.m21;
+        double n02 = a.m00 * b.m02 + a.m01 * b.m12 + a.m02 * b.m22;
+        double n10 = a.m10 * b.m00 + a.m11 * b.m10 + a.m12 * b.m20;
+        double n11 = a.m10 * b.m01 + a.m11 * b.m11 + a.m12 * b.m21;
+        double n12 = a.m10 * b.m02 + a.m11 * b.m12 + a.m12 * b.m22;
+        double n20 = a.m20 * b.m00 + a.m21 * b.m10 + a.m22 * b.m20;
+        double n21 = a.m20 * b.m01 + a.m21 * b.m11 + a.m22 * b.m21;
+        double n22 = a.m20 * b.m02 + a.m21 * b.m12 + a.m22 * b.m22;
+
+        m00 = n00; m01 = n01; m02 = n02;
+        m10 = n10; m11 = n11; m12 = n12;
+        m20 = n20; m21 = n21; m22 = n22;
+        return this;
+    }
+
+    /**
+     * Applies another rotation in the frame of this rotation: <b>this = this * other</b>.
+     * @param other The rotation to apply, such as the change in rotation of the robot since the last loop.
+     * @return This rotation, so calls may be chained.
+     */
+    public MutableRotation3d compose(MutableRotation3d other) {
+        return multiply(this, other);
+    }
+
+    /**
+     * Sets this rotation to the rotation from one rotation to another in the frame of the first: <b>from^T * to</b>,
+     * so that <b>from * this = to</b>. Either argument may be this rotation.
+     * @param from The starting rotation, such as the rotation of the robot in the last loop.
+     * @param to The ending rotation, such as the rotation of the robot in this loop.
+     * @return This rotation, so calls may be chained.
+     */
+    public MutableRotation3d relative(MutableRotation3d from, MutableRotation3d to) {
+        double n00 = from.m00 * to.m00 + from.m10 * to.m10 + from.m20 * to.m20;
+        double n01 = from.m00 * to.m01 + from.m10 * to.m11 + from.m20 * to.m21;
+        double n02 = from.m00 * to.m02 + from.m10 * to.m12 + from.m20 * to.m22;
+        double n10 = from.m01 * to.m00 + from.m11 * to.m10 + from.m21 * to.m20;
+        double n11 = from.m01 * to.m01 + from.m11 * to.m11 + from.m21 * to.m21;
+        double n12 = from.m01 * to.m02 + from.m11 * to.m12 + from.m21 * to.m22;
+        double n20 = from.m02 * to.m00 + from.m12 * to.m10 + from.m22 * to.m20;
+        double n21 = from.m02 * to.m01 + from.m12 * to.m11 + from.m22 * to.m21;
+        double n22 = from.m02 * to.m02 + from.m12 * to.m12 + from.m22 * to.m22;
+
+        m00 = n00; m01 = n01; m02 = n02;
+        m10 = n10; m11 = n11; m12 = n12;
+        m20 = n20; m21 = n21; m22 = n22;
+        return this;
+    }
+
+    /**
+     * Integrates a constant robot relative angular velocity over a time step with the exponential map: <b>this = this * exp(omega * dt)</b>.
+     * The result is orthonormalized so that rounding does not build up over many calls.
+     * @param wx The angular velocity about the robot's X axis in <b>rad/s</b>.
+     * @param wy The angular velocity about the robot's Y axis in <b>rad/s</b>.
+     * @param wz The angular velocity about the robot's Z axis in <b>rad/s</b>.
+     * @param dt The time step in <b>seconds</b>.
+     * @return This rotation, so calls may be chained.
+     */
+    public MutableRotation3d integrate(double wx, double wy, double wz, double dt) {
+        double rx = wx * dt, ry = wy * dt, rz = wz * dt;
+        double angle2 = rx * rx + ry * ry + rz * rz;
+
+        // Rodrigues' formula: I + a [r]x + b [r]x^2, with series for small angles.
+        double a, b;
+        if (angle2 < 1e-12) {
+            a = 1.0 - angle2 / 6.0;
+            b = 0.5 - angle2 / 24.0;
+        } else {
+            double angle = Math.sqrt(angle2);
+            a = Math.sin(angle) / angle;
+            b = (1.0 - Math.cos(angle)) / angle2;
+        }
+
+        double e00 = 1.0 - b * (ry * ry + rz * rz), e01 = -a * rz + b * rx * ry,         e02 = a * ry + b * rx * rz;
+        double e10 = a * rz + b * rx * ry,         e11 = 1.0 - b * (rx * rx + rz * rz), e12 = -a * rx + b * ry * rz;
+        double e20 = -a * ry + b * rx * rz,        e21 = a * rx + b * ry * rz,         e22 = 1.0 - b * (rx * rx + ry * ry);
+
+        double n00 = m00 * e00 + m01 * e10 + m02 * e20;
+        double n01 = m00 * e01 + m01 * e11 + m02 * e21;
+        double n02 = m00 * e02 + m01 * e12 + m02 * e22;
+        double n10 = m10 * e00 + m11 * e10 + m12 * e20;
+        double n11 = m10 * e01 + m11 * e11 + m12 * e21;
+        double n12 = m10 * e02 + m11 * e12 + m12 * e22;
+        double n20 = m20 * e00 + m21 * e10 + m22 * e20;
+        double n21 = m20 * e01 + m21 * e11 + m22 * e21;
+        double n22 = m20 * e02 + m21 * e12 + m22 * e22;
+
+        m00 = n00; m01 = n01; m02 = n02;
+        m10 = n10; m11 = n11; m12 = n12;
+        m20 = n20; m21 = n21; m22 = n22;
+        return orthonormalize();
+    }
+
+    /**
+     * Removes the rounding error of repeated operations by making the rows of the matrix orthonormal again with the Gram-Schmidt process.
+     * @return This rotation, so calls may be chained.
+     */
+    public MutableRotation3d orthonormalize() {
+        double n = 1.0 / Math.sqrt(m00 * m00 + m01 * m01 + m02 * m02);
+        m00 *= n; m01 *= n; m02 *= n;
+
+        double d = m10 * m00 + m11 * m01 + m12 * m02;
+        m10 -= d * m00; m11 -= d * m01; m12 -= d * m02;
+        n = 1.0 / Math.sqrt(m10 * m10 + m11 * m11 + m12 * m12);
+        m10 *= n; m11 *= n; m12 *= n;
+
+        // The third row is the cross product of the first two, which keeps the handedness.
+        m20 = m01 * m12 - m02 * m11;
+        m21 = m02 * m10 - m00 * m12;
+        m22 = m00 * m11 - m01 * m10;
+        return this;
+    }
+
+    /**
+     * Finds the field relative displacement of a constant robot relative twist which starts at this rotation, with the exponential map of SE(3):
+     * <b>this * V(r) * d</b>, where <b>V(r) = I + (1 - cos a) / a^2 [r]x + (a - sin a) / a^3 [r]x^2</b> and <b>a = |r|</b>.
+     * <p>
+     * Unlike rotating the speeds by the rotation at one end of the time step, this follows the arc the robot drives while it turns, so it is exact
+     * for constant speeds and angular velocity at any loop rate.
+     * </p>
+     * @param rx The X component of the rotation over the time step, the angular velocity times the time step, in <b>radians</b>.
+     * @param ry The Y component of the rotation over the time step in <b>radians</b>.
+     * @param rz The Z component of the rotation over the time step in <b>radians</b>.
+     * @param dx The robot relative X displacement without turning, the speed times the time step, in <b>m</b>.
+     * @param dy The robot relative Y displacement without turning in <b>m</b>.
+     * @param dz The robot relative Z displacement without turning in <b>m</b>.
+     * @param out An array of length 3 which receives the field relative displacement as <b>[x, y, z]</b> in <b>m</b>.
+     * @return The <b>out</b> array.
+     */
+    public double[] twistDisplacement(double rx, double ry, double rz, double dx, double dy, double dz, double[] out) {
+        double angle2 = rx * rx + ry * ry + rz * rz;
+
+        // Series for small angles, where the closed forms lose their precision.
+        double c1, c2;
+        if (angle2 < 1e-8) {
+            c1 = 0.5 - angle2 / 24.0;
+            c2 = 1.0 / 6.0 - angle2 / 120.0;
+        } else {
+            double angle = Math.sqrt(angle2);
+            c1 = (1.0 - Math.cos(angle)) / angle2;
+            c2 = (angle - Math.sin(angle)) / (angle2 * angle);
+        }
+
+        // r x d and r x (r x d).
+        double cx = ry * dz - rz * dy, cy = rz * dx - rx * dz, cz = rx * dy - ry * dx;
+        double ccx = ry * cz - rz * cy, ccy = rz * cx - rx * cz, ccz = rx * cy - ry * cx;
+
+        return rotate(dx + c1 * cx + c2 * ccx, dy + c1 * cy + c2 * ccy, dz + c1 * cz + c2 * ccz, out);
+    }
+
+    /**
+     * Rotates a vector by this rotation, such as robot relative speeds into the field frame.
+     * @param x The X component of the vector.
+     * @param y The Y component of the vector.
+     * @param z The Z component of the vector.
+     * @param out An array of length 3 which receives the rotated vector as <b>[x, y, z]</b>.
+     * @return The <b>out</b> array.
+     */
+    public double[] rotate(double x, double y, double z, double[] out) {
+        out[0] = m00 * x + m01 * y + m02 * z;
+        out[1] = m10 * x + m11 * y + m12 * z;
+        out[2] = m20 * x + m21 * y + m22 * z;
+        return out;
+    }
+
+    /**
+     * Rotates a vector by the inverse of this rotation, such as field relative speeds into the robot frame.
+     * @param x The X component of the vector.
+     * @param y The Y component of the vector.
+     * @param z The Z component of the vector.
+     * @param out An array of length 3 which receives the rotated vector as <b>[x, y, z]</b>.
+     * @return The <b>out</b> array.
+     */
+    public double[] inverseRotate(double x, double y, double z, double[] out) {
+        out[0] = m00 * x + m10 * y + m20 * z;
+        out[1] = m01 * x + m11 * y + m21 * z;
+        out[2] = m02 * x + m12 * y + m22 * z;
+        return out;
+    }
+
+    /**
+     * @return The rotation about the X axis in <b>radians</b>, with the same convention as <b>Rotation3d.getX()</b>.
+     */
+    public double getRoll() {
+        return Math.atan2(m21, m22);
+    }
+
+    /**
+     * @return The rotation about the Y axis in <b>radians</b>, with the same convention as <b>Rotation3d.getY()</b>.
+     */
+    public double getPitch() {
+        return -m20 >= 1.0 ? Math.PI / 2.0 : -m20 <= -1.0 ? -Math.PI / 2.0 : Math.asin(-m20);
+    }
+
+    /**
+     * @return The rotation about the Z axis in <b>radians</b>, with the same convention as <b>Rotation3d.getZ()</b>.
+     */
+    public double getYaw() {
+        return Math.atan2(m10, m00);
+    }
+
+    /**
+     * @param out An array of length 4 which receives the rotation as a unit quaternion <b>[w, x, y, z]</b> with <b>w &gt;= 0</b>.
+     * @return The <b>out</b> array.
+     */
+    public double[] getQuaternion(double[] out) {
+        double trace = m00 + m11 + m22;
+        double w, x, y, z;
+        if (trace > 0.0) {
+            double s = 2.0 * Math.sqrt(trace + 1.0);
+            w = 0.25 * s;
+            x = (m21 - m12) / s;
+            y = (m02 - m20) / s;
+            z = (m10 - m01) / s;
+        } else if (m00 > m11 && m00 > m22) {
+            double s = 2.0 * Math.sqrt(1.0 + m00 - m11 - m22);
+            w = (m21 - m12) / s;
+            x = 0.25 * s;
+            y = (m01 + m10) / s;
+            z = (m02 + m20) / s;
+        } else if (m11 > m22) {
+            double s = 2.0 * Math.sqrt(1.0 + m11 - m00 - m22);
+            w = (m02 - m20) / s;
+            x = (m01 + m10) / s;
+            y = 0.25 * s;
+            z = (m12 + m21) / s;
+        } else {
+            double s = 2.0 * Math.sqrt(1.0 + m22 - m00 - m11);
+            w = (m10 - m01) / s;
+            x = (m02 + m20) / s;
+            y = (m12 + m21) / s;
+            z = 0.25 * s;
+        }
+
+        double sign = w < 0.0 ? -1.0 : 1.0;
+        out[0] = sign * w;
+        out[1] = sign * x;
+        out[2] = sign * y;
+        out[3] = sign * z;
+        return out;
+    }
+
+    /**
+     * Finds the rotation vector of this rotation, the logarithm map: the axis of rotation scaled by the angle. It is the inverse of
+     * <b>integrate()</b>, so <b>new MutableRotation3d().integrate(r[0], r[1], r[2], 1.0)</b> is this rotation.
+     * @param out An array of length 3 which receives the rotation vector as <b>[x, y, z]</b> in <b>radians</b>, with an angle of at most <b>pi</b>.
+     * @return The <b>out</b> array.
+     */
+    public double[] getRotationVector(double[] out) {
+        double sx = m21 - m12, sy = m02 - m20, sz = m10 - m01;
+        double sin = Math.sqrt(sx * sx + sy * sy + sz * sz) / 2.0;
+        double cos = (m00 + m11 + m22 - 1.0) / 2.0;
+        double angle = Math.atan2(sin, cos);
+
+        if (sin < 1e-12) {
+            if (cos > 0.0) {
+                out[0] = 0.0;
+                out[1] = 0.0;
+                out[2] = 0.0;
+                return out;
+            }
+            // Near half a turn the skew part vanishes, so the axis is read from the symmetric part, R = 2 u u^T - I.
+            double x = 0.0, y = 0.0, z = 0.0;
+            if (m00 >= m11 && m00 >= m22) {
+                x = Math.sqrt((m00 + 1.0) / 2.0);
+                y = (m01 + m10) / (4.0 * x);
+                z = (m02 + m20) / (4.0 * x);
+            } else if (m11 >= m22) {
+                y = Math.sqrt((m11 + 1.0) / 2.0);
+                x = (m01 + m10) / (4.0 * y);
+                z = (m12 + m21) / (4.0 * y);
+            } else {
+                z = Math.sqrt((m22 + 1.0) / 2.0);
+                x = (m02 + m20) / (4.0 * z);
+                y = (m12 + m21) / (4.0 * z);
+            }
+            out[0] = x * angle;
+            out[1] = y * angle;
+            out[2] = z * angle;
+            return out;
+        }
+
+        // The skew part of the matrix is 2 sin(a) [u]x, and atan2 keeps full precision for small angles.
+        double scale = angle / (2.0 * sin);
+        out[0] = sx * scale;
+        out[1] = sy * scale;
+        out[2] = sz * scale;
+        return out;
+    }
+
+    /**
+     * @return A new {@link Rotation3d} object of the same rotation.
+     */
+    public Rotation3d toRotation3d() {
+        double[] q = getQuaternion(new double[4]);
+        return new Rotation3d(new Quaternion(q[0], q[1], q[2], q[3]));
+    }
+}
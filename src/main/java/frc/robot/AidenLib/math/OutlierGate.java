@@ -0,0 +1,97 @@
+package frc.robot.AidenLib.math;
+
+/**
+ * A class which rejects measurements that are too far from a prior estimate to be believed, as an optional stage of a {@link WeightedFusion}.
+ * <p>
+ * Each measurement is scored by its squared normalized distance from the prior, <b>d^2 = (value - prior)^2 / (stDev^2 + priorStDev^2)</b>,
+ * which is chi-square distributed with one degree of freedom when the measurement and the prior are both right. Measurements with <b>d</b>
+ * above the threshold are skipped by the fusion. A threshold of <b>3</b> rejects about 0.3% of good measurements.
+ * </p>
+ * <p>
+ * Measurements added to a {@link MeasurementBatch} through a {@link MeasurementSource} also adapt the source: each rejection multiplies its standard
+ * deviation by <b>growth</b> (up to <b>maxInflation</b>), and each accepted measurement multiplies it by <b>decay</b> back towards its original value.
+ * The gate holds no per fusion state, so one gate may be shared by several filters on the same thread.
+ * </p>
+ */
+public class OutlierGate {
+    private double threshold, thresholdSquared;
+    private double priorVariance;
+    private double growth = 1.5, decay = 0.9, maxInflation = 10.0;
+
+    /**
+     * Constructs an {@link OutlierGate} object.
+     * @param threshold The largest accepted distance from the prior in <b>standard deviations</b>.
+     * @param priorStDev The standard deviation of the prior, in the units of the measurements.
+     */
+    public OutlierGate(double threshold, double priorStDev) {
+        setThreshold(threshold);
+        setPriorStDev(priorStDev);
+    }
+
+    /**
+     * @param threshold The largest accepted distance from the prior in <b>standard deviations</b>.
+     */
+    public void setThreshold(double threshold) {
+        this.threshold = threshold;
+        this.thresholdSquared = threshold * threshold;
+    }
+
+    /**
+     * @param priorStDev The standard deviation of the prior, in the units of the measurements.
+     */
+    public void setPriorStDev(double priorStDev) {
+        this.priorVariance = priorStDev * priorStDev;
+    }
+
+    /**
+     * Sets how a {@link MeasurementSource} adapts to its measurements being rejected. A growth of <b>1</b> turns adaptation off.
+     * @param growth The factor the standard deviation of a source is multiplied by when one of its measurements is rejected.
+     * @param decay The factor, less than <b>1</b>, the inflation of a source is multiplied by when one of its measurements is accepted.
+     * @param maxInflation The largest factor the standard deviation of a source may be inflated by.
+     */
+    public void setAdaptation(double growth, double decay, double maxInflation) {
+        this.growth = growth;
+        this.decay = decay;
+        this.maxInflation = maxInflation;
+    }
+
+    /**
+     * @return The largest accepted distance from the prior in <b>standard deviations</b>.
+     */
+    public double getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * The inverse variance weighted mean of the measurements which pass the gate, tested and summed in a single pass.
+     * @param batch The measurements.
+     * @param prior The prior estimate the measurements are tested against.
+     * @param report The report to record the rejections into.
+     * @return The weighted mean of the accepted measurements, or the prior if every measurement was rejected.
+     */
+    double fuse(MeasurementBatch batch, double prior, RejectionReport report) {
+        int count = batch.size;
+        double[] values = batch.values, weights = batch.weights;
+        MeasurementSource[] sources = batch.sources;
+
+        report.begin(count);
+        double numerator = 0.0, denominator = 0.0;
+        for (int i = 0; i < count; i++) {
+            double residual = values[i] - prior;
+            double distanceSquared = residual * residual / (1.0 / weights[i] + priorVariance);
+            boolean reject = distanceSquared > thresholdSquared;
+            report.record(i, reject, distanceSquared);
+
+            MeasurementSource source = sources[i];
+            if (reject) {
+                if (source != null) source.inflate(growth, maxInflation);
+            } else {
+                if (source != null) source.relax(decay);
+                numerator += weights[i] * values[i];
+                denominator += weights[i];
+            }
+        }
+
+        return denominator > 0.0 ? numerator / denominator : prior;
+    }
+}
@@ -5,7 +5,7 @@ import java.util.ArrayList;
 /** A class which uses multiple {@link WeightedFusion} objects to treat the values of a system parametrically. */
 public class ParametricWeightedFusion {
 
-    public class InvalidParamterSize extends Exception {
+    public static class InvalidParamterSize extends Exception {
         public InvalidParamterSize(int required, int provided) {
             super(String.format("Requires parameters: %d; Provided paramters: %d", required, provided));
         }
@@ -14,6 +14,8 @@ public class ParametricWeightedFusion {
     ArrayList<WeightedFusion> filters = new ArrayList<WeightedFusion>();
 
     double[] val;
+    MeasurementBatch[] batches;
+    boolean gated, fused;
 
     /**
      * Constructs a {@link ParametricWeightedFusion} object.
@@ -28,6 +30,11 @@ public class ParametricWeightedFusion {
         for (int i = 0; i < val.length; i++) {
             val[i] = 0.0;
         }
+
+        batches = new MeasurementBatch[filters.size()];
+        for (int i = 0; i < batches.length; i++) {
+            batches[i] = new MeasurementBatch();
+        }
     }
 
     /**
@@ -40,9 +47,85 @@ public class ParametricWeightedFusion {
         if (estimates.length != filters.size()) throw new InvalidParamterSize(filters.size(), estimates.length);
 
         for (int i = 0; i < estimates.length; i++) {
-            val[i] = filters.get(i).calculate(estimates[i]);
+            batches[i].clear();
+            batches[i].addAll(estimates[i]);
+        }
+
+        return calculate(batches);
+    }
+
+    /**
+     * This method distributes the measurement batches for each of the system parameters to their respective {@link WeightedFusion} objects.
+     * <p>
+     * Pass a {@link MeasurementBatch} array which is kept between robot loops rather than separate arguments, as a new varargs array is created for every call.
+     * </p>
+     * <p>
+     * Without a gate, every parameter is fused by one loop over the batches rather than a call to each {@link WeightedFusion}.
+     * </p>
+     * @param estimates An array with a length equal to the number of parameters, made up of {@link MeasurementBatch} objects.
+     * @return The estimates for each parameter.
+     * @throws InvalidParamterSize This is thrown when the length of the input array is not equal to the number of parameters.
+     */
+    public double[] calculate(MeasurementBatch... estimates) throws InvalidParamterSize {
+        if (estimates.length != filters.size()) throw new InvalidParamterSize(filters.size(), estimates.length);
+
+        if (gated) {
+            for (int i = 0; i < estimates.length; i++) {
+                val[i] = filters.get(i).calculate(estimates[i]);
+            }
+            return val;
+        }
+
+        WeightedFusion.fuseAll(estimates, estimates.length, val);
+        fused = true;
+        return val;
+    }
+
+    /**
+     * This method is the same as <b>calculate(estimates)</b>, but a gate tests the measurements of each parameter against the given prior
+     * instead of the previous estimate. Without a gate the priors are not needed, and every parameter is fused by one loop over the batches.
+     * @param priors The prior estimate of each parameter, such as a prediction from odometry.
+     * @param estimates An array with a length equal to the number of parameters, made up of {@link MeasurementBatch} objects.
+     * @return The estimates for each parameter.
+     * @throws InvalidParamterSize This is thrown when the length of either array is not equal to the number of parameters.
+     */
+    public double[] calculate(double[] priors, MeasurementBatch... estimates) throws InvalidParamterSize {
+        if (estimates.length != filters.size()) throw new InvalidParamterSize(filters.size(), estimates.length);
+        if (priors.length != filters.size()) throw new InvalidParamterSize(filters.size(), priors.length);
+
+        if (!gated) {
+            WeightedFusion.fuseAll(estimates, estimates.length, val);
+            fused = true;
+            return val;
+        }
+
+        for (int i = 0; i < estimates.length; i++) {
+            val[i] = filters.get(i).calculate(estimates[i], priors[i]);
         }
 
         return val;
     }
+
+    /**
+     * Sets the same gate on the filter of every parameter.
+     * @param gate The gate which rejects outlying measurements before they are fused, or <b>null</b> to fuse every measurement.
+     */
+    public void setGate(OutlierGate gate) {
+        for (int i = 0; i < filters.size(); i++) {
+            WeightedFusion filter = filters.get(i);
+            filter.setGate(gate);
+            // The ungated kernel does not update the filters, so they are given the last estimate to gate the next measurements against.
+            if (fused) filter.set(val[i]);
+        }
+        gated = gate != null;
+        fused = false;
+    }
+
+    /**
+     * @param numParamater The index of the parameter.
+     * @return The report of the measurements of the parameter rejected by the gate.
+     */
+    public RejectionReport getReport(int numParamater) {
+        return filters.get(numParamater).getReport();
+    }
 }
@@ -0,0 +1,84 @@
+package frc.robot.AidenLib.math;
+
+/**
+ * Class to represent which measurements an {@link OutlierGate} rejected in the most recent fusion, along with running totals.
+ * <p>
+ * A report is reused for every fusion and only allocates when a batch is larger than any before it.
+ * </p>
+ */
+public class RejectionReport {
+    private boolean[] rejected = new boolean[4];
+    private int count, rejectedCount;
+    private double maxDistanceSquared;
+    private long totalAccepted, totalRejected;
+
+    void begin(int count) {
+        if (rejected.length < count) rejected = new boolean[Math.max(count, rejected.length * 2)];
+        this.count = count;
+        this.rejectedCount = 0;
+        this.maxDistanceSquared = 0.0;
+    }
+
+    void record(int index, boolean reject, double distanceSquared) {
+        rejected[index] = reject;
+        if (reject) {
+            rejectedCount++;
+            totalRejected++;
+        } else {
+            totalAccepted++;
+        }
+        if (distanceSquared > maxDistanceSquared) maxDistanceSquared = distanceSquared;
+    }
+
+    /**
+     * @param index The index of the measurement in the most recent batch.
+     * @return Whether the measurement was rejected.
+     */
+    public boolean isRejected(int index) {
+        if (index >= count) throw new IndexOutOfBoundsException(index);
+        return rejected[index];
+    }
+
+    /**
+     * @return The number of measurements in the most recent batch.
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * @return The number of measurements rejected from the most recent batch.
+     */
+    public int getRejectedCount() {
+        return rejectedCount;
+    }
+
+    /**
+     * @return The largest distance of a measurement in the most recent batch from the prior, in <b>standard deviations</b>.
+     */
+    public double getMaxDistance() {
+        return Math.sqrt(maxDistanceSquared);
+    }
+
+    /**
+     * @return The number of measurements accepted since the last reset.
+     */
+    public long getTotalAccepted() {
+        return totalAccepted;
+    }
+
+    /**
+     * @return The number of measurements rejected since the last reset.
+     */
+    public long getTotalRejected() {
+        return totalRejected;
+    }
+
+    /**
+     * Resets the running totals.
+     */
+    public void reset() {
+        totalAccepted = 0;
+        totalRejected = 0;
+    }
+}
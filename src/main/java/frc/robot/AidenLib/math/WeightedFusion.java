@@ -6,6 +6,10 @@ package frc.robot.AidenLib.math;
 public class WeightedFusion {
 
     private double val;
+    private boolean hasEstimate;
+    private MeasurementBatch batch = new MeasurementBatch();
+    private OutlierGate gate;
+    private RejectionReport report = new RejectionReport();
 
     /**
      * Constructs an instance of the {@link WeightedFusion} class to start at a specified value.
@@ -24,23 +28,113 @@ public class WeightedFusion {
     }
 
     /**
-     * This method applies the Kalman filter algorithm to a series of measurements.
+     * This method applies inverse variance weighting to a series of measurements. Nothing is carried between calls; for a filter with
+     * a process model and a persisted covariance, use the {@link KalmanFusion} class.
+     * <p>
+     * The measurements are copied into a reused {@link MeasurementBatch}, so this does not allocate.
+     * </p>
      * @param estimates An array of {@link Data} objects which represent the series of measurements.
      * @return The estimate of the filter.
      */
     public double calculate(Data... estimates) {
+        batch.clear();
+        batch.addAll(estimates);
+        return calculate(batch);
+    }
+
+    /**
+     * This method applies inverse variance weighting to a batch of measurements.
+     * <p>
+     * If a gate is set, measurements too far from the previous estimate are rejected first. The first calculation is not gated, as there is no previous estimate.
+     * </p>
+     * @param estimates A {@link MeasurementBatch} which holds the series of measurements.
+     * @return The estimate of the filter.
+     */
+    public double calculate(MeasurementBatch estimates) {
+        if (gate != null && hasEstimate) return calculate(estimates, val);
 
-        double numerator = 0.0;
-        double denominator = 0.0;
+        val = fuse(estimates.values, estimates.weights, estimates.size);
+        hasEstimate = true;
+        return val;
+    }
 
-        for (Data est : estimates) {
-            numerator += Math.pow(est.stDev, -2.0) * est.value;
-            denominator += Math.pow(est.stDev, -2.0);
+    /**
+     * This method applies inverse variance weighting to a batch of measurements after rejecting those too far from a given prior, such as a prediction
+     * from odometry. Without a gate this is the same as <b>calculate(estimates)</b>.
+     * @param estimates A {@link MeasurementBatch} which holds the series of measurements.
+     * @param prior The prior estimate the measurements are tested against.
+     * @return The estimate of the filter, which is the prior if every measurement was rejected.
+     */
+    public double calculate(MeasurementBatch estimates, double prior) {
+        if (gate == null) {
+            val = fuse(estimates.values, estimates.weights, estimates.size);
+        } else {
+            val = gate.fuse(estimates, prior, report);
         }
+        hasEstimate = true;
+        return val;
+    }
 
-        val = numerator / denominator;
+    /**
+     * @param gate The gate which rejects outlying measurements before they are fused, or <b>null</b> to fuse every measurement.
+     */
+    public void setGate(OutlierGate gate) {
+        this.gate = gate;
+    }
 
-        return val;
+    /**
+     * @return The report of the measurements rejected by the gate, which is updated by every gated calculation.
+     */
+    public RejectionReport getReport() {
+        return report;
+    }
+
+    /**
+     * The inverse variance weighted mean of a series of measurements.
+     * <p>
+     * The sums are split across two independent accumulators so consecutive iterations do not wait on each other,
+     * which lets the JIT unroll the loop and keep both sums in registers.
+     * </p>
+     * @param values The values of the measurements.
+     * @param weights The inverse variances of the measurements, index matched with <b>values</b>.
+     * @param count The number of measurements to read from the start of the arrays.
+     * @return The weighted mean of the measurements.
+     */
+    static double fuse(double[] values, double[] weights, int count) {
+        double numerator0 = 0.0, numerator1 = 0.0;
+        double denominator0 = 0.0, denominator1 = 0.0;
+
+        int i = 0;
+        for (; i + 1 < count; i += 2) {
+            numerator0 += weights[i] * values[i];
+            denominator0 += weights[i];
+            numerator1 += weights[i + 1] * values[i + 1];
+            denominator1 += weights[i + 1];
+        }
+        if (i < count) {
+            numerator0 += weights[i] * values[i];
+            denominator0 += weights[i];
+        }
+
+        return (numerator0 + numerator1) / (denominator0 + denominator1);
+    }
+
+    /**
+     * The inverse variance weighted mean of each of several batches.
+     * @param batches The measurements of each parameter.
+     * @param count The number of batches to read from the start of the array.
+     * @param out An array of at least <b>count</b> values which receives the weighted mean of each batch.
+     */
+    static void fuseAll(MeasurementBatch[] batches, int count, double[] out) {
+        for (int p = 0; p < count; p++) {
+            MeasurementBatch batch = batches[p];
+            out[p] = fuse(batch.values, batch.weights, batch.size);
+        }
+    }
+
+    void set(double val) {
+        this.val = val;
+        this.hasEstimate = true;
     }
 
     /**
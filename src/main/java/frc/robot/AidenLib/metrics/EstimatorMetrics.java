@@ -0,0 +1,162 @@
+package frc.robot.AidenLib.metrics;
+
+/**
+ * A class which records how an estimator performs each call: how long it took, how many measurements each axis fused,
+ * how many times its inputs were rejected, and the time steps it was given.
+ * <p>
+ * Metrics are opt in. An estimator only records into an {@link EstimatorMetrics} object passed to its <b>setMetrics()</b> method,
+ * and without one it skips every measurement, including reading the clock. Recording only updates primitive counters, so it allocates nothing.
+ * </p>
+ * <p>
+ * An {@link EstimatorMetrics} object is written by the thread calling the estimator. <b>publish()</b> may be called from that thread or,
+ * with values which may be one call stale, from any other.
+ * </p>
+ */
+public class EstimatorMetrics implements MetricsSource {
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final RunningStats dt = new RunningStats();
+    private final long[] measurements;
+    private long rejections, outliers;
+
+    private final String latencyCount, latencyMean, latencyP50, latencyP99, latencyMax;
+    private final String dtMean, dtStDev, dtMin, dtMax;
+    private final String[] measurementKeys;
+    private final String rejectionKey, outlierKey;
+
+    /**
+     * Constructs an {@link EstimatorMetrics} object.
+     * @param name The name published before every key, such as <b>PoseEstimator3D</b>.
+     * @param axes The names of the axes whose measurements are counted, such as <b>x, y, z</b>.
+     */
+    public EstimatorMetrics(String name, String... axes) {
+        this.measurements = new long[axes.length];
+
+        // The keys are built once so that publishing does not build strings.
+        latencyCount = name + "/latency/count";
+        latencyMean = name + "/latency/meanMicros";
+        latencyP50 = name + "/latency/p50Micros";
+        latencyP99 = name + "/latency/p99Micros";
+        latencyMax = name + "/latency/maxMicros";
+        dtMean = name + "/dt/mean";
+        dtStDev = name + "/dt/stDev";
+        dtMin = name + "/dt/min";
+        dtMax = name + "/dt/max";
+        measurementKeys = new String[axes.length];
+        for (int i = 0; i < axes.length; i++) {
+            measurementKeys[i] = name + "/measurements/" + axes[i];
+        }
+        rejectionKey = name + "/rejections";
+        outlierKey = name + "/outliers";
+    }
+
+    /**
+     * Records the duration of one call of the estimator.
+     * @param nanos The duration in <b>nanoseconds</b>, from <b>System.nanoTime()</b>.
+     */
+    public void recordLatency(long nanos) {
+        latency.record(nanos);
+    }
+
+    /**
+     * Records the time step given to one call of the estimator.
+     * @param seconds The time step in <b>seconds</b>.
+     */
+    public void recordDt(double seconds) {
+        dt.record(seconds);
+    }
+
+    /**
+     * Records the number of measurements fused on one axis.
+     * @param axis The index of the axis, in the order given to the constructor.
+     * @param count The number of measurements.
+     */
+    public void recordMeasurements(int axis, int count) {
+        measurements[axis] += count;
+    }
+
+    /**
+     * Records that the inputs of one call were rejected, such as by an <b>InvalidParamterSize</b> exception.
+     */
+    public void recordRejection() {
+        rejections++;
+    }
+
+    /**
+     * Records measurements which were rejected as outliers by an {@link frc.robot.AidenLib.math.OutlierGate}.
+     * @param count The number of measurements rejected.
+     */
+    public void recordOutliers(int count) {
+        outliers += count;
+    }
+
+    /**
+     * Passes every metric to a sink. Latencies are published in <b>microseconds</b> and time steps in <b>seconds</b>.
+     * @param sink The sink to publish to.
+     */
+    @Override
+    public void publish(MetricsSink sink) {
+        sink.accept(latencyCount, latency.getCount());
+        sink.accept(latencyMean, latency.getMean() / 1e3);
+        sink.accept(latencyP50, latency.getPercentile(50.0) / 1e3);
+        sink.accept(latencyP99, latency.getPercentile(99.0) / 1e3);
+        sink.accept(latencyMax, latency.getMax() / 1e3);
+        sink.accept(dtMean, dt.getMean());
+        sink.accept(dtStDev, dt.getStDev());
+        sink.accept(dtMin, dt.getMin());
+        sink.accept(dtMax, dt.getMax());
+        for (int i = 0; i < measurements.length; i++) {
+            sink.accept(measurementKeys[i], measurements[i]);
+        }
+        sink.accept(rejectionKey, rejections);
+        sink.accept(outlierKey, outliers);
+    }
+
+    /**
+     * @return The histogram of call durations.
+     */
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    /**
+     * @return The statistics of the time steps.
+     */
+    public RunningStats getDt() {
+        return dt;
+    }
+
+    /**
+     * @param axis The index of the axis, in the order given to the constructor.
+     * @return The number of measurements fused on the axis.
+     */
+    public long getMeasurements(int axis) {
+        return measurements[axis];
+    }
+
+    /**
+     * @return The number of calls whose inputs were rejected.
+     */
+    public long getRejections() {
+        return rejections;
+    }
+
+    /**
+     * @return The number of measurements rejected as outliers.
+     */
+    public long getOutliers() {
+        return outliers;
+    }
+
+    /**
+     * Removes every recording.
+     */
+    public void reset() {
+        latency.reset();
+        dt.reset();
+        for (int i = 0; i < measurements.length; i++) {
+            measurements[i] = 0;
+        }
+        rejections = 0;
+        outliers = 0;
+    }
+}
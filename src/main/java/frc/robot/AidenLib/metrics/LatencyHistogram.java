@@ -0,0 +1,103 @@
+package frc.robot.AidenLib.metrics;
+
+import java.util.Arrays;
+
+/**
+ * A histogram of durations in <b>nanoseconds</b> with a fixed relative precision, in the style of an HDR histogram.
+ * <p>
+ * Durations below <b>64 ns</b> have their own bucket. Above that, each power of two is split into <b>32</b> linear buckets, so a recorded
+ * duration is off by at most about <b>3%</b>. Durations above about <b>2000 seconds</b> are counted in the last bucket. Recording finds the bucket
+ * with a few shifts and increments one counter, so it is O(1) and allocates nothing.
+ * </p>
+ * <p>
+ * A histogram has a single writer. Reading it from another thread may see a recording which is only partly counted.
+ * </p>
+ */
+public class LatencyHistogram {
+    private static final int SUB_BITS = 5;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    private static final int LINEAR = 2 * SUB_COUNT;
+    private static final int MAX_EXPONENT = 40;
+    private static final int BUCKETS = LINEAR + (MAX_EXPONENT - SUB_BITS) * SUB_COUNT;
+
+    private final long[] counts = new long[BUCKETS];
+    private long count, sum, max;
+
+    /**
+     * Adds a duration to the histogram.
+     * @param nanos The duration in <b>nanoseconds</b>. Negative durations are counted as zero.
+     */
+    public void record(long nanos) {
+        if (nanos < 0) nanos = 0;
+        counts[index(nanos)]++;
+        count++;
+        sum += nanos;
+        if (nanos > max) max = nanos;
+    }
+
+    private static int index(long value) {
+        if (value < LINEAR) return (int) value;
+
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent > MAX_EXPONENT) return BUCKETS - 1;
+        int shift = exponent - SUB_BITS;
+        return LINEAR + (exponent - SUB_BITS - 1) * SUB_COUNT + (int) (value >>> shift) - SUB_COUNT;
+    }
+
+    /** The middle of the durations counted by a bucket. */
+    private static long value(int index) {
+        if (index < LINEAR) return index;
+
+        int exponent = (index - LINEAR) / SUB_COUNT + SUB_BITS + 1;
+        int sub = (index - LINEAR) % SUB_COUNT;
+        int shift = exponent - SUB_BITS;
+        return ((long) (SUB_COUNT + sub) << shift) + (1L << (shift - 1));
+    }
+
+    /**
+     * @param percentile The percentile to find, from <b>0</b> to <b>100</b>.
+     * @return The duration which the given percent of recordings were at or below, in <b>nanoseconds</b>, or <b>0</b> if nothing was recorded.
+     */
+    public long getPercentile(double percentile) {
+        if (count == 0) return 0;
+
+        long target = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= target) return i == BUCKETS - 1 ? max : Math.min(value(i), max);
+        }
+        return max;
+    }
+
+    /**
+     * @return The number of durations recorded.
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return The mean duration in <b>nanoseconds</b>, or <b>0</b> if nothing was recorded.
+     */
+    public double getMean() {
+        return count == 0 ? 0.0 : (double) sum / count;
+    }
+
+    /**
+     * @return The longest duration recorded in <b>nanoseconds</b>.
+     */
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * Removes every recording.
+     */
+    public void reset() {
+        Arrays.fill(counts, 0);
+        count = 0;
+        sum = 0;
+        max = 0;
+    }
+}
@@ -0,0 +1,62 @@
+package frc.robot.AidenLib.metrics;
+
+import frc.robot.AidenLib.TimeSource;
+
+/**
+ * A class which publishes a group of {@link MetricsSource} objects, such as {@link EstimatorMetrics}, to a sink at a fixed period.
+ * <p>
+ * Call <b>update()</b> every robot loop. It only reads the clock until the period has passed, so it is cheap to call far more often than it publishes.
+ * </p>
+ */
+public class MetricsPublisher {
+    private final MetricsSource[] metrics;
+    private final MetricsSink sink;
+    private final double period;
+    private final TimeSource source;
+    private double lastPublish;
+
+    /**
+     * Constructs a {@link MetricsPublisher} object.
+     * @param sink The sink to publish to, such as a {@link NetworkTablesSink}.
+     * @param period The time between publishes in <b>seconds</b>.
+     * @param source The {@link TimeSource} used to measure the period.
+     * @param metrics The metrics to publish.
+     */
+    public MetricsPublisher(MetricsSink sink, double period, TimeSource source, MetricsSource... metrics) {
+        this.metrics = metrics.clone();
+        this.sink = sink;
+        this.period = period;
+        this.source = source;
+        this.lastPublish = source.getTime();
+    }
+
+    /**
+     * Constructs a {@link MetricsPublisher} object which publishes once a second.
+     * @param sink The sink to publish to, such as a {@link NetworkTablesSink}.
+     * @param metrics The metrics to publish.
+     */
+    public MetricsPublisher(MetricsSink sink, MetricsSource... metrics) {
+        this(sink, 1.0, TimeSource.getDefault(), metrics);
+    }
+
+    /**
+     * Publishes every metric if the period has passed since the last publish.
+     * @return Whether the metrics were published.
+     */
+    public boolean update() {
+        double time = source.getTime();
+        if (time - lastPublish < period) return false;
+        lastPublish = time;
+        publish();
+        return true;
+    }
+
+    /**
+     * Publishes every metric now.
+     */
+    public void publish() {
+        for (MetricsSource m : metrics) {
+            m.publish(sink);
+        }
+    }
+}
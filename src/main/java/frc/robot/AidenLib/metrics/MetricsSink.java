@@ -0,0 +1,11 @@
+package frc.robot.AidenLib.metrics;
+
+/** An interface for classes which receive the values published by an {@link EstimatorMetrics} object, such as {@link NetworkTablesSink}. */
+public interface MetricsSink {
+    /**
+     * Receives one value.
+     * @param key The name of the value, such as <b>PoseEstimator3D/latency/p99</b>. The same key string is passed on every publish.
+     * @param value The value.
+     */
+    void accept(String key, double value);
+}
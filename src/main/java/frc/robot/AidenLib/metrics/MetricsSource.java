@@ -0,0 +1,10 @@
+package frc.robot.AidenLib.metrics;
+
+/** An interface for classes whose values can be published to a {@link MetricsSink}, such as {@link EstimatorMetrics}, so a {@link MetricsPublisher} can publish them together. */
+public interface MetricsSource {
+    /**
+     * Passes every value to a sink.
+     * @param sink The sink to publish to.
+     */
+    void publish(MetricsSink sink);
+}
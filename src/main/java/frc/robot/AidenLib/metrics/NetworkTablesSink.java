@@ -0,0 +1,31 @@
+package frc.robot.AidenLib.metrics;
+
+import java.util.HashMap;
+
+import edu.wpi.first.networktables.DoublePublisher;
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableInstance;
+
+/** A {@link MetricsSink} which publishes each value as a double topic in a NetworkTables table. */
+public class NetworkTablesSink implements MetricsSink {
+    private final NetworkTable table;
+    private final HashMap<String, DoublePublisher> publishers = new HashMap<>();
+
+    /**
+     * Constructs a {@link NetworkTablesSink} object.
+     * @param tableName The name of the table to publish into, such as <b>AidenLib</b>.
+     */
+    public NetworkTablesSink(String tableName) {
+        this.table = NetworkTableInstance.getDefault().getTable(tableName);
+    }
+
+    @Override
+    public void accept(String key, double value) {
+        DoublePublisher publisher = publishers.get(key);
+        if (publisher == null) {
+            publisher = table.getDoubleTopic(key).publish();
+            publishers.put(key, publisher);
+        }
+        publisher.set(value);
+    }
+}
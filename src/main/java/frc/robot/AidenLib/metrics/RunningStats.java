@@ -0,0 +1,67 @@
+package frc.robot.AidenLib.metrics;
+
+/** A class which keeps the count, mean, standard deviation, minimum and maximum of a series of values without storing them. */
+public class RunningStats {
+    private long count;
+    private double mean, m2, min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+
+    /**
+     * Adds a value to the statistics.
+     * @param value The value to add.
+     */
+    public void record(double value) {
+        // Welford's method, which does not lose precision when the values are large compared to their spread.
+        count++;
+        double delta = value - mean;
+        mean += delta / count;
+        m2 += delta * (value - mean);
+        if (value < min) min = value;
+        if (value > max) max = value;
+    }
+
+    /**
+     * @return The number of values recorded.
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return The mean of the values, or <b>0</b> if nothing was recorded.
+     */
+    public double getMean() {
+        return mean;
+    }
+
+    /**
+     * @return The sample standard deviation of the values, or <b>0</b> if fewer than two were recorded.
+     */
+    public double getStDev() {
+        return count < 2 ? 0.0 : Math.sqrt(m2 / (count - 1));
+    }
+
+    /**
+     * @return The smallest value, or <b>0</b> if nothing was recorded.
+     */
+    public double getMin() {
+        return count == 0 ? 0.0 : min;
+    }
+
+    /**
+     * @return The largest value, or <b>0</b> if nothing was recorded.
+     */
+    public double getMax() {
+        return count == 0 ? 0.0 : max;
+    }
+
+    /**
+     * Removes every value.
+     */
+    public void reset() {
+        count = 0;
+        mean = 0.0;
+        m2 = 0.0;
+        min = Double.POSITIVE_INFINITY;
+        max = Double.NEGATIVE_INFINITY;
+    }
+}
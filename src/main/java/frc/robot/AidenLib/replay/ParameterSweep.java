@@ -0,0 +1,77 @@
+package frc.robot.AidenLib.replay;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import frc.robot.AidenLib.log.LogReader;
+
+/**
+ * A class which replays one log with every combination of drive and IMU standard deviations to find the combination with the least error.
+ * <p>
+ * The log is read into memory once and shared read only. Each combination runs on a worker thread with its own {@link ReplayEngine}
+ * and its own estimators, so no state is shared between workers.
+ * </p>
+ */
+public class ParameterSweep {
+    private ParameterSweep() {}
+
+    /**
+     * Replays the log once for every combination of standard deviations.
+     * @param log The segments of the log, each starting at its header, such as the result of <b>LogReader.map()</b>.
+     * @param driveStDevs The standard deviations of the drive data to try in <b>m</b>.
+     * @param imuStDevs The standard deviations of the IMU error to try in <b>radians per robot loop</b>.
+     * @param threads The number of worker threads.
+     * @return The result of every combination, ordered from the least to the most error. Results without an error come last.
+     * @throws IOException This is thrown when the log is not a supported AidenLib log.
+     * @throws InterruptedException This is thrown when the calling thread is interrupted while waiting for the workers.
+     */
+    public static ReplayResult[] run(ByteBuffer[] log, double[] driveStDevs, double[] imuStDevs, int threads) throws IOException, InterruptedException {
+        // Checks the header once so that a bad log fails here rather than in every worker.
+        new LogReader(log);
+
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(threads, 1));
+        try {
+            List<Future<ReplayResult>> futures = new ArrayList<>();
+            for (double driveStDev : driveStDevs) {
+                for (double imuStDev : imuStDevs) {
+                    futures.add(pool.submit(() -> new ReplayEngine(driveStDev, imuStDev).run(new LogReader(log), null)));
+                }
+            }
+
+            ReplayResult[] results = new ReplayResult[futures.size()];
+            for (int i = 0; i < results.length; i++) {
+                try {
+                    results[i] = futures.get(i).get();
+                } catch (ExecutionException e) {
+                    throw new IOException("A replay failed.", e.getCause());
+                }
+            }
+
+            Arrays.sort(results, Comparator.comparingDouble((ReplayResult r) -> Double.isNaN(r.rmse) ? Double.POSITIVE_INFINITY : r.rmse));
+            return results;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Replays the log once for every combination of standard deviations, with one worker thread per available processor.
+     * @param log The segments of the log, each starting at its header, such as the result of <b>LogReader.map()</b>.
+     * @param driveStDevs The standard deviations of the drive data to try in <b>m</b>.
+     * @param imuStDevs The standard deviations of the IMU error to try in <b>radians per robot loop</b>.
+     * @return The result of every combination, ordered from the least to the most error. Results without an error come last.
+     * @throws IOException This is thrown when the log is not a supported AidenLib log.
+     * @throws InterruptedException This is thrown when the calling thread is interrupted while waiting for the workers.
+     */
+    public static ReplayResult[] run(ByteBuffer[] log, double[] driveStDevs, double[] imuStDevs) throws IOException, InterruptedException {
+        return run(log, driveStDevs, imuStDevs, Runtime.getRuntime().availableProcessors());
+    }
+}
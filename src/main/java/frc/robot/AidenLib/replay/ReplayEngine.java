@@ -0,0 +1,217 @@
+package frc.robot.AidenLib.replay;
+
+import edu.wpi.first.math.geometry.Pose3d;
+import edu.wpi.first.math.geometry.Rotation3d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+
+import frc.robot.AidenLib.SimulatedTimeSource;
+import frc.robot.AidenLib.control.Odometry3D;
+import frc.robot.AidenLib.control.PoseEstimator3D;
+import frc.robot.AidenLib.control.PoseState;
+import frc.robot.AidenLib.control.RotationEstimator3D;
+import frc.robot.AidenLib.log.LogFormat;
+import frc.robot.AidenLib.log.LogReader;
+import frc.robot.AidenLib.log.LogRecord;
+import frc.robot.AidenLib.math.Data;
+
+/**
+ * A class which runs {@link Odometry3D}, {@link RotationEstimator3D} and {@link PoseEstimator3D} over a recorded log as fast as the CPU allows.
+ * <p>
+ * Every <b>LogFormat.INPUT</b> record is one robot loop. The <b>LogFormat.CAMERA</b> and <b>LogFormat.MEASUREMENT</b> records between two loops are fused by the second loop,
+ * and the time step of each loop is the difference of the record timestamps, so the estimators see the same time steps as on the robot.
+ * <b>LogFormat.REFERENCE</b> records are compared against the newest estimate to score the standard deviations.
+ * </p>
+ * <p>
+ * When the estimators recorded their own inputs, a <b>LogFormat.ESTIMATE</b> record with speeds after a <b>LogFormat.ROTATION</b> record is one robot loop instead,
+ * using the IMU rotation of the <b>LogFormat.ROTATION</b> record. From the first such loop on, <b>LogFormat.INPUT</b> records are ignored, so a log recorded by the
+ * estimators and an {@link Odometry3D} together replays each loop once, whichever order they ran in. Only an <b>LogFormat.INPUT</b> record written before the
+ * first estimate, when the odometry runs first, is still replayed as a loop of its own.
+ * </p>
+ * <p>
+ * A {@link ReplayEngine} builds new estimators for every run and is not shared between threads, so several engines may replay the same log at once.
+ * </p>
+ */
+public class ReplayEngine {
+    private final double driveStDev, imuStDev;
+
+    private final Axis x = new Axis(), y = new Axis(), z = new Axis();
+    private final Axis roll = new Axis(), pitch = new Axis(), yaw = new Axis();
+    private final Axis[] axes = { x, y, z, roll, pitch, yaw };
+    private final LogRecord record = new LogRecord();
+    private final PoseState odometryState = new PoseState(), estimateState = new PoseState();
+    private final double[] rot = new double[3], pos = new double[3];
+
+    // The state of the current run.
+    private SimulatedTimeSource clock;
+    private Odometry3D odometry;
+    private RotationEstimator3D rotEstimator;
+    private PoseEstimator3D poseEstimator;
+    private Pose3d initialPose;
+    private double lastTime;
+    private long steps;
+
+    /**
+     * Constructs a {@link ReplayEngine} object.
+     * @param driveStDev The standard deviation of the drive data in <b>m</b>, passed to the {@link PoseEstimator3D}.
+     * @param imuStDev The standard deviation of the IMU error in <b>radians per robot loop</b>, passed to the {@link RotationEstimator3D}.
+     */
+    public ReplayEngine(double driveStDev, double imuStDev) {
+        this.driveStDev = driveStDev;
+        this.imuStDev = imuStDev;
+    }
+
+    /**
+     * Replays every record of a log.
+     * @param reader The reader of the log, positioned at its first record.
+     * @param listener Receives the trajectories after every robot loop, or <b>null</b> if only the score is needed.
+     * @return The score of the replay.
+     */
+    public ReplayResult run(LogReader reader, ReplayListener listener) {
+        long start = System.nanoTime();
+
+        clock = null;
+        odometry = null;
+        rotEstimator = null;
+        poseEstimator = null;
+        initialPose = null;
+        lastTime = 0.0;
+        steps = 0;
+
+        long references = 0;
+        double squaredError = 0.0;
+        double imuRoll = 0.0, imuPitch = 0.0, imuYaw = 0.0;
+        boolean rotation = false, estimatorLoops = false;
+
+        clear();
+        while (reader.next(record)) {
+            double[] v = record.values;
+            switch (record.type) {
+                case LogFormat.INPUT:
+                    if (!estimatorLoops) step(new ChassisSpeeds(v[0], v[1], v[2]), new Rotation3d(v[3], v[4], v[5]), record.timestamp, listener);
+                    break;
+                case LogFormat.ROTATION:
+                    imuRoll = v[0];
+                    imuPitch = v[1];
+                    imuYaw = v[2];
+                    rotation = true;
+                    break;
+                case LogFormat.CAMERA:
+                    x.add(v[0], v[6]);
+                    y.add(v[1], v[7]);
+                    z.add(v[2], v[8]);
+                    roll.add(v[3], v[9]);
+                    pitch.add(v[4], v[10]);
+                    yaw.add(v[5], v[11]);
+                    break;
+                case LogFormat.MEASUREMENT:
+                    if (record.source >= 0 && record.source < axes.length) axes[record.source].add(v[0], v[1]);
+                    break;
+                case LogFormat.REFERENCE:
+                    if (clock == null) {
+                        if (initialPose == null) initialPose = new Pose3d(v[0], v[1], v[2], new Rotation3d(v[3], v[4], v[5]));
+                    } else {
+                        double ex = pos[0] - v[0], ey = pos[1] - v[1], ez = pos[2] - v[2];
+                        squaredError += ex * ex + ey * ey + ez * ez;
+                        references++;
+                    }
+                    break;
+                case LogFormat.ESTIMATE:
+                    // The pose the robot estimated while recording is used as the starting pose when the log has no reference.
+                    if (clock == null && initialPose == null) initialPose = new Pose3d(v[0], v[1], v[2], new Rotation3d(v[3], v[4], v[5]));
+                    if (rotation && record.source == 1) {
+                        estimatorLoops = true;
+                        rotation = false;
+                        step(new ChassisSpeeds(v[6], v[7], v[8]), new Rotation3d(imuRoll, imuPitch, imuYaw), record.timestamp, listener);
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        double rmse = references == 0 ? Double.NaN : Math.sqrt(squaredError / references);
+        return new ReplayResult(driveStDev, imuStDev, steps, references, rmse, (System.nanoTime() - start) / 1e9);
+    }
+
+    /**
+     * Runs one robot loop of the estimators and the odometry, fusing the measurements read since the last loop.
+     */
+    private void step(ChassisSpeeds speeds, Rotation3d imu, double timestamp, ReplayListener listener) {
+        if (clock == null) {
+            if (initialPose == null) initialPose = new Pose3d(0.0, 0.0, 0.0, imu);
+            clock = new SimulatedTimeSource(timestamp);
+            odometry = new Odometry3D(initialPose, clock);
+            rotEstimator = new RotationEstimator3D(imuStDev, initialPose.getRotation(), clock);
+            poseEstimator = new PoseEstimator3D(initialPose, driveStDev, clock);
+            lastTime = timestamp;
+        }
+
+        double dt = timestamp - lastTime;
+        lastTime = timestamp;
+        clock.set(timestamp);
+
+        rotEstimator.estimate(imu, yaw.measures(), pitch.measures(), roll.measures(), rot, dt);
+        poseEstimator.estimate(speeds, rot, x.measures(), y.measures(), z.measures(), pos, dt);
+        odometry.update(speeds, imu, dt);
+        clear();
+        steps++;
+
+        if (listener != null) {
+            odometry.getState(odometryState);
+            odometryState.timestamp = timestamp;
+            estimateState.x = pos[0];
+            estimateState.y = pos[1];
+            estimateState.z = pos[2];
+            estimateState.roll = rot[0];
+            estimateState.pitch = rot[1];
+            estimateState.yaw = rot[2];
+            estimateState.timestamp = timestamp;
+            estimateState.sequence = steps - 1;
+            listener.onStep(odometryState, estimateState);
+        }
+    }
+
+    private void clear() {
+        for (Axis axis : axes) {
+            axis.count = 0;
+        }
+    }
+
+    /**
+     * The measurements of one axis between two robot loops. The {@link Data} objects and the arrays passed to the estimators are kept
+     * for every count seen, so replaying a long log does not allocate once the largest number of measurements per loop has been seen.
+     */
+    private static class Axis {
+        private Data[] pool = new Data[0];
+        private Data[][] views = { new Data[0] };
+        private int count;
+
+        void add(double value, double stDev) {
+            if (count == pool.length) grow();
+            pool[count].value = value;
+            pool[count].stDev = stDev;
+            count++;
+        }
+
+        Data[] measures() {
+            return views[count];
+        }
+
+        private void grow() {
+            int size = Math.max(2 * pool.length, 4);
+            Data[] newPool = new Data[size];
+            System.arraycopy(pool, 0, newPool, 0, pool.length);
+            for (int i = pool.length; i < size; i++) {
+                newPool[i] = new Data(0.0, 1.0);
+            }
+
+            Data[][] newViews = new Data[size + 1][];
+            for (int n = 0; n <= size; n++) {
+                newViews[n] = new Data[n];
+                System.arraycopy(newPool, 0, newViews[n], 0, n);
+            }
+            pool = newPool;
+            views = newViews;
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package frc.robot.AidenLib.replay;
+
+import frc.robot.AidenLib.control.PoseState;
+
+/** An interface for classes which receive the trajectories computed by a {@link ReplayEngine}. */
+public interface ReplayListener {
+    /**
+     * Called once for every robot loop in the log. The states are reused for the next loop, so they must be copied to be kept.
+     * @param odometry The pose of the {@link frc.robot.AidenLib.control.Odometry3D} after the loop.
+     * @param estimate The fused pose of the {@link frc.robot.AidenLib.control.PoseEstimator3D} and {@link frc.robot.AidenLib.control.RotationEstimator3D} after the loop.
+     */
+    void onStep(PoseState odometry, PoseState estimate);
+}
@@ -0,0 +1,68 @@
+package frc.robot.AidenLib.replay;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import frc.robot.AidenLib.log.LogReader;
+
+/**
+ * A desktop entry point which replays a log, run with <b>./gradlew replay -Pargs="..."</b>.
+ * <p>
+ * Arguments: <b>&lt;log&gt; [--out dir] [--drive a,b,...] [--imu a,b,...] [--threads n]</b>, where the log is one file or a directory of
+ * segments written by a {@link frc.robot.AidenLib.log.TelemetryLog}. With one drive and one IMU standard deviation the trajectories are written to <b>dir/trajectory.csv</b>. With several, every combination is replayed in parallel, the results are printed
+ * from best to worst, and the trajectories of the best combination are written.
+ * </p>
+ */
+public class ReplayMain {
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length == 0) {
+            System.err.println("Usage: <log> [--out dir] [--drive a,b,...] [--imu a,b,...] [--threads n]");
+            System.exit(1);
+        }
+
+        Path log = Paths.get(args[0]);
+        Path out = Paths.get(".");
+        double[] driveStDevs = { 0.1 };
+        double[] imuStDevs = { 0.01 };
+        int threads = Runtime.getRuntime().availableProcessors();
+
+        for (int i = 1; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--out": out = Paths.get(args[i + 1]); break;
+                case "--drive": driveStDevs = parse(args[i + 1]); break;
+                case "--imu": imuStDevs = parse(args[i + 1]); break;
+                case "--threads": threads = Integer.parseInt(args[i + 1]); break;
+                default: throw new IllegalArgumentException("Unknown argument: " + args[i]);
+            }
+        }
+
+        ByteBuffer[] buffer = LogReader.map(log);
+        ReplayResult best;
+        if (driveStDevs.length * imuStDevs.length > 1) {
+            ReplayResult[] results = ParameterSweep.run(buffer, driveStDevs, imuStDevs, threads);
+            for (ReplayResult result : results) {
+                System.out.println(result);
+            }
+            best = results[0];
+        } else {
+            best = new ReplayResult(driveStDevs[0], imuStDevs[0], 0, 0, Double.NaN, 0.0);
+        }
+
+        Files.createDirectories(out);
+        try (TrajectoryWriter writer = new TrajectoryWriter(out.resolve("trajectory.csv"))) {
+            System.out.println("Trajectory: " + new ReplayEngine(best.driveStDev, best.imuStDev).run(new LogReader(buffer), writer));
+        }
+    }
+
+    private static double[] parse(String list) {
+        String[] parts = list.split(",");
+        double[] values = new double[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            values[i] = Double.parseDouble(parts[i].trim());
+        }
+        return values;
+    }
+}
@@ -0,0 +1,41 @@
+package frc.robot.AidenLib.replay;
+
+/** Class to represent the outcome of replaying one log with one set of standard deviations. */
+public class ReplayResult {
+    public final double driveStDev, imuStDev;
+
+    /** The number of robot loops replayed. */
+    public final long steps;
+
+    /** The number of reference poses the estimate was compared against. */
+    public final long references;
+
+    /** The root mean square error of the estimated position against the reference poses in <b>m</b>, or <b>NaN</b> if the log has no reference poses. */
+    public final double rmse;
+
+    /** The wall clock time the replay took in <b>seconds</b>. */
+    public final double elapsed;
+
+    /**
+     * Constructs a {@link ReplayResult} object.
+     * @param driveStDev The standard deviation of the drive data in <b>m</b>.
+     * @param imuStDev The standard deviation of the IMU error in <b>radians per robot loop</b>.
+     * @param steps The number of robot loops replayed.
+     * @param references The number of reference poses the estimate was compared against.
+     * @param rmse The root mean square position error in <b>m</b>.
+     * @param elapsed The wall clock time the replay took in <b>seconds</b>.
+     */
+    public ReplayResult(double driveStDev, double imuStDev, long steps, long references, double rmse, double elapsed) {
+        this.driveStDev = driveStDev;
+        this.imuStDev = imuStDev;
+        this.steps = steps;
+        this.references = references;
+        this.rmse = rmse;
+        this.elapsed = elapsed;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("driveStDev=%.4f imuStDev=%.4f steps=%d references=%d rmse=%.4f m (%.3f s)", driveStDev, imuStDev, steps, references, rmse, elapsed);
+    }
+}
@@ -0,0 +1,55 @@
+package frc.robot.AidenLib.replay;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import frc.robot.AidenLib.control.PoseState;
+
+/**
+ * A {@link ReplayListener} which writes the trajectories of a replay to a CSV file with one row per robot loop.
+ * <p>
+ * The columns are the time, the odometry pose and the estimated pose, with positions in <b>m</b> and rotations in <b>radians</b>.
+ * </p>
+ */
+public class TrajectoryWriter implements ReplayListener, AutoCloseable {
+    private final BufferedWriter writer;
+
+    /**
+     * Constructs a {@link TrajectoryWriter} object, replacing the file if it exists.
+     * @param path The path of the CSV file.
+     * @throws IOException This is thrown when the file can not be created.
+     */
+    public TrajectoryWriter(Path path) throws IOException {
+        this.writer = Files.newBufferedWriter(path);
+        writer.write("time,odom_x,odom_y,odom_z,odom_roll,odom_pitch,odom_yaw,est_x,est_y,est_z,est_roll,est_pitch,est_yaw");
+        writer.newLine();
+    }
+
+    @Override
+    public void onStep(PoseState odometry, PoseState estimate) {
+        try {
+            writer.write(Double.toString(estimate.timestamp));
+            write(odometry);
+            write(estimate);
+            writer.newLine();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void write(PoseState state) throws IOException {
+        double[] values = { state.x, state.y, state.z, state.roll, state.pitch, state.yaw };
+        for (double value : values) {
+            writer.write(',');
+            writer.write(Double.toString(value));
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+}
@@ -0,0 +1,82 @@
+package frc.robot.AidenLib.sim;
+
+import edu.wpi.first.math.geometry.Rotation3d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+
+import frc.robot.AidenLib.math.Data;
+
+/**
+ * Class to represent the synthesized sensor readings of one simulated robot loop, as read from the
+ * {@link frc.robot.AidenLib.example.Drivetrain}, {@link frc.robot.AidenLib.example.IMU} and {@link frc.robot.AidenLib.example.Camera} of a real robot.
+ * <p>
+ * One frame is reused for every loop of a simulation. Everything an estimator reads is filled in before it is timed,
+ * so only the work of the estimator is counted in its cost.
+ * </p>
+ */
+public class SensorFrame {
+    private static final Data[] NONE = new Data[0];
+
+    /** The time of the loop in <b>seconds</b>, which is also the time of the simulated clock. */
+    public double time;
+
+    /** The time since the last loop in <b>seconds</b>. */
+    public double dt;
+
+    /** The robot relative speeds reported by the drivetrain in <b>m/s</b>. */
+    public final ChassisSpeeds speeds = new ChassisSpeeds();
+
+    /** The heading reported by the IMU as <b>[roll, pitch, yaw]</b> in <b>radians</b>. */
+    public final double[] heading = new double[3];
+
+    /** The same heading as <b>heading</b>, for estimators which take a {@link Rotation3d}. */
+    public Rotation3d imu = new Rotation3d();
+
+    /** The reading of the accelerometer in the robot frame as <b>[x, y, z]</b> in <b>m/s^2</b>, including gravity. */
+    public final double[] accel = new double[3];
+
+    /** Whether a camera frame arrived this loop. */
+    public boolean hasCamera;
+
+    /** The time the camera frame was captured in <b>seconds</b>, which is earlier than <b>time</b> by the latency of the camera. */
+    public double captureTime;
+
+    /** The measurements of the camera frame, which are empty arrays when no frame arrived. */
+    public Data[] x = NONE, y = NONE, z = NONE, roll = NONE, pitch = NONE, yaw = NONE;
+
+    private final Data[][] measures = new Data[6][];
+
+    SensorFrame() {
+        for (int i = 0; i < measures.length; i++) {
+            measures[i] = new Data[] { new Data(0.0, 1.0) };
+        }
+    }
+
+    /**
+     * Sets the measurements of a camera frame.
+     * @param pose The measured pose as <b>[x, y, z, roll, pitch, yaw]</b> in <b>m</b> and <b>radians</b>.
+     * @param stDevs The standard deviations of the measurements in the same order.
+     * @param captureTime The time the frame was captured in <b>seconds</b>.
+     */
+    void setCamera(double[] pose, double[] stDevs, double captureTime) {
+        for (int i = 0; i < measures.length; i++) {
+            measures[i][0].value = pose[i];
+            measures[i][0].stDev = stDevs[i];
+        }
+        x = measures[0];
+        y = measures[1];
+        z = measures[2];
+        roll = measures[3];
+        pitch = measures[4];
+        yaw = measures[5];
+        this.captureTime = captureTime;
+        hasCamera = true;
+    }
+
+    /**
+     * Removes the measurements of the camera frame.
+     */
+    void clearCamera() {
+        x = y = z = roll = pitch = yaw = NONE;
+        hasCamera = false;
+    }
+}
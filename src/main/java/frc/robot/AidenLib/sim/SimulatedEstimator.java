@@ -0,0 +1,294 @@
+package frc.robot.AidenLib.sim;
+
+import edu.wpi.first.math.geometry.Pose3d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+
+import frc.robot.AidenLib.TimeSource;
+import frc.robot.AidenLib.control.FixedLagSmoother3D;
+import frc.robot.AidenLib.control.GovernedPoseEstimator3D;
+import frc.robot.AidenLib.control.KalmanPoseEstimator3D;
+import frc.robot.AidenLib.control.LatencyCompensatedPoseEstimator3D;
+import frc.robot.AidenLib.control.LoopBudgetGovernor;
+import frc.robot.AidenLib.control.Odometry3D;
+import frc.robot.AidenLib.control.PoseEstimator3D;
+import frc.robot.AidenLib.control.PoseState;
+import frc.robot.AidenLib.control.RotationEstimator3D;
+import frc.robot.AidenLib.control.VelocityEstimator3D;
+
+/**
+ * Interface to adapt an estimator pipeline to {@link SimulationHarness}, which feeds it one {@link SensorFrame} per robot loop.
+ * <p>
+ * The static methods build the pipelines of this library. Everything a pipeline needs between loops should be created in <b>reset()</b>,
+ * so that <b>update()</b> does only the work which would run on the robot.
+ * </p>
+ */
+public interface SimulatedEstimator {
+    /**
+     * @return The name of the pipeline, as printed in the results.
+     */
+    String getName();
+
+    /**
+     * Creates the estimators of the pipeline for a new run.
+     * @param initialPose The true initial pose of the robot.
+     * @param clock The simulated clock of the run, which has already been advanced to the time of each frame.
+     */
+    void reset(Pose3d initialPose, TimeSource clock);
+
+    /**
+     * Runs the pipeline for one robot loop.
+     * @param frame The sensor readings of the loop.
+     * @param out An array of length 6 which receives the estimated pose as <b>[x, y, z, roll, pitch, yaw]</b> in <b>m</b> and <b>radians</b>.
+     */
+    void update(SensorFrame frame, double[] out);
+
+    /**
+     * {@link Odometry3D} alone, which ignores the camera.
+     * @param integration The integration method.
+     * @param substeps The number of substeps of each update.
+     * @return The pipeline.
+     */
+    static SimulatedEstimator odometry(Odometry3D.Integration integration, int substeps) {
+        return new SimulatedEstimator() {
+            private Odometry3D odometry;
+            private PoseState state = new PoseState();
+
+            @Override
+            public String getName() {
+                return "Odometry3D " + integration + " x" + substeps;
+            }
+
+            @Override
+            public void reset(Pose3d initialPose, TimeSource clock) {
+                odometry = new Odometry3D(initialPose, clock);
+                odometry.setIntegration(integration);
+                odometry.setSubsteps(substeps);
+            }
+
+            @Override
+            public void update(SensorFrame frame, double[] out) {
+                odometry.update(frame.speeds, frame.heading, out, frame.dt);
+                odometry.getState(state);
+                out[3] = state.roll;
+                out[4] = state.pitch;
+                out[5] = state.yaw;
+            }
+        };
+    }
+
+    /**
+     * {@link RotationEstimator3D} and {@link PoseEstimator3D}, which fuse each camera frame as if it had no latency.
+     * @param driveStDev The standard deviation of the drivetrain passed to the pose estimator.
+     * @param imuStDev The standard deviation of the IMU passed to the rotation estimator.
+     * @return The pipeline.
+     */
+    static SimulatedEstimator fused(double driveStDev, double imuStDev) {
+        return new SimulatedEstimator() {
+            private RotationEstimator3D rotation;
+            private PoseEstimator3D pose;
+            private double[] rot = new double[3], position = new double[3];
+
+            @Override
+            public String getName() {
+                return "PoseEstimator3D";
+            }
+
+            @Override
+            public void reset(Pose3d initialPose, TimeSource clock) {
+                rotation = new RotationEstimator3D(imuStDev, initialPose.getRotation(), clock);
+                pose = new PoseEstimator3D(initialPose, driveStDev, clock);
+            }
+
+            @Override
+            public void update(SensorFrame frame, double[] out) {
+                rotation.estimate(frame.imu, frame.yaw, frame.pitch, frame.roll, rot, frame.dt);
+                pose.estimate(frame.speeds, rot, frame.x, frame.y, frame.z, position, frame.dt);
+                write(position, rot, out);
+            }
+        };
+    }
+
+    /**
+     * {@link RotationEstimator3D} and {@link LatencyCompensatedPoseEstimator3D}, which fuses each camera frame at the time it was captured.
+     * @param driveStDev The standard deviation of the drivetrain passed to the pose estimator.
+     * @param imuStDev The standard deviation of the IMU passed to the rotation estimator.
+     * @return The pipeline.
+     */
+    static SimulatedEstimator latencyCompensated(double driveStDev, double imuStDev) {
+        return new SimulatedEstimator() {
+            private RotationEstimator3D rotation;
+            private LatencyCompensatedPoseEstimator3D pose;
+            private double[] rot = new double[3], position = new double[3];
+
+            @Override
+            public String getName() {
+                return "LatencyCompensatedPoseEstimator3D";
+            }
+
+            @Override
+            public void reset(Pose3d initialPose, TimeSource clock) {
+                rotation = new RotationEstimator3D(imuStDev, initialPose.getRotation(), clock);
+                pose = new LatencyCompensatedPoseEstimator3D(initialPose, driveStDev, 50, 8, clock);
+            }
+
+            @Override
+            public void update(SensorFrame frame, double[] out) {
+                rotation.estimate(frame.imu, frame.yaw, frame.pitch, frame.roll, rot, frame.dt);
+                pose.update(frame.speeds, rot, position, frame.time);
+                if (frame.hasCamera && pose.addMeasurement(frame.x[0], frame.y[0], frame.z[0], frame.captureTime)) {
+                    pose.getEstimate(position);
+                }
+                write(position, rot, out);
+            }
+        };
+    }
+
+    /**
+     * {@link RotationEstimator3D} and {@link FixedLagSmoother3D}, which fuses each camera frame into the position it was captured at.
+     * The real-time estimate is reported, since the smoothed one is for a past position.
+     * @param driveStDev The standard deviation of the drivetrain speeds passed to the smoother in <b>m/s</b>.
+     * @param imuStDev The standard deviation of the IMU passed to the rotation estimator.
+     * @param windowSize The number of positions in the window of the smoother.
+     * @return The pipeline.
+     */
+    static SimulatedEstimator smoothed(double driveStDev, double imuStDev, int windowSize) {
+        return new SimulatedEstimator() {
+            private RotationEstimator3D rotation;
+            private FixedLagSmoother3D smoother;
+            private double[] rot = new double[3], position = new double[3];
+
+            @Override
+            public String getName() {
+                return "FixedLagSmoother3D x" + windowSize;
+            }
+
+            @Override
+            public void reset(Pose3d initialPose, TimeSource clock) {
+                rotation = new RotationEstimator3D(imuStDev, initialPose.getRotation(), clock);
+                smoother = new FixedLagSmoother3D(initialPose, driveStDev, 0.01, windowSize, clock);
+            }
+
+            @Override
+            public void update(SensorFrame frame, double[] out) {
+                rotation.estimate(frame.imu, frame.yaw, frame.pitch, frame.roll, rot, frame.dt);
+                smoother.update(frame.speeds, rot, position, frame.time);
+                if (frame.hasCamera) {
+                    smoother.addMeasurement(frame.x[0], frame.y[0], frame.z[0], frame.captureTime);
+                    smoother.getEstimate(position);
+                }
+                write(position, rot, out);
+            }
+        };
+    }
+
+    /**
+     * {@link RotationEstimator3D} and {@link KalmanPoseEstimator3D}, which fuse each camera frame as if it had no latency.
+     * @param driveStDev The standard deviation of the drivetrain passed to the pose estimator.
+     * @param imuStDev The standard deviation of the IMU passed to the rotation estimator.
+     * @return The pipeline.
+     */
+    static SimulatedEstimator kalman(double driveStDev, double imuStDev) {
+        return new SimulatedEstimator() {
+            private RotationEstimator3D rotation;
+            private KalmanPoseEstimator3D pose;
+            private double[] rot = new double[3], position = new double[3];
+
+            @Override
+            public String getName() {
+                return "KalmanPoseEstimator3D";
+            }
+
+            @Override
+            public void reset(Pose3d initialPose, TimeSource clock) {
+                rotation = new RotationEstimator3D(imuStDev, initialPose.getRotation(), clock);
+                pose = new KalmanPoseEstimator3D(initialPose, driveStDev, 1.0, clock);
+            }
+
+            @Override
+            public void update(SensorFrame frame, double[] out) {
+                rotation.estimate(frame.imu, frame.yaw, frame.pitch, frame.roll, rot, frame.dt);
+                pose.estimate(frame.speeds, rot, frame.x, frame.y, frame.z, position, frame.dt);
+                write(position, rot, out);
+            }
+        };
+    }
+
+    /**
+     * {@link RotationEstimator3D} and {@link PoseEstimator3D} under a {@link LoopBudgetGovernor}, which is timed with the wall clock
+     * since the simulated clock does not move while the pipeline runs.
+     * @param driveStDev The standard deviation of the drivetrain passed to the pose estimator.
+     * @param imuStDev The standard deviation of the IMU passed to the rotation estimator.
+     * @param budget The budget of the governor in <b>seconds</b>.
+     * @return The pipeline.
+     */
+    static SimulatedEstimator governed(double driveStDev, double imuStDev, double budget) {
+        return new SimulatedEstimator() {
+            private GovernedPoseEstimator3D estimator;
+
+            @Override
+            public String getName() {
+                return "GovernedPoseEstimator3D " + Math.round(budget * 1e6) + " us";
+            }
+
+            @Override
+            public void reset(Pose3d initialPose, TimeSource clock) {
+                estimator = new GovernedPoseEstimator3D(
+                    new RotationEstimator3D(imuStDev, initialPose.getRotation(), clock),
+                    new PoseEstimator3D(initialPose, driveStDev, clock),
+                    new LoopBudgetGovernor("Governor", new String[] { "rotation", "pose" }, budget)
+                );
+            }
+
+            @Override
+            public void update(SensorFrame frame, double[] out) {
+                estimator.estimate(frame.speeds, frame.imu, frame.x, frame.y, frame.z, frame.roll, frame.pitch, frame.yaw, out, frame.dt);
+            }
+        };
+    }
+
+    /**
+     * {@link VelocityEstimator3D} feeding {@link Odometry3D}, which fuses the accelerometer with the drivetrain and ignores the camera.
+     * @param accelStDev The standard deviation of the integrated acceleration passed to the velocity estimator.
+     * @param driveStDev The standard deviation of the drivetrain passed to the velocity estimator.
+     * @return The pipeline.
+     */
+    static SimulatedEstimator velocityOdometry(double accelStDev, double driveStDev) {
+        return new SimulatedEstimator() {
+            private VelocityEstimator3D velocity;
+            private Odometry3D odometry;
+            private ChassisSpeeds speeds = new ChassisSpeeds();
+            private double[] fieldSpeeds = new double[3];
+            private PoseState state = new PoseState();
+
+            @Override
+            public String getName() {
+                return "VelocityEstimator3D + Odometry3D";
+            }
+
+            @Override
+            public void reset(Pose3d initialPose, TimeSource clock) {
+                velocity = new VelocityEstimator3D(accelStDev, driveStDev, clock);
+                odometry = new Odometry3D(initialPose, clock);
+            }
+
+            @Override
+            public void update(SensorFrame frame, double[] out) {
+                velocity.estimate(frame.speeds, frame.accel, frame.heading, fieldSpeeds, frame.dt);
+                odometry.update(velocity.getRobotSpeeds(speeds), frame.heading, out, frame.dt);
+                odometry.getState(state);
+                out[3] = state.roll;
+                out[4] = state.pitch;
+                out[5] = state.yaw;
+            }
+        };
+    }
+
+    private static void write(double[] position, double[] rotation, double[] out) {
+        out[0] = position[0];
+        out[1] = position[1];
+        out[2] = position[2];
+        out[3] = rotation[0];
+        out[4] = rotation[1];
+        out[5] = rotation[2];
+    }
+}
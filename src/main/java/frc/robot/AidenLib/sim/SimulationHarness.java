@@ -0,0 +1,291 @@
+package frc.robot.AidenLib.sim;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Random;
+
+import edu.wpi.first.math.geometry.Pose3d;
+import edu.wpi.first.math.geometry.Rotation3d;
+
+import frc.robot.AidenLib.SimulatedTimeSource;
+import frc.robot.AidenLib.control.VelocityEstimator3D;
+import frc.robot.AidenLib.math.MutableRotation3d;
+
+/**
+ * A class which measures the accuracy and the cost of estimator pipelines against a known {@link Trajectory}.
+ * <p>
+ * Each run integrates the true pose of the robot from the trajectory, synthesizes noisy drivetrain, IMU and camera readings from it,
+ * and passes them to a {@link SimulatedEstimator} under a {@link SimulatedTimeSource}. Camera frames are delivered a fixed latency after
+ * they were captured, and each one may be dropped. The readings only depend on the seed, so every pipeline sees exactly the same inputs.
+ * </p>
+ * <p>
+ * The time and the memory allocated by every call of <b>update()</b> are measured with the overhead of measuring them removed.
+ * Allocation is read from the JVM, and is reported as <b>NaN</b> on JVMs which do not support it.
+ * </p>
+ */
+public class SimulationHarness {
+    private static final int TRUTH_SUBSTEPS = 50;
+
+    private double duration = 60.0, period = 0.02;
+    private double driveNoise = 0.05, imuNoise = 0.002, imuDrift = 0.001;
+    private double accelNoise = 0.1, accelBias = 0.05;
+    private double cameraPeriod = 0.1, cameraLatency = 0.06, cameraDropout = 0.2;
+    private double[] cameraNoise = { 0.05, 0.05, 0.05, 0.02, 0.02, 0.02 };
+    private long seed = 1;
+    private int warmupRuns = 1;
+
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    private final boolean allocationSupported;
+    private double overheadNanos, overheadBytes;
+
+    /**
+     * Constructs a {@link SimulationHarness} object with a 60 second run at a 20 ms loop and a camera at 10 Hz with 60 ms of latency, 20% of whose frames are dropped.
+     */
+    public SimulationHarness() {
+        boolean supported = threads instanceof com.sun.management.ThreadMXBean;
+        if (supported) {
+            com.sun.management.ThreadMXBean allocation = (com.sun.management.ThreadMXBean) threads;
+            supported = allocation.isThreadAllocatedMemorySupported();
+            if (supported) allocation.setThreadAllocatedMemoryEnabled(true);
+        }
+        allocationSupported = supported;
+    }
+
+    /**
+     * Runs several pipelines over the same trajectory and readings.
+     * @param trajectory The true motion of the robot.
+     * @param estimators The pipelines to run.
+     * @return One result per pipeline, in the same order.
+     */
+    public SimulationResult[] run(Trajectory trajectory, SimulatedEstimator... estimators) {
+        SimulationResult[] results = new SimulationResult[estimators.length];
+        for (int i = 0; i < estimators.length; i++) {
+            results[i] = run(trajectory, estimators[i]);
+        }
+        return results;
+    }
+
+    /**
+     * Runs one pipeline over a trajectory, after the warmup runs set by <b>setWarmupRuns()</b>.
+     * @param trajectory The true motion of the robot.
+     * @param estimator The pipeline to run.
+     * @return The accuracy and cost of the pipeline.
+     */
+    public SimulationResult run(Trajectory trajectory, SimulatedEstimator estimator) {
+        calibrate();
+        for (int i = 0; i < warmupRuns; i++) {
+            simulate(trajectory, estimator);
+        }
+        return simulate(trajectory, estimator);
+    }
+
+    private SimulationResult simulate(Trajectory trajectory, SimulatedEstimator estimator) {
+        Random random = new Random(seed);
+        SimulatedTimeSource clock = new SimulatedTimeSource();
+        SensorFrame frame = new SensorFrame();
+
+        int steps = (int) Math.round(duration / period);
+        int latencySteps = (int) Math.round(cameraLatency / period);
+
+        // The true pose of every loop, kept so camera frames can be captured in the past.
+        double[][] truth = new double[steps + 1][6];
+        double[] motion = new double[5], mid = new double[5], vector = new double[3];
+        double[] lastVelocity = new double[3], velocity = new double[3];
+        double[] cameraPose = new double[6], estimate = new double[6];
+        MutableRotation3d rotation = new MutableRotation3d();
+
+        trajectory.sample(0.0, motion);
+        setPose(truth[0], 0.0, 0.0, 0.0, motion);
+        estimator.reset(new Pose3d(0.0, 0.0, 0.0, new Rotation3d(motion[2], motion[3], motion[4])), clock);
+
+        double positionError = 0.0, rotationError = 0.0;
+        long nanos = 0, bytes = 0, cameraFrames = 0;
+        double nextCamera = cameraPeriod;
+
+        for (int k = 1; k <= steps; k++) {
+            double start = (k - 1) * period, time = k * period;
+            double[] last = truth[k - 1];
+            double x = last[0], y = last[1], z = last[2];
+
+            // The true position by the midpoint rule over many small steps.
+            double h = period / TRUTH_SUBSTEPS;
+            for (int i = 0; i < TRUTH_SUBSTEPS; i++) {
+                trajectory.sample(start + (i + 0.5) * h, mid);
+                rotation.setEuler(mid[2], mid[3], mid[4]).rotate(mid[0], mid[1], 0.0, vector);
+                x += vector[0] * h;
+                y += vector[1] * h;
+                z += vector[2] * h;
+            }
+            trajectory.sample(time, motion);
+            setPose(truth[k], x, y, z, motion);
+            rotation.setEuler(motion[2], motion[3], motion[4]).rotate(motion[0], motion[1], 0.0, velocity);
+
+            clock.advance(period);
+            frame.time = time;
+            frame.dt = period;
+
+            frame.speeds.vxMetersPerSecond = motion[0] + random.nextGaussian() * driveNoise;
+            frame.speeds.vyMetersPerSecond = motion[1] + random.nextGaussian() * driveNoise;
+            frame.speeds.omegaRadiansPerSecond = (motion[4] - last[5]) / period;
+
+            // Roll and pitch are held by gravity in a real IMU, so only the yaw drifts.
+            for (int i = 0; i < 3; i++) {
+                frame.heading[i] = motion[2 + i] + random.nextGaussian() * imuNoise;
+            }
+            frame.heading[2] += imuDrift * time;
+            frame.imu = new Rotation3d(frame.heading[0], frame.heading[1], frame.heading[2]);
+
+            // The accelerometer reads the acceleration plus gravity in the robot frame.
+            rotation.inverseRotate((velocity[0] - lastVelocity[0]) / period, (velocity[1] - lastVelocity[1]) / period,
+                (velocity[2] - lastVelocity[2]) / period + VelocityEstimator3D.GRAVITY, vector);
+            for (int i = 0; i < 3; i++) {
+                frame.accel[i] = vector[i] + accelBias + random.nextGaussian() * accelNoise;
+            }
+            System.arraycopy(velocity, 0, lastVelocity, 0, 3);
+
+            frame.clearCamera();
+            if (time >= nextCamera - 1e-9) {
+                nextCamera += cameraPeriod;
+                boolean dropped = random.nextDouble() < cameraDropout;
+                if (!dropped && k >= latencySteps) {
+                    double[] captured = truth[k - latencySteps];
+                    for (int i = 0; i < 6; i++) {
+                        cameraPose[i] = captured[i] + random.nextGaussian() * cameraNoise[i];
+                    }
+                    frame.setCamera(cameraPose, cameraNoise, time - latencySteps * period);
+                    cameraFrames++;
+                }
+            }
+
+            long bytesBefore = allocatedBytes();
+            long nanosBefore = System.nanoTime();
+            estimator.update(frame, estimate);
+            long nanosAfter = System.nanoTime();
+            long bytesAfter = allocatedBytes();
+            nanos += nanosAfter - nanosBefore;
+            bytes += bytesAfter - bytesBefore;
+
+            double[] pose = truth[k];
+            double dx = estimate[0] - pose[0], dy = estimate[1] - pose[1], dz = estimate[2] - pose[2];
+            double droll = wrap(estimate[3] - pose[3]), dpitch = wrap(estimate[4] - pose[4]), dyaw = wrap(estimate[5] - pose[5]);
+            positionError += dx * dx + dy * dy + dz * dz;
+            rotationError += droll * droll + dpitch * dpitch + dyaw * dyaw;
+        }
+
+        return new SimulationResult(
+            estimator.getName(),
+            steps,
+            cameraFrames,
+            Math.sqrt(positionError / steps),
+            Math.sqrt(rotationError / steps),
+            Math.max(0.0, (double) nanos / steps - overheadNanos),
+            allocationSupported ? Math.max(0.0, (double) bytes / steps - overheadBytes) : Double.NaN
+        );
+    }
+
+    /**
+     * Measures the time and allocation of measuring an empty update, which is subtracted from every result.
+     */
+    private void calibrate() {
+        int samples = 20000;
+        long nanos = 0, bytes = 0;
+        for (int i = 0; i < samples; i++) {
+            long bytesBefore = allocatedBytes();
+            long nanosBefore = System.nanoTime();
+            long nanosAfter = System.nanoTime();
+            long bytesAfter = allocatedBytes();
+            nanos += nanosAfter - nanosBefore;
+            bytes += bytesAfter - bytesBefore;
+        }
+        overheadNanos = (double) nanos / samples;
+        overheadBytes = (double) bytes / samples;
+    }
+
+    private long allocatedBytes() {
+        if (!allocationSupported) return 0L;
+        return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static void setPose(double[] pose, double x, double y, double z, double[] motion) {
+        pose[0] = x;
+        pose[1] = y;
+        pose[2] = z;
+        pose[3] = motion[2];
+        pose[4] = motion[3];
+        pose[5] = motion[4];
+    }
+
+    private static double wrap(double angle) {
+        return Math.IEEEremainder(angle, 2.0 * Math.PI);
+    }
+
+    /**
+     * @param seconds The length of each run in <b>seconds</b>. The default is <b>60</b>.
+     */
+    public void setDuration(double seconds) {
+        if (seconds <= 0.0) throw new IllegalArgumentException("The duration must be positive: " + seconds);
+        this.duration = seconds;
+    }
+
+    /**
+     * @param seconds The period of the robot loop in <b>seconds</b>. The default is <b>0.02</b>.
+     */
+    public void setPeriod(double seconds) {
+        if (seconds <= 0.0) throw new IllegalArgumentException("The period must be positive: " + seconds);
+        this.period = seconds;
+    }
+
+    /**
+     * Sets the noise of the drivetrain and the IMU.
+     * @param driveNoise The standard deviation of each drivetrain speed in <b>m/s</b>. The default is <b>0.05</b>.
+     * @param imuNoise The standard deviation of each IMU angle in <b>radians</b>. The default is <b>0.002</b>.
+     * @param imuDrift The rate the yaw of the IMU drifts at in <b>rad/s</b>. The default is <b>0.001</b>.
+     */
+    public void setOdometryNoise(double driveNoise, double imuNoise, double imuDrift) {
+        this.driveNoise = driveNoise;
+        this.imuNoise = imuNoise;
+        this.imuDrift = imuDrift;
+    }
+
+    /**
+     * Sets the noise of the accelerometer.
+     * @param accelNoise The standard deviation of each axis in <b>m/s^2</b>. The default is <b>0.1</b>.
+     * @param accelBias The constant bias of each axis in <b>m/s^2</b>. The default is <b>0.05</b>.
+     */
+    public void setAccelNoise(double accelNoise, double accelBias) {
+        this.accelNoise = accelNoise;
+        this.accelBias = accelBias;
+    }
+
+    /**
+     * Sets the camera.
+     * @param period The time between camera frames in <b>seconds</b>. The default is <b>0.1</b>.
+     * @param latency The time between the capture and the delivery of each frame in <b>seconds</b>, rounded to a whole number of robot loops. The default is <b>0.06</b>.
+     * @param dropout The probability each frame is dropped, from <b>0</b> to <b>1</b>. The default is <b>0.2</b>.
+     * @param noise The standard deviations of the noise of <b>[x, y, z, roll, pitch, yaw]</b> in <b>m</b> and <b>radians</b>, which are also reported as the standard deviations of the measurements.
+     */
+    public void setCamera(double period, double latency, double dropout, double[] noise) {
+        if (period <= 0.0) throw new IllegalArgumentException("The camera period must be positive: " + period);
+        if (latency < 0.0) throw new IllegalArgumentException("The camera latency must not be negative: " + latency);
+        if (noise.length != 6) throw new IllegalArgumentException("The camera noise must have 6 values: " + noise.length);
+        this.cameraPeriod = period;
+        this.cameraLatency = latency;
+        this.cameraDropout = dropout;
+        this.cameraNoise = noise.clone();
+    }
+
+    /**
+     * @param seed The seed of the noise and dropout. The default is <b>1</b>.
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * @param runs The number of unmeasured runs before each measured run, so the JIT compiler has compiled the pipeline. The default is <b>1</b>.
+     */
+    public void setWarmupRuns(int runs) {
+        if (runs < 0) throw new IllegalArgumentException("The number of warmup runs must not be negative: " + runs);
+        this.warmupRuns = runs;
+    }
+}
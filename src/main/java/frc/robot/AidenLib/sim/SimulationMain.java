@@ -0,0 +1,56 @@
+package frc.robot.AidenLib.sim;
+
+import frc.robot.AidenLib.control.Odometry3D;
+
+/**
+ * A desktop entry point which compares the estimator pipelines of this library on a synthetic trajectory, run with <b>./gradlew simulate -Pargs="..."</b>.
+ * <p>
+ * Arguments: <b>[--trajectory weaving|climbing] [--duration s] [--period s] [--latency s] [--dropout p] [--camera-period s] [--seed n]</b>.
+ * One row is printed per pipeline with its position and rotation error and its cost per robot loop.
+ * </p>
+ */
+public class SimulationMain {
+    public static void main(String[] args) {
+        SimulationHarness harness = new SimulationHarness();
+        Trajectory trajectory = Trajectory.weaving(3.0, 2.5, 0.05);
+        double cameraPeriod = 0.1, latency = 0.06, dropout = 0.2;
+        double[] cameraNoise = { 0.05, 0.05, 0.05, 0.02, 0.02, 0.02 };
+
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--trajectory": trajectory = parseTrajectory(args[i + 1]); break;
+                case "--duration": harness.setDuration(Double.parseDouble(args[i + 1])); break;
+                case "--period": harness.setPeriod(Double.parseDouble(args[i + 1])); break;
+                case "--latency": latency = Double.parseDouble(args[i + 1]); break;
+                case "--dropout": dropout = Double.parseDouble(args[i + 1]); break;
+                case "--camera-period": cameraPeriod = Double.parseDouble(args[i + 1]); break;
+                case "--seed": harness.setSeed(Long.parseLong(args[i + 1])); break;
+                default: throw new IllegalArgumentException("Unknown argument: " + args[i]);
+            }
+        }
+        harness.setCamera(cameraPeriod, latency, dropout, cameraNoise);
+
+        SimulationResult[] results = harness.run(trajectory,
+            SimulatedEstimator.odometry(Odometry3D.Integration.TRAPEZOID, 1),
+            SimulatedEstimator.odometry(Odometry3D.Integration.EXPONENTIAL, 4),
+            SimulatedEstimator.velocityOdometry(0.01, 0.05),
+            SimulatedEstimator.fused(0.05, 0.002),
+            SimulatedEstimator.latencyCompensated(0.05, 0.002),
+            SimulatedEstimator.smoothed(0.05, 0.002, 25),
+            SimulatedEstimator.kalman(0.05, 0.002)
+        );
+
+        System.out.println(SimulationResult.header());
+        for (SimulationResult result : results) {
+            System.out.println(result);
+        }
+    }
+
+    private static Trajectory parseTrajectory(String name) {
+        switch (name) {
+            case "weaving": return Trajectory.weaving(3.0, 2.5, 0.05);
+            case "climbing": return Trajectory.climbing(2.0, 0.25);
+            default: throw new IllegalArgumentException("Unknown trajectory: " + name);
+        }
+    }
+}
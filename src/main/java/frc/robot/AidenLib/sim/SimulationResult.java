@@ -0,0 +1,57 @@
+package frc.robot.AidenLib.sim;
+
+/** Class to represent the accuracy and the cost of one estimator pipeline in a run of {@link SimulationHarness}. */
+public class SimulationResult {
+    /** The name of the pipeline. */
+    public final String name;
+
+    /** The number of robot loops simulated. */
+    public final long steps;
+
+    /** The number of camera frames delivered to the pipeline. */
+    public final long cameraFrames;
+
+    /** The root mean square error of the estimated position against the true position in <b>m</b>. */
+    public final double positionRmse;
+
+    /** The root mean square error of the estimated rotation against the true rotation over all three axes in <b>radians</b>. */
+    public final double rotationRmse;
+
+    /** The mean time of one update of the pipeline in <b>ns</b>. */
+    public final double nanosPerUpdate;
+
+    /** The mean memory allocated by one update of the pipeline in <b>bytes</b>, or <b>NaN</b> if the JVM cannot measure it. */
+    public final double bytesPerUpdate;
+
+    /**
+     * Constructs a {@link SimulationResult} object.
+     * @param name The name of the pipeline.
+     * @param steps The number of robot loops simulated.
+     * @param cameraFrames The number of camera frames delivered to the pipeline.
+     * @param positionRmse The root mean square position error in <b>m</b>.
+     * @param rotationRmse The root mean square rotation error in <b>radians</b>.
+     * @param nanosPerUpdate The mean time of one update in <b>ns</b>.
+     * @param bytesPerUpdate The mean memory allocated by one update in <b>bytes</b>.
+     */
+    public SimulationResult(String name, long steps, long cameraFrames, double positionRmse, double rotationRmse, double nanosPerUpdate, double bytesPerUpdate) {
+        this.name = name;
+        this.steps = steps;
+        this.cameraFrames = cameraFrames;
+        this.positionRmse = positionRmse;
+        this.rotationRmse = rotationRmse;
+        this.nanosPerUpdate = nanosPerUpdate;
+        this.bytesPerUpdate = bytesPerUpdate;
+    }
+
+    /**
+     * @return The column headings which line up with <b>toString()</b>.
+     */
+    public static String header() {
+        return String.format("%-36s %12s %12s %12s %12s", "pipeline", "pos rmse m", "rot rmse rad", "ns/update", "bytes/update");
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%-36s %12.4f %12.5f %12.0f %12.1f", name, positionRmse, rotationRmse, nanosPerUpdate, bytesPerUpdate);
+    }
+}
@@ -0,0 +1,51 @@
+package frc.robot.AidenLib.sim;
+
+/**
+ * Interface to describe the true motion of a simulated robot, which {@link SimulationHarness} synthesizes sensor readings from.
+ * <p>
+ * The motion is given as the robot relative speeds and the rotation of the robot, the same quantities the drivetrain and IMU measure.
+ * The harness integrates the true position from them with many small steps, so it is exact for practical purposes.
+ * </p>
+ */
+public interface Trajectory {
+    /**
+     * Writes the true motion of the robot at a time.
+     * @param t The time since the start of the simulation in <b>seconds</b>.
+     * @param out An array of length 5 which receives <b>[vx, vy, roll, pitch, yaw]</b>, the robot relative speeds in <b>m/s</b> and the rotation in <b>radians</b>.
+     */
+    void sample(double t, double[] out);
+
+    /**
+     * A robot which starts at rest and weaves around the field, turning back and forth and rocking slightly, like a swerve drive in a match.
+     * The speed returns to zero every <b>10.5 seconds</b>.
+     * @param speed The largest forward speed in <b>m/s</b>.
+     * @param yawRange The largest yaw either side of zero in <b>radians</b>, which should be less than <b>pi</b> so the heading of the IMU never wraps.
+     * @param tilt The largest roll and pitch in <b>radians</b>.
+     * @return The trajectory.
+     */
+    static Trajectory weaving(double speed, double yawRange, double tilt) {
+        return (t, out) -> {
+            out[0] = speed * (1.0 - Math.cos(0.6 * t)) / 2.0;
+            out[1] = 0.3 * speed * Math.sin(0.9 * t);
+            out[2] = tilt * Math.sin(0.5 * t) * Math.sin(1.3 * t);
+            out[3] = tilt * Math.sin(0.37 * t) * Math.sin(1.1 * t);
+            out[4] = yawRange * Math.sin(0.3 * t);
+        };
+    }
+
+    /**
+     * A robot which starts at rest and drives forward up and down a ramp over and over, like a charge station, so its height changes.
+     * @param speed The largest forward speed in <b>m/s</b>.
+     * @param incline The largest pitch in <b>radians</b>.
+     * @return The trajectory.
+     */
+    static Trajectory climbing(double speed, double incline) {
+        return (t, out) -> {
+            out[0] = speed * (1.0 - Math.cos(0.8 * t)) / 2.0;
+            out[1] = 0.0;
+            out[2] = 0.0;
+            out[3] = -incline * Math.sin(0.4 * t);
+            out[4] = 0.2 * Math.sin(0.1 * t);
+        };
+    }
+}
@@ -0,0 +1,77 @@
+package frc.robot.AidenLib.vision;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A lock-free, fixed-capacity queue of {@link VisionFrame} objects between exactly one producer thread and one consumer thread.
+ * <p>
+ * Frames are copied into and out of preallocated slots, so neither side allocates. When the queue is full the new frame is dropped
+ * and counted, since only the consumer may remove frames.
+ * </p>
+ */
+class FrameQueue {
+    private final VisionFrame[] slots;
+    private final int mask;
+
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    /**
+     * Constructs a {@link FrameQueue} object.
+     * @param capacity The number of frames the queue can hold, which is rounded up to a power of two.
+     */
+    FrameQueue(int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity, 1) - 1) << 1;
+        if (size <= 0) size = 1;
+        slots = new VisionFrame[size];
+        for (int i = 0; i < size; i++) {
+            slots[i] = new VisionFrame();
+        }
+        mask = size - 1;
+    }
+
+    /**
+     * Copies a frame into the queue. Only call this from the producer thread.
+     * @param frame The frame to copy.
+     * @return Whether the frame was added, which is false if the queue was full.
+     */
+    boolean offer(VisionFrame frame) {
+        long t = tail.get();
+        if (t - head.get() >= slots.length) {
+            dropped.lazySet(dropped.get() + 1);
+            return false;
+        }
+        slots[(int) (t & mask)].copyFrom(frame);
+        tail.lazySet(t + 1);
+        return true;
+    }
+
+    /**
+     * Copies the oldest frame out of the queue. Only call this from the consumer thread.
+     * @param out The frame to copy into.
+     * @return Whether a frame was copied, which is false if the queue was empty.
+     */
+    boolean poll(VisionFrame out) {
+        long h = head.get();
+        if (h >= tail.get()) return false;
+        out.copyFrom(slots[(int) (h & mask)]);
+        head.lazySet(h + 1);
+        return true;
+    }
+
+    /**
+     * @return The number of frames waiting in the queue.
+     */
+    int size() {
+        long h = head.get();
+        return (int) Math.min(tail.get() - h, slots.length);
+    }
+
+    /**
+     * @return The number of frames dropped because the queue was full.
+     */
+    long getDropped() {
+        return dropped.get();
+    }
+}
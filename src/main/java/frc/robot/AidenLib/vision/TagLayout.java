@@ -0,0 +1,260 @@
+package frc.robot.AidenLib.vision;
+
+import edu.wpi.first.math.geometry.Pose3d;
+import edu.wpi.first.math.geometry.Quaternion;
+import edu.wpi.first.math.geometry.Transform3d;
+
+import frc.robot.AidenLib.math.Data;
+
+/**
+ * A class which turns AprilTag observations into measurements of the robot pose for the {@link frc.robot.AidenLib.control.PoseEstimator3D}
+ * and {@link frc.robot.AidenLib.control.RotationEstimator3D} classes.
+ * <p>
+ * The field pose of every tag and the inverse of every camera mount are stored once, at startup, as rotation matrices and translations in
+ * primitive arrays indexed by tag ID and camera. <b>measure()</b> then makes one pass over the tags seen in a frame, composing
+ * <b>fieldToTag * cameraToTag^-1 * cameraToRobot</b> for each with plain arithmetic, and allocates nothing.
+ * </p>
+ * <p>
+ * The tags seen by one camera are combined into one measurement of each axis. Each tag is weighted by its standard deviation,
+ * <b>stDev * (1 + distanceScale * distance^2)</b>, so the combined standard deviation falls as more tags are seen and grows with their distance.
+ * A camera which sees a single tag has its standard deviation multiplied by <b>singleTagFactor</b>, as one tag gives a less certain pose.
+ * </p>
+ */
+public class TagLayout {
+    private static final int STRIDE = 12;
+
+    private final int maxId, maxCameras;
+    private final double[] tags, mounts;
+    private final boolean[] hasTag, hasCamera;
+
+    private final double[] stDevs = {0.05, 0.05, 0.05, 0.05, 0.05, 0.05};
+    private double distanceScale = 0.5, singleTagFactor = 2.0;
+
+    // The sums of each camera in the current frame, and the measurements made from them.
+    private final double[] weightSums, sums, references;
+    private final int[] tagCounts;
+    private final Data[][] measures;
+    private final Data[][][] views;
+    private int count, tagCount;
+
+    /**
+     * Constructs an empty {@link TagLayout} object.
+     * @param maxId The largest tag ID on the field.
+     * @param maxCameras The number of cameras on the robot.
+     */
+    public TagLayout(int maxId, int maxCameras) {
+        this.maxId = maxId;
+        this.maxCameras = maxCameras;
+        this.tags = new double[(maxId + 1) * STRIDE];
+        this.mounts = new double[maxCameras * STRIDE];
+        this.hasTag = new boolean[maxId + 1];
+        this.hasCamera = new boolean[maxCameras];
+
+        this.weightSums = new double[maxCameras];
+        this.sums = new double[maxCameras * 6];
+        this.references = new double[maxCameras * 3];
+        this.tagCounts = new int[maxCameras];
+
+        // Each axis has an array of every length up to the number of cameras, all sharing the same Data objects,
+        // so a frame's measurements are returned in an array of the right length without making one.
+        this.measures = new Data[6][maxCameras];
+        this.views = new Data[6][maxCameras + 1][];
+        for (int axis = 0; axis < 6; axis++) {
+            for (int i = 0; i < maxCameras; i++) {
+                measures[axis][i] = new Data(0.0, 1.0);
+            }
+            for (int n = 0; n <= maxCameras; n++) {
+                views[axis][n] = new Data[n];
+                System.arraycopy(measures[axis], 0, views[axis][n], 0, n);
+            }
+        }
+    }
+
+    /**
+     * Sets the field pose of a tag.
+     * @param id The ID of the tag, from <b>0</b> to <b>maxId</b>.
+     * @param fieldToTag The pose of the tag on the field in <b>m</b>.
+     */
+    public void setTag(int id, Pose3d fieldToTag) {
+        Quaternion q = fieldToTag.getRotation().getQuaternion();
+        store(tags, id * STRIDE, q.getW(), q.getX(), q.getY(), q.getZ(), fieldToTag.getX(), fieldToTag.getY(), fieldToTag.getZ());
+        hasTag[id] = true;
+    }
+
+    /**
+     * Sets where a camera is mounted on the robot. The inverse of the mount is stored, so it is composed without inverting it every frame.
+     * @param camera The index of the camera, from <b>0</b> to <b>maxCameras - 1</b>.
+     * @param robotToCamera The transform from the center of the robot to the camera in <b>m</b>.
+     */
+    public void setCamera(int camera, Transform3d robotToCamera) {
+        Quaternion q = robotToCamera.getRotation().getQuaternion();
+        int o = camera * STRIDE;
+        store(mounts, o, q.getW(), q.getX(), q.getY(), q.getZ(), 0.0, 0.0, 0.0);
+
+        // The inverse of [R | t] is [R^T | -R^T t].
+        for (int r = 0; r < 3; r++) {
+            for (int c = r + 1; c < 3; c++) {
+                double swap = mounts[o + 3 * r + c];
+                mounts[o + 3 * r + c] = mounts[o + 3 * c + r];
+                mounts[o + 3 * c + r] = swap;
+            }
+        }
+        double tx = robotToCamera.getX(), ty = robotToCamera.getY(), tz = robotToCamera.getZ();
+        mounts[o + 9] = -(mounts[o] * tx + mounts[o + 1] * ty + mounts[o + 2] * tz);
+        mounts[o + 10] = -(mounts[o + 3] * tx + mounts[o + 4] * ty + mounts[o + 5] * tz);
+        mounts[o + 11] = -(mounts[o + 6] * tx + mounts[o + 7] * ty + mounts[o + 8] * tz);
+        hasCamera[camera] = true;
+    }
+
+    /**
+     * Sets how uncertain the measurements are.
+     * @param stDevs The standard deviations of a tag seen from close up as <b>[x, y, z, roll, pitch, yaw]</b> in <b>m</b> and <b>radians</b>.
+     * @param distanceScale The growth of the standard deviation with the square of the distance to a tag in <b>1/m^2</b>. The default is <b>0.5</b>.
+     * @param singleTagFactor The factor the standard deviations of a camera which sees only one tag are multiplied by. The default is <b>2</b>.
+     */
+    public void setStDevs(double[] stDevs, double distanceScale, double singleTagFactor) {
+        System.arraycopy(stDevs, 0, this.stDevs, 0, 6);
+        this.distanceScale = distanceScale;
+        this.singleTagFactor = singleTagFactor;
+    }
+
+    /**
+     * @param id The ID of the tag.
+     * @return Whether the field pose of the tag is known.
+     */
+    public boolean hasTag(int id) {
+        return id >= 0 && id <= maxId && hasTag[id];
+    }
+
+    /**
+     * Turns the tags seen in a frame into measurements of the robot pose, one for each camera which saw a known tag.
+     * Observations of unknown tags or cameras are skipped.
+     * @param observations The tags seen by every camera.
+     * @return The number of measurements of each axis, which is the length of every array returned by <b>getMeasures()</b> until the next call.
+     */
+    public int measure(TagObservations observations) {
+        for (int c = 0; c < maxCameras; c++) {
+            weightSums[c] = 0.0;
+            tagCounts[c] = 0;
+            for (int a = 0; a < 6; a++) sums[c * 6 + a] = 0.0;
+        }
+        tagCount = 0;
+
+        for (int i = 0; i < observations.size; i++) {
+            int camera = observations.cameras[i], id = observations.ids[i];
+            if (camera < 0 || camera >= maxCameras || !hasCamera[camera] || !hasTag(id)) continue;
+
+            int t = id * STRIDE, m = camera * STRIDE;
+            double px = observations.x[i], py = observations.y[i], pz = observations.z[i];
+
+            // The rotation from the camera to the tag, C.
+            double w = observations.qw[i], x = observations.qx[i], y = observations.qy[i], z = observations.qz[i];
+            double c00 = 1.0 - 2.0 * (y * y + z * z), c01 = 2.0 * (x * y - w * z),       c02 = 2.0 * (x * z + w * y);
+            double c10 = 2.0 * (x * y + w * z),       c11 = 1.0 - 2.0 * (x * x + z * z), c12 = 2.0 * (y * z - w * x);
+            double c20 = 2.0 * (x * z - w * y),       c21 = 2.0 * (y * z + w * x),       c22 = 1.0 - 2.0 * (x * x + y * y);
+
+            // The field to camera rotation, F = T * C^T.
+            double f00 = tags[t] * c00 + tags[t + 1] * c01 + tags[t + 2] * c02;
+            double f01 = tags[t] * c10 + tags[t + 1] * c11 + tags[t + 2] * c12;
+            double f02 = tags[t] * c20 + tags[t + 1] * c21 + tags[t + 2] * c22;
+            double f10 = tags[t + 3] * c00 + tags[t + 4] * c01 + tags[t + 5] * c02;
+            double f11 = tags[t + 3] * c10 + tags[t + 4] * c11 + tags[t + 5] * c12;
+            double f12 = tags[t + 3] * c20 + tags[t + 4] * c21 + tags[t + 5] * c22;
+            double f20 = tags[t + 6] * c00 + tags[t + 7] * c01 + tags[t + 8] * c02;
+            double f21 = tags[t + 6] * c10 + tags[t + 7] * c11 + tags[t + 8] * c12;
+            double f22 = tags[t + 6] * c20 + tags[t + 7] * c21 + tags[t + 8] * c22;
+
+            // The camera sits at the tag minus the camera to tag translation in the field frame.
+            double cx = tags[t + 9] - (f00 * px + f01 * py + f02 * pz);
+            double cy = tags[t + 10] - (f10 * px + f11 * py + f12 * pz);
+            double cz = tags[t + 11] - (f20 * px + f21 * py + f22 * pz);
+
+            // The robot pose, composed with the inverted mount: translation F * t + c and rotation F * M.
+            double mx = mounts[m + 9], my = mounts[m + 10], mz = mounts[m + 11];
+            double rx = cx + f00 * mx + f01 * my + f02 * mz;
+            double ry = cy + f10 * mx + f11 * my + f12 * mz;
+            double rz = cz + f20 * mx + f21 * my + f22 * mz;
+            double r00 = f00 * mounts[m] + f01 * mounts[m + 3] + f02 * mounts[m + 6];
+            double r10 = f10 * mounts[m] + f11 * mounts[m + 3] + f12 * mounts[m + 6];
+            double r20 = f20 * mounts[m] + f21 * mounts[m + 3] + f22 * mounts[m + 6];
+            double r21 = f20 * mounts[m + 1] + f21 * mounts[m + 4] + f22 * mounts[m + 7];
+            double r22 = f20 * mounts[m + 2] + f21 * mounts[m + 5] + f22 * mounts[m + 8];
+
+            double roll = Math.atan2(r21, r22);
+            double pitch = -r20 >= 1.0 ? Math.PI / 2.0 : -r20 <= -1.0 ? -Math.PI / 2.0 : Math.asin(-r20);
+            double yaw = Math.atan2(r10, r00);
+
+            double scale = 1.0 + distanceScale * (px * px + py * py + pz * pz);
+            double weight = 1.0 / (scale * scale);
+
+            int s = camera * 6, a = camera * 3;
+            if (tagCounts[camera] == 0) {
+                references[a] = roll;
+                references[a + 1] = pitch;
+                references[a + 2] = yaw;
+            }
+            sums[s] += weight * rx;
+            sums[s + 1] += weight * ry;
+            sums[s + 2] += weight * rz;
+            // Angles are averaged as differences from the first tag, so tags either side of +/- pi do not average to zero.
+            sums[s + 3] += weight * wrap(roll - references[a]);
+            sums[s + 4] += weight * wrap(pitch - references[a + 1]);
+            sums[s + 5] += weight * wrap(yaw - references[a + 2]);
+            weightSums[camera] += weight;
+            tagCounts[camera]++;
+            tagCount++;
+        }
+
+        count = 0;
+        for (int c = 0; c < maxCameras; c++) {
+            if (tagCounts[c] == 0) continue;
+
+            double total = weightSums[c];
+            double factor = (tagCounts[c] == 1 ? singleTagFactor : 1.0) / Math.sqrt(total);
+            for (int axis = 0; axis < 6; axis++) {
+                double mean = sums[c * 6 + axis] / total;
+                if (axis >= 3) mean = wrap(references[c * 3 + axis - 3] + mean);
+                Data data = measures[axis][count];
+                data.value = mean;
+                data.stDev = stDevs[axis] * factor;
+            }
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * @param axis The index of the axis, in the order <b>[x, y, z, roll, pitch, yaw]</b>.
+     * @return The measurements of the axis from the last <b>measure()</b>, one for each camera which saw a known tag, in <b>m</b> or <b>radians</b>.
+     * The array and its {@link Data} objects are reused by every call, so they should be passed to an estimator before the next frame is measured.
+     */
+    public Data[] getMeasures(int axis) {
+        return views[axis][count];
+    }
+
+    /**
+     * @return The number of known tags used by the last <b>measure()</b>.
+     */
+    public int getTagCount() {
+        return tagCount;
+    }
+
+    private static double wrap(double angle) {
+        return angle - 2.0 * Math.PI * Math.floor((angle + Math.PI) / (2.0 * Math.PI));
+    }
+
+    private static void store(double[] array, int o, double w, double x, double y, double z, double tx, double ty, double tz) {
+        array[o] = 1.0 - 2.0 * (y * y + z * z);
+        array[o + 1] = 2.0 * (x * y - w * z);
+        array[o + 2] = 2.0 * (x * z + w * y);
+        array[o + 3] = 2.0 * (x * y + w * z);
+        array[o + 4] = 1.0 - 2.0 * (x * x + z * z);
+        array[o + 5] = 2.0 * (y * z - w * x);
+        array[o + 6] = 2.0 * (x * z - w * y);
+        array[o + 7] = 2.0 * (y * z + w * x);
+        array[o + 8] = 1.0 - 2.0 * (x * x + y * y);
+        array[o + 9] = tx;
+        array[o + 10] = ty;
+        array[o + 11] = tz;
+    }
+}
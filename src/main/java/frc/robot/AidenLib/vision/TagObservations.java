@@ -0,0 +1,113 @@
+package frc.robot.AidenLib.vision;
+
+import edu.wpi.first.math.geometry.Quaternion;
+import edu.wpi.first.math.geometry.Transform3d;
+
+/**
+ * Class to represent the AprilTags seen by every camera in one robot loop, as the input to <b>TagLayout.measure()</b>.
+ * <p>
+ * Each observation is the transform from a camera to a tag, stored in parallel primitive arrays which are reused between calls of
+ * <b>clear()</b>, so filling the observations every robot loop only allocates when they need to grow past their largest size.
+ * </p>
+ */
+public class TagObservations {
+    int[] cameras, ids;
+    double[] x, y, z, qw, qx, qy, qz;
+    int size;
+
+    /**
+     * Constructs an empty {@link TagObservations} object.
+     * @param capacity The number of observations which can be held before the storage needs to grow.
+     */
+    public TagObservations(int capacity) {
+        allocate(Math.max(capacity, 1));
+    }
+
+    /**
+     * Constructs an empty {@link TagObservations} object with a default capacity of <b>16</b>.
+     */
+    public TagObservations() {
+        this(16);
+    }
+
+    /**
+     * Adds an observation of a tag.
+     * @param camera The index of the camera, as given to <b>TagLayout.setCamera()</b>.
+     * @param id The ID of the tag.
+     * @param cameraToTag The transform from the camera to the tag in <b>m</b>, as reported by the vision processing.
+     * @return These observations, so calls may be chained.
+     */
+    public TagObservations add(int camera, int id, Transform3d cameraToTag) {
+        Quaternion q = cameraToTag.getRotation().getQuaternion();
+        return add(camera, id, cameraToTag.getX(), cameraToTag.getY(), cameraToTag.getZ(), q.getW(), q.getX(), q.getY(), q.getZ());
+    }
+
+    /**
+     * Adds an observation of a tag from primitives, such as values read straight from NetworkTables.
+     * @param camera The index of the camera, as given to <b>TagLayout.setCamera()</b>.
+     * @param id The ID of the tag.
+     * @param x The X component of the translation from the camera to the tag in <b>m</b>.
+     * @param y The Y component of the translation in <b>m</b>.
+     * @param z The Z component of the translation in <b>m</b>.
+     * @param qw The W component of the rotation from the camera to the tag as a unit quaternion.
+     * @param qx The X component of the quaternion.
+     * @param qy The Y component of the quaternion.
+     * @param qz The Z component of the quaternion.
+     * @return These observations, so calls may be chained.
+     */
+    public TagObservations add(int camera, int id, double x, double y, double z, double qw, double qx, double qy, double qz) {
+        if (size == ids.length) grow();
+        this.cameras[size] = camera;
+        this.ids[size] = id;
+        this.x[size] = x;
+        this.y[size] = y;
+        this.z[size] = z;
+        this.qw[size] = qw;
+        this.qx[size] = qx;
+        this.qy[size] = qy;
+        this.qz[size] = qz;
+        size++;
+        return this;
+    }
+
+    /**
+     * Removes every observation while keeping the storage for reuse.
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * @return The number of observations.
+     */
+    public int size() {
+        return size;
+    }
+
+    private void allocate(int capacity) {
+        cameras = new int[capacity];
+        ids = new int[capacity];
+        x = new double[capacity];
+        y = new double[capacity];
+        z = new double[capacity];
+        qw = new double[capacity];
+        qx = new double[capacity];
+        qy = new double[capacity];
+        qz = new double[capacity];
+    }
+
+    private void grow() {
+        int[] oldCameras = cameras, oldIds = ids;
+        double[] oldX = x, oldY = y, oldZ = z, oldQw = qw, oldQx = qx, oldQy = qy, oldQz = qz;
+        allocate(ids.length * 2);
+        System.arraycopy(oldCameras, 0, cameras, 0, size);
+        System.arraycopy(oldIds, 0, ids, 0, size);
+        System.arraycopy(oldX, 0, x, 0, size);
+        System.arraycopy(oldY, 0, y, 0, size);
+        System.arraycopy(oldZ, 0, z, 0, size);
+        System.arraycopy(oldQw, 0, qw, 0, size);
+        System.arraycopy(oldQx, 0, qx, 0, size);
+        System.arraycopy(oldQy, 0, qy, 0, size);
+        System.arraycopy(oldQz, 0, qz, 0, size);
+    }
+}
@@ -0,0 +1,36 @@
+package frc.robot.AidenLib.vision;
+
+/**
+ * Class to represent one pose measurement read from a camera by the {@link VisionIngestion} class.
+ * <p>
+ * Frames are preallocated and copied between threads, so a frame passed to <b>poll()</b> may be reused every robot loop.
+ * </p>
+ */
+public class VisionFrame {
+    public double x, y, z, roll, pitch, yaw;
+
+    /** The standard deviations of the measurement in the order returned by the camera. */
+    public final double[] stDevs = new double[6];
+
+    /** The time the frame was captured in <b>seconds</b>, from the {@link frc.robot.AidenLib.TimeSource} of the ingestion. */
+    public double captureTime;
+
+    /** The index of the camera which read the frame. */
+    public int camera;
+
+    /**
+     * Copies every field of another frame into this frame.
+     * @param other The frame to copy.
+     */
+    public void copyFrom(VisionFrame other) {
+        x = other.x;
+        y = other.y;
+        z = other.z;
+        roll = other.roll;
+        pitch = other.pitch;
+        yaw = other.yaw;
+        System.arraycopy(other.stDevs, 0, stDevs, 0, stDevs.length);
+        captureTime = other.captureTime;
+        camera = other.camera;
+    }
+}
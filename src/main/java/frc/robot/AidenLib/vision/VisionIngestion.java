@@ -0,0 +1,232 @@
+package frc.robot.AidenLib.vision;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import edu.wpi.first.math.geometry.Pose3d;
+import edu.wpi.first.math.geometry.Rotation3d;
+
+import frc.robot.AidenLib.TimeSource;
+import frc.robot.AidenLib.example.Camera;
+
+/**
+ * A class which reads {@link Camera} objects on their own threads so that slow camera reads do not stall the robot loop.
+ * <p>
+ * Each camera is read by a dedicated daemon thread at a fixed period and its frames are published into a lock-free
+ * single producer, single consumer queue. The robot loop drains the queues with <b>poll()</b>, which never blocks and
+ * does not allocate.
+ * </p>
+ * <p>
+ * A camera may be read faster than it produces new poses. A read which returns the same pose and standard deviations as the last queued frame
+ * is skipped and counted, so one observation is never fused several times at different capture times.
+ * </p>
+ */
+public class VisionIngestion {
+
+    private final Camera[] cameras;
+    private final FrameQueue[] queues;
+    private final AtomicLong[] framesRead, repeatedFrames, readErrors;
+    private final Thread[] threads;
+    private final long periodNanos;
+    private final TimeSource source;
+
+    private volatile boolean running;
+
+    /**
+     * Constructs a {@link VisionIngestion} object. Call <b>start()</b> to begin reading the cameras.
+     * @param period The time between reads of each camera in <b>seconds</b>.
+     * @param queueCapacity The number of unread frames kept for each camera before new frames are dropped.
+     * @param source The {@link TimeSource} used to timestamp the frames. This should be the clock of the estimator which consumes them.
+     * @param cameras The cameras to read. The index of a camera in this array is its index in every other method.
+     */
+    public VisionIngestion(double period, int queueCapacity, TimeSource source, Camera... cameras) {
+        this.cameras = cameras.clone();
+        this.queues = new FrameQueue[cameras.length];
+        this.framesRead = new AtomicLong[cameras.length];
+        this.repeatedFrames = new AtomicLong[cameras.length];
+        this.readErrors = new AtomicLong[cameras.length];
+        this.threads = new Thread[cameras.length];
+        this.periodNanos = (long) (period * 1e9);
+        this.source = source;
+
+        for (int i = 0; i < cameras.length; i++) {
+            queues[i] = new FrameQueue(queueCapacity);
+            framesRead[i] = new AtomicLong();
+            repeatedFrames[i] = new AtomicLong();
+            readErrors[i] = new AtomicLong();
+        }
+    }
+
+    /**
+     * Constructs a {@link VisionIngestion} object which reads each camera every <b>20 ms</b> and keeps up to <b>8</b> unread frames per camera.
+     * @param cameras The cameras to read.
+     */
+    public VisionIngestion(Camera... cameras) {
+        this(0.02, 8, TimeSource.getDefault(), cameras);
+    }
+
+    /**
+     * Starts a reading thread for each camera. This does nothing if the threads are already running.
+     */
+    public synchronized void start() {
+        if (running) return;
+        running = true;
+
+        for (int i = 0; i < cameras.length; i++) {
+            final int index = i;
+            threads[i] = new Thread(() -> read(index), "VisionIngestion-" + i);
+            threads[i].setDaemon(true);
+            threads[i].start();
+        }
+    }
+
+    /**
+     * Stops the reading threads and waits for them to finish.
+     */
+    public synchronized void stop() {
+        running = false;
+
+        for (Thread thread : threads) {
+            if (thread == null) continue;
+            thread.interrupt();
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void read(int index) {
+        Camera camera = cameras[index];
+        FrameQueue queue = queues[index];
+        VisionFrame frame = new VisionFrame();
+        frame.camera = index;
+        boolean queued = false;
+
+        long next = System.nanoTime();
+        while (running) {
+            try {
+                Pose3d pose = camera.getPose();
+                double[] stDevs = camera.getStdDevs();
+                if (pose != null && stDevs != null) {
+                    Rotation3d rot = pose.getRotation();
+                    double x = pose.getX(), y = pose.getY(), z = pose.getZ();
+                    double roll = rot.getX(), pitch = rot.getY(), yaw = rot.getZ();
+
+                    // The frame still holds the last queued pose, so an unchanged pose is the same observation read again.
+                    if (queued && x == frame.x && y == frame.y && z == frame.z && roll == frame.roll && pitch == frame.pitch && yaw == frame.yaw
+                            && sameStDevs(stDevs, frame.stDevs)) {
+                        repeatedFrames[index].incrementAndGet();
+                    } else {
+                        frame.x = x;
+                        frame.y = y;
+                        frame.z = z;
+                        frame.roll = roll;
+                        frame.pitch = pitch;
+                        frame.yaw = yaw;
+                        System.arraycopy(stDevs, 0, frame.stDevs, 0, Math.min(stDevs.length, frame.stDevs.length));
+                        frame.captureTime = source.getTime() - camera.getLatency();
+
+                        framesRead[index].incrementAndGet();
+                        queue.offer(frame);
+                        queued = true;
+                    }
+                }
+            } catch (RuntimeException e) {
+                readErrors[index].incrementAndGet();
+            }
+
+            next += periodNanos;
+            long wait = next - System.nanoTime();
+            if (wait > 0) {
+                try {
+                    Thread.sleep(wait / 1_000_000, (int) (wait % 1_000_000));
+                } catch (InterruptedException e) {
+                    return;
+                }
+            } else {
+                // The read took longer than the period, so the schedule restarts instead of trying to catch up.
+                next = System.nanoTime();
+            }
+        }
+    }
+
+    private static boolean sameStDevs(double[] stDevs, double[] last) {
+        int n = Math.min(stDevs.length, last.length);
+        for (int i = 0; i < n; i++) {
+            if (stDevs[i] != last[i]) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Copies the oldest unread frame of a camera without blocking. Only call this from one thread, such as the robot loop.
+     * @param camera The index of the camera.
+     * @param out The frame to copy into.
+     * @return Whether a frame was copied, which is false if there were no unread frames.
+     */
+    public boolean poll(int camera, VisionFrame out) {
+        return queues[camera].poll(out);
+    }
+
+    /**
+     * Copies the oldest unread frame of any camera without blocking, checking the cameras in order.
+     * Only call this from one thread, such as the robot loop.
+     * @param out The frame to copy into. Its <b>camera</b> field says which camera read it.
+     * @return Whether a frame was copied, which is false if no camera had unread frames.
+     */
+    public boolean poll(VisionFrame out) {
+        for (FrameQueue queue : queues) {
+            if (queue.poll(out)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return The number of cameras being read.
+     */
+    public int getCameraCount() {
+        return cameras.length;
+    }
+
+    /**
+     * @param camera The index of the camera.
+     * @return The number of unread frames from the camera.
+     */
+    public int getQueueDepth(int camera) {
+        return queues[camera].size();
+    }
+
+    /**
+     * @param camera The index of the camera.
+     * @return The number of frames from the camera which were dropped because its queue was full.
+     */
+    public long getDroppedFrames(int camera) {
+        return queues[camera].getDropped();
+    }
+
+    /**
+     * @param camera The index of the camera.
+     * @return The number of new frames read from the camera, including dropped frames but not repeated ones.
+     */
+    public long getFramesRead(int camera) {
+        return framesRead[camera].get();
+    }
+
+    /**
+     * @param camera The index of the camera.
+     * @return The number of reads of the camera which were skipped because they returned the same pose and standard deviations as the last queued frame.
+     */
+    public long getRepeatedFrames(int camera) {
+        return repeatedFrames[camera].get();
+    }
+
+    /**
+     * @param camera The index of the camera.
+     * @return The number of reads of the camera which threw an exception.
+     */
+    public long getReadErrors(int camera) {
+        return readErrors[camera].get();
+    }
+}
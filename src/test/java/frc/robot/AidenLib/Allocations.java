@@ -0,0 +1,59 @@
+package frc.robot.AidenLib;
+
+import java.lang.management.ManagementFactory;
+
+/** Reads how many bytes the current thread has allocated, for tests which check that a hot path allocates nothing. */
+public final class Allocations {
+    private static final java.lang.management.ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    private Allocations() {}
+
+    /**
+     * @return Whether the JVM can count the bytes allocated by a thread. Tests should be skipped when it cannot.
+     */
+    public static boolean isSupported() {
+        if (!(THREADS instanceof com.sun.management.ThreadMXBean)) return false;
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) THREADS;
+        if (!threads.isThreadAllocatedMemorySupported()) return false;
+        threads.setThreadAllocatedMemoryEnabled(true);
+        return true;
+    }
+
+    /**
+     * @return The number of bytes the current thread has allocated since it started.
+     */
+    public static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) THREADS).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * Runs a task many times to let the JIT compiler compile it, then counts the bytes allocated by running it again.
+     * <p>
+     * The count is taken three times and the smallest is returned. A deoptimization of the JIT compiled code may allocate once, when objects it
+     * had removed are rebuilt, but an allocation in the task itself appears in every count.
+     * </p>
+     * @param warmup The number of runs before counting.
+     * @param runs The number of runs in each count.
+     * @param task The task.
+     * @return The fewest bytes allocated by one count of runs, less the bytes allocated by counting.
+     */
+    public static long measure(int warmup, int runs, Runnable task) {
+        for (int i = 0; i < warmup; i++) {
+            task.run();
+        }
+
+        // Reading the counter may allocate on some JVMs, so an empty measurement is subtracted.
+        long before = allocatedBytes();
+        long overhead = allocatedBytes() - before;
+
+        long fewest = Long.MAX_VALUE;
+        for (int count = 0; count < 3; count++) {
+            before = allocatedBytes();
+            for (int i = 0; i < runs; i++) {
+                task.run();
+            }
+            fewest = Math.min(fewest, allocatedBytes() - before - overhead);
+        }
+        return fewest;
+    }
+}
@@ -0,0 +1,107 @@
+package frc.robot.AidenLib.control;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import edu.wpi.first.math.geometry.Pose3d;
+import edu.wpi.first.math.geometry.Rotation3d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+
+import frc.robot.AidenLib.Allocations;
+import frc.robot.AidenLib.SimulatedTimeSource;
+import frc.robot.AidenLib.math.Data;
+import frc.robot.AidenLib.math.OutlierGate;
+
+/** Checks that the allocation free <b>estimate()</b> overloads allocate nothing once they have warmed up. */
+public class EstimatorAllocationTest {
+    private static final int WARMUP = 20000, RUNS = 10000;
+
+    private SimulatedTimeSource clock;
+    private ChassisSpeeds speeds;
+    private Rotation3d imu;
+    private Data[] xMeasures, yMeasures, zMeasures, rollMeasures, pitchMeasures, yawMeasures, none;
+    private double[] rotation, position;
+
+    @BeforeEach
+    public void setup() {
+        assumeTrue(Allocations.isSupported(), "The JVM cannot count allocated bytes");
+
+        clock = new SimulatedTimeSource();
+        speeds = new ChassisSpeeds(1.0, 0.5, 0.2);
+        imu = new Rotation3d(0.01, -0.02, 0.3);
+        xMeasures = new Data[] {new Data(0.1, 0.3), new Data(0.2, 0.5)};
+        yMeasures = new Data[] {new Data(0.1, 0.3)};
+        zMeasures = new Data[] {new Data(0.0, 0.2), new Data(0.01, 0.2), new Data(-0.01, 0.4)};
+        rollMeasures = new Data[] {new Data(0.01, 0.05)};
+        pitchMeasures = new Data[] {new Data(-0.02, 0.05)};
+        yawMeasures = new Data[] {new Data(0.3, 0.05), new Data(0.31, 0.1)};
+        none = new Data[0];
+        rotation = new double[3];
+        position = new double[3];
+    }
+
+    @Test
+    public void poseEstimatorAllocatesNothing() {
+        PoseEstimator3D estimator = new PoseEstimator3D(new Pose3d(), 0.1, clock);
+        double[] heading = {0.01, -0.02, 0.3};
+
+        long bytes = Allocations.measure(WARMUP, RUNS, () -> estimator.estimate(speeds, heading, xMeasures, yMeasures, zMeasures, position, 0.02));
+        assertEquals(0L, bytes, "Bytes allocated by PoseEstimator3D.estimate()");
+    }
+
+    @Test
+    public void poseEstimatorAllocatesNothingWithVaryingMeasurementCounts() {
+        PoseEstimator3D estimator = new PoseEstimator3D(new Pose3d(), 0.1, clock);
+        double[] heading = {0.01, -0.02, 0.3};
+        int[] loop = {0};
+
+        // Vision only arrives on some loops, so the batches shrink and grow again within their largest size.
+        long bytes = Allocations.measure(WARMUP, RUNS, () -> {
+            boolean vision = loop[0]++ % 3 == 0;
+            estimator.estimate(speeds, heading, vision ? xMeasures : none, vision ? yMeasures : none, none, position, 0.02);
+        });
+        assertEquals(0L, bytes, "Bytes allocated by PoseEstimator3D.estimate()");
+    }
+
+    @Test
+    public void gatedPoseEstimatorAllocatesNothing() {
+        PoseEstimator3D estimator = new PoseEstimator3D(new Pose3d(), 0.1, clock);
+        estimator.setGate(new OutlierGate(3.0, 0.1));
+        double[] heading = {0.01, -0.02, 0.3};
+
+        long bytes = Allocations.measure(WARMUP, RUNS, () -> estimator.estimate(speeds, heading, xMeasures, yMeasures, zMeasures, position, 0.02));
+        assertEquals(0L, bytes, "Bytes allocated by a gated PoseEstimator3D.estimate()");
+    }
+
+    @Test
+    public void rotationEstimatorAllocatesNothing() {
+        RotationEstimator3D estimator = new RotationEstimator3D(0.01, new Rotation3d(), clock);
+
+        long bytes = Allocations.measure(WARMUP, RUNS, () -> estimator.estimate(imu, yawMeasures, pitchMeasures, rollMeasures, rotation, 0.02));
+        assertEquals(0L, bytes, "Bytes allocated by RotationEstimator3D.estimate()");
+    }
+
+    @Test
+    public void pipelineAllocatesNothing() {
+        RotationEstimator3D rotationEstimator = new RotationEstimator3D(0.01, new Rotation3d(), clock);
+        PoseEstimator3D poseEstimator = new PoseEstimator3D(new Pose3d(), 0.1, clock);
+
+        long bytes = Allocations.measure(WARMUP, RUNS, () -> {
+            rotationEstimator.estimate(imu, yawMeasures, pitchMeasures, rollMeasures, rotation, 0.02);
+            poseEstimator.estimate(speeds, rotation, xMeasures, yMeasures, zMeasures, position, 0.02);
+        });
+        assertEquals(0L, bytes, "Bytes allocated by one loop of RotationEstimator3D and PoseEstimator3D");
+    }
+
+    @Test
+    public void schedulerStepAllocatesNothing() {
+        Odometry3D odometry = new Odometry3D(new Pose3d(), clock);
+        EstimatorScheduler scheduler = new EstimatorScheduler(odometry, new PoseEstimator3D(new Pose3d(), 0.1, clock), () -> speeds, () -> imu, 0.005, clock);
+
+        long bytes = Allocations.measure(WARMUP, RUNS, () -> scheduler.step(0.005));
+        assertEquals(0L, bytes, "Bytes allocated by EstimatorScheduler.step()");
+    }
+}
@@ -0,0 +1,44 @@
+package frc.robot.AidenLib.control;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+import edu.wpi.first.math.geometry.Pose3d;
+import edu.wpi.first.math.geometry.Rotation3d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+
+import frc.robot.AidenLib.SimulatedTimeSource;
+
+/** Checks that <b>EstimatorScheduler.step()</b> drives the odometry, and only while the odometry thread is stopped. */
+public class EstimatorSchedulerTest {
+    @Test
+    public void stepIntegratesTheOdometry() {
+        SimulatedTimeSource clock = new SimulatedTimeSource();
+        Odometry3D odometry = new Odometry3D(new Pose3d(), clock);
+        ChassisSpeeds speeds = new ChassisSpeeds(1.0, 0.0, 0.0);
+        EstimatorScheduler scheduler = new EstimatorScheduler(odometry, new PoseEstimator3D(new Pose3d(), 0.1, clock), () -> speeds, Rotation3d::new, 0.005, clock);
+
+        for (int i = 0; i < 200; i++) scheduler.step(0.005);
+
+        PoseState state = scheduler.getOdometry(new PoseState());
+        assertEquals(1.0, state.x, 0.005);
+        assertEquals(0.0, state.y, 1e-9);
+    }
+
+    @Test
+    public void stepThrowsWhileRunning() {
+        SimulatedTimeSource clock = new SimulatedTimeSource();
+        Odometry3D odometry = new Odometry3D(new Pose3d(), clock);
+        EstimatorScheduler scheduler = new EstimatorScheduler(odometry, new PoseEstimator3D(new Pose3d(), 0.1, clock), ChassisSpeeds::new, Rotation3d::new, 0.005, clock);
+
+        scheduler.start();
+        try {
+            assertThrows(IllegalStateException.class, () -> scheduler.step(0.005));
+        } finally {
+            scheduler.stop();
+        }
+        scheduler.step(0.005);
+    }
+}
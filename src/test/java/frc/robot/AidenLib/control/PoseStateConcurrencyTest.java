@@ -0,0 +1,144 @@
+package frc.robot.AidenLib.control;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import edu.wpi.first.math.geometry.Pose3d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+
+import frc.robot.AidenLib.SimulatedTimeSource;
+import frc.robot.AidenLib.math.Data;
+
+/**
+ * Stresses the sequence lock behind <b>getState()</b> with one writer and several readers. Every state the writer publishes has fields which
+ * follow from its sequence, so a reader which copied parts of two states would see fields which disagree.
+ */
+public class PoseStateConcurrencyTest {
+    private static final int READERS = 3, WRITES = 200000;
+
+    // A power of two, so the timestamps are sums of dt without rounding.
+    private static final double DT = 1.0 / 128.0;
+
+    @Test
+    @Timeout(60)
+    public void publishedStateIsNeverTorn() throws InterruptedException {
+        PublishedPoseState published = new PublishedPoseState();
+        PoseState state = new PoseState();
+
+        stress(() -> {
+            for (int i = 1; i <= WRITES; i++) {
+                state.x = state.y = state.z = i;
+                state.roll = state.pitch = state.yaw = -i;
+                state.vx = state.vy = state.vz = 2.0 * i;
+                state.timestamp = i * DT;
+                published.publish(state);
+            }
+        }, published::read, read -> {
+            if (read.sequence == 0) return;
+            double i = read.sequence;
+            check(read, i == read.x && i == read.y && i == read.z);
+            check(read, -i == read.roll && -i == read.pitch && -i == read.yaw);
+            check(read, 2.0 * i == read.vx && 2.0 * i == read.vy && 2.0 * i == read.vz);
+            check(read, i * DT == read.timestamp);
+        });
+
+        assertEquals(WRITES, published.getPublishCount());
+    }
+
+    @Test
+    @Timeout(60)
+    public void odometryStateIsNeverTorn() throws InterruptedException {
+        SimulatedTimeSource clock = new SimulatedTimeSource();
+        Odometry3D odometry = new Odometry3D(new Pose3d(), clock);
+        ChassisSpeeds speeds = new ChassisSpeeds(1.0, 0.0, 0.0);
+        double[] heading = new double[3], position = new double[3];
+
+        // The constructor publishes the first state, so update i publishes sequence i + 1 at i * DT.
+        stress(() -> {
+            for (int i = 0; i < WRITES; i++) odometry.update(speeds, heading, position, DT);
+        }, odometry::getState, read -> {
+            if (read.sequence <= 1) return;
+            check(read, read.sequence == Math.round(read.timestamp / DT) + 1);
+            // The first update integrates up from rest, so the robot trails the time by half a step.
+            check(read, Math.abs(read.x - (read.timestamp - DT / 2.0)) < 1e-6 && read.y == 0.0 && read.z == 0.0);
+        });
+    }
+
+    @Test
+    @Timeout(60)
+    public void poseEstimatorStateIsNeverTorn() throws InterruptedException {
+        SimulatedTimeSource clock = new SimulatedTimeSource();
+        PoseEstimator3D estimator = new PoseEstimator3D(new Pose3d(), 0.1, clock);
+        ChassisSpeeds speeds = new ChassisSpeeds(1.0, 0.0, 0.0);
+        double[] rotation = new double[3], position = new double[3];
+        Data[] none = new Data[0];
+
+        // Rolling does not turn a speed along the X axis, so the roll carries the index of the update without moving the robot.
+        stress(() -> {
+            for (int i = 1; i <= WRITES; i++) {
+                rotation[0] = i * DT;
+                estimator.estimate(speeds, rotation, none, none, none, position, DT);
+            }
+        }, estimator::getState, read -> {
+            if (read.sequence <= 1) return;
+            check(read, read.sequence == Math.round(read.timestamp / DT) + 1);
+            check(read, read.roll == read.timestamp && read.vx == 1.0);
+            // The first update integrates up from rest, so the robot trails the time by half a step.
+            check(read, Math.abs(read.x - (read.timestamp - DT / 2.0)) < 1e-6 && read.y == 0.0 && read.z == 0.0);
+        });
+    }
+
+    /**
+     * Runs the writer while the readers copy states as fast as they can, and fails if any reader saw a state which does not pass the check
+     * or a sequence older than one it had already read.
+     */
+    private static void stress(Runnable writer, Consumer<PoseState> reader, Consumer<PoseState> check) throws InterruptedException {
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        long[] reads = new long[READERS];
+        Thread[] threads = new Thread[READERS];
+        Thread writing = new Thread(writer, "writer");
+
+        for (int r = 0; r < READERS; r++) {
+            int index = r;
+            threads[r] = new Thread(() -> {
+                PoseState read = new PoseState();
+                long last = -1;
+                try {
+                    // One more read after the writer finishes, so every reader sees the last state.
+                    boolean done = false;
+                    while (!done && failure.get() == null) {
+                        done = !writing.isAlive();
+                        reader.accept(read);
+                        if (read.sequence < last) throw new AssertionError("The sequence went back from " + last + " to " + read.sequence);
+                        last = read.sequence;
+                        check.accept(read);
+                        reads[index]++;
+                    }
+                } catch (Throwable t) {
+                    failure.compareAndSet(null, t);
+                }
+            }, "reader " + r);
+        }
+
+        writing.start();
+        for (Thread thread : threads) thread.start();
+        writing.join();
+        for (Thread thread : threads) thread.join();
+
+        if (failure.get() != null) throw new AssertionError(failure.get().getMessage(), failure.get());
+        for (long count : reads) assertTrue(count > 0, "A reader never read a state");
+    }
+
+    private static void check(PoseState read, boolean consistent) {
+        if (!consistent) {
+            throw new AssertionError("Torn state at sequence " + read.sequence + ": x " + read.x + ", y " + read.y + ", z " + read.z
+                    + ", roll " + read.roll + ", vx " + read.vx + ", time " + read.timestamp);
+        }
+    }
+}
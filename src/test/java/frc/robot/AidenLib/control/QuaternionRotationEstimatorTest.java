@@ -0,0 +1,122 @@
+package frc.robot.AidenLib.control;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import edu.wpi.first.math.geometry.Quaternion;
+import edu.wpi.first.math.geometry.Rotation3d;
+
+import frc.robot.AidenLib.SimulatedTimeSource;
+import frc.robot.AidenLib.math.Data;
+
+/**
+ * Compares {@link QuaternionRotationEstimator3D} against {@link RotationEstimator3D} on fixed paths: tracking the IMU without measurements,
+ * fusing yaw measurements while the yaw wraps at <b>+-pi</b>, and fusing measurements near gimbal lock.
+ */
+public class QuaternionRotationEstimatorTest {
+    private static final double DT = 0.02, IMU_ST_DEV = 0.01;
+    private static final Data[] NONE = new Data[0];
+
+    @Test
+    public void bothTrackTheImuWithoutMeasurements() {
+        QuaternionRotationEstimator3D quaternion = new QuaternionRotationEstimator3D(IMU_ST_DEV);
+        RotationEstimator3D euler = new RotationEstimator3D(IMU_ST_DEV, new Rotation3d(), new SimulatedTimeSource());
+        double[] q = new double[4], qEuler = new double[3], out = new double[3];
+
+        // The first loop only sets the reference of the quaternion estimator, so the path starts where both estimators start.
+        for (int i = 0; i <= 500; i++) {
+            double t = i * DT;
+            Rotation3d imu = new Rotation3d(0.2 * Math.sin(t), 0.15 * Math.sin(0.7 * t), 1.0 * Math.sin(0.5 * t));
+
+            quaternion.estimate(imu, qEuler);
+            euler.estimate(imu, NONE, NONE, NONE, out, DT);
+
+            assertEquals(0.0, angle(quaternion.getQuaternion(q), imu), 1e-6, "Quaternion estimate at loop " + i);
+            assertEquals(imu.getX(), out[0], 1e-9, "Euler roll at loop " + i);
+            assertEquals(imu.getY(), out[1], 1e-9, "Euler pitch at loop " + i);
+            assertEquals(imu.getZ(), out[2], 1e-9, "Euler yaw at loop " + i);
+            assertEquals(out[0], qEuler[0], 1e-9, "Roll at loop " + i);
+            assertEquals(out[1], qEuler[1], 1e-9, "Pitch at loop " + i);
+            assertEquals(out[2], qEuler[2], 1e-9, "Yaw at loop " + i);
+        }
+    }
+
+    @Test
+    public void yawMeasurementsAreFusedAcrossTheWrap() {
+        QuaternionRotationEstimator3D quaternion = new QuaternionRotationEstimator3D(IMU_ST_DEV, new Rotation3d(0.0, 0.0, 2.8));
+        RotationEstimator3D euler = new RotationEstimator3D(IMU_ST_DEV, new Rotation3d(0.0, 0.0, 2.8), new SimulatedTimeSource());
+        double[] q = new double[4], qOut = new double[3], out = new double[3];
+        Data[] yaw = {new Data(0.0, 0.02)};
+
+        // The robot turns through +pi while the IMU drifts ahead of it, and a camera measures the true yaw every loop.
+        double worstQuaternion = 0.0, worstEuler = 0.0;
+        for (int i = 0; i <= 120; i++) {
+            double truth = wrap(2.8 + 0.01 * i);
+            Rotation3d imu = new Rotation3d(0.0, 0.0, wrap(truth + 0.002 * i));
+            Rotation3d actual = new Rotation3d(0.0, 0.0, truth);
+            yaw[0].value = truth;
+
+            quaternion.addMeasurement(actual, 0.02, 0.02, 0.02);
+            quaternion.estimate(imu, qOut);
+            euler.estimate(imu, yaw, NONE, NONE, out, DT);
+
+            double quaternionError = angle(quaternion.getQuaternion(q), actual);
+            double eulerError = Math.abs(wrap(out[2] - truth));
+            worstQuaternion = Math.max(worstQuaternion, quaternionError);
+            worstEuler = Math.max(worstEuler, eulerError);
+
+            // Before the yaw nears the wrap both fuse the same numbers, so they agree.
+            if (2.8 + 0.01 * i < 3.0) assertEquals(out[2], qOut[2], 1e-9, "Yaw at loop " + i);
+        }
+
+        assertTrue(worstQuaternion < 0.01, "Largest quaternion error across the wrap " + worstQuaternion);
+        assertTrue(worstEuler > 1.0, "Largest Euler error across the wrap " + worstEuler);
+    }
+
+    @Test
+    public void measurementsAreFusedNearGimbalLock() {
+        Rotation3d start = new Rotation3d(0.3, 1.5, 0.5);
+        QuaternionRotationEstimator3D quaternion = new QuaternionRotationEstimator3D(IMU_ST_DEV, start);
+        RotationEstimator3D euler = new RotationEstimator3D(IMU_ST_DEV, start, new SimulatedTimeSource());
+        double[] q = new double[4], qOut = new double[3], out = new double[3];
+        Data[] roll = {new Data(0.0, 0.02)}, pitch = {new Data(0.0, 0.02)}, yaw = {new Data(0.0, 0.02)};
+
+        // The robot pitches up through 90 degrees while the IMU drifts further in pitch, so the Euler angles of the IMU and the camera flip on
+        // different loops. A camera measures the true rotation every loop.
+        double worstQuaternion = 0.0, worstEuler = 0.0;
+        for (int i = 0; i <= 100; i++) {
+            Rotation3d actual = new Rotation3d(0.3, 1.5 + 0.002 * i, 0.5);
+            Rotation3d imu = new Rotation3d(0.0, 0.001 * i, 0.0).rotateBy(actual);
+            roll[0].value = actual.getX();
+            pitch[0].value = actual.getY();
+            yaw[0].value = actual.getZ();
+
+            quaternion.addMeasurement(actual, 0.02, 0.02, 0.02);
+            quaternion.estimate(imu, qOut);
+            euler.estimate(imu, yaw, pitch, roll, out, DT);
+
+            worstQuaternion = Math.max(worstQuaternion, angle(quaternion.getQuaternion(q), actual));
+            worstEuler = Math.max(worstEuler, angle(new Rotation3d(out[0], out[1], out[2]).getQuaternion(), actual));
+        }
+
+        assertTrue(worstQuaternion < 0.01, "Largest quaternion error near gimbal lock " + worstQuaternion);
+        assertTrue(worstEuler > 1.0, "Largest Euler error near gimbal lock " + worstEuler);
+    }
+
+    /** The angle of the rotation between an estimate and the truth in <b>radians</b>. */
+    private static double angle(double[] q, Rotation3d truth) {
+        Quaternion t = truth.getQuaternion();
+        double dot = Math.abs(q[0] * t.getW() + q[1] * t.getX() + q[2] * t.getY() + q[3] * t.getZ());
+        return 2.0 * Math.acos(Math.min(dot, 1.0));
+    }
+
+    private static double angle(Quaternion q, Rotation3d truth) {
+        return angle(new double[] {q.getW(), q.getX(), q.getY(), q.getZ()}, truth);
+    }
+
+    private static double wrap(double angle) {
+        return Math.atan2(Math.sin(angle), Math.cos(angle));
+    }
+}
@@ -0,0 +1,75 @@
+package frc.robot.AidenLib.control;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import edu.wpi.first.math.geometry.Pose3d;
+import edu.wpi.first.math.geometry.Rotation3d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+
+import frc.robot.AidenLib.SimulatedTimeSource;
+import frc.robot.AidenLib.math.MeasurementBatch;
+import frc.robot.AidenLib.math.MeasurementSource;
+import frc.robot.AidenLib.math.OutlierGate;
+
+/**
+ * Checks that a camera fused through the {@link MeasurementBatch} overloads of the estimators keeps its {@link MeasurementSource},
+ * so the gate inflates a camera which is rejected every loop and leaves a camera which agrees with the estimate alone.
+ */
+public class SourceInflationTest {
+    private static final int LOOPS = 50;
+
+    @Test
+    public void poseEstimatorInflatesRejectedCamera() {
+        PoseEstimator3D estimator = new PoseEstimator3D(new Pose3d(), 0.02, new SimulatedTimeSource());
+        estimator.setGate(new OutlierGate(3.0, 0.1));
+
+        MeasurementSource good = new MeasurementSource(0.05), bad = new MeasurementSource(0.05);
+        MeasurementBatch xs = new MeasurementBatch(), ys = new MeasurementBatch(), zs = new MeasurementBatch();
+        ChassisSpeeds speeds = new ChassisSpeeds(1.0, 0.0, 0.0);
+        double[] rotation = new double[3], position = new double[3];
+
+        double x = 0.0;
+        for (int i = 0; i < LOOPS; i++) {
+            x += 0.02;
+            xs.clear();
+            ys.clear();
+            zs.clear();
+            // The second camera is 5 m off, so it is rejected every loop.
+            xs.add(good, x).add(bad, x + 5.0);
+            ys.add(good, 0.0).add(bad, 5.0);
+            estimator.estimate(speeds, rotation, xs, ys, zs, position, 0.02);
+
+            assertEquals(1, estimator.getReport(0).getRejectedCount());
+        }
+
+        assertEquals(10.0, bad.getInflation(), 1e-9, "The rejected camera should reach the largest inflation");
+        assertEquals(1.0, good.getInflation(), 0.0, "The accepted camera should not be inflated");
+        assertEquals(x, position[0], 0.05);
+        assertEquals(0.0, position[1], 0.05);
+        assertEquals(2, xs.size(), "The caller's batch should not be changed");
+    }
+
+    @Test
+    public void rotationEstimatorInflatesRejectedCamera() {
+        RotationEstimator3D estimator = new RotationEstimator3D(0.01, new Rotation3d(), new SimulatedTimeSource());
+        estimator.setGate(new OutlierGate(3.0, 0.05));
+
+        MeasurementSource good = new MeasurementSource(0.02), bad = new MeasurementSource(0.02);
+        MeasurementBatch yaws = new MeasurementBatch(), none = new MeasurementBatch();
+        Rotation3d imu = new Rotation3d(0.0, 0.0, 0.5);
+        double[] rotation = new double[3];
+
+        for (int i = 0; i < LOOPS; i++) {
+            yaws.clear();
+            yaws.add(good, 0.5).add(bad, -2.0);
+            estimator.estimate(imu, yaws, none, none, rotation, 0.02);
+        }
+
+        assertTrue(bad.getInflation() > 1.0, "The rejected camera should be inflated");
+        assertEquals(1.0, good.getInflation(), 0.0, "The accepted camera should not be inflated");
+        assertEquals(0.5, rotation[2], 0.05);
+    }
+}
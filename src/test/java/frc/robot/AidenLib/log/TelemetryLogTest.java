@@ -0,0 +1,96 @@
+package frc.robot.AidenLib.log;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import frc.robot.AidenLib.SimulatedTimeSource;
+
+/** Checks that {@link TelemetryLog} rotates its segments and reports a failure to create one instead of silently dropping records. */
+public class TelemetryLogTest {
+    @Test
+    public void rotatedSegmentsHoldEveryRecord() throws IOException {
+        Path directory = Files.createTempDirectory("telemetry");
+        try {
+            TelemetryLog log = new TelemetryLog(directory, "test", 3, 16, 0.02, new SimulatedTimeSource());
+            for (int i = 0; i < 10; i++) log.logPose(LogFormat.ESTIMATE, i, 0.0, 0.0, 0.0, 0.0, 0.0);
+            log.close();
+
+            assertEquals(4, log.getSegmentCount());
+            assertEquals(10, log.getWritten());
+            assertEquals(0, log.getDropped());
+            assertFalse(log.isFailed());
+
+            LogReader reader = LogReader.open(directory);
+            LogRecord record = new LogRecord();
+            for (int i = 0; i < 10; i++) {
+                assertTrue(reader.next(record));
+                assertEquals(i, record.values[0], 0.0);
+            }
+            assertFalse(reader.next(record));
+        } finally {
+            delete(directory);
+        }
+    }
+
+    @Test
+    public void failureToCreateSegmentIsReported() throws IOException {
+        Path directory = Files.createTempDirectory("telemetry");
+        try {
+            TelemetryLog log = new TelemetryLog(directory, "test", 2, 16, 0.02, new SimulatedTimeSource());
+
+            // A file in place of the directory stops the next segment from being created, even for a user who may write anywhere.
+            delete(directory);
+            Files.createFile(directory);
+
+            for (int i = 0; i < 5; i++) log.logPose(LogFormat.ESTIMATE, i, 0.0, 0.0, 0.0, 0.0, 0.0);
+            log.close();
+
+            assertTrue(log.isFailed());
+            assertNotNull(log.getFailure());
+            assertEquals(2, log.getWritten());
+            assertEquals(3, log.getDropped());
+
+            Map<String, Double> published = new HashMap<>();
+            log.publish(published::put);
+            assertEquals(1.0, published.get("TelemetryLog/test/failed"), 0.0);
+            assertEquals(3.0, published.get("TelemetryLog/test/dropped"), 0.0);
+        } finally {
+            delete(directory);
+        }
+    }
+
+    @Test
+    public void recordsLoggedAfterCloseAreDropped() throws IOException {
+        Path directory = Files.createTempDirectory("telemetry");
+        try {
+            TelemetryLog log = new TelemetryLog(directory, "test", 8, 16, 0.02, new SimulatedTimeSource());
+            log.logPose(LogFormat.ESTIMATE, 1.0, 0.0, 0.0, 0.0, 0.0, 0.0);
+            log.close();
+
+            for (int i = 0; i < 3; i++) log.logPose(LogFormat.ESTIMATE, i, 0.0, 0.0, 0.0, 0.0, 0.0);
+
+            assertEquals(1, log.getWritten());
+            assertEquals(3, log.getDropped());
+            assertFalse(log.isFailed());
+        } finally {
+            delete(directory);
+        }
+    }
+
+    private static void delete(Path path) throws IOException {
+        if (Files.isDirectory(path)) {
+            for (Path file : LogReader.segments(path)) Files.delete(file);
+        }
+        Files.deleteIfExists(path);
+    }
+}
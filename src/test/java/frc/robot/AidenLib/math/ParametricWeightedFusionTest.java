@@ -0,0 +1,52 @@
+package frc.robot.AidenLib.math;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import frc.robot.AidenLib.math.ParametricWeightedFusion.InvalidParamterSize;
+
+/** Checks that the single loop nest of {@link ParametricWeightedFusion} gives the same estimates as a {@link WeightedFusion} per parameter. */
+public class ParametricWeightedFusionTest {
+
+    @Test
+    public void fusedKernelMatchesSeparateFilters() throws InvalidParamterSize {
+        Random random = new Random(0);
+        ParametricWeightedFusion parametric = new ParametricWeightedFusion(5);
+        MeasurementBatch[] batches = new MeasurementBatch[5];
+        double[] priors = new double[5];
+
+        for (int loop = 0; loop < 100; loop++) {
+            for (int p = 0; p < batches.length; p++) {
+                batches[p] = new MeasurementBatch();
+                int count = 1 + random.nextInt(7);
+                for (int i = 0; i < count; i++) {
+                    batches[p].add(random.nextGaussian() * 10.0, 0.1 + random.nextDouble());
+                }
+                priors[p] = random.nextGaussian();
+            }
+
+            double[] withPriors = parametric.calculate(priors, batches).clone();
+            double[] withoutPriors = parametric.calculate(batches);
+            for (int p = 0; p < batches.length; p++) {
+                double expected = new WeightedFusion().calculate(batches[p]);
+                assertEquals(expected, withPriors[p], 1e-12, "Parameter " + p + " with priors");
+                assertEquals(expected, withoutPriors[p], 1e-12, "Parameter " + p);
+            }
+        }
+    }
+
+    @Test
+    public void gateUsesTheLastUngatedEstimate() throws InvalidParamterSize {
+        ParametricWeightedFusion parametric = new ParametricWeightedFusion(1);
+        parametric.calculate(new MeasurementBatch().add(5.0, 0.1));
+
+        // Without a prior, the gate tests against the last estimate, which came from the ungated kernel.
+        parametric.setGate(new OutlierGate(3.0, 0.1));
+        double[] estimate = parametric.calculate(new MeasurementBatch().add(5.05, 0.1).add(50.0, 0.1));
+        assertEquals(5.05, estimate[0], 1e-12);
+        assertEquals(1, parametric.getReport(0).getRejectedCount());
+    }
+}
@@ -0,0 +1,90 @@
+package frc.robot.AidenLib.replay;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+
+import edu.wpi.first.math.geometry.Pose3d;
+import edu.wpi.first.math.geometry.Rotation3d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+
+import frc.robot.AidenLib.SimulatedTimeSource;
+import frc.robot.AidenLib.control.Odometry3D;
+import frc.robot.AidenLib.control.PoseEstimator3D;
+import frc.robot.AidenLib.control.PoseState;
+import frc.robot.AidenLib.control.RotationEstimator3D;
+import frc.robot.AidenLib.log.LogReader;
+import frc.robot.AidenLib.log.TelemetryLog;
+import frc.robot.AidenLib.math.Data;
+
+/** Checks that a log recorded by the estimators replays one loop per robot loop, with or without an {@link Odometry3D} recording alongside. */
+public class ReplayEngineTest {
+    private static final int LOOPS = 100;
+    private static final double DT = 0.02, DRIVE_ST_DEV = 0.05, IMU_ST_DEV = 0.01;
+
+    private enum OdometryOrder { NONE, BEFORE, AFTER }
+
+    @Test
+    public void estimatorsAloneCanBeReplayed() throws IOException {
+        replay(OdometryOrder.NONE, LOOPS);
+    }
+
+    @Test
+    public void odometryAfterTheEstimatorsReplaysEachLoopOnce() throws IOException {
+        replay(OdometryOrder.AFTER, LOOPS);
+    }
+
+    @Test
+    public void odometryBeforeTheEstimatorsReplaysEachLoopOnce() throws IOException {
+        // The input of the first loop is written before any estimate, so it is replayed as a loop of its own.
+        replay(OdometryOrder.BEFORE, LOOPS + 1);
+    }
+
+    private static void replay(OdometryOrder order, int expectedSteps) throws IOException {
+        Path directory = Files.createTempDirectory("replay");
+        try {
+            SimulatedTimeSource clock = new SimulatedTimeSource();
+            TelemetryLog log = new TelemetryLog(directory, "test", 4096, 1024, 0.02, clock);
+            RotationEstimator3D rotation = new RotationEstimator3D(IMU_ST_DEV, new Rotation3d(), clock);
+            PoseEstimator3D pose = new PoseEstimator3D(new Pose3d(), DRIVE_ST_DEV, clock);
+            Odometry3D odometry = new Odometry3D(new Pose3d(), clock);
+            rotation.setTelemetry(log);
+            pose.setTelemetry(log);
+            if (order != OdometryOrder.NONE) odometry.setTelemetry(log);
+
+            ChassisSpeeds speeds = new ChassisSpeeds(1.0, 0.5, 0.0);
+            Data[] xs = {new Data(0.0, 0.2)}, ys = {new Data(0.0, 0.2)}, yaws = {new Data(0.0, 0.05)}, none = new Data[0];
+            double[] rot = new double[3], pos = new double[3];
+
+            for (int i = 1; i <= LOOPS; i++) {
+                clock.advance(DT);
+                double t = i * DT;
+                Rotation3d imu = new Rotation3d(0.0, 0.0, 0.3 * t);
+                xs[0].value = t;
+                ys[0].value = 0.5 * t;
+                yaws[0].value = 0.3 * t;
+
+                if (order == OdometryOrder.BEFORE) odometry.update(speeds, imu, DT);
+                rotation.estimate(imu, yaws, none, none, rot, DT);
+                pose.estimate(speeds, rot, xs, ys, none, pos, DT);
+                if (order == OdometryOrder.AFTER) odometry.update(speeds, imu, DT);
+            }
+            log.close();
+
+            PoseState last = new PoseState();
+            ReplayResult result = new ReplayEngine(DRIVE_ST_DEV, IMU_ST_DEV).run(LogReader.open(directory), (odometryState, estimate) -> last.copyFrom(estimate));
+
+            assertEquals(expectedSteps, result.steps);
+            assertEquals(pos[0], last.x, 0.05);
+            assertEquals(pos[1], last.y, 0.05);
+            assertEquals(rot[2], last.yaw, 0.01);
+        } finally {
+            for (Path file : LogReader.segments(directory)) Files.delete(file);
+            Files.delete(directory);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package frc.robot.AidenLib.vision;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import edu.wpi.first.math.geometry.Pose3d;
+import edu.wpi.first.math.geometry.Rotation3d;
+
+import frc.robot.AidenLib.TimeSource;
+import frc.robot.AidenLib.example.Camera;
+
+/** Checks that a camera read faster than it updates queues each of its poses once. */
+public class VisionIngestionTest {
+    private static final int READS_PER_POSE = 3, POSES = 5;
+
+    /** A camera which returns a new pose every {@value #READS_PER_POSE} reads and stops changing after {@value #POSES} poses. */
+    private static class SlowCamera implements Camera {
+        private final double[] stDevs = { 0.1, 0.1, 0.1, 0.05, 0.05, 0.05 };
+        private volatile int reads;
+
+        @Override
+        public Pose3d getPose() {
+            int pose = Math.min(reads++ / READS_PER_POSE, POSES - 1);
+            return new Pose3d(pose, 0, 0, new Rotation3d());
+        }
+
+        @Override
+        public Rotation3d getRotation() {
+            return new Rotation3d();
+        }
+
+        @Override
+        public double[] getStdDevs() {
+            return stDevs;
+        }
+    }
+
+    @Test
+    public void repeatedPosesAreSkipped() throws InterruptedException {
+        SlowCamera camera = new SlowCamera();
+        VisionIngestion ingestion = new VisionIngestion(0.001, 16, TimeSource.getDefault(), camera);
+        ingestion.start();
+        while (camera.reads < READS_PER_POSE * POSES * 2) Thread.sleep(1);
+        ingestion.stop();
+
+        assertEquals(POSES, ingestion.getFramesRead(0));
+        assertTrue(ingestion.getRepeatedFrames(0) >= READS_PER_POSE * POSES * 2 - POSES);
+
+        VisionFrame frame = new VisionFrame();
+        for (int i = 0; i < POSES; i++) {
+            assertTrue(ingestion.poll(0, frame));
+            assertEquals(i, frame.x, 1e-9);
+        }
+        assertFalse(ingestion.poll(0, frame));
+    }
+}